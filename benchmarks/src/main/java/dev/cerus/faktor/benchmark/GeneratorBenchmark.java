@@ -0,0 +1,67 @@
+package dev.cerus.faktor.benchmark;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.generator.DefaultTOTPGenerator;
+import dev.cerus.faktor.generator.TOTPGenerator;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link DefaultTOTPGenerator#generateTOTP(byte[], long, long, int, HMACAlgorithm)}
+ * <p>
+ * See {@link HOTPGeneratorBenchmark} for the HOTP method, which always uses SHA1.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratorBenchmark {
+
+    private static final long TIME_STEP = TimeUnit.SECONDS.toMillis(30);
+    private static final long TIME_REFERENCE = 1703 * 100_000_000L;
+
+    @Param({"SHA1", "SHA256", "SHA512"})
+    private HMACAlgorithm algorithm;
+
+    @Param({"6", "10"})
+    private int digits;
+
+    private TOTPGenerator totpGenerator;
+    private byte[] secret;
+
+    @Setup
+    public void setup() {
+        this.totpGenerator = new DefaultTOTPGenerator();
+        this.secret = new byte[this.algorithm.byteAmount()];
+        new Random(1703).nextBytes(this.secret);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int generateTOTP() throws NoSuchAlgorithmException, InvalidKeyException {
+        return this.totpGenerator.generateTOTP(this.secret, TIME_REFERENCE, TIME_STEP, this.digits, this.algorithm);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int generateTOTPMultiThreaded() throws NoSuchAlgorithmException, InvalidKeyException {
+        return this.totpGenerator.generateTOTP(this.secret, TIME_REFERENCE, TIME_STEP, this.digits, this.algorithm);
+    }
+
+}
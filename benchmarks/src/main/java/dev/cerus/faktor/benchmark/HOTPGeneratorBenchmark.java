@@ -0,0 +1,62 @@
+package dev.cerus.faktor.benchmark;
+
+import dev.cerus.faktor.generator.DefaultHOTPGenerator;
+import dev.cerus.faktor.generator.HOTPGenerator;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link DefaultHOTPGenerator#generateHOTP(byte[], long, int)}
+ * <p>
+ * The method always uses SHA1, so unlike {@link GeneratorBenchmark} there is no algorithm parameter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HOTPGeneratorBenchmark {
+
+    private static final long COUNTER = 1703 * 100_000_000L / TimeUnit.SECONDS.toMillis(30);
+
+    @Param({"6", "10"})
+    private int digits;
+
+    private HOTPGenerator generator;
+    private byte[] secret;
+
+    @Setup
+    public void setup() {
+        this.generator = new DefaultHOTPGenerator();
+        this.secret = new byte[20];
+        new Random(1703).nextBytes(this.secret);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int generateHOTP() throws NoSuchAlgorithmException, InvalidKeyException {
+        return this.generator.generateHOTP(this.secret, COUNTER, this.digits);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int generateHOTPMultiThreaded() throws NoSuchAlgorithmException, InvalidKeyException {
+        return this.generator.generateHOTP(this.secret, COUNTER, this.digits);
+    }
+
+}
@@ -0,0 +1,87 @@
+package dev.cerus.faktor.benchmark;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.service.secret.OTPBase32Secret;
+import dev.cerus.faktor.service.secret.OTPHexSecret;
+import dev.cerus.faktor.service.secret.OTPSecret;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the {@link OTPBase32Secret} and {@link OTPHexSecret} codecs
+ * <p>
+ * Encoding creates a new secret in every invocation, so implementations that cache the encoded form are measured
+ * on their first encoding.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecretCodecBenchmark {
+
+    @Param({"SHA1", "SHA256", "SHA512"})
+    private HMACAlgorithm algorithm;
+
+    private byte[] bytes;
+    private String base32;
+    private String hex;
+
+    @Setup
+    public void setup() {
+        this.bytes = new byte[this.algorithm.byteAmount()];
+        new Random(1703).nextBytes(this.bytes);
+        this.base32 = OTPBase32Secret.fromBytes(this.bytes).asString();
+        this.hex = OTPHexSecret.fromBytes(this.bytes).asString();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String base32Encode() {
+        return OTPBase32Secret.fromBytes(this.bytes).asString();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public OTPSecret base32Decode() {
+        return OTPBase32Secret.fromString(this.base32);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public OTPSecret base32DecodeMultiThreaded() {
+        return OTPBase32Secret.fromString(this.base32);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String hexEncode() {
+        return OTPHexSecret.fromBytes(this.bytes).asString();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public OTPSecret hexDecode() {
+        return OTPHexSecret.fromString(this.hex);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public OTPSecret hexDecodeMultiThreaded() {
+        return OTPHexSecret.fromString(this.hex);
+    }
+
+}
@@ -0,0 +1,99 @@
+package dev.cerus.faktor.benchmark;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.service.DefaultTOTPService;
+import dev.cerus.faktor.service.TOTPService;
+import dev.cerus.faktor.service.clock.ManualTOTPClock;
+import dev.cerus.faktor.service.secret.OTPSecret;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link DefaultTOTPService#validateTOTP(int)}
+ * <p>
+ * The service runs on a fixed {@link ManualTOTPClock}, so the valid code stays valid for the whole run, no matter how
+ * many step boundaries the wall clock crosses. Because the service caches the codes of the current step, the warm
+ * benchmarks only measure cache hits. The invalid code benchmarks cover the worst case where the whole window has to
+ * be checked, and the cold cache benchmark moves the clock to a new step before every validation, so every code of
+ * the window is computed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceBenchmark {
+
+    @Param({"SHA1", "SHA256", "SHA512"})
+    private HMACAlgorithm algorithm;
+
+    @Param({"6", "10"})
+    private int digits;
+
+    @Param({"0", "1", "5"})
+    private int backwardsSteps;
+
+    private ManualTOTPClock clock;
+    private TOTPService service;
+    private int validCode;
+    private int invalidCode;
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException, InvalidKeyException {
+        this.clock = new ManualTOTPClock(1_700_000_000_000L);
+        this.service = TOTPService.defaultServiceBuilder()
+                .withSecret(OTPSecret.generateBase32Secret(this.algorithm, new Random(1703)))
+                .withAlgorithm(this.algorithm)
+                .withTimeStep(30, TimeUnit.SECONDS)
+                .withDigits(this.digits)
+                .withBackwardsSteps(this.backwardsSteps)
+                .withDefaultGenerator()
+                .withClock(this.clock)
+                .build();
+        this.validCode = this.service.generateTOTP();
+        // Codes never exceed 10 digits, so this code can not be valid
+        this.invalidCode = -1;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean validateValidCode() throws NoSuchAlgorithmException, InvalidKeyException {
+        return this.service.validateTOTP(this.validCode);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean validateInvalidCode() throws NoSuchAlgorithmException, InvalidKeyException {
+        return this.service.validateTOTP(this.invalidCode);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean validateInvalidCodeColdCache() throws NoSuchAlgorithmException, InvalidKeyException {
+        // The clock is only moved by this benchmark, which runs single threaded
+        this.clock.advance(30, TimeUnit.SECONDS);
+        return this.service.validateTOTP(this.invalidCode);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean validateInvalidCodeMultiThreaded() throws NoSuchAlgorithmException, InvalidKeyException {
+        return this.service.validateTOTP(this.invalidCode);
+    }
+
+}
@@ -5,16 +5,27 @@ package dev.cerus.faktor;
  */
 public enum HMACAlgorithm {
 
-    SHA1(20),
-    SHA256(32),
-    SHA512(64);
+    SHA1("HmacSHA1", 20),
+    SHA256("HmacSHA256", 32),
+    SHA512("HmacSHA512", 64);
 
+    private final String macName;
     private final int byteAmount;
 
-    HMACAlgorithm(final int byteAmount) {
+    HMACAlgorithm(final String macName, final int byteAmount) {
+        this.macName = macName;
         this.byteAmount = byteAmount;
     }
 
+    /**
+     * Get the JCA name of this algorithm (e.g. <code>HmacSHA1</code>)
+     *
+     * @return the JCA name of this algorithm
+     */
+    public String macName() {
+        return this.macName;
+    }
+
     public int byteAmount() {
         return this.byteAmount;
     }
@@ -0,0 +1,96 @@
+package dev.cerus.faktor.generator;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.jfr.GenerationEvent;
+import dev.cerus.faktor.metrics.OTPMetrics;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * HOTPGenerator implementation that does not allocate in steady state
+ * <p>
+ * HMACs are computed with the pure-Java engine behind {@link PreparedOTPKey} instead of {@link javax.crypto.Mac},
+ * because the JCA implementations allocate their result internally. The counter block, the hash state and the
+ * HMAC result live in per-thread scratch memory that is reused by every call on that thread, and the result is
+ * truncated in place.
+ * <p>
+ * Raw secrets longer than the block size of the hash function are hashed first, which allocates. This never
+ * happens for secrets created by {@link dev.cerus.faktor.service.secret.OTPSecret}.
+ */
+public class AllocationFreeHOTPGenerator extends DefaultHOTPGenerator {
+
+    private static final ThreadLocal<HMACScratch[]> SCRATCH = ThreadLocal.withInitial(() -> new HMACScratch[HMACAlgorithm.values().length]);
+
+    /**
+     * Create a new generator without metrics
+     */
+    public AllocationFreeHOTPGenerator() {
+    }
+
+    /**
+     * Create a new generator
+     *
+     * @param metrics The metrics to report generation latencies to
+     */
+    public AllocationFreeHOTPGenerator(final @NotNull OTPMetrics metrics) {
+        super(metrics);
+    }
+
+    /**
+     * Get the scratch memory of the current thread for an algorithm
+     *
+     * @param algo The HMAC algorithm
+     *
+     * @return the scratch memory
+     */
+    static HMACScratch scratch(final HMACAlgorithm algo) {
+        final HMACScratch[] scratches = SCRATCH.get();
+        HMACScratch scratch = scratches[algo.ordinal()];
+        if (scratch == null) {
+            scratch = new HMACScratch(algo);
+            scratches[algo.ordinal()] = scratch;
+        }
+        return scratch;
+    }
+
+    @Override
+    public int generateHOTP(final byte @NotNull [] secret, final long counter, final int digits) {
+        final GenerationEvent event = GenerationEvent.start();
+        final long start = this.startTimer();
+        final byte[] hmacResult = HMACEngine.hmac(secret, counter, scratch(HMACAlgorithm.SHA1));
+        final int hotp = this.truncate(hmacResult, digits);
+        this.recordGeneration(HMACAlgorithm.SHA1, start);
+        GenerationEvent.complete(event, HMACAlgorithm.SHA1, counter, digits);
+        return hotp;
+    }
+
+    @Override
+    public int generateHOTP(final @NotNull PreparedOTPKey key, final long counter, final int digits) {
+        final GenerationEvent event = GenerationEvent.start();
+        final long start = this.startTimer();
+        final byte[] hmacResult = key.hmac(counter, scratch(key.algorithm()));
+        final int hotp = this.truncate(hmacResult, digits);
+        this.recordGeneration(key.algorithm(), start);
+        GenerationEvent.complete(event, key.algorithm(), counter, digits);
+        return hotp;
+    }
+
+    @Override
+    public int generateHOTP(final @NotNull ByteBuffer secret,
+                            final int offset,
+                            final int length,
+                            final long counter,
+                            final int digits,
+                            final @NotNull HMACAlgorithm algo) {
+        Objects.checkFromIndexSize(offset, length, secret.limit());
+        final GenerationEvent event = GenerationEvent.start();
+        final long start = this.startTimer();
+        final byte[] hmacResult = HMACEngine.hmac(secret, offset, length, counter, scratch(algo));
+        final int hotp = this.truncate(hmacResult, digits);
+        this.recordGeneration(algo, start);
+        GenerationEvent.complete(event, algo, counter, digits);
+        return hotp;
+    }
+
+}
@@ -0,0 +1,55 @@
+package dev.cerus.faktor.generator;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.jfr.GenerationEvent;
+import dev.cerus.faktor.metrics.OTPMetrics;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * TOTPGenerator implementation that does not allocate in steady state
+ * <p>
+ * See {@link AllocationFreeHOTPGenerator} for details.
+ */
+public class AllocationFreeTOTPGenerator extends AllocationFreeHOTPGenerator implements TOTPGenerator {
+
+    /**
+     * Create a new generator without metrics
+     */
+    public AllocationFreeTOTPGenerator() {
+    }
+
+    /**
+     * Create a new generator
+     *
+     * @param metrics The metrics to report generation latencies to
+     */
+    public AllocationFreeTOTPGenerator(final @NotNull OTPMetrics metrics) {
+        super(metrics);
+    }
+
+    @Override
+    public int generateTOTP(final byte @NotNull [] secret, final long timeReferenceMillis, final long timeStepMillis, final int digits, final @NotNull HMACAlgorithm algo) {
+        final GenerationEvent event = GenerationEvent.start();
+        final long start = this.startTimer();
+        final long counter = timeReferenceMillis / timeStepMillis;
+        final byte[] hmacResult = HMACEngine.hmac(secret, counter, scratch(algo));
+        final int totp = this.truncate(hmacResult, digits);
+        this.recordGeneration(algo, start);
+        GenerationEvent.complete(event, algo, counter, digits);
+        return totp;
+    }
+
+    /**
+     * Subclasses have to override this method to opt in, since they might override the raw secret methods
+     */
+    @Override
+    public boolean supportsPreparedKeys() {
+        return this.getClass() == AllocationFreeTOTPGenerator.class;
+    }
+
+    @Override
+    public int generateTOTP(final @NotNull PreparedOTPKey key, final long timeReferenceMillis, final long timeStepMillis, final int digits) {
+        return this.generateHOTP(key, timeReferenceMillis / timeStepMillis, digits);
+    }
+
+}
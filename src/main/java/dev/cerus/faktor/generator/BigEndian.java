@@ -0,0 +1,35 @@
+package dev.cerus.faktor.generator;
+
+/**
+ * Big endian conversion helpers for the hash engines
+ */
+final class BigEndian {
+
+    private BigEndian() {
+        throw new UnsupportedOperationException();
+    }
+
+    static int getInt(final byte[] buf, final int off) {
+        return (buf[off] & 0xFF) << 24
+                | (buf[off + 1] & 0xFF) << 16
+                | (buf[off + 2] & 0xFF) << 8
+                | (buf[off + 3] & 0xFF);
+    }
+
+    static long getLong(final byte[] buf, final int off) {
+        return (getInt(buf, off) & 0xFFFFFFFFL) << 32 | (getInt(buf, off + 4) & 0xFFFFFFFFL);
+    }
+
+    static void putInt(final byte[] buf, final int off, final int val) {
+        buf[off] = (byte) (val >>> 24);
+        buf[off + 1] = (byte) (val >>> 16);
+        buf[off + 2] = (byte) (val >>> 8);
+        buf[off + 3] = (byte) val;
+    }
+
+    static void putLong(final byte[] buf, final int off, final long val) {
+        putInt(buf, off, (int) (val >>> 32));
+        putInt(buf, off + 4, (int) val);
+    }
+
+}
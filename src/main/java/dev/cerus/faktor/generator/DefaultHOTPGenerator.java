@@ -1,30 +1,103 @@
 package dev.cerus.faktor.generator;
 
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.jfr.GenerationEvent;
+import dev.cerus.faktor.metrics.OTPMetrics;
 import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import org.jetbrains.annotations.NotNull;
 
 /**
  * Default HOTPGenerator implementation
+ * <p>
+ * {@link Mac} instances are pooled and reused across calls and threads, so only the first computations
+ * pay for the JCA provider lookup. Generation latencies are reported to the configured {@link OTPMetrics} and every
+ * generation is recorded as a {@link GenerationEvent} if JFR is recording it.
  */
 public class DefaultHOTPGenerator implements HOTPGenerator {
 
-    private static final int[] POWERS = new int[10];
-    private static final String ALGO_SHA1 = "HmacSHA1";
+    protected final OTPMetrics metrics;
+    private final boolean timed;
 
-    static {
-        for (int i = 0; i < POWERS.length; i++) {
-            POWERS[i] = (int) Math.floor(Math.pow(10, i + 1));
-        }
+    /**
+     * Create a new generator without metrics
+     */
+    public DefaultHOTPGenerator() {
+        this(OTPMetrics.noop());
+    }
+
+    /**
+     * Create a new generator
+     *
+     * @param metrics The metrics to report generation latencies to
+     */
+    public DefaultHOTPGenerator(final @NotNull OTPMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+        this.timed = metrics.isEnabled();
     }
 
     @Override
     public int generateHOTP(final byte @NotNull [] secret, final long counter, final int digits) throws NoSuchAlgorithmException, InvalidKeyException {
-        final byte[] hmacResult = this.hmac(secret, counter);
-        return this.truncate(hmacResult, digits);
+        final GenerationEvent event = GenerationEvent.start();
+        final long start = this.startTimer();
+        final byte[] hmacResult = this.hmac(secret, counter, HMACAlgorithm.SHA1);
+        final int hotp = this.truncate(hmacResult, digits);
+        this.recordGeneration(HMACAlgorithm.SHA1, start);
+        GenerationEvent.complete(event, HMACAlgorithm.SHA1, counter, digits);
+        return hotp;
+    }
+
+    @Override
+    public int generateHOTP(final @NotNull PreparedOTPKey key, final long counter, final int digits) {
+        final GenerationEvent event = GenerationEvent.start();
+        final long start = this.startTimer();
+        final byte[] hmacResult = key.hmac(counter, new HMACScratch(key.algorithm()));
+        final int hotp = this.truncate(hmacResult, digits);
+        this.recordGeneration(key.algorithm(), start);
+        GenerationEvent.complete(event, key.algorithm(), counter, digits);
+        return hotp;
+    }
+
+    @Override
+    public int generateHOTP(final @NotNull ByteBuffer secret,
+                            final int offset,
+                            final int length,
+                            final long counter,
+                            final int digits,
+                            final @NotNull HMACAlgorithm algo) {
+        Objects.checkFromIndexSize(offset, length, secret.limit());
+        final GenerationEvent event = GenerationEvent.start();
+        final long start = this.startTimer();
+        final byte[] hmacResult = HMACEngine.hmac(secret, offset, length, counter, new HMACScratch(algo));
+        final int hotp = this.truncate(hmacResult, digits);
+        this.recordGeneration(algo, start);
+        GenerationEvent.complete(event, algo, counter, digits);
+        return hotp;
+    }
+
+    /**
+     * Read the clock if generations are timed
+     *
+     * @return the start time in nanos, 0 if generations are not timed
+     */
+    protected final long startTimer() {
+        return this.timed ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Report a generation to the metrics if generations are timed
+     *
+     * @param algo  The HMAC algorithm
+     * @param start The start time, see {@link DefaultHOTPGenerator#startTimer()}
+     */
+    protected final void recordGeneration(final HMACAlgorithm algo, final long start) {
+        if (this.timed) {
+            this.metrics.recordGeneration(algo, System.nanoTime() - start);
+        }
     }
 
     protected int truncate(final byte[] hmacResult, final int digits) {
@@ -32,7 +105,7 @@ public class DefaultHOTPGenerator implements HOTPGenerator {
             throw new IllegalArgumentException("Digits out of bounds, only 6 - 10 is supported");
         }
         final int dt = this.dynamicTruncation(hmacResult);
-        return dt % POWERS[digits - 1];
+        return dt % Truncation.modulus(digits);
     }
 
     protected byte[] hmac(final byte[] key, final long counter, final String algo) throws NoSuchAlgorithmException, InvalidKeyException {
@@ -42,22 +115,37 @@ public class DefaultHOTPGenerator implements HOTPGenerator {
 
     protected byte[] hmac(final byte[] key, final long counter) throws NoSuchAlgorithmException, InvalidKeyException {
         final byte[] data = ByteBuffer.allocate(8).putLong(counter).array();
-        return this.hmac(key, data, ALGO_SHA1);
+        return this.hmac(key, data, HMACAlgorithm.SHA1);
+    }
+
+    protected byte[] hmac(final byte[] key, final long counter, final HMACAlgorithm algo) throws NoSuchAlgorithmException, InvalidKeyException {
+        final byte[] data = ByteBuffer.allocate(8).putLong(counter).array();
+        return this.hmac(key, data, algo);
     }
 
     protected byte[] hmac(final byte[] key, final byte[] data, final String algo) throws NoSuchAlgorithmException, InvalidKeyException {
-        final SecretKeySpec secretKeySpec = new SecretKeySpec(key, algo);
+        final HMACAlgorithm algorithm = MacPool.algorithmOf(algo);
+        if (algorithm != null) {
+            return this.hmac(key, data, algorithm);
+        }
+        // Unknown algorithms are not pooled
         final Mac mac = Mac.getInstance(algo);
-        mac.init(secretKeySpec);
+        mac.init(new SecretKeySpec(key, algo));
         return mac.doFinal(data);
     }
 
+    protected byte[] hmac(final byte[] key, final byte[] data, final HMACAlgorithm algo) throws NoSuchAlgorithmException, InvalidKeyException {
+        final Mac mac = MacPool.acquire(algo);
+        try {
+            mac.init(new SecretKeySpec(key, algo.macName()));
+            return mac.doFinal(data);
+        } finally {
+            MacPool.release(algo, mac);
+        }
+    }
+
     protected int dynamicTruncation(final byte[] hmacResult) {
-        final int offset = hmacResult[hmacResult.length - 1] & 0xF;
-        return (hmacResult[offset] & 0x7F) << 24
-                | (hmacResult[offset + 1] & 0xFF) << 16
-                | (hmacResult[offset + 2] & 0xFF) << 8
-                | (hmacResult[offset + 3] & 0xFF);
+        return Truncation.dynamicTruncation(hmacResult);
     }
 
 }
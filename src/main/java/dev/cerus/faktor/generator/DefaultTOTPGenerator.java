@@ -1,6 +1,8 @@
 package dev.cerus.faktor.generator;
 
 import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.jfr.GenerationEvent;
+import dev.cerus.faktor.metrics.OTPMetrics;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import org.jetbrains.annotations.NotNull;
@@ -10,12 +12,44 @@ import org.jetbrains.annotations.NotNull;
  */
 public class DefaultTOTPGenerator extends DefaultHOTPGenerator implements TOTPGenerator {
 
+    /**
+     * Create a new generator without metrics
+     */
+    public DefaultTOTPGenerator() {
+    }
+
+    /**
+     * Create a new generator
+     *
+     * @param metrics The metrics to report generation latencies to
+     */
+    public DefaultTOTPGenerator(final @NotNull OTPMetrics metrics) {
+        super(metrics);
+    }
+
     @Override
     public int generateTOTP(final byte @NotNull [] secret, final long timeReferenceMillis, final long timeStepMillis, final int digits, final @NotNull HMACAlgorithm algo) throws NoSuchAlgorithmException, InvalidKeyException {
-        final String algoString = "Hmac" + algo.name();
+        final GenerationEvent event = GenerationEvent.start();
+        final long start = this.startTimer();
         final long counter = timeReferenceMillis / timeStepMillis;
-        final byte[] hmacResult = this.hmac(secret, counter, algoString);
-        return this.truncate(hmacResult, digits);
+        final byte[] hmacResult = this.hmac(secret, counter, algo);
+        final int totp = this.truncate(hmacResult, digits);
+        this.recordGeneration(algo, start);
+        GenerationEvent.complete(event, algo, counter, digits);
+        return totp;
+    }
+
+    /**
+     * Subclasses have to override this method to opt in, since they might override the raw secret methods
+     */
+    @Override
+    public boolean supportsPreparedKeys() {
+        return this.getClass() == DefaultTOTPGenerator.class;
+    }
+
+    @Override
+    public int generateTOTP(final @NotNull PreparedOTPKey key, final long timeReferenceMillis, final long timeStepMillis, final int digits) {
+        return this.generateHOTP(key, timeReferenceMillis / timeStepMillis, digits);
     }
 
 }
@@ -0,0 +1,255 @@
+package dev.cerus.faktor.generator;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Pure-Java HMAC computation for 8 byte counter messages (see <a href="https://www.rfc-editor.org/rfc/rfc2104">RFC 2104</a>)
+ * <p>
+ * All methods work on the buffers of a {@link HMACScratch} and do not allocate, with the exception of keys
+ * that are longer than the block size of the hash function. Those are hashed with a {@link MessageDigest} first.
+ */
+final class HMACEngine {
+
+    private static final byte IPAD = 0x36;
+    private static final byte OPAD = 0x5C;
+
+    private HMACEngine() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Computes the HMAC of a counter value with a raw key
+     * <p>
+     * This takes four compression function calls, see {@link PreparedOTPKey} for a faster alternative.
+     *
+     * @param key     The raw key
+     * @param counter The counter value
+     * @param scratch The working memory
+     *
+     * @return the HMAC result, this is the result array of the scratch
+     */
+    static byte[] hmac(final byte[] key, final long counter, final HMACScratch scratch) {
+        if (key.length > scratch.block.length) {
+            return hmac(digest(key, scratch.algorithm), counter, scratch);
+        }
+        keyBlock(scratch.block, key, IPAD);
+        innerHash(counter, scratch);
+        keyBlock(scratch.block, key, OPAD);
+        outerHash(scratch);
+        return scratch.result;
+    }
+
+    /**
+     * Computes the HMAC of a counter value with a raw key that is read from a buffer
+     * <p>
+     * The key is read with absolute gets and never copied to the heap, the position of the buffer is not changed.
+     *
+     * @param key     The buffer that holds the raw key
+     * @param offset  The position of the key in the buffer
+     * @param length  The length of the key
+     * @param counter The counter value
+     * @param scratch The working memory
+     *
+     * @return the HMAC result, this is the result array of the scratch
+     */
+    static byte[] hmac(final ByteBuffer key, final int offset, final int length, final long counter, final HMACScratch scratch) {
+        if (length > scratch.block.length) {
+            return hmac(digest(key, offset, length, scratch.algorithm), counter, scratch);
+        }
+        keyBlock(scratch.block, key, offset, length, IPAD);
+        innerHash(counter, scratch);
+        keyBlock(scratch.block, key, offset, length, OPAD);
+        outerHash(scratch);
+        return scratch.result;
+    }
+
+    /**
+     * Computes the HMAC of a counter value with prepared pad states
+     *
+     * @param innerState   The state after the ipad block (SHA-1 & SHA-256)
+     * @param outerState   The state after the opad block (SHA-1 & SHA-256)
+     * @param innerState64 The state after the ipad block (SHA-512)
+     * @param outerState64 The state after the opad block (SHA-512)
+     * @param counter      The counter value
+     * @param scratch      The working memory
+     *
+     * @return the HMAC result, this is the result array of the scratch
+     */
+    static byte[] hmac(final int[] innerState,
+                       final int[] outerState,
+                       final long[] innerState64,
+                       final long[] outerState64,
+                       final long counter,
+                       final HMACScratch scratch) {
+        loadState(scratch, innerState, innerState64);
+        counterBlock(scratch.block, counter);
+        compress(scratch);
+        storeState(scratch, scratch.result);
+
+        loadState(scratch, outerState, outerState64);
+        digestBlock(scratch.block, scratch.result);
+        compress(scratch);
+        storeState(scratch, scratch.result);
+        return scratch.result;
+    }
+
+    /**
+     * Absorbs the padded key into a fresh state
+     * <p>
+     * After this call the state of the scratch holds the state after the pad block.
+     *
+     * @param key      The raw key
+     * @param innerPad Whether to use the inner or the outer pad
+     * @param scratch  The working memory
+     */
+    static void absorbKey(final byte[] key, final boolean innerPad, final HMACScratch scratch) {
+        if (key.length > scratch.block.length) {
+            absorbKey(digest(key, scratch.algorithm), innerPad, scratch);
+            return;
+        }
+        keyBlock(scratch.block, key, innerPad ? IPAD : OPAD);
+        reset(scratch);
+        compress(scratch);
+        Arrays.fill(scratch.block, (byte) 0);
+    }
+
+    /**
+     * Absorbs the padded key into a fresh state
+     * <p>
+     * After this call the state of the scratch holds the state after the pad block.
+     *
+     * @param key      The buffer that holds the raw key
+     * @param offset   The position of the key in the buffer
+     * @param length   The length of the key
+     * @param innerPad Whether to use the inner or the outer pad
+     * @param scratch  The working memory
+     */
+    static void absorbKey(final ByteBuffer key, final int offset, final int length, final boolean innerPad, final HMACScratch scratch) {
+        if (length > scratch.block.length) {
+            absorbKey(digest(key, offset, length, scratch.algorithm), innerPad, scratch);
+            return;
+        }
+        keyBlock(scratch.block, key, offset, length, innerPad ? IPAD : OPAD);
+        reset(scratch);
+        compress(scratch);
+        Arrays.fill(scratch.block, (byte) 0);
+    }
+
+    /**
+     * Hashes the key block in the scratch followed by the counter block
+     * <p>
+     * The inner digest is written into the result array of the scratch.
+     */
+    private static void innerHash(final long counter, final HMACScratch scratch) {
+        reset(scratch);
+        compress(scratch);
+        counterBlock(scratch.block, counter);
+        compress(scratch);
+        storeState(scratch, scratch.result);
+    }
+
+    /**
+     * Hashes the key block in the scratch followed by the inner digest from the result array
+     * <p>
+     * The HMAC is written into the result array of the scratch.
+     */
+    private static void outerHash(final HMACScratch scratch) {
+        reset(scratch);
+        compress(scratch);
+        digestBlock(scratch.block, scratch.result);
+        compress(scratch);
+        storeState(scratch, scratch.result);
+        Arrays.fill(scratch.block, (byte) 0);
+    }
+
+    private static byte[] digest(final ByteBuffer key, final int offset, final int length, final HMACAlgorithm algo) {
+        final MessageDigest digest = messageDigest(algo);
+        digest.update(key.duplicate().position(offset).limit(offset + length));
+        return digest.digest();
+    }
+
+    private static byte[] digest(final byte[] key, final HMACAlgorithm algo) {
+        return messageDigest(algo).digest(key);
+    }
+
+    private static MessageDigest messageDigest(final HMACAlgorithm algo) {
+        final String name = switch (algo) {
+            case SHA1 -> "SHA-1";
+            case SHA256 -> "SHA-256";
+            case SHA512 -> "SHA-512";
+        };
+        try {
+            return MessageDigest.getInstance(name);
+        } catch (final NoSuchAlgorithmException e) {
+            // Every Java platform is required to support these algorithms
+            throw new IllegalStateException("Unable to hash key", e);
+        }
+    }
+
+    private static void keyBlock(final byte[] block, final byte[] key, final byte pad) {
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (byte) ((i < key.length ? key[i] : 0) ^ pad);
+        }
+    }
+
+    private static void keyBlock(final byte[] block, final ByteBuffer key, final int offset, final int length, final byte pad) {
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (byte) ((i < length ? key.get(offset + i) : 0) ^ pad);
+        }
+    }
+
+    private static void counterBlock(final byte[] block, final long counter) {
+        Arrays.fill(block, (byte) 0);
+        BigEndian.putLong(block, 0, counter);
+        block[8] = (byte) 0x80;
+        BigEndian.putLong(block, block.length - 8, (block.length + 8) * 8L);
+    }
+
+    private static void digestBlock(final byte[] block, final byte[] digest) {
+        Arrays.fill(block, (byte) 0);
+        System.arraycopy(digest, 0, block, 0, digest.length);
+        block[digest.length] = (byte) 0x80;
+        BigEndian.putLong(block, block.length - 8, (block.length + digest.length) * 8L);
+    }
+
+    private static void reset(final HMACScratch scratch) {
+        switch (scratch.algorithm) {
+            case SHA1 -> SHA1Engine.reset(scratch.state);
+            case SHA256 -> SHA256Engine.reset(scratch.state);
+            case SHA512 -> SHA512Engine.reset(scratch.state64);
+        }
+    }
+
+    private static void compress(final HMACScratch scratch) {
+        switch (scratch.algorithm) {
+            case SHA1 -> SHA1Engine.compress(scratch.state, scratch.block, scratch.schedule);
+            case SHA256 -> SHA256Engine.compress(scratch.state, scratch.block, scratch.schedule);
+            case SHA512 -> SHA512Engine.compress(scratch.state64, scratch.block, scratch.schedule64);
+        }
+    }
+
+    private static void loadState(final HMACScratch scratch, final int[] state, final long[] state64) {
+        if (state64 != null) {
+            System.arraycopy(state64, 0, scratch.state64, 0, state64.length);
+        } else {
+            System.arraycopy(state, 0, scratch.state, 0, state.length);
+        }
+    }
+
+    private static void storeState(final HMACScratch scratch, final byte[] out) {
+        if (scratch.state64 != null) {
+            for (int i = 0; i < out.length / 8; i++) {
+                BigEndian.putLong(out, i * 8, scratch.state64[i]);
+            }
+        } else {
+            for (int i = 0; i < out.length / 4; i++) {
+                BigEndian.putInt(out, i * 4, scratch.state[i]);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package dev.cerus.faktor.generator;
+
+import dev.cerus.faktor.HMACAlgorithm;
+
+/**
+ * Working memory for a single HMAC computation with a {@link PreparedOTPKey}
+ * <p>
+ * Instances are not thread safe, but can be reused for any amount of sequential computations.
+ */
+final class HMACScratch {
+
+    final HMACAlgorithm algorithm;
+    final byte[] block;
+    final byte[] result;
+    final int[] state;
+    final int[] schedule;
+    final long[] state64;
+    final long[] schedule64;
+
+    HMACScratch(final HMACAlgorithm algorithm) {
+        this.algorithm = algorithm;
+        this.result = new byte[algorithm.byteAmount()];
+        switch (algorithm) {
+            case SHA1 -> {
+                this.block = new byte[SHA1Engine.BLOCK_LENGTH];
+                this.state = new int[SHA1Engine.STATE_WORDS];
+                this.schedule = new int[SHA1Engine.SCHEDULE_WORDS];
+                this.state64 = null;
+                this.schedule64 = null;
+            }
+            case SHA256 -> {
+                this.block = new byte[SHA256Engine.BLOCK_LENGTH];
+                this.state = new int[SHA256Engine.STATE_WORDS];
+                this.schedule = new int[SHA256Engine.SCHEDULE_WORDS];
+                this.state64 = null;
+                this.schedule64 = null;
+            }
+            case SHA512 -> {
+                this.block = new byte[SHA512Engine.BLOCK_LENGTH];
+                this.state = null;
+                this.schedule = null;
+                this.state64 = new long[SHA512Engine.STATE_WORDS];
+                this.schedule64 = new long[SHA512Engine.SCHEDULE_WORDS];
+            }
+            default -> throw new IllegalArgumentException("Unsupported algorithm: " + algorithm);
+        }
+    }
+
+}
@@ -1,7 +1,11 @@
 package dev.cerus.faktor.generator;
 
+import dev.cerus.faktor.HMACAlgorithm;
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Objects;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
@@ -22,6 +26,16 @@ public interface HOTPGenerator {
         return new DefaultHOTPGenerator();
     }
 
+    /**
+     * Create a new {@link AllocationFreeHOTPGenerator}
+     *
+     * @return a new {@link AllocationFreeHOTPGenerator}
+     */
+    @Contract(value = "-> new", pure = true)
+    static HOTPGenerator newAllocationFreeGenerator() {
+        return new AllocationFreeHOTPGenerator();
+    }
+
     /**
      * Generates a HOTP based on the provided parameters
      * <p>
@@ -39,4 +53,63 @@ public interface HOTPGenerator {
     @Contract(pure = true)
     int generateHOTP(byte @NotNull [] secret, long counter, int digits) throws NoSuchAlgorithmException, InvalidKeyException;
 
+    /**
+     * Generates a HOTP with a prepared key
+     * <p>
+     * The HMAC algorithm of the prepared key is used instead of the HMAC SHA1 default.
+     * Implementations shall not cause visible side effects.
+     * <p>
+     * The default implementation computes the password with the pure-Java engine behind {@link PreparedOTPKey}.
+     *
+     * @param key     The prepared secret (see {@link PreparedOTPKey})
+     * @param counter The counter value
+     * @param digits  The amount of digits the password should have
+     *
+     * @return the generated HOTP
+     */
+    @Contract(pure = true)
+    default int generateHOTP(@NotNull final PreparedOTPKey key, final long counter, final int digits) {
+        if (digits < 6 || digits > 10) {
+            throw new IllegalArgumentException("Digits out of bounds, only 6 - 10 is supported");
+        }
+        return Truncation.truncate(key.hmac(counter, AllocationFreeHOTPGenerator.scratch(key.algorithm())), digits);
+    }
+
+    /**
+     * Generates a HOTP with a raw secret that is stored in a buffer
+     * <p>
+     * The secret is read with absolute gets and is never copied to the heap, the position of the buffer is not changed.
+     * This allows generating passwords straight from memory-mapped files or direct buffers.
+     * Implementations shall not cause visible side effects.
+     * <p>
+     * The default implementation copies the secret into a temporary array, calls
+     * {@link #generateHOTP(PreparedOTPKey, long, int)} and zeroes the array afterwards. The built-in generators
+     * override this method and never copy the secret.
+     *
+     * @param secret  The buffer that holds the secret (see {@link dev.cerus.faktor.service.secret.OTPSecret})
+     * @param offset  The position of the secret in the buffer
+     * @param length  The length of the secret
+     * @param counter The counter value
+     * @param digits  The amount of digits the password should have
+     * @param algo    The HMAC algorithm that should be used (SHA1 is most common)
+     *
+     * @return the generated HOTP
+     */
+    @Contract(pure = true)
+    default int generateHOTP(@NotNull final ByteBuffer secret,
+                             final int offset,
+                             final int length,
+                             final long counter,
+                             final int digits,
+                             @NotNull final HMACAlgorithm algo) {
+        Objects.checkFromIndexSize(offset, length, secret.limit());
+        final byte[] scratch = new byte[length];
+        try {
+            secret.get(offset, scratch);
+            return this.generateHOTP(PreparedOTPKey.of(scratch, algo), counter, digits);
+        } finally {
+            Arrays.fill(scratch, (byte) 0);
+        }
+    }
+
 }
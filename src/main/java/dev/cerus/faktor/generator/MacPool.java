@@ -0,0 +1,111 @@
+package dev.cerus.faktor.generator;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Pool of reusable {@link Mac} instances
+ * <p>
+ * Looking up a Mac through the JCA providers is expensive, so instances are handed back to the pool once
+ * a computation has finished. Instances are not bound to threads. Every algorithm has its own bounded queue, sized
+ * after the amount of processors, and instances that do not fit into a full queue are dropped, so a burst of
+ * concurrent computations does not grow the pool for good.
+ * <p>
+ * Released instances are re-initialized with a blank key, so pooled instances never hold the secret of the last
+ * computation.
+ */
+final class MacPool {
+
+    static final int CAPACITY = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final HMACAlgorithm[] ALGORITHMS = HMACAlgorithm.values();
+    private static final ArrayBlockingQueue<Mac>[] POOLS = createPools();
+    private static final SecretKeySpec[] BLANK_KEYS = createBlankKeys();
+
+    private MacPool() {
+        throw new UnsupportedOperationException();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArrayBlockingQueue<Mac>[] createPools() {
+        final ArrayBlockingQueue<Mac>[] pools = new ArrayBlockingQueue[ALGORITHMS.length];
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new ArrayBlockingQueue<>(CAPACITY);
+        }
+        return pools;
+    }
+
+    private static SecretKeySpec[] createBlankKeys() {
+        final SecretKeySpec[] keys = new SecretKeySpec[ALGORITHMS.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new SecretKeySpec(new byte[1], ALGORITHMS[i].macName());
+        }
+        return keys;
+    }
+
+    /**
+     * Find the algorithm of a JCA name
+     *
+     * @param macName The JCA name
+     *
+     * @return the algorithm or null if the name does not belong to a {@link HMACAlgorithm}
+     */
+    static HMACAlgorithm algorithmOf(final String macName) {
+        for (final HMACAlgorithm algo : ALGORITHMS) {
+            if (algo.macName().equals(macName)) {
+                return algo;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Take a Mac instance out of the pool or create a new one if the pool is empty
+     * <p>
+     * The returned instance has to be initialized before use and should be returned with
+     * {@link MacPool#release(HMACAlgorithm, Mac)} afterwards.
+     *
+     * @param algo The algorithm
+     *
+     * @return a Mac instance for the algorithm
+     *
+     * @throws NoSuchAlgorithmException if the algorithm can not be initialized
+     */
+    static Mac acquire(final HMACAlgorithm algo) throws NoSuchAlgorithmException {
+        final Mac mac = POOLS[algo.ordinal()].poll();
+        return mac != null ? mac : Mac.getInstance(algo.macName());
+    }
+
+    /**
+     * Return a Mac instance to the pool
+     * <p>
+     * The instance is dropped if the pool of the algorithm is full or if it can not be cleared.
+     *
+     * @param algo The algorithm the instance was acquired for
+     * @param mac  The instance
+     */
+    static void release(final HMACAlgorithm algo, final Mac mac) {
+        try {
+            // Overwrite the key of the last computation
+            mac.init(BLANK_KEYS[algo.ordinal()]);
+        } catch (final InvalidKeyException e) {
+            return;
+        }
+        POOLS[algo.ordinal()].offer(mac);
+    }
+
+    /**
+     * Get the amount of pooled instances of an algorithm
+     *
+     * @param algo The algorithm
+     *
+     * @return the amount of idle instances
+     */
+    static int size(final HMACAlgorithm algo) {
+        return POOLS[algo.ordinal()].size();
+    }
+
+}
@@ -0,0 +1,386 @@
+package dev.cerus.faktor.generator;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import java.util.Arrays;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Computes the HOTPs of many prepared keys for the same counter at once
+ * <p>
+ * Keys are processed in groups of up to {@link MultiBufferOTPEngine#LANES} independent SHA-1 or SHA-256
+ * computations. The hash states of a group are stored lane by lane, so every step of the compression function is a
+ * loop over the lanes that the HotSpot auto-vectorizer can turn into SIMD instructions. Even where it does not, the
+ * lanes are independent dependency chains that keep the CPU busy. Since all keys of a call share the counter, the
+ * message schedule of the inner hash is only computed once per call.
+ * <p>
+ * SHA-512 keys are computed one by one like {@link AllocationFreeHOTPGenerator} does. The results are identical to
+ * the ones of the other generators. Unlike them, this engine does not report to metrics or JFR.
+ * <p>
+ * Instances are not thread safe, but can be reused for any amount of sequential calls.
+ */
+public final class MultiBufferOTPEngine {
+
+    /**
+     * The max amount of keys that are hashed together
+     */
+    public static final int LANES = 64;
+
+    private static final int SHA1 = 0;
+    private static final int SHA256 = 1;
+
+    private final int[] state = new int[SHA256Engine.STATE_WORDS * LANES];
+    private final int[] schedule = new int[SHA1Engine.SCHEDULE_WORDS * LANES];
+    private final int[] counterSchedule = new int[SHA1Engine.SCHEDULE_WORDS];
+    private final int[][] innerSchedules = {
+            new int[SHA1Engine.SCHEDULE_WORDS * LANES],
+            new int[SHA256Engine.SCHEDULE_WORDS * LANES]
+    };
+    private final long[] innerCounters = new long[2];
+    private final boolean[] innerValid = new boolean[2];
+    private final PreparedOTPKey[][] pendingKeys = new PreparedOTPKey[2][LANES];
+    private final int[][] pendingSlots = new int[2][LANES];
+    private final int[] pendingCounts = new int[2];
+    private final int[] a = new int[LANES];
+    private final int[] b = new int[LANES];
+    private final int[] c = new int[LANES];
+    private final int[] d = new int[LANES];
+    private final int[] e = new int[LANES];
+    private final int[] f = new int[LANES];
+    private final int[] g = new int[LANES];
+    private final int[] h = new int[LANES];
+    private HMACScratch scratch512;
+
+    /**
+     * Generates the HOTPs of a range of prepared keys
+     * <p>
+     * <code>dest[destOffset + i - from]</code> is set to the HOTP of <code>keys[i]</code>.
+     *
+     * @param keys       The prepared keys, may use different algorithms
+     * @param from       The index of the first key (inclusive)
+     * @param to         The index of the last key (exclusive)
+     * @param counter    The counter value
+     * @param digits     The amount of digits the passwords should have
+     * @param dest       The array to write the passwords into
+     * @param destOffset The position of the first password in the array
+     */
+    public void generateHOTP(final @NotNull PreparedOTPKey @NotNull [] keys,
+                             final int from,
+                             final int to,
+                             final long counter,
+                             final int digits,
+                             final int @NotNull [] dest,
+                             final int destOffset) {
+        Objects.checkFromToIndex(from, to, keys.length);
+        Objects.checkFromIndexSize(destOffset, to - from, dest.length);
+        if (digits < 6 || digits > 10) {
+            throw new IllegalArgumentException("Digits out of bounds, only 6 - 10 is supported");
+        }
+
+        this.innerValid[SHA1] = false;
+        this.innerValid[SHA256] = false;
+        for (int i = from; i < to; i++) {
+            final PreparedOTPKey key = keys[i];
+            final int lanes = switch (key.algorithm()) {
+                case SHA1 -> SHA1;
+                case SHA256 -> SHA256;
+                case SHA512 -> -1;
+            };
+            final int slot = destOffset + i - from;
+            if (lanes < 0) {
+                if (this.scratch512 == null) {
+                    this.scratch512 = new HMACScratch(HMACAlgorithm.SHA512);
+                }
+                dest[slot] = Truncation.truncate(key.hmac(counter, this.scratch512), digits);
+                continue;
+            }
+            final int pending = this.pendingCounts[lanes];
+            this.pendingKeys[lanes][pending] = key;
+            this.pendingSlots[lanes][pending] = slot;
+            this.pendingCounts[lanes] = pending + 1;
+            if (pending + 1 == LANES) {
+                this.flush(lanes, counter, digits, dest);
+            }
+        }
+        this.flush(SHA1, counter, digits, dest);
+        this.flush(SHA256, counter, digits, dest);
+    }
+
+    /**
+     * Generates the TOTPs of a range of prepared keys
+     * <p>
+     * <code>dest[destOffset + i - from]</code> is set to the TOTP of <code>keys[i]</code>.
+     *
+     * @param keys                The prepared keys, may use different algorithms
+     * @param from                The index of the first key (inclusive)
+     * @param to                  The index of the last key (exclusive)
+     * @param timeReferenceMillis The timestamp to generate the passwords for in millis
+     * @param timeStepMillis      The lifetime of the passwords in millis
+     * @param digits              The amount of digits the passwords should have
+     * @param dest                The array to write the passwords into
+     * @param destOffset          The position of the first password in the array
+     */
+    public void generateTOTP(final @NotNull PreparedOTPKey @NotNull [] keys,
+                             final int from,
+                             final int to,
+                             final long timeReferenceMillis,
+                             final long timeStepMillis,
+                             final int digits,
+                             final int @NotNull [] dest,
+                             final int destOffset) {
+        this.generateHOTP(keys, from, to, timeReferenceMillis / timeStepMillis, digits, dest, destOffset);
+    }
+
+    /**
+     * Hashes the pending keys of an algorithm and writes their passwords
+     */
+    private void flush(final int lanes, final long counter, final int digits, final int[] dest) {
+        final int count = this.pendingCounts[lanes];
+        if (count == 0) {
+            return;
+        }
+        final PreparedOTPKey[] keys = this.pendingKeys[lanes];
+        final int stateWords = lanes == SHA1 ? SHA1Engine.STATE_WORDS : SHA256Engine.STATE_WORDS;
+        final int[] state = this.state;
+
+        // Inner hash: prepared ipad state + counter block
+        for (int lane = 0; lane < count; lane++) {
+            final int[] inner = keys[lane].innerState();
+            for (int word = 0; word < stateWords; word++) {
+                state[word * LANES + lane] = inner[word];
+            }
+        }
+        this.compress(lanes, this.innerSchedule(lanes, counter), count);
+
+        // Outer hash: prepared opad state + inner digest block
+        this.digestSchedule(lanes, stateWords, count);
+        for (int lane = 0; lane < count; lane++) {
+            final int[] outer = keys[lane].outerState();
+            for (int word = 0; word < stateWords; word++) {
+                state[word * LANES + lane] = outer[word];
+            }
+        }
+        this.compress(lanes, this.schedule, count);
+
+        final int[] slots = this.pendingSlots[lanes];
+        for (int lane = 0; lane < count; lane++) {
+            dest[slots[lane]] = this.truncate(lane, stateWords, digits);
+            keys[lane] = null;
+        }
+        this.pendingCounts[lanes] = 0;
+    }
+
+    /**
+     * Get the message schedule of the counter block, all lanes share it
+     */
+    private int[] innerSchedule(final int lanes, final long counter) {
+        final int[] schedule = this.innerSchedules[lanes];
+        if (this.innerValid[lanes] && this.innerCounters[lanes] == counter) {
+            return schedule;
+        }
+        final int length = lanes == SHA1 ? SHA1Engine.SCHEDULE_WORDS : SHA256Engine.SCHEDULE_WORDS;
+        final int[] words = this.counterSchedule;
+        Arrays.fill(words, 0);
+        words[0] = (int) (counter >>> 32);
+        words[1] = (int) counter;
+        words[2] = 0x80000000;
+        words[15] = (SHA1Engine.BLOCK_LENGTH + 8) * 8;
+        expand(lanes, words, 1, 1);
+        for (int i = 0; i < length; i++) {
+            final int base = i * LANES;
+            for (int lane = 0; lane < LANES; lane++) {
+                schedule[base + lane] = words[i];
+            }
+        }
+        this.innerCounters[lanes] = counter;
+        this.innerValid[lanes] = true;
+        return schedule;
+    }
+
+    /**
+     * Fill the schedule with the inner digests of all lanes, which are in the state
+     */
+    private void digestSchedule(final int lanes, final int digestWords, final int count) {
+        final int[] schedule = this.schedule;
+        System.arraycopy(this.state, 0, schedule, 0, digestWords * LANES);
+        for (int word = digestWords; word < 16; word++) {
+            final int value = word == digestWords ? 0x80000000 : word == 15 ? (SHA1Engine.BLOCK_LENGTH + digestWords * 4) * 8 : 0;
+            final int base = word * LANES;
+            for (int lane = 0; lane < count; lane++) {
+                schedule[base + lane] = value;
+            }
+        }
+        expand(lanes, schedule, LANES, count);
+    }
+
+    /**
+     * Expand the first 16 words of a lane-major message schedule
+     *
+     * @param width The distance between the words of a lane
+     * @param count The amount of lanes to expand
+     */
+    private static void expand(final int lanes, final int[] w, final int width, final int count) {
+        if (lanes == SHA1) {
+            for (int i = 16; i < SHA1Engine.SCHEDULE_WORDS; i++) {
+                final int base = i * width;
+                for (int lane = 0; lane < count; lane++) {
+                    w[base + lane] = Integer.rotateLeft(w[base - 3 * width + lane] ^ w[base - 8 * width + lane]
+                            ^ w[base - 14 * width + lane] ^ w[base - 16 * width + lane], 1);
+                }
+            }
+            return;
+        }
+        for (int i = 16; i < SHA256Engine.SCHEDULE_WORDS; i++) {
+            final int base = i * width;
+            for (int lane = 0; lane < count; lane++) {
+                final int w15 = w[base - 15 * width + lane];
+                final int w2 = w[base - 2 * width + lane];
+                final int s0 = Integer.rotateRight(w15, 7) ^ Integer.rotateRight(w15, 18) ^ (w15 >>> 3);
+                final int s1 = Integer.rotateRight(w2, 17) ^ Integer.rotateRight(w2, 19) ^ (w2 >>> 10);
+                w[base + lane] = w[base - 16 * width + lane] + s0 + w[base - 7 * width + lane] + s1;
+            }
+        }
+    }
+
+    private void compress(final int lanes, final int[] w, final int count) {
+        if (lanes == SHA1) {
+            this.compressSHA1(w, count);
+        } else {
+            this.compressSHA256(w, count);
+        }
+    }
+
+    /**
+     * SHA-1 compression of all lanes, see {@link SHA1Engine#compress(int[], byte[], int[])}
+     */
+    private void compressSHA1(final int[] w, final int count) {
+        final int[] state = this.state;
+        int[] a = this.a;
+        int[] b = this.b;
+        int[] c = this.c;
+        int[] d = this.d;
+        int[] e = this.e;
+        System.arraycopy(state, 0, a, 0, count);
+        System.arraycopy(state, LANES, b, 0, count);
+        System.arraycopy(state, 2 * LANES, c, 0, count);
+        System.arraycopy(state, 3 * LANES, d, 0, count);
+        System.arraycopy(state, 4 * LANES, e, 0, count);
+
+        for (int i = 0; i < 80; i++) {
+            final int base = i * LANES;
+            // The new a is written into the array of e, the other words move by one position
+            if (i < 20) {
+                for (int lane = 0; lane < count; lane++) {
+                    e[lane] += Integer.rotateLeft(a[lane], 5) + ((b[lane] & c[lane]) | (~b[lane] & d[lane])) + 0x5a827999 + w[base + lane];
+                    b[lane] = Integer.rotateLeft(b[lane], 30);
+                }
+            } else if (i < 40) {
+                for (int lane = 0; lane < count; lane++) {
+                    e[lane] += Integer.rotateLeft(a[lane], 5) + (b[lane] ^ c[lane] ^ d[lane]) + 0x6ed9eba1 + w[base + lane];
+                    b[lane] = Integer.rotateLeft(b[lane], 30);
+                }
+            } else if (i < 60) {
+                for (int lane = 0; lane < count; lane++) {
+                    e[lane] += Integer.rotateLeft(a[lane], 5) + ((b[lane] & c[lane]) | (b[lane] & d[lane]) | (c[lane] & d[lane])) + 0x8f1bbcdc + w[base + lane];
+                    b[lane] = Integer.rotateLeft(b[lane], 30);
+                }
+            } else {
+                for (int lane = 0; lane < count; lane++) {
+                    e[lane] += Integer.rotateLeft(a[lane], 5) + (b[lane] ^ c[lane] ^ d[lane]) + 0xca62c1d6 + w[base + lane];
+                    b[lane] = Integer.rotateLeft(b[lane], 30);
+                }
+            }
+            final int[] temp = e;
+            e = d;
+            d = c;
+            c = b;
+            b = a;
+            a = temp;
+        }
+
+        for (int lane = 0; lane < count; lane++) {
+            state[lane] += a[lane];
+            state[LANES + lane] += b[lane];
+            state[2 * LANES + lane] += c[lane];
+            state[3 * LANES + lane] += d[lane];
+            state[4 * LANES + lane] += e[lane];
+        }
+    }
+
+    /**
+     * SHA-256 compression of all lanes, see {@link SHA256Engine#compress(int[], byte[], int[])}
+     */
+    private void compressSHA256(final int[] w, final int count) {
+        final int[] state = this.state;
+        final int[] k = SHA256Engine.K;
+        int[] a = this.a;
+        int[] b = this.b;
+        int[] c = this.c;
+        int[] d = this.d;
+        int[] e = this.e;
+        int[] f = this.f;
+        int[] g = this.g;
+        int[] h = this.h;
+        System.arraycopy(state, 0, a, 0, count);
+        System.arraycopy(state, LANES, b, 0, count);
+        System.arraycopy(state, 2 * LANES, c, 0, count);
+        System.arraycopy(state, 3 * LANES, d, 0, count);
+        System.arraycopy(state, 4 * LANES, e, 0, count);
+        System.arraycopy(state, 5 * LANES, f, 0, count);
+        System.arraycopy(state, 6 * LANES, g, 0, count);
+        System.arraycopy(state, 7 * LANES, h, 0, count);
+
+        for (int i = 0; i < 64; i++) {
+            final int base = i * LANES;
+            final int ki = k[i];
+            // temp1 is accumulated in h, which becomes the new a, and d becomes the new e
+            for (int lane = 0; lane < count; lane++) {
+                final int el = e[lane];
+                final int al = a[lane];
+                final int temp1 = h[lane] + (Integer.rotateRight(el, 6) ^ Integer.rotateRight(el, 11) ^ Integer.rotateRight(el, 25))
+                        + ((el & f[lane]) ^ (~el & g[lane])) + ki + w[base + lane];
+                final int temp2 = (Integer.rotateRight(al, 2) ^ Integer.rotateRight(al, 13) ^ Integer.rotateRight(al, 22))
+                        + ((al & b[lane]) ^ (al & c[lane]) ^ (b[lane] & c[lane]));
+                d[lane] += temp1;
+                h[lane] = temp1 + temp2;
+            }
+            final int[] temp = h;
+            h = g;
+            g = f;
+            f = e;
+            e = d;
+            d = c;
+            c = b;
+            b = a;
+            a = temp;
+        }
+
+        for (int lane = 0; lane < count; lane++) {
+            state[lane] += a[lane];
+            state[LANES + lane] += b[lane];
+            state[2 * LANES + lane] += c[lane];
+            state[3 * LANES + lane] += d[lane];
+            state[4 * LANES + lane] += e[lane];
+            state[5 * LANES + lane] += f[lane];
+            state[6 * LANES + lane] += g[lane];
+            state[7 * LANES + lane] += h[lane];
+        }
+    }
+
+    /**
+     * Dynamic truncation of the digest of a lane
+     */
+    private int truncate(final int lane, final int digestWords, final int digits) {
+        final int offset = this.digestByte(lane, digestWords * 4 - 1) & 0xF;
+        final int binary = (this.digestByte(lane, offset) & 0x7F) << 24
+                | (this.digestByte(lane, offset + 1) & 0xFF) << 16
+                | (this.digestByte(lane, offset + 2) & 0xFF) << 8
+                | (this.digestByte(lane, offset + 3) & 0xFF);
+        return binary % Truncation.modulus(digits);
+    }
+
+    private int digestByte(final int lane, final int index) {
+        return this.state[(index >>> 2) * LANES + lane] >>> (24 - (index & 3) * 8);
+    }
+
+}
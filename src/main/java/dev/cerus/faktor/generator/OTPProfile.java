@@ -0,0 +1,250 @@
+package dev.cerus.faktor.generator;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.service.secret.OTPSecret;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Compiled TOTP parameters
+ * <p>
+ * A profile bundles algorithm, digits, time step and backwards window and validates them once when it is created.
+ * There is no forward window, codes of future steps are always rejected.
+ * Generation and validation with a profile do not check their parameters again, do not look up any JCA
+ * providers and do not throw checked exceptions. They always use the pure-Java engine behind
+ * {@link PreparedOTPKey} with per-thread scratch memory, like {@link AllocationFreeTOTPGenerator}, so they do not
+ * allocate in steady state and do not report to metrics or JFR.
+ * <p>
+ * Instances are immutable and thread safe.
+ */
+public final class OTPProfile {
+
+    private final HMACAlgorithm algorithm;
+    private final int digits;
+    private final long timeStepMillis;
+    private final int backwardsSteps;
+
+    private OTPProfile(final HMACAlgorithm algorithm, final int digits, final long timeStepMillis, final int backwardsSteps) {
+        this.algorithm = algorithm;
+        this.digits = digits;
+        this.timeStepMillis = timeStepMillis;
+        this.backwardsSteps = backwardsSteps;
+    }
+
+    /**
+     * Create a new profile
+     *
+     * @param algo           The HMAC algorithm
+     * @param digits         The amount of digits the passwords have
+     * @param timeStepMillis The lifetime of a password in millis
+     * @param backwardsSteps The amount of time steps a password can be old to still count as valid
+     *
+     * @return the new profile
+     *
+     * @throws IllegalArgumentException if one of the parameters is invalid
+     */
+    @Contract(value = "_, _, _, _ -> new", pure = true)
+    public static @NotNull OTPProfile of(final @NotNull HMACAlgorithm algo,
+                                         final int digits,
+                                         final long timeStepMillis,
+                                         final int backwardsSteps) {
+        Objects.requireNonNull(algo);
+        if (digits < 6 || digits > 10) {
+            throw new IllegalArgumentException("Digits out of bounds, only 6 - 10 is supported");
+        }
+        if (timeStepMillis < 1) {
+            throw new IllegalArgumentException("Time step must be >= 1");
+        }
+        if (backwardsSteps < 0) {
+            throw new IllegalArgumentException("Backwards steps must be >= 0");
+        }
+        return new OTPProfile(algo, digits, timeStepMillis, backwardsSteps);
+    }
+
+    /**
+     * Create a new profile
+     *
+     * @param algo           The HMAC algorithm
+     * @param digits         The amount of digits the passwords have
+     * @param timeStepValue  The lifetime of a password
+     * @param timeStepUnit   The unit of the lifetime
+     * @param backwardsSteps The amount of time steps a password can be old to still count as valid
+     *
+     * @return the new profile
+     *
+     * @throws IllegalArgumentException if one of the parameters is invalid
+     */
+    @Contract(value = "_, _, _, _, _ -> new", pure = true)
+    public static @NotNull OTPProfile of(final @NotNull HMACAlgorithm algo,
+                                         final int digits,
+                                         final long timeStepValue,
+                                         final @NotNull TimeUnit timeStepUnit,
+                                         final int backwardsSteps) {
+        return of(algo, digits, timeStepUnit.toMillis(timeStepValue), backwardsSteps);
+    }
+
+    /**
+     * Prepare a secret for this profile
+     *
+     * @param secret The secret
+     *
+     * @return the prepared key for the algorithm of this profile
+     */
+    @Contract(value = "_ -> new", pure = true)
+    public @NotNull PreparedOTPKey prepare(final @NotNull OTPSecret secret) {
+        return PreparedOTPKey.of(secret, this.algorithm);
+    }
+
+    /**
+     * Get the time step index of a timestamp
+     *
+     * @param timeMillis The timestamp in millis
+     *
+     * @return the time step index
+     */
+    public long step(final long timeMillis) {
+        return timeMillis / this.timeStepMillis;
+    }
+
+    /**
+     * Generates the TOTP of a timestamp
+     *
+     * @param key        The prepared key, has to be prepared for the algorithm of this profile
+     * @param timeMillis The timestamp in millis
+     *
+     * @return the TOTP
+     *
+     * @throws IllegalArgumentException if the key was prepared for a different algorithm
+     */
+    public int generate(final @NotNull PreparedOTPKey key, final long timeMillis) {
+        return this.generateAtStep(key, timeMillis / this.timeStepMillis);
+    }
+
+    /**
+     * Generates the TOTP of a time step
+     *
+     * @param key  The prepared key, has to be prepared for the algorithm of this profile
+     * @param step The time step index
+     *
+     * @return the TOTP
+     *
+     * @throws IllegalArgumentException if the key was prepared for a different algorithm
+     */
+    public int generateAtStep(final @NotNull PreparedOTPKey key, final long step) {
+        this.checkKey(key);
+        return this.compute(key, step);
+    }
+
+    /**
+     * Validates a TOTP against the window of a timestamp
+     * <p>
+     * The current step is checked first, then the steps before it.
+     *
+     * @param key        The prepared key, has to be prepared for the algorithm of this profile
+     * @param totp       The TOTP to validate
+     * @param timeMillis The timestamp in millis
+     *
+     * @return the backwards offset of the matching step or -1 if the TOTP is invalid
+     *
+     * @throws IllegalArgumentException if the key was prepared for a different algorithm
+     */
+    public int validate(final @NotNull PreparedOTPKey key, final int totp, final long timeMillis) {
+        this.checkKey(key);
+        final long step = timeMillis / this.timeStepMillis;
+        for (int offset = 0; offset <= this.backwardsSteps; offset++) {
+            if (this.compute(key, step - offset) == totp) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether a TOTP is valid at a timestamp
+     *
+     * @param key        The prepared key, has to be prepared for the algorithm of this profile
+     * @param totp       The TOTP to validate
+     * @param timeMillis The timestamp in millis
+     *
+     * @return whether the TOTP is valid
+     *
+     * @throws IllegalArgumentException if the key was prepared for a different algorithm
+     */
+    public boolean isValid(final @NotNull PreparedOTPKey key, final int totp, final long timeMillis) {
+        return this.validate(key, totp, timeMillis) >= 0;
+    }
+
+    private void checkKey(final PreparedOTPKey key) {
+        if (key.algorithm() != this.algorithm) {
+            throw new IllegalArgumentException("Key was prepared for " + key.algorithm() + ", profile uses " + this.algorithm);
+        }
+    }
+
+    private int compute(final PreparedOTPKey key, final long step) {
+        return Truncation.truncate(key.hmac(step, AllocationFreeHOTPGenerator.scratch(this.algorithm)), this.digits);
+    }
+
+    /**
+     * Get the HMAC algorithm
+     *
+     * @return the HMAC algorithm
+     */
+    public @NotNull HMACAlgorithm algorithm() {
+        return this.algorithm;
+    }
+
+    /**
+     * Get the amount of digits
+     *
+     * @return the amount of digits
+     */
+    public int digits() {
+        return this.digits;
+    }
+
+    /**
+     * Get the time step
+     *
+     * @return the lifetime of a password in millis
+     */
+    public long timeStepMillis() {
+        return this.timeStepMillis;
+    }
+
+    /**
+     * Get the backwards window
+     *
+     * @return the amount of time steps a password can be old to still count as valid
+     */
+    public int backwardsSteps() {
+        return this.backwardsSteps;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof OTPProfile other)) {
+            return false;
+        }
+        return this.algorithm == other.algorithm
+                && this.digits == other.digits
+                && this.timeStepMillis == other.timeStepMillis
+                && this.backwardsSteps == other.backwardsSteps;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.algorithm, this.digits, this.timeStepMillis, this.backwardsSteps);
+    }
+
+    @Override
+    public String toString() {
+        return "OTPProfile{algorithm=" + this.algorithm + ", digits=" + this.digits + ", timeStepMillis=" + this.timeStepMillis
+                + ", backwardsSteps=" + this.backwardsSteps + "}";
+    }
+
+}
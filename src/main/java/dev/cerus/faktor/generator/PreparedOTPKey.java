@@ -0,0 +1,195 @@
+package dev.cerus.faktor.generator;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.service.secret.OTPSecret;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import javax.security.auth.Destroyable;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An OTP secret that has been prepared for HMAC computation
+ * <p>
+ * HMAC hashes the key padded with <code>ipad</code> and <code>opad</code> before hashing the actual message
+ * (see <a href="https://www.rfc-editor.org/rfc/rfc2104">RFC 2104</a>). Since the secret does not change, the hash
+ * states after these two blocks are computed once and stored in this object. Computing a HOTP with a prepared key
+ * only takes two compression function calls instead of four.
+ * <p>
+ * The stored states are equivalent to the secret itself and should be treated with the same care. Destroying the
+ * secret does not affect keys that were prepared from it, call {@link PreparedOTPKey#destroy()} to zero the states
+ * once the key is no longer needed. Instances are thread safe, but computations that run while the key is destroyed
+ * might see partially zeroed states.
+ */
+public final class PreparedOTPKey implements Destroyable {
+
+    private final HMACAlgorithm algorithm;
+    private final int[] innerState;
+    private final int[] outerState;
+    private final long[] innerState64;
+    private final long[] outerState64;
+    private volatile boolean destroyed;
+
+    private PreparedOTPKey(final HMACAlgorithm algorithm,
+                           final int[] innerState,
+                           final int[] outerState,
+                           final long[] innerState64,
+                           final long[] outerState64) {
+        this.algorithm = algorithm;
+        this.innerState = innerState;
+        this.outerState = outerState;
+        this.innerState64 = innerState64;
+        this.outerState64 = outerState64;
+    }
+
+    /**
+     * Prepare an OTP secret
+     *
+     * @param secret The secret
+     * @param algo   The HMAC algorithm the key will be used with
+     *
+     * @return the prepared key
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    public static @NotNull PreparedOTPKey of(final @NotNull OTPSecret secret, final @NotNull HMACAlgorithm algo) {
+        if (secret.hasByteBufferView()) {
+            // Read through the view, the secret is not copied
+            final ByteBuffer key = secret.asByteBuffer();
+            return of(key, 0, key.limit(), algo);
+        }
+        // Other implementations might hand out a copy that nobody else would zero
+        final byte[] key = secret.asBytes();
+        try {
+            return of(key, algo);
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    /**
+     * Prepare a raw OTP secret
+     *
+     * @param secret The secret (see {@link OTPSecret})
+     * @param algo   The HMAC algorithm the key will be used with
+     *
+     * @return the prepared key
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    public static @NotNull PreparedOTPKey of(final byte @NotNull [] secret, final @NotNull HMACAlgorithm algo) {
+        final HMACScratch scratch = new HMACScratch(algo);
+        if (algo == HMACAlgorithm.SHA512) {
+            HMACEngine.absorbKey(secret, true, scratch);
+            final long[] inner = scratch.state64.clone();
+            HMACEngine.absorbKey(secret, false, scratch);
+            final long[] outer = scratch.state64.clone();
+            return new PreparedOTPKey(algo, null, null, inner, outer);
+        }
+        HMACEngine.absorbKey(secret, true, scratch);
+        final int[] inner = scratch.state.clone();
+        HMACEngine.absorbKey(secret, false, scratch);
+        final int[] outer = scratch.state.clone();
+        return new PreparedOTPKey(algo, inner, outer, null, null);
+    }
+
+    /**
+     * Prepare a raw OTP secret that is stored in a buffer
+     * <p>
+     * The secret is read with absolute gets and is never copied to the heap, the position of the buffer is not changed.
+     * This allows preparing keys straight from memory-mapped files or direct buffers.
+     *
+     * @param secret The buffer that holds the secret (see {@link OTPSecret})
+     * @param offset The position of the secret in the buffer
+     * @param length The length of the secret
+     * @param algo   The HMAC algorithm the key will be used with
+     *
+     * @return the prepared key
+     */
+    @Contract(value = "_, _, _, _ -> new", pure = true)
+    public static @NotNull PreparedOTPKey of(final @NotNull ByteBuffer secret,
+                                             final int offset,
+                                             final int length,
+                                             final @NotNull HMACAlgorithm algo) {
+        Objects.checkFromIndexSize(offset, length, secret.limit());
+        final HMACScratch scratch = new HMACScratch(algo);
+        if (algo == HMACAlgorithm.SHA512) {
+            HMACEngine.absorbKey(secret, offset, length, true, scratch);
+            final long[] inner = scratch.state64.clone();
+            HMACEngine.absorbKey(secret, offset, length, false, scratch);
+            final long[] outer = scratch.state64.clone();
+            return new PreparedOTPKey(algo, null, null, inner, outer);
+        }
+        HMACEngine.absorbKey(secret, offset, length, true, scratch);
+        final int[] inner = scratch.state.clone();
+        HMACEngine.absorbKey(secret, offset, length, false, scratch);
+        final int[] outer = scratch.state.clone();
+        return new PreparedOTPKey(algo, inner, outer, null, null);
+    }
+
+    /**
+     * Get the HMAC algorithm this key was prepared for
+     *
+     * @return the HMAC algorithm
+     */
+    public @NotNull HMACAlgorithm algorithm() {
+        return this.algorithm;
+    }
+
+    /**
+     * Computes the HMAC of a counter value
+     *
+     * @param counter The counter value
+     * @param scratch The working memory, must have been created for the algorithm of this key
+     *
+     * @return the HMAC result, this is the result array of the scratch
+     */
+    byte[] hmac(final long counter, final HMACScratch scratch) {
+        this.checkDestroyed();
+        return HMACEngine.hmac(this.innerState, this.outerState, this.innerState64, this.outerState64, counter, scratch);
+    }
+
+    /**
+     * Get the state after the ipad block, null for SHA-512 keys
+     */
+    int[] innerState() {
+        this.checkDestroyed();
+        return this.innerState;
+    }
+
+    /**
+     * Get the state after the opad block, null for SHA-512 keys
+     */
+    int[] outerState() {
+        this.checkDestroyed();
+        return this.outerState;
+    }
+
+    /**
+     * Zero the prepared states
+     * <p>
+     * Computations with this key fail afterwards.
+     */
+    @Override
+    public void destroy() {
+        this.destroyed = true;
+        if (this.innerState != null) {
+            Arrays.fill(this.innerState, 0);
+            Arrays.fill(this.outerState, 0);
+        } else {
+            Arrays.fill(this.innerState64, 0);
+            Arrays.fill(this.outerState64, 0);
+        }
+    }
+
+    @Override
+    public boolean isDestroyed() {
+        return this.destroyed;
+    }
+
+    private void checkDestroyed() {
+        if (this.destroyed) {
+            throw new IllegalStateException("Key has been destroyed");
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package dev.cerus.faktor.generator;
+
+/**
+ * SHA-1 compression function (see <a href="https://www.rfc-editor.org/rfc/rfc3174">RFC 3174</a>)
+ */
+final class SHA1Engine {
+
+    static final int BLOCK_LENGTH = 64;
+    static final int DIGEST_LENGTH = 20;
+    static final int STATE_WORDS = 5;
+    static final int SCHEDULE_WORDS = 80;
+
+    private static final int[] IV = {0x67452301, 0xefcdab89, 0x98badcfe, 0x10325476, 0xc3d2e1f0};
+
+    private SHA1Engine() {
+        throw new UnsupportedOperationException();
+    }
+
+    static void reset(final int[] state) {
+        System.arraycopy(IV, 0, state, 0, STATE_WORDS);
+    }
+
+    /**
+     * Absorb one 64 byte block into the state
+     *
+     * @param state    The state to update
+     * @param block    The block
+     * @param schedule Scratch space for the message schedule (80 words)
+     */
+    static void compress(final int[] state, final byte[] block, final int[] schedule) {
+        for (int i = 0; i < 16; i++) {
+            schedule[i] = BigEndian.getInt(block, i * 4);
+        }
+        for (int i = 16; i < 80; i++) {
+            schedule[i] = Integer.rotateLeft(schedule[i - 3] ^ schedule[i - 8] ^ schedule[i - 14] ^ schedule[i - 16], 1);
+        }
+
+        int a = state[0];
+        int b = state[1];
+        int c = state[2];
+        int d = state[3];
+        int e = state[4];
+        for (int i = 0; i < 80; i++) {
+            final int f;
+            final int k;
+            if (i < 20) {
+                f = (b & c) | (~b & d);
+                k = 0x5a827999;
+            } else if (i < 40) {
+                f = b ^ c ^ d;
+                k = 0x6ed9eba1;
+            } else if (i < 60) {
+                f = (b & c) | (b & d) | (c & d);
+                k = 0x8f1bbcdc;
+            } else {
+                f = b ^ c ^ d;
+                k = 0xca62c1d6;
+            }
+            final int temp = Integer.rotateLeft(a, 5) + f + e + k + schedule[i];
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        state[0] += a;
+        state[1] += b;
+        state[2] += c;
+        state[3] += d;
+        state[4] += e;
+    }
+
+}
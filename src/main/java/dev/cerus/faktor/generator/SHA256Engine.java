@@ -0,0 +1,88 @@
+package dev.cerus.faktor.generator;
+
+/**
+ * SHA-256 compression function (see <a href="https://www.rfc-editor.org/rfc/rfc6234">RFC 6234</a>)
+ */
+final class SHA256Engine {
+
+    static final int BLOCK_LENGTH = 64;
+    static final int DIGEST_LENGTH = 32;
+    static final int STATE_WORDS = 8;
+    static final int SCHEDULE_WORDS = 64;
+
+    private static final int[] IV = {
+            0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+    static final int[] K = {
+            0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+            0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+            0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+            0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+            0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+            0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+            0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+            0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+
+    private SHA256Engine() {
+        throw new UnsupportedOperationException();
+    }
+
+    static void reset(final int[] state) {
+        System.arraycopy(IV, 0, state, 0, STATE_WORDS);
+    }
+
+    /**
+     * Absorb one 64 byte block into the state
+     *
+     * @param state    The state to update
+     * @param block    The block
+     * @param schedule Scratch space for the message schedule (64 words)
+     */
+    static void compress(final int[] state, final byte[] block, final int[] schedule) {
+        for (int i = 0; i < 16; i++) {
+            schedule[i] = BigEndian.getInt(block, i * 4);
+        }
+        for (int i = 16; i < 64; i++) {
+            final int w15 = schedule[i - 15];
+            final int w2 = schedule[i - 2];
+            final int s0 = Integer.rotateRight(w15, 7) ^ Integer.rotateRight(w15, 18) ^ (w15 >>> 3);
+            final int s1 = Integer.rotateRight(w2, 17) ^ Integer.rotateRight(w2, 19) ^ (w2 >>> 10);
+            schedule[i] = schedule[i - 16] + s0 + schedule[i - 7] + s1;
+        }
+
+        int a = state[0];
+        int b = state[1];
+        int c = state[2];
+        int d = state[3];
+        int e = state[4];
+        int f = state[5];
+        int g = state[6];
+        int h = state[7];
+        for (int i = 0; i < 64; i++) {
+            final int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+            final int ch = (e & f) ^ (~e & g);
+            final int temp1 = h + s1 + ch + K[i] + schedule[i];
+            final int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+            final int maj = (a & b) ^ (a & c) ^ (b & c);
+            final int temp2 = s0 + maj;
+            h = g;
+            g = f;
+            f = e;
+            e = d + temp1;
+            d = c;
+            c = b;
+            b = a;
+            a = temp1 + temp2;
+        }
+        state[0] += a;
+        state[1] += b;
+        state[2] += c;
+        state[3] += d;
+        state[4] += e;
+        state[5] += f;
+        state[6] += g;
+        state[7] += h;
+    }
+
+}
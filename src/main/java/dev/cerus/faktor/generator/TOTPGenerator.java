@@ -1,6 +1,7 @@
 package dev.cerus.faktor.generator;
 
 import dev.cerus.faktor.HMACAlgorithm;
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import org.jetbrains.annotations.Contract;
@@ -23,6 +24,16 @@ public interface TOTPGenerator extends HOTPGenerator {
         return new DefaultTOTPGenerator();
     }
 
+    /**
+     * Create a new {@link AllocationFreeTOTPGenerator}
+     *
+     * @return a new {@link AllocationFreeTOTPGenerator}
+     */
+    @Contract(value = "-> new", pure = true)
+    static @NotNull TOTPGenerator newAllocationFreeGenerator() {
+        return new AllocationFreeTOTPGenerator();
+    }
+
     /**
      * Generates a TOTP for N time steps backwards
      * <p>
@@ -101,4 +112,95 @@ public interface TOTPGenerator extends HOTPGenerator {
                      int digits,
                      @NotNull HMACAlgorithm algo) throws NoSuchAlgorithmException, InvalidKeyException;
 
+    /**
+     * Check if this generator computes codes of prepared keys itself
+     * <p>
+     * Services that hold a secret for a long time convert it into a {@link PreparedOTPKey} if this returns true and
+     * call the raw secret methods otherwise. Generators that override the raw secret methods should only return true
+     * if their prepared key methods compute the same codes.
+     *
+     * @return whether the prepared key methods should be preferred, false by default
+     */
+    @Contract(pure = true)
+    default boolean supportsPreparedKeys() {
+        return false;
+    }
+
+    /**
+     * Generates a TOTP with a prepared key for N time steps backwards
+     * <p>
+     * N = <code>backwardsSteps</code>
+     * <p>
+     * <code>timeReferenceMillis = timeReferenceMillis - (timeStepMillis * backwardsSteps)</code>
+     * <p>
+     * Implementations shall not cause visible side effects.
+     *
+     * @param key                 The prepared secret (see {@link PreparedOTPKey})
+     * @param timeReferenceMillis The timestamp to generate the password for in millis
+     * @param timeStepMillis      The lifetime of the password in millis
+     * @param digits              The amount of digits the password should have
+     * @param backwardsSteps      The amount of time steps to subtract from <code>timeReferenceMillis</code>
+     *
+     * @return the generated TOTP
+     */
+    @Contract(pure = true)
+    default int generateTOTP(@NotNull final PreparedOTPKey key,
+                             final long timeReferenceMillis,
+                             final long timeStepMillis,
+                             final int digits,
+                             final int backwardsSteps) {
+        final long millis = timeReferenceMillis - (timeStepMillis * backwardsSteps);
+        return this.generateTOTP(key, millis, timeStepMillis, digits);
+    }
+
+    /**
+     * Generates a TOTP with a prepared key
+     * <p>
+     * The HMAC algorithm of the prepared key is used.
+     * Implementations shall not cause visible side effects.
+     * <p>
+     * The default implementation delegates to {@link #generateHOTP(PreparedOTPKey, long, int)}.
+     *
+     * @param key                 The prepared secret (see {@link PreparedOTPKey})
+     * @param timeReferenceMillis The timestamp to generate the password for in millis
+     * @param timeStepMillis      The lifetime of the password in millis
+     * @param digits              The amount of digits the password should have
+     *
+     * @return the generated TOTP
+     */
+    @Contract(pure = true)
+    default int generateTOTP(@NotNull final PreparedOTPKey key,
+                             final long timeReferenceMillis,
+                             final long timeStepMillis,
+                             final int digits) {
+        return this.generateHOTP(key, timeReferenceMillis / timeStepMillis, digits);
+    }
+
+    /**
+     * Generates a TOTP with a raw secret that is stored in a buffer
+     * <p>
+     * See {@link #generateHOTP(ByteBuffer, int, int, long, int, HMACAlgorithm)}.
+     * Implementations shall not cause visible side effects.
+     *
+     * @param secret              The buffer that holds the secret (see {@link dev.cerus.faktor.service.secret.OTPSecret})
+     * @param offset              The position of the secret in the buffer
+     * @param length              The length of the secret
+     * @param timeReferenceMillis The timestamp to generate the password for in millis
+     * @param timeStepMillis      The lifetime of the password in millis
+     * @param digits              The amount of digits the password should have
+     * @param algo                The HMAC algorithm that should be used (SHA1 is most common)
+     *
+     * @return the generated TOTP
+     */
+    @Contract(pure = true)
+    default int generateTOTP(@NotNull final ByteBuffer secret,
+                             final int offset,
+                             final int length,
+                             final long timeReferenceMillis,
+                             final long timeStepMillis,
+                             final int digits,
+                             @NotNull final HMACAlgorithm algo) {
+        return this.generateHOTP(secret, offset, length, timeReferenceMillis / timeStepMillis, digits, algo);
+    }
+
 }
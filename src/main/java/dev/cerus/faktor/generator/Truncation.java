@@ -0,0 +1,56 @@
+package dev.cerus.faktor.generator;
+
+/**
+ * Dynamic truncation of HMAC results
+ * <p>
+ * See <a href="https://www.rfc-editor.org/rfc/rfc4226#section-5.3">RFC 4226</a>. All generators, profiles and engines
+ * of this package truncate through this class, so they compute the same codes.
+ */
+final class Truncation {
+
+    // 10^10 does not fit into an int, 10 digits use Integer.MAX_VALUE instead
+    private static final int[] MODULI = {10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000, Integer.MAX_VALUE};
+
+    private Truncation() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Truncate an HMAC result to a password
+     *
+     * @param hmacResult The HMAC result
+     * @param digits     The amount of digits, has to be checked by the caller
+     *
+     * @return the password
+     */
+    static int truncate(final byte[] hmacResult, final int digits) {
+        return dynamicTruncation(hmacResult) % modulus(digits);
+    }
+
+    /**
+     * Extract the 31 bit value of an HMAC result
+     *
+     * @param hmacResult The HMAC result
+     *
+     * @return the value before it is reduced to the digits
+     */
+    static int dynamicTruncation(final byte[] hmacResult) {
+        final int offset = hmacResult[hmacResult.length - 1] & 0xF;
+        return (hmacResult[offset] & 0x7F) << 24
+                | (hmacResult[offset + 1] & 0xFF) << 16
+                | (hmacResult[offset + 2] & 0xFF) << 8
+                | (hmacResult[offset + 3] & 0xFF);
+    }
+
+    /**
+     * Get the modulus that reduces a truncated value to the digits
+     *
+     * @param digits The amount of digits, has to be checked by the caller
+     *
+     * @return the modulus
+     */
+    static int modulus(final int digits) {
+        return MODULI[digits - 1];
+    }
+
+}
@@ -0,0 +1,40 @@
+package dev.cerus.faktor.jfr;
+
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+
+/**
+ * Looks up the JFR types of the events
+ */
+final class EventTypes {
+
+    private EventTypes() {
+    }
+
+    /**
+     * Look up the type of an event
+     *
+     * @param eventClass The event class
+     *
+     * @return the event type or null if the runtime can not record events
+     */
+    static EventType of(final Class<? extends Event> eventClass) {
+        try {
+            return EventType.getEventType(eventClass);
+        } catch (final Throwable t) {
+            return null;
+        }
+    }
+
+    /**
+     * Check whether a recording wants events of a type
+     *
+     * @param type The event type or null
+     *
+     * @return whether the type is enabled in at least one running recording
+     */
+    static boolean isEnabled(final EventType type) {
+        return type != null && type.isEnabled();
+    }
+
+}
@@ -0,0 +1,80 @@
+package dev.cerus.faktor.jfr;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Emitted for every HOTP or TOTP a generator computes
+ * <p>
+ * Disabled by default because it fires once per code, enable <code>dev.cerus.faktor.Generation</code> in the
+ * recording settings to capture it.
+ */
+@Name("dev.cerus.faktor.Generation")
+@Label("OTP Generation")
+@Category({"Faktor", "Generator"})
+@Description("Computation of a single HOTP or TOTP")
+@Enabled(false)
+@StackTrace(false)
+public final class GenerationEvent extends Event {
+
+    private static final EventType TYPE = EventTypes.of(GenerationEvent.class);
+
+    @Label("Algorithm")
+    String algorithm;
+
+    @Label("Counter")
+    @Description("The HOTP counter or the TOTP time step index")
+    long counter;
+
+    @Label("Digits")
+    int digits;
+
+    /**
+     * Begin a new event if a recording wants it
+     * <p>
+     * Nothing is allocated while no recording has the event enabled.
+     *
+     * @return the begun event or null
+     */
+    public static @Nullable GenerationEvent start() {
+        if (!EventTypes.isEnabled(TYPE)) {
+            return null;
+        }
+        final GenerationEvent event = new GenerationEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * End an event and commit it if the recording wants it
+     *
+     * @param event   The event returned by {@link GenerationEvent#start()} or null
+     * @param algo    The HMAC algorithm
+     * @param counter The counter or time step index
+     * @param digits  The amount of digits
+     */
+    public static void complete(final @Nullable GenerationEvent event, final HMACAlgorithm algo, final long counter, final int digits) {
+        if (event != null) {
+            event.finish(algo, counter, digits);
+        }
+    }
+
+    private void finish(final HMACAlgorithm algo, final long counter, final int digits) {
+        this.end();
+        if (this.shouldCommit()) {
+            this.algorithm = algo.name();
+            this.counter = counter;
+            this.digits = digits;
+            this.commit();
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package dev.cerus.faktor.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Emitted for every encoded secret that is decoded, whether it was valid or not
+ * <p>
+ * The secret itself is never recorded.
+ */
+@Name("dev.cerus.faktor.SecretDecode")
+@Label("Secret Decode")
+@Category({"Faktor", "Secret"})
+@Description("Decoding of an encoded OTP secret")
+@StackTrace(false)
+public final class SecretDecodeEvent extends Event {
+
+    private static final EventType TYPE = EventTypes.of(SecretDecodeEvent.class);
+
+    @Label("Encoding")
+    String encoding;
+
+    @Label("Encoded Length")
+    int encodedLength;
+
+    @Label("Success")
+    boolean success;
+
+    /**
+     * Begin a new event if a recording wants it
+     * <p>
+     * Nothing is allocated while no recording has the event enabled.
+     *
+     * @return the begun event or null
+     */
+    public static @Nullable SecretDecodeEvent start() {
+        if (!EventTypes.isEnabled(TYPE)) {
+            return null;
+        }
+        final SecretDecodeEvent event = new SecretDecodeEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * End an event and commit it if the recording wants it
+     *
+     * @param event         The event returned by {@link SecretDecodeEvent#start()} or null
+     * @param encoding      The name of the encoding
+     * @param encodedLength The length of the encoded secret
+     * @param success       Whether the secret was decoded
+     */
+    public static void complete(final @Nullable SecretDecodeEvent event, final String encoding, final int encodedLength, final boolean success) {
+        if (event != null) {
+            event.finish(encoding, encodedLength, success);
+        }
+    }
+
+    private void finish(final String encoding, final int encodedLength, final boolean success) {
+        this.end();
+        if (this.shouldCommit()) {
+            this.encoding = encoding;
+            this.encodedLength = encodedLength;
+            this.success = success;
+            this.commit();
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package dev.cerus.faktor.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Emitted for every lookup of a user's secret in a secret store
+ * <p>
+ * Disabled by default because it fires once per lookup, enable <code>dev.cerus.faktor.SecretStoreLookup</code> in
+ * the recording settings to capture it. The duration includes the time spent waiting for the store lock.
+ */
+@Name("dev.cerus.faktor.SecretStoreLookup")
+@Label("Secret Store Lookup")
+@Category({"Faktor", "Store"})
+@Description("Lookup of a user's secret in a secret store")
+@Enabled(false)
+@StackTrace(false)
+public final class SecretStoreLookupEvent extends Event {
+
+    private static final EventType TYPE = EventTypes.of(SecretStoreLookupEvent.class);
+
+    @Label("Store")
+    Class<?> store;
+
+    @Label("User Id")
+    long userId;
+
+    @Label("Found")
+    boolean found;
+
+    /**
+     * Begin a new event if a recording wants it
+     * <p>
+     * Nothing is allocated while no recording has the event enabled.
+     *
+     * @return the begun event or null
+     */
+    public static @Nullable SecretStoreLookupEvent start() {
+        if (!EventTypes.isEnabled(TYPE)) {
+            return null;
+        }
+        final SecretStoreLookupEvent event = new SecretStoreLookupEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * End an event and commit it if the recording wants it
+     *
+     * @param event  The event returned by {@link SecretStoreLookupEvent#start()} or null
+     * @param store  The class of the store
+     * @param userId The id of the user
+     * @param found  Whether a secret is stored for the user
+     */
+    public static void complete(final @Nullable SecretStoreLookupEvent event, final Class<?> store, final long userId, final boolean found) {
+        if (event != null) {
+            event.finish(store, userId, found);
+        }
+    }
+
+    private void finish(final Class<?> store, final long userId, final boolean found) {
+        this.end();
+        if (this.shouldCommit()) {
+            this.store = store;
+            this.userId = userId;
+            this.found = found;
+            this.commit();
+        }
+    }
+
+}
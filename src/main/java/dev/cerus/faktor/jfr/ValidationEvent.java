@@ -0,0 +1,78 @@
+package dev.cerus.faktor.jfr;
+
+import dev.cerus.faktor.metrics.OTPMetrics;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Emitted for every code a TOTP or HOTP service validates
+ * <p>
+ * HOTP services report codes ahead of the counter as forward steps, so their matched offsets are zero or negative.
+ */
+@Name("dev.cerus.faktor.Validation")
+@Label("OTP Validation")
+@Category({"Faktor", "Service"})
+@Description("Validation of a code by a TOTP or HOTP service")
+@StackTrace(false)
+public final class ValidationEvent extends Event {
+
+    private static final EventType TYPE = EventTypes.of(ValidationEvent.class);
+
+    @Label("Window Size")
+    @Description("The amount of time steps a code is checked against")
+    int windowSize;
+
+    @Label("Matched Offset")
+    @Description("The backwards offset of the accepted code, negative for forward steps, Integer.MIN_VALUE if no code was accepted")
+    int matchedOffset;
+
+    @Label("Outcome")
+    String outcome;
+
+    /**
+     * Begin a new event if a recording wants it
+     * <p>
+     * Nothing is allocated while no recording has the event enabled.
+     *
+     * @return the begun event or null
+     */
+    public static @Nullable ValidationEvent start() {
+        if (!EventTypes.isEnabled(TYPE)) {
+            return null;
+        }
+        final ValidationEvent event = new ValidationEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * End an event and commit it if the recording wants it
+     *
+     * @param event         The event returned by {@link ValidationEvent#start()} or null
+     * @param windowSize    The amount of time steps in the window
+     * @param matchedOffset The matched offset or {@link OTPMetrics#NO_MATCH}
+     * @param outcome       The outcome of the validation
+     */
+    public static void complete(final @Nullable ValidationEvent event, final int windowSize, final int matchedOffset, final OTPMetrics.ValidationOutcome outcome) {
+        if (event != null) {
+            event.finish(windowSize, matchedOffset, outcome);
+        }
+    }
+
+    private void finish(final int windowSize, final int matchedOffset, final OTPMetrics.ValidationOutcome outcome) {
+        this.end();
+        if (this.shouldCommit()) {
+            this.windowSize = windowSize;
+            this.matchedOffset = matchedOffset;
+            this.outcome = outcome.name();
+            this.commit();
+        }
+    }
+
+}
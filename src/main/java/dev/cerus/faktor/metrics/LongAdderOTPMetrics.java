@@ -0,0 +1,186 @@
+package dev.cerus.faktor.metrics;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import java.util.concurrent.atomic.LongAdder;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * OTPMetrics implementation that counts into {@link LongAdder}s
+ * <p>
+ * Generation latencies are kept in one histogram per algorithm with power of two buckets: bucket <code>i</code>
+ * counts durations in <code>[2^(i-1), 2^i)</code> nanos, bucket 0 counts zero. Matched offsets are counted per offset
+ * up to a fixed maximum, larger offsets go into the last bucket. Matches of forward steps have a histogram of their
+ * own with the same maximum, and {@link OTPMetrics#NO_MATCH} is only counted in the outcomes. Recording only
+ * increments adders, it does not lock and does not allocate once the adders have expanded for the level of
+ * contention. Snapshots are not atomic across counters.
+ */
+public class LongAdderOTPMetrics implements OTPMetrics {
+
+    private static final int LATENCY_BUCKETS = 64;
+    private static final int DEFAULT_MAX_OFFSET = 15;
+
+    private final LongAdder[][] latencies;
+    private final LongAdder[] latencySums;
+    private final LongAdder[] outcomes;
+    private final LongAdder[] offsets;
+    private final LongAdder[] forwardOffsets;
+
+    /**
+     * Create new metrics that count matched offsets up to 15
+     */
+    public LongAdderOTPMetrics() {
+        this(DEFAULT_MAX_OFFSET);
+    }
+
+    /**
+     * Create new metrics
+     *
+     * @param maxOffset The largest matched offset that gets its own bucket, in both directions
+     */
+    public LongAdderOTPMetrics(final int maxOffset) {
+        if (maxOffset < 0) {
+            throw new IllegalArgumentException("Max offset must be >= 0");
+        }
+        this.latencies = new LongAdder[HMACAlgorithm.values().length][];
+        this.latencySums = adders(HMACAlgorithm.values().length);
+        for (int i = 0; i < this.latencies.length; i++) {
+            this.latencies[i] = adders(LATENCY_BUCKETS);
+        }
+        this.outcomes = adders(ValidationOutcome.values().length);
+        this.offsets = adders(maxOffset + 1);
+        this.forwardOffsets = adders(Math.max(1, maxOffset));
+    }
+
+    private static LongAdder[] adders(final int amount) {
+        final LongAdder[] adders = new LongAdder[amount];
+        for (int i = 0; i < amount; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static long[] snapshot(final LongAdder[] adders) {
+        final long[] values = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) {
+            values[i] = adders[i].sum();
+        }
+        return values;
+    }
+
+    /**
+     * Get the histogram bucket of a duration
+     *
+     * @param nanos The duration
+     *
+     * @return the bucket index
+     */
+    public static int latencyBucket(final long nanos) {
+        return nanos <= 0 ? 0 : Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    @Override
+    public void recordGeneration(final @NotNull HMACAlgorithm algo, final long nanos) {
+        this.latencies[algo.ordinal()][latencyBucket(nanos)].increment();
+        this.latencySums[algo.ordinal()].add(nanos);
+    }
+
+    @Override
+    public void recordValidation(final @NotNull ValidationOutcome outcome, final int matchedOffset) {
+        this.outcomes[outcome.ordinal()].increment();
+        if (matchedOffset >= 0) {
+            this.offsets[Math.min(matchedOffset, this.offsets.length - 1)].increment();
+        } else if (matchedOffset != NO_MATCH) {
+            this.forwardOffsets[Math.min(-matchedOffset, this.forwardOffsets.length) - 1].increment();
+        }
+    }
+
+    /**
+     * Get the amount of generations of an algorithm
+     *
+     * @param algo The HMAC algorithm
+     *
+     * @return the amount of generations
+     */
+    public long generations(final @NotNull HMACAlgorithm algo) {
+        long sum = 0;
+        for (final LongAdder bucket : this.latencies[algo.ordinal()]) {
+            sum += bucket.sum();
+        }
+        return sum;
+    }
+
+    /**
+     * Get the total duration of the generations of an algorithm
+     *
+     * @param algo The HMAC algorithm
+     *
+     * @return the total duration in nanos
+     */
+    public long generationNanos(final @NotNull HMACAlgorithm algo) {
+        return this.latencySums[algo.ordinal()].sum();
+    }
+
+    /**
+     * Get the latency histogram of an algorithm
+     *
+     * @param algo The HMAC algorithm
+     *
+     * @return a snapshot of the buckets, see {@link LongAdderOTPMetrics#latencyBucket(long)}
+     */
+    public long @NotNull [] latencyHistogram(final @NotNull HMACAlgorithm algo) {
+        return snapshot(this.latencies[algo.ordinal()]);
+    }
+
+    /**
+     * Get the amount of validations with an outcome
+     *
+     * @param outcome The outcome
+     *
+     * @return the amount of validations
+     */
+    public long validations(final @NotNull ValidationOutcome outcome) {
+        return this.outcomes[outcome.ordinal()].sum();
+    }
+
+    /**
+     * Get the histogram of matched offsets
+     *
+     * @return a snapshot of the buckets, index <code>i</code> counts matches at offset <code>i</code>
+     */
+    public long @NotNull [] matchedOffsets() {
+        return snapshot(this.offsets);
+    }
+
+    /**
+     * Get the histogram of matched forward offsets
+     *
+     * @return a snapshot of the buckets, index <code>i</code> counts matches <code>i + 1</code> steps ahead
+     */
+    public long @NotNull [] matchedForwardOffsets() {
+        return snapshot(this.forwardOffsets);
+    }
+
+    /**
+     * Reset all counters
+     */
+    public void reset() {
+        for (final LongAdder[] buckets : this.latencies) {
+            for (final LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+        }
+        for (final LongAdder sum : this.latencySums) {
+            sum.reset();
+        }
+        for (final LongAdder outcome : this.outcomes) {
+            outcome.reset();
+        }
+        for (final LongAdder offset : this.offsets) {
+            offset.reset();
+        }
+        for (final LongAdder offset : this.forwardOffsets) {
+            offset.reset();
+        }
+    }
+
+}
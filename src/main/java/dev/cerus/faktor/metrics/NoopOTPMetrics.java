@@ -0,0 +1,29 @@
+package dev.cerus.faktor.metrics;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Records nothing
+ */
+final class NoopOTPMetrics implements OTPMetrics {
+
+    static final NoopOTPMetrics INSTANCE = new NoopOTPMetrics();
+
+    private NoopOTPMetrics() {
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+    @Override
+    public void recordGeneration(final @NotNull HMACAlgorithm algo, final long nanos) {
+    }
+
+    @Override
+    public void recordValidation(final @NotNull ValidationOutcome outcome, final int matchedOffset) {
+    }
+
+}
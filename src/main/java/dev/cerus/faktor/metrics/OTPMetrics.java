@@ -0,0 +1,79 @@
+package dev.cerus.faktor.metrics;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Listener for the hot paths of generators and services
+ * <p>
+ * Implementations are called on every generation and validation, so they have to be thread safe, must not block and
+ * should not allocate. The {@link OTPMetrics#noop() no-op} default reports itself as disabled, which lets callers skip
+ * reading the clock, and its empty methods are inlined away by the JIT.
+ */
+public interface OTPMetrics {
+
+    /**
+     * The matched offset of validations that did not accept a code
+     * <p>
+     * Every other negative offset is a match of a forward step, so "no match" needs a value that no window reaches.
+     */
+    int NO_MATCH = Integer.MIN_VALUE;
+
+    /**
+     * Get the listener that records nothing
+     *
+     * @return the no-op listener
+     */
+    static @NotNull OTPMetrics noop() {
+        return NoopOTPMetrics.INSTANCE;
+    }
+
+    /**
+     * Check if this listener records anything
+     *
+     * @return false if calls can be skipped altogether
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Record a computed OTP
+     *
+     * @param algo  The HMAC algorithm
+     * @param nanos The duration of the computation
+     */
+    void recordGeneration(@NotNull HMACAlgorithm algo, long nanos);
+
+    /**
+     * Record a validation
+     *
+     * @param outcome       The outcome
+     * @param matchedOffset The backwards step offset of the matching code, negative for forward steps, or
+     *                      {@link OTPMetrics#NO_MATCH} if no code was accepted
+     */
+    void recordValidation(@NotNull ValidationOutcome outcome, int matchedOffset);
+
+    /**
+     * The outcome of a validation
+     */
+    enum ValidationOutcome {
+        /**
+         * The code was valid
+         */
+        ACCEPTED,
+        /**
+         * No code of the window matched
+         */
+        REJECTED,
+        /**
+         * The user was locked out by the attempt throttle, no code was computed
+         */
+        THROTTLED,
+        /**
+         * The code matched a step that had already been used
+         */
+        REPLAYED
+    }
+
+}
@@ -0,0 +1,264 @@
+package dev.cerus.faktor.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Asynchronous front end of a {@link TOTPService}
+ * <p>
+ * Calls are run on an executor and complete a {@link CompletableFuture}, exceptions of the wrapped service complete
+ * the future exceptionally. The amount of calls in flight is bounded by a semaphore. Once it is saturated new calls
+ * either wait up to the acquire timeout for a free slot or are rejected right away with a
+ * {@link RejectedExecutionException}, so a flood of validations can not take more than the configured share of the
+ * CPU. The wrapped service keeps its synchronous semantics.
+ * <p>
+ * The default executor uses one virtual thread per call if the runtime supports virtual threads and the common
+ * fork join pool otherwise.
+ */
+public class AsyncTOTPService {
+
+    private final TOTPService service;
+    private final Executor executor;
+    private final Semaphore permits;
+    private final int maxInFlight;
+    private final long acquireTimeoutNanos;
+
+    private AsyncTOTPService(final TOTPService service,
+                             final Executor executor,
+                             final int maxInFlight,
+                             final long acquireTimeoutNanos) {
+        this.service = service;
+        this.executor = executor;
+        this.permits = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+        this.acquireTimeoutNanos = acquireTimeoutNanos;
+    }
+
+    /**
+     * Create a new builder for {@link AsyncTOTPService}
+     *
+     * @return a new builder
+     */
+    @Contract(value = "-> new", pure = true)
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Validates a TOTP asynchronously
+     *
+     * @param totp The TOTP to validate
+     *
+     * @return a future that completes with whether the TOTP is valid, or exceptionally with a
+     * {@link RejectedExecutionException} if the service is saturated
+     */
+    public @NotNull CompletableFuture<Boolean> validateTOTP(final int totp) {
+        return this.submit(() -> this.service.validateTOTP(totp));
+    }
+
+    /**
+     * Generates a TOTP asynchronously
+     *
+     * @return a future that completes with the TOTP, or exceptionally with a {@link RejectedExecutionException} if the
+     * service is saturated
+     */
+    public @NotNull CompletableFuture<Integer> generateTOTP() {
+        return this.submit(this.service::generateTOTP);
+    }
+
+    /**
+     * Get the amount of calls that are queued or running
+     *
+     * @return the amount of calls in flight
+     */
+    public int inFlight() {
+        return this.maxInFlight - this.permits.availablePermits();
+    }
+
+    private <T> CompletableFuture<T> submit(final Call<T> call) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            if (!this.acquire()) {
+                future.completeExceptionally(new RejectedExecutionException("Too many calls in flight"));
+                return future;
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        try {
+            this.executor.execute(() -> {
+                final T result;
+                try {
+                    result = call.run();
+                } catch (final Throwable t) {
+                    this.permits.release();
+                    future.completeExceptionally(t);
+                    return;
+                }
+                // Released before completing, so dependent stages already see the free slot
+                this.permits.release();
+                future.complete(result);
+            });
+        } catch (final RejectedExecutionException e) {
+            this.permits.release();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private boolean acquire() throws InterruptedException {
+        return this.acquireTimeoutNanos == 0
+                ? this.permits.tryAcquire()
+                : this.permits.tryAcquire(this.acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * A synchronous service call
+     */
+    @FunctionalInterface
+    private interface Call<T> {
+
+        T run() throws Exception;
+
+    }
+
+    /**
+     * Lazily looks up the virtual thread executor, which only exists on newer runtimes
+     */
+    private static final class DefaultExecutor {
+
+        private static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            try {
+                return (ExecutorService) MethodHandles.publicLookup()
+                        .findStatic(java.util.concurrent.Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class))
+                        .invoke();
+            } catch (final Throwable t) {
+                return ForkJoinPool.commonPool();
+            }
+        }
+
+    }
+
+    /**
+     * Builder for {@link AsyncTOTPService}
+     * <p>
+     * By default at most twice as many calls as there are processors are in flight and saturated calls are rejected
+     * right away.
+     */
+    public static class Builder {
+
+        private TOTPService service;
+        private Executor executor;
+        private int maxInFlight = Runtime.getRuntime().availableProcessors() * 2;
+        private long acquireTimeoutNanos;
+
+        private Builder() {
+        }
+
+        /**
+         * Use the specified service for the actual work
+         */
+        @Contract("_ -> this")
+        public Builder withService(final TOTPService service) {
+            this.service = service;
+            return this;
+        }
+
+        /**
+         * Use the default executor
+         * <p>
+         * See also {@link Builder#withExecutor(Executor)}
+         */
+        @Contract("-> this")
+        public Builder withDefaultExecutor() {
+            return this.withExecutor(DefaultExecutor.INSTANCE);
+        }
+
+        /**
+         * Use the specified executor
+         */
+        @Contract("_ -> this")
+        public Builder withExecutor(final Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Use the specified max amount of calls in flight
+         */
+        @Contract("_ -> this")
+        public Builder withMaxInFlight(final int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * Use the specified acquire timeout
+         * <p>
+         * This specifies how long a call waits on the calling thread for a free slot before it is rejected. Zero
+         * rejects saturated calls right away.
+         */
+        @Contract("_, _ -> this")
+        public Builder withAcquireTimeout(final long value, final TimeUnit unit) {
+            this.acquireTimeoutNanos = unit.toNanos(value);
+            return this;
+        }
+
+        /**
+         * Build a new {@link AsyncTOTPService} with the configured parameters
+         */
+        @Contract(value = "-> new", pure = true)
+        public AsyncTOTPService build() {
+            this.verifyState();
+            return new AsyncTOTPService(
+                    this.service,
+                    this.executor,
+                    this.maxInFlight,
+                    this.acquireTimeoutNanos
+            );
+        }
+
+        /**
+         * Performs sanity checks
+         */
+        private void verifyState() {
+            if (this.service == null) {
+                this.panicFieldNotSet("service", "withService(TOTPService)");
+            }
+            if (this.executor == null) {
+                this.panicFieldNotSet("executor", "withDefaultExecutor()", "withExecutor(Executor)");
+            }
+            if (this.maxInFlight < 1) {
+                this.panicFieldInvalid("maxInFlight", "Must be >= 1");
+            }
+            if (this.acquireTimeoutNanos < 0) {
+                this.panicFieldInvalid("acquireTimeoutNanos", "Must be >= 0");
+            }
+        }
+
+        private void panicFieldInvalid(final String field, final String problem) {
+            throw new IllegalStateException("Unable to build async TOTP-Service: Field %s is invalid: %s".formatted(field, problem));
+        }
+
+        private void panicFieldNotSet(final String field, final String... methods) {
+            throw new IllegalStateException("Unable to build async TOTP-Service: Field %s is not set. Call one of [%s] before calling build()."
+                    .formatted(field, String.join(", ", methods)));
+        }
+
+    }
+
+}
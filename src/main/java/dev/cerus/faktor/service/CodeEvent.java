@@ -0,0 +1,50 @@
+package dev.cerus.faktor.service;
+
+/**
+ * The code of an account for one time step, see {@link TOTPCodePublisher}
+ */
+public final class CodeEvent {
+
+    private final long userId;
+    private final long step;
+    private final int code;
+
+    CodeEvent(final long userId, final long step, final int code) {
+        this.userId = userId;
+        this.step = step;
+        this.code = code;
+    }
+
+    /**
+     * Get the id of the account
+     *
+     * @return the user id, or the key of the service for publishers of a single service
+     */
+    public long userId() {
+        return this.userId;
+    }
+
+    /**
+     * Get the time step index the code belongs to
+     *
+     * @return the time step index
+     */
+    public long step() {
+        return this.step;
+    }
+
+    /**
+     * Get the code
+     *
+     * @return the TOTP
+     */
+    public int code() {
+        return this.code;
+    }
+
+    @Override
+    public String toString() {
+        return "CodeEvent{userId=" + this.userId + ", step=" + this.step + ", code=" + this.code + "}";
+    }
+
+}
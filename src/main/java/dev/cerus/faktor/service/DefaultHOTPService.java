@@ -0,0 +1,356 @@
+package dev.cerus.faktor.service;
+
+import dev.cerus.faktor.generator.DefaultHOTPGenerator;
+import dev.cerus.faktor.generator.HOTPGenerator;
+import dev.cerus.faktor.jfr.ValidationEvent;
+import dev.cerus.faktor.metrics.OTPMetrics;
+import dev.cerus.faktor.service.guard.AttemptThrottle;
+import dev.cerus.faktor.service.store.CounterStore;
+import dev.cerus.faktor.service.store.SecretStore;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import org.jetbrains.annotations.Contract;
+
+/**
+ * Default HOTPService implementation
+ * <p>
+ * Secrets are copied out of the store into a per-thread buffer for the duration of a single call and zeroed
+ * afterwards. Counters are only advanced with compare-and-set, there are no locks in the validation path apart from
+ * the ones of the stores.
+ */
+public class DefaultHOTPService implements HOTPService {
+
+    private final HOTPGenerator generator;
+    private final SecretStore secretStore;
+    private final CounterStore counterStore;
+    private final int digits;
+    private final int lookAheadWindow;
+    private final int resyncWindow;
+    private final AttemptThrottle attemptThrottle;
+    private final ThreadLocal<byte[]> secretBuffer;
+
+    private DefaultHOTPService(final HOTPGenerator generator,
+                               final SecretStore secretStore,
+                               final CounterStore counterStore,
+                               final int digits,
+                               final int lookAheadWindow,
+                               final int resyncWindow,
+                               final AttemptThrottle attemptThrottle) {
+        this.generator = generator;
+        this.secretStore = secretStore;
+        this.counterStore = counterStore;
+        this.digits = digits;
+        this.lookAheadWindow = lookAheadWindow;
+        this.resyncWindow = resyncWindow;
+        this.attemptThrottle = attemptThrottle;
+        this.secretBuffer = ThreadLocal.withInitial(() -> new byte[secretStore.secretLength()]);
+    }
+
+    /**
+     * Create a new builder for {@link DefaultHOTPService}
+     *
+     * @return a new builder
+     */
+    @Contract(value = "-> new", pure = true)
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public boolean validateHOTP(final long userId, final int hotp) throws NoSuchAlgorithmException, InvalidKeyException {
+        final ValidationEvent event = ValidationEvent.start();
+        if (this.attemptThrottle == null) {
+            return this.validate(userId, hotp, event);
+        }
+        final long now = System.currentTimeMillis();
+        // The attempt is counted before validating, concurrent guesses can not exceed the free attempts
+        if (!this.attemptThrottle.tryAcquireAttempt(userId, now)) {
+            return this.complete(event, OTPMetrics.ValidationOutcome.THROTTLED, OTPMetrics.NO_MATCH);
+        }
+        final boolean valid = this.validate(userId, hotp, event);
+        if (valid) {
+            this.attemptThrottle.recordSuccess(userId);
+        }
+        return valid;
+    }
+
+    @Override
+    public boolean resynchronize(final long userId, final int hotp, final int nextHotp) throws NoSuchAlgorithmException, InvalidKeyException {
+        final byte[] secret = this.secretBuffer.get();
+        if (!this.secretStore.read(userId, secret, 0)) {
+            return false;
+        }
+        try {
+            final long counter = this.counterStore.get(userId);
+            int previous = this.generator.generateHOTP(secret, counter, this.digits);
+            for (int i = 1; i <= this.resyncWindow; i++) {
+                final int current = this.generator.generateHOTP(secret, counter + i, this.digits);
+                if (previous == hotp && current == nextHotp) {
+                    return this.advance(userId, counter, counter + i);
+                }
+                previous = current;
+            }
+            return false;
+        } finally {
+            Arrays.fill(secret, (byte) 0);
+        }
+    }
+
+    private boolean validate(final long userId, final int hotp, final ValidationEvent event) throws NoSuchAlgorithmException, InvalidKeyException {
+        final byte[] secret = this.secretBuffer.get();
+        if (!this.secretStore.read(userId, secret, 0)) {
+            return this.complete(event, OTPMetrics.ValidationOutcome.REJECTED, OTPMetrics.NO_MATCH);
+        }
+        try {
+            final long counter = this.counterStore.get(userId);
+            for (int i = 0; i <= this.lookAheadWindow; i++) {
+                if (this.generator.generateHOTP(secret, counter + i, this.digits) == hotp) {
+                    if (!this.advance(userId, counter, counter + i)) {
+                        return this.complete(event, OTPMetrics.ValidationOutcome.REPLAYED, OTPMetrics.NO_MATCH);
+                    }
+                    // Codes ahead of the counter count as forward steps
+                    return this.complete(event, OTPMetrics.ValidationOutcome.ACCEPTED, -i);
+                }
+            }
+            return this.complete(event, OTPMetrics.ValidationOutcome.REJECTED, OTPMetrics.NO_MATCH);
+        } finally {
+            Arrays.fill(secret, (byte) 0);
+        }
+    }
+
+    /**
+     * Report the outcome of a validation to JFR
+     *
+     * @param event         The event that was started for the validation or null
+     * @param outcome       The outcome of the validation
+     * @param matchedOffset The negated look-ahead of the accepted code or {@link OTPMetrics#NO_MATCH}
+     *
+     * @return whether the code was accepted
+     */
+    private boolean complete(final ValidationEvent event, final OTPMetrics.ValidationOutcome outcome, final int matchedOffset) {
+        ValidationEvent.complete(event, this.lookAheadWindow + 1, matchedOffset, outcome);
+        return outcome == OTPMetrics.ValidationOutcome.ACCEPTED;
+    }
+
+    /**
+     * Move the counter of a user past an accepted counter value
+     * <p>
+     * Concurrent validations might have moved the counter in the meantime. As long as they did not move it past the
+     * accepted value the update is retried, otherwise the code has already been used.
+     *
+     * @param userId   The id of the user
+     * @param counter  The counter the code was searched from
+     * @param accepted The counter value of the accepted code
+     *
+     * @return whether the counter was moved, false if the code has been used concurrently
+     */
+    private boolean advance(final long userId, long counter, final long accepted) {
+        while (!this.counterStore.compareAndSet(userId, counter, accepted + 1)) {
+            counter = this.counterStore.get(userId);
+            if (counter > accepted) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builder for {@link DefaultHOTPService}
+     */
+    public static class Builder {
+
+        private HOTPGenerator generator;
+        private SecretStore secretStore;
+        private CounterStore counterStore;
+        private Integer digits;
+        private Integer lookAheadWindow;
+        private Integer resyncWindow;
+        private AttemptThrottle attemptThrottle;
+
+        private Builder() {
+        }
+
+        /**
+         * Fill generator, digits, look-ahead window and resync window with default values
+         */
+        @Contract("-> this")
+        public Builder withDefaults() {
+            return this.withDefaultGenerator()
+                    .withDefaultDigits()
+                    .withDefaultLookAheadWindow()
+                    .withDefaultResyncWindow();
+        }
+
+        /**
+         * Use the default HOTP generator
+         * <p>
+         * See also {@link Builder#withGenerator(HOTPGenerator)}
+         */
+        @Contract("-> this")
+        public Builder withDefaultGenerator() {
+            return this.withGenerator(new DefaultHOTPGenerator());
+        }
+
+        /**
+         * Use the specified generator
+         */
+        @Contract("_ -> this")
+        public Builder withGenerator(final HOTPGenerator generator) {
+            this.generator = generator;
+            return this;
+        }
+
+        /**
+         * Use the specified secret store
+         */
+        @Contract("_ -> this")
+        public Builder withSecretStore(final SecretStore secretStore) {
+            this.secretStore = secretStore;
+            return this;
+        }
+
+        /**
+         * Use the specified counter store
+         */
+        @Contract("_ -> this")
+        public Builder withCounterStore(final CounterStore counterStore) {
+            this.counterStore = counterStore;
+            return this;
+        }
+
+        /**
+         * Use the default digits
+         * <p>
+         * See also {@link Builder#withDigits(int)}
+         */
+        @Contract("-> this")
+        public Builder withDefaultDigits() {
+            return this.withDigits(6);
+        }
+
+        /**
+         * Use the specified digits
+         */
+        @Contract("_ -> this")
+        public Builder withDigits(final int digits) {
+            this.digits = digits;
+            return this;
+        }
+
+        /**
+         * Use the default look-ahead window
+         * <p>
+         * See also {@link Builder#withLookAheadWindow(int)}
+         */
+        @Contract("-> this")
+        public Builder withDefaultLookAheadWindow() {
+            return this.withLookAheadWindow(3);
+        }
+
+        /**
+         * Use the specified look-ahead window
+         * <p>
+         * This specifies how many codes the token can be ahead of the server and still be accepted.
+         */
+        @Contract("_ -> this")
+        public Builder withLookAheadWindow(final int lookAheadWindow) {
+            this.lookAheadWindow = lookAheadWindow;
+            return this;
+        }
+
+        /**
+         * Use the default resync window
+         * <p>
+         * See also {@link Builder#withResyncWindow(int)}
+         */
+        @Contract("-> this")
+        public Builder withDefaultResyncWindow() {
+            return this.withResyncWindow(100);
+        }
+
+        /**
+         * Use the specified resync window
+         * <p>
+         * This specifies how many codes the token can be ahead of the server during resynchronization.
+         */
+        @Contract("_ -> this")
+        public Builder withResyncWindow(final int resyncWindow) {
+            this.resyncWindow = resyncWindow;
+            return this;
+        }
+
+        /**
+         * Use the specified attempt throttle
+         * <p>
+         * Failed validations are recorded in the throttle, and validations of locked out users are rejected before
+         * any HMAC is computed.
+         */
+        @Contract("_ -> this")
+        public Builder withAttemptThrottle(final AttemptThrottle attemptThrottle) {
+            this.attemptThrottle = attemptThrottle;
+            return this;
+        }
+
+        /**
+         * Build a new {@link DefaultHOTPService} with the configured parameters
+         */
+        @Contract(value = "-> new", pure = true)
+        public HOTPService build() {
+            this.verifyState();
+            return new DefaultHOTPService(
+                    this.generator,
+                    this.secretStore,
+                    this.counterStore,
+                    this.digits,
+                    this.lookAheadWindow,
+                    this.resyncWindow,
+                    this.attemptThrottle
+            );
+        }
+
+        /**
+         * Performs sanity checks
+         */
+        private void verifyState() {
+            if (this.generator == null) {
+                this.panicFieldNotSet("generator", "withDefaultGenerator()", "withGenerator(HOTPGenerator)");
+            }
+            if (this.secretStore == null) {
+                this.panicFieldNotSet("secretStore", "withSecretStore(SecretStore)");
+            }
+            if (this.counterStore == null) {
+                this.panicFieldNotSet("counterStore", "withCounterStore(CounterStore)");
+            }
+            if (this.digits == null) {
+                this.panicFieldNotSet("digits", "withDefaultDigits()", "withDigits(int)");
+            }
+            if (this.lookAheadWindow == null) {
+                this.panicFieldNotSet("lookAheadWindow", "withDefaultLookAheadWindow()", "withLookAheadWindow(int)");
+            }
+            if (this.resyncWindow == null) {
+                this.panicFieldNotSet("resyncWindow", "withDefaultResyncWindow()", "withResyncWindow(int)");
+            }
+            if (this.digits < 6 || this.digits > 10) {
+                this.panicFieldInvalid("digits", "Must be in interval [6,10]");
+            }
+            if (this.lookAheadWindow < 0) {
+                this.panicFieldInvalid("lookAheadWindow", "Must be >= 0");
+            }
+            if (this.resyncWindow < 1) {
+                this.panicFieldInvalid("resyncWindow", "Must be >= 1");
+            }
+        }
+
+        private void panicFieldInvalid(final String field, final String problem) {
+            throw new IllegalStateException("Unable to build HOTP-Service: Field %s is invalid: %s".formatted(field, problem));
+        }
+
+        private void panicFieldNotSet(final String field, final String... methods) {
+            throw new IllegalStateException("Unable to build HOTP-Service: Field %s is not set. Call one of [%s] before calling build()."
+                    .formatted(field, String.join(", ", methods)));
+        }
+
+    }
+
+}
@@ -0,0 +1,369 @@
+package dev.cerus.faktor.service;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.generator.DefaultTOTPGenerator;
+import dev.cerus.faktor.generator.TOTPGenerator;
+import dev.cerus.faktor.jfr.ValidationEvent;
+import dev.cerus.faktor.metrics.OTPMetrics;
+import dev.cerus.faktor.service.clock.TOTPClock;
+import dev.cerus.faktor.service.guard.AttemptThrottle;
+import dev.cerus.faktor.service.guard.ReplayGuard;
+import dev.cerus.faktor.service.store.SecretStore;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.Contract;
+
+/**
+ * Default MultiTenantTOTPService implementation
+ * <p>
+ * Secrets are copied out of the store into a per-thread buffer for the duration of a single call and zeroed
+ * afterwards. Combined with {@link dev.cerus.faktor.generator.AllocationFreeTOTPGenerator} a call does not allocate.
+ */
+public class DefaultMultiTenantTOTPService implements MultiTenantTOTPService {
+
+    private final TOTPGenerator generator;
+    private final SecretStore store;
+    private final HMACAlgorithm algorithm;
+    private final long timeStepMillis;
+    private final int digits;
+    private final int backwardsSteps;
+    private final ReplayGuard replayGuard;
+    private final AttemptThrottle attemptThrottle;
+    private final TOTPClock clock;
+    private final ThreadLocal<byte[]> secretBuffer;
+
+    private DefaultMultiTenantTOTPService(final TOTPGenerator generator,
+                                          final SecretStore store,
+                                          final HMACAlgorithm algorithm,
+                                          final long timeStepMillis,
+                                          final int digits,
+                                          final int backwardsSteps,
+                                          final ReplayGuard replayGuard,
+                                          final AttemptThrottle attemptThrottle,
+                                          final TOTPClock clock) {
+        this.generator = generator;
+        this.store = store;
+        this.algorithm = algorithm;
+        this.timeStepMillis = timeStepMillis;
+        this.digits = digits;
+        this.backwardsSteps = backwardsSteps;
+        this.replayGuard = replayGuard;
+        this.attemptThrottle = attemptThrottle;
+        this.clock = clock;
+        this.secretBuffer = ThreadLocal.withInitial(() -> new byte[store.secretLength()]);
+    }
+
+    /**
+     * Create a new builder for {@link DefaultMultiTenantTOTPService}
+     *
+     * @return a new builder
+     */
+    @Contract(value = "-> new", pure = true)
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public boolean validateTOTP(final long userId, final int totp) throws NoSuchAlgorithmException, InvalidKeyException {
+        final ValidationEvent event = ValidationEvent.start();
+        if (this.attemptThrottle == null) {
+            return this.validate(userId, totp, this.clock.currentStep(this.timeStepMillis), event);
+        }
+        // One snapshot for the lockout and the step
+        final long now = this.clock.currentTimeMillis();
+        // The attempt is counted before validating, concurrent guesses can not exceed the free attempts
+        if (!this.attemptThrottle.tryAcquireAttempt(userId, now)) {
+            return this.complete(event, OTPMetrics.ValidationOutcome.THROTTLED, OTPMetrics.NO_MATCH);
+        }
+        final boolean valid = this.validate(userId, totp, now / this.timeStepMillis, event);
+        if (valid) {
+            this.attemptThrottle.recordSuccess(userId);
+        }
+        return valid;
+    }
+
+    private boolean validate(final long userId, final int totp, final long currentStep, final ValidationEvent event)
+            throws NoSuchAlgorithmException, InvalidKeyException {
+        final long stepMillis = currentStep * this.timeStepMillis;
+        int oldestStep = this.backwardsSteps;
+        if (this.replayGuard != null) {
+            // Steps that were already used are skipped, a replay is rejected before reading the secret
+            oldestStep = (int) Math.min(oldestStep, currentStep - this.replayGuard.firstUnusedStep(userId, currentStep));
+            if (oldestStep < 0) {
+                return this.complete(event, OTPMetrics.ValidationOutcome.REPLAYED, OTPMetrics.NO_MATCH);
+            }
+        }
+
+        final byte[] secret = this.secretBuffer.get();
+        if (!this.store.read(userId, secret, 0)) {
+            return this.complete(event, OTPMetrics.ValidationOutcome.REJECTED, OTPMetrics.NO_MATCH);
+        }
+        try {
+            for (int step = oldestStep; step >= 0; step--) {
+                final int generatedTOTP = this.generator.generateTOTP(secret, stepMillis, this.timeStepMillis, this.digits, step, this.algorithm);
+                if (generatedTOTP == totp) {
+                    if (this.replayGuard != null && !this.replayGuard.tryAccept(userId, currentStep - step, currentStep)) {
+                        return this.complete(event, OTPMetrics.ValidationOutcome.REPLAYED, OTPMetrics.NO_MATCH);
+                    }
+                    return this.complete(event, OTPMetrics.ValidationOutcome.ACCEPTED, step);
+                }
+            }
+            return this.complete(event, OTPMetrics.ValidationOutcome.REJECTED, OTPMetrics.NO_MATCH);
+        } finally {
+            Arrays.fill(secret, (byte) 0);
+        }
+    }
+
+    /**
+     * Report the outcome of a validation to JFR
+     *
+     * @param event         The event that was started for the validation or null
+     * @param outcome       The outcome of the validation
+     * @param matchedOffset The backwards offset of the accepted code or {@link OTPMetrics#NO_MATCH}
+     *
+     * @return whether the code was accepted
+     */
+    private boolean complete(final ValidationEvent event, final OTPMetrics.ValidationOutcome outcome, final int matchedOffset) {
+        ValidationEvent.complete(event, this.backwardsSteps + 1, matchedOffset, outcome);
+        return outcome == OTPMetrics.ValidationOutcome.ACCEPTED;
+    }
+
+    @Override
+    public int generateTOTP(final long userId) throws NoSuchAlgorithmException, InvalidKeyException {
+        final byte[] secret = this.secretBuffer.get();
+        if (!this.store.read(userId, secret, 0)) {
+            throw new IllegalArgumentException("No secret stored for user " + userId);
+        }
+        try {
+            return this.generator.generateTOTP(secret, this.clock.currentStep(this.timeStepMillis) * this.timeStepMillis, this.timeStepMillis, this.digits, this.algorithm);
+        } finally {
+            Arrays.fill(secret, (byte) 0);
+        }
+    }
+
+    /**
+     * Builder for {@link DefaultMultiTenantTOTPService}
+     */
+    public static class Builder {
+
+        private TOTPGenerator generator;
+        private SecretStore store;
+        private HMACAlgorithm algorithm;
+        private Long timeStepMillis;
+        private Integer digits;
+        private int backwardsSteps;
+        private ReplayGuard replayGuard;
+        private AttemptThrottle attemptThrottle;
+        private TOTPClock clock = TOTPClock.system();
+
+        private Builder() {
+        }
+
+        /**
+         * Fill generator, digits and backwards steps with default values
+         */
+        @Contract("-> this")
+        public Builder withDefaults() {
+            return this.withDefaultBackwardsSteps()
+                    .withDefaultGenerator()
+                    .withDefaultDigits();
+        }
+
+        /**
+         * Use the default TOTP generator
+         * <p>
+         * See also {@link Builder#withGenerator(TOTPGenerator)}
+         */
+        @Contract("-> this")
+        public Builder withDefaultGenerator() {
+            return this.withGenerator(new DefaultTOTPGenerator());
+        }
+
+        /**
+         * Use the specified generator
+         */
+        @Contract("_ -> this")
+        public Builder withGenerator(final TOTPGenerator generator) {
+            this.generator = generator;
+            return this;
+        }
+
+        /**
+         * Use the specified secret store
+         */
+        @Contract("_ -> this")
+        public Builder withSecretStore(final SecretStore store) {
+            this.store = store;
+            return this;
+        }
+
+        /**
+         * Use the specified HMAC algorithm
+         */
+        @Contract("_ -> this")
+        public Builder withAlgorithm(final HMACAlgorithm algorithm) {
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        /**
+         * Use the specified time step
+         */
+        @Contract("_, _ -> this")
+        public Builder withTimeStep(final long timeStepValue, final TimeUnit timeStepUnit) {
+            return this.withTimeStep(timeStepUnit.toMillis(timeStepValue));
+        }
+
+        /**
+         * Use the specified time step
+         */
+        @Contract("_ -> this")
+        public Builder withTimeStep(final long timeStepMillis) {
+            this.timeStepMillis = timeStepMillis;
+            return this;
+        }
+
+        /**
+         * Use the default digits
+         * <p>
+         * See also {@link Builder#withDigits(int)}
+         */
+        @Contract("-> this")
+        public Builder withDefaultDigits() {
+            return this.withDigits(6);
+        }
+
+        /**
+         * Use the specified digits
+         */
+        @Contract("_ -> this")
+        public Builder withDigits(final int digits) {
+            this.digits = digits;
+            return this;
+        }
+
+        /**
+         * Use the default backwards steps
+         * <p>
+         * See also {@link Builder#withBackwardsSteps(int)}
+         */
+        @Contract("-> this")
+        public Builder withDefaultBackwardsSteps() {
+            return this.withBackwardsSteps(0);
+        }
+
+        /**
+         * Use the specified backwards steps
+         * <p>
+         * This specifies how many time steps a secret can be old to still count as valid.
+         */
+        @Contract("_ -> this")
+        public Builder withBackwardsSteps(final int backwardsSteps) {
+            this.backwardsSteps = backwardsSteps;
+            return this;
+        }
+
+        /**
+         * Use the specified replay guard
+         * <p>
+         * With a replay guard every code can only be used once, and codes older than the last accepted one are
+         * rejected. The guard has to cover at least the backwards steps of this service.
+         */
+        @Contract("_ -> this")
+        public Builder withReplayGuard(final ReplayGuard replayGuard) {
+            this.replayGuard = replayGuard;
+            return this;
+        }
+
+        /**
+         * Use the specified attempt throttle
+         * <p>
+         * Failed validations are recorded in the throttle, and validations of locked out users are rejected before
+         * any HMAC is computed.
+         */
+        @Contract("_ -> this")
+        public Builder withAttemptThrottle(final AttemptThrottle attemptThrottle) {
+            this.attemptThrottle = attemptThrottle;
+            return this;
+        }
+
+        /**
+         * Use the specified clock
+         * <p>
+         * The system clock is used by default.
+         */
+        @Contract("_ -> this")
+        public Builder withClock(final TOTPClock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Build a new {@link DefaultMultiTenantTOTPService} with the configured parameters
+         */
+        @Contract(value = "-> new", pure = true)
+        public MultiTenantTOTPService build() {
+            this.verifyState();
+            return new DefaultMultiTenantTOTPService(
+                    this.generator,
+                    this.store,
+                    this.algorithm,
+                    this.timeStepMillis,
+                    this.digits,
+                    this.backwardsSteps,
+                    this.replayGuard,
+                    this.attemptThrottle,
+                    this.clock
+            );
+        }
+
+        /**
+         * Performs sanity checks
+         */
+        private void verifyState() {
+            if (this.generator == null) {
+                this.panicFieldNotSet("generator", "withDefaultGenerator()", "withGenerator(TOTPGenerator)");
+            }
+            if (this.store == null) {
+                this.panicFieldNotSet("store", "withSecretStore(SecretStore)");
+            }
+            if (this.algorithm == null) {
+                this.panicFieldNotSet("algorithm", "withAlgorithm(HMACAlgorithm)");
+            }
+            if (this.timeStepMillis == null) {
+                this.panicFieldNotSet("timeStepMillis", "withTimeStep(long, TimeUnit)", "withTimeStep(long)");
+            }
+            if (this.digits == null) {
+                this.panicFieldNotSet("digits", "withDefaultDigits()", "withDigits(int)");
+            }
+            if (this.clock == null) {
+                this.panicFieldNotSet("clock", "withClock(TOTPClock)");
+            }
+            if (this.backwardsSteps < 0) {
+                this.panicFieldInvalid("backwardsSteps", "Must be >= 0");
+            }
+            if (this.digits < 6 || this.digits > 10) {
+                this.panicFieldInvalid("digits", "Must be in interval [6,10]");
+            }
+            if (this.timeStepMillis < 1) {
+                this.panicFieldInvalid("timeStepMillis", "Must be >= 1");
+            }
+            if (this.replayGuard != null && this.replayGuard.backwardsSteps() < this.backwardsSteps) {
+                this.panicFieldInvalid("replayGuard", "Must cover at least %d backwards steps".formatted(this.backwardsSteps));
+            }
+        }
+
+        private void panicFieldInvalid(final String field, final String problem) {
+            throw new IllegalStateException("Unable to build multi-tenant TOTP-Service: Field %s is invalid: %s".formatted(field, problem));
+        }
+
+        private void panicFieldNotSet(final String field, final String... methods) {
+            throw new IllegalStateException("Unable to build multi-tenant TOTP-Service: Field %s is not set. Call one of [%s] before calling build()."
+                    .formatted(field, String.join(", ", methods)));
+        }
+
+    }
+
+}
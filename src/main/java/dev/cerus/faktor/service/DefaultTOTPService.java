@@ -2,37 +2,108 @@ package dev.cerus.faktor.service;
 
 import dev.cerus.faktor.HMACAlgorithm;
 import dev.cerus.faktor.generator.DefaultTOTPGenerator;
+import dev.cerus.faktor.generator.OTPProfile;
+import dev.cerus.faktor.generator.PreparedOTPKey;
 import dev.cerus.faktor.generator.TOTPGenerator;
+import dev.cerus.faktor.jfr.ValidationEvent;
+import dev.cerus.faktor.metrics.OTPMetrics;
+import dev.cerus.faktor.service.clock.TOTPClock;
+import dev.cerus.faktor.service.guard.AttemptThrottle;
+import dev.cerus.faktor.service.guard.DriftTracker;
+import dev.cerus.faktor.service.guard.ReplayGuard;
 import dev.cerus.faktor.service.secret.OTPSecret;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.security.auth.Destroyable;
 import org.jetbrains.annotations.Contract;
 
 /**
  * Default TOTPService implementation
+ * <p>
+ * The secret is converted into a {@link PreparedOTPKey} once when the service is built if the generator
+ * {@link TOTPGenerator#supportsPreparedKeys() supports prepared keys}. Otherwise the raw secret is copied once and the
+ * generator is called with it, so custom generators keep computing every code themselves. The codes of the window are
+ * cached, because they only change at step boundaries, and they are only computed when a validation reaches them.
+ * When a new step begins the cached codes are shifted.
+ * <p>
+ * Validation searches the window outwards from the expected offset, which is the current step or the offset that
+ * the {@link DriftTracker} learned, and stops at the first match. Most codes match the expected offset, so a
+ * validation usually computes a single code no matter how wide the window is.
+ * <p>
+ * The service keeps its own key material, so destroying the {@link OTPSecret} it was built with does not affect it.
+ * Call {@link DefaultTOTPService#destroy()} to zero the key material of the service.
  */
-public class DefaultTOTPService implements TOTPService {
+public class DefaultTOTPService implements TOTPService, Destroyable {
+
+    // Codes are never negative
+    private static final int NOT_COMPUTED = -1;
 
     private final TOTPGenerator generator;
+    private final PreparedOTPKey key;
     private final byte[] secret;
     private final HMACAlgorithm algorithm;
     private final long timeStepMillis;
     private final int digits;
     private final int backwardsSteps;
+    private final int forwardSteps;
+    private final ReplayGuard replayGuard;
+    private final long replayGuardKey;
+    private final AttemptThrottle attemptThrottle;
+    private final long attemptThrottleKey;
+    private final DriftTracker driftTracker;
+    private final long driftTrackerKey;
+    private final TOTPClock clock;
+    private final OTPMetrics metrics;
+    private final OTPProfile profile;
+    // Index forwardSteps + offset holds the result for that offset
+    private final ValidationResult[] accepted;
+    private final AtomicReference<CodeWindow> window = new AtomicReference<>();
+    private volatile boolean destroyed;
 
     private DefaultTOTPService(final TOTPGenerator generator,
                                final OTPSecret secret,
                                final HMACAlgorithm algorithm,
                                final long timeStepMillis,
                                final int digits,
-                               final int backwardsSteps) {
+                               final int backwardsSteps,
+                               final int forwardSteps,
+                               final ReplayGuard replayGuard,
+                               final long replayGuardKey,
+                               final AttemptThrottle attemptThrottle,
+                               final long attemptThrottleKey,
+                               final DriftTracker driftTracker,
+                               final long driftTrackerKey,
+                               final TOTPClock clock,
+                               final OTPMetrics metrics) {
         this.generator = generator;
-        this.secret = secret.asBytes();
+        if (generator.supportsPreparedKeys()) {
+            this.key = PreparedOTPKey.of(secret, algorithm);
+            this.secret = null;
+        } else {
+            this.key = null;
+            this.secret = secret.asBytes();
+        }
         this.algorithm = algorithm;
         this.timeStepMillis = timeStepMillis;
         this.digits = digits;
         this.backwardsSteps = backwardsSteps;
+        this.forwardSteps = forwardSteps;
+        this.replayGuard = replayGuard;
+        this.replayGuardKey = replayGuardKey;
+        this.attemptThrottle = attemptThrottle;
+        this.attemptThrottleKey = attemptThrottleKey;
+        this.driftTracker = driftTracker;
+        this.driftTrackerKey = driftTrackerKey;
+        this.clock = clock;
+        this.metrics = metrics;
+        this.profile = OTPProfile.of(algorithm, digits, timeStepMillis, backwardsSteps);
+        this.accepted = new ValidationResult[forwardSteps + backwardsSteps + 1];
+        for (int i = 0; i < this.accepted.length; i++) {
+            this.accepted[i] = ValidationResult.accepted(i - forwardSteps);
+        }
     }
 
     /**
@@ -47,19 +118,238 @@ public class DefaultTOTPService implements TOTPService {
 
     @Override
     public boolean validateTOTP(final int totp) throws NoSuchAlgorithmException, InvalidKeyException {
-        for (int step = this.backwardsSteps; step >= 0; step--) {
-            final int generatedTOTP = this.generator.generateTOTP(this.secret,
-                    System.currentTimeMillis(), this.timeStepMillis, this.digits, step, this.algorithm);
-            if (generatedTOTP == totp) {
-                return true;
+        return this.validate(totp).isAccepted();
+    }
+
+    /**
+     * Validates a TOTP and reports which step it matched
+     * <p>
+     * {@link Builder#build()} returns the service as a {@link TOTPService}, use {@link Builder#buildDefault()} to
+     * call this method without a cast.
+     *
+     * @param totp The TOTP to validate
+     *
+     * @return the result with the outcome and the matched offset
+     *
+     * @throws NoSuchAlgorithmException if the set HMAC algorithm can not be initialized
+     * @throws InvalidKeyException      if the set secret is invalid
+     */
+    public ValidationResult validate(final int totp) throws NoSuchAlgorithmException, InvalidKeyException {
+        final ValidationEvent event = ValidationEvent.start();
+        if (this.attemptThrottle == null) {
+            return this.record(this.match(totp, this.clock.currentStep(this.timeStepMillis)), event);
+        }
+        // One snapshot for the lockout and the step
+        final long now = this.clock.currentTimeMillis();
+        // The attempt is counted before validating, concurrent guesses can not exceed the free attempts
+        if (!this.attemptThrottle.tryAcquireAttempt(this.attemptThrottleKey, now)) {
+            return this.record(ValidationResult.THROTTLED, event);
+        }
+        final ValidationResult result = this.record(this.match(totp, now / this.timeStepMillis), event);
+        if (result.isAccepted()) {
+            this.attemptThrottle.recordSuccess(this.attemptThrottleKey);
+        }
+        return result;
+    }
+
+    /**
+     * Report the result of a validation to the metrics, the drift tracker and JFR
+     *
+     * @param result The result of the validation
+     * @param event  The event that was started for the validation or null
+     *
+     * @return the result
+     */
+    private ValidationResult record(final ValidationResult result, final ValidationEvent event) {
+        final int offset;
+        if (result.isAccepted()) {
+            offset = result.matchedOffset();
+            if (this.driftTracker != null) {
+                this.driftTracker.record(this.driftTrackerKey, offset);
             }
+        } else {
+            offset = OTPMetrics.NO_MATCH;
         }
-        return false;
+        this.metrics.recordValidation(result.outcome(), offset);
+        ValidationEvent.complete(event, this.forwardSteps + this.backwardsSteps + 1, offset, result.outcome());
+        return result;
+    }
+
+    /**
+     * Search the window of a step for a code
+     * <p>
+     * The search starts at the expected offset and alternates between the older and the newer side, so the codes
+     * closest to the expected offset are computed first.
+     *
+     * @return the accepted result, {@link ValidationResult#REJECTED} or {@link ValidationResult#REPLAYED}
+     */
+    private ValidationResult match(final int totp, final long currentStep) throws NoSuchAlgorithmException, InvalidKeyException {
+        int oldest = this.backwardsSteps;
+        if (this.replayGuard != null) {
+            // The first unused step is at most one step past the newest step of the window
+            oldest = (int) Math.min(oldest, currentStep - this.replayGuard.firstUnusedStep(this.replayGuardKey, currentStep));
+            if (oldest < -this.forwardSteps) {
+                return ValidationResult.REPLAYED;
+            }
+        }
+        final int newest = -this.forwardSteps;
+        final int expected = this.driftTracker == null ? 0 : this.driftTracker.expectedOffset(this.driftTrackerKey);
+        final int start = Math.max(newest, Math.min(oldest, expected));
+
+        final CodeWindow window = this.window(currentStep);
+        for (int distance = 0; start + distance <= oldest || start - distance >= newest; distance++) {
+            if (start + distance <= oldest && this.code(window, start + distance) == totp) {
+                return this.accept(start + distance, currentStep);
+            }
+            if (distance > 0 && start - distance >= newest && this.code(window, start - distance) == totp) {
+                return this.accept(start - distance, currentStep);
+            }
+        }
+        // A code of an already used step is a replay as well, but finding out would cost the HMACs of the used steps
+        return ValidationResult.REJECTED;
+    }
+
+    private ValidationResult accept(final int offset, final long currentStep) {
+        if (this.replayGuard != null && !this.replayGuard.tryAccept(this.replayGuardKey, currentStep - offset, currentStep)) {
+            return ValidationResult.REPLAYED;
+        }
+        return this.accepted[this.forwardSteps + offset];
+    }
+
+    /**
+     * Get the profile of this service
+     * <p>
+     * Profiles have no forward steps, so codes that this service accepts from forward steps are rejected by the
+     * profile.
+     *
+     * @return the algorithm, digits, time step and backwards steps of this service
+     */
+    public OTPProfile profile() {
+        return this.profile;
     }
 
     @Override
     public int generateTOTP() throws NoSuchAlgorithmException, InvalidKeyException {
-        return this.generator.generateTOTP(this.secret, System.currentTimeMillis(), this.timeStepMillis, this.digits, this.algorithm);
+        return this.code(this.window(this.clock.currentStep(this.timeStepMillis)), 0);
+    }
+
+    /**
+     * Generates the TOTP of a specific time step, independent of the clock of this service
+     *
+     * @param step The time step index
+     *
+     * @return the TOTP of the step
+     */
+    int generateTOTPAtStep(final long step) throws NoSuchAlgorithmException, InvalidKeyException {
+        final CodeWindow cached = this.window.get();
+        if (cached != null && cached.step == step) {
+            return this.code(cached, 0);
+        }
+        return this.compute(step * this.timeStepMillis);
+    }
+
+    /**
+     * Get a code of a window and compute it if it is missing
+     * <p>
+     * Concurrent callers might both compute the code. Int writes are atomic and the code is deterministic, so a
+     * caller either sees {@link DefaultTOTPService#NOT_COMPUTED} or the correct code.
+     *
+     * @param window The code window
+     * @param offset The backwards offset of the step, negative for forward steps
+     *
+     * @return the code
+     */
+    private int code(final CodeWindow window, final int offset) throws NoSuchAlgorithmException, InvalidKeyException {
+        final int index = this.forwardSteps + offset;
+        int code = window.codes[index];
+        if (code == NOT_COMPUTED) {
+            code = this.compute((window.step - offset) * this.timeStepMillis);
+            window.codes[index] = code;
+        }
+        return code;
+    }
+
+    private int compute(final long timeMillis) throws NoSuchAlgorithmException, InvalidKeyException {
+        if (this.destroyed) {
+            throw new IllegalStateException("Service has been destroyed");
+        }
+        if (this.key != null) {
+            return this.generator.generateTOTP(this.key, timeMillis, this.timeStepMillis, this.digits);
+        }
+        return this.generator.generateTOTP(this.secret, timeMillis, this.timeStepMillis, this.digits, this.algorithm);
+    }
+
+    /**
+     * Zero the prepared key or the copy of the secret and drop the cached codes
+     * <p>
+     * Validations and generations fail with an {@link IllegalStateException} afterwards.
+     */
+    @Override
+    public void destroy() {
+        this.destroyed = true;
+        if (this.key != null) {
+            this.key.destroy();
+        } else {
+            Arrays.fill(this.secret, (byte) 0);
+        }
+        this.window.set(null);
+    }
+
+    @Override
+    public boolean isDestroyed() {
+        return this.destroyed;
+    }
+
+    /**
+     * Get the code window of a time step
+     * <p>
+     * The cached window is reused if it belongs to the same step. If the step has moved forward by less than the
+     * window size, the overlapping codes are carried over and the new ones are left to be computed on demand.
+     * Concurrent callers might create the same window, but since the codes are deterministic it does not matter whose
+     * window wins.
+     *
+     * @param step The time step index
+     *
+     * @return the code window for the step
+     */
+    private CodeWindow window(final long step) throws NoSuchAlgorithmException, InvalidKeyException {
+        final CodeWindow cached = this.window.get();
+        if (cached != null && cached.step == step) {
+            return cached;
+        }
+
+        final int[] codes = new int[this.forwardSteps + this.backwardsSteps + 1];
+        int missing = codes.length;
+        if (cached != null && step > cached.step && step - cached.step < codes.length) {
+            missing = (int) (step - cached.step);
+            System.arraycopy(cached.codes, 0, codes, missing, codes.length - missing);
+        }
+        Arrays.fill(codes, 0, missing, NOT_COMPUTED);
+
+        final CodeWindow computed = new CodeWindow(step, codes);
+        if (cached == null || step > cached.step) {
+            // Never replace a newer window, e.g. when the system clock jumps backwards
+            this.window.compareAndSet(cached, computed);
+        }
+        return computed;
+    }
+
+    /**
+     * Snapshot of the codes of a time step and its window
+     * <p>
+     * <code>codes[forwardSteps + offset]</code> is the code of time step <code>step - offset</code>, or
+     * {@link DefaultTOTPService#NOT_COMPUTED} if it has not been computed yet.
+     */
+    private static final class CodeWindow {
+
+        private final long step;
+        private final int[] codes;
+
+        private CodeWindow(final long step, final int[] codes) {
+            this.step = step;
+            this.codes = codes;
+        }
+
     }
 
     /**
@@ -73,6 +363,15 @@ public class DefaultTOTPService implements TOTPService {
         private Long timeStepMillis;
         private Integer digits;
         private int backwardsSteps;
+        private int forwardSteps;
+        private ReplayGuard replayGuard;
+        private long replayGuardKey;
+        private AttemptThrottle attemptThrottle;
+        private long attemptThrottleKey;
+        private DriftTracker driftTracker;
+        private long driftTrackerKey;
+        private TOTPClock clock = TOTPClock.system();
+        private OTPMetrics metrics = OTPMetrics.noop();
 
         private Builder() {
         }
@@ -181,11 +480,130 @@ public class DefaultTOTPService implements TOTPService {
             return this;
         }
 
+        /**
+         * Use the specified forward steps
+         * <p>
+         * This specifies how many time steps a code can be ahead of the current step to still count as valid, e.g.
+         * for authenticators whose clock runs fast. No forward steps are allowed by default.
+         */
+        @Contract("_ -> this")
+        public Builder withForwardSteps(final int forwardSteps) {
+            this.forwardSteps = forwardSteps;
+            return this;
+        }
+
+        /**
+         * Use the specified replay guard
+         * <p>
+         * With a replay guard every code can only be used once, and codes older than the last accepted one are
+         * rejected. The guard has to cover at least the backwards and forward steps of this service.
+         *
+         * @param replayGuard The replay guard
+         * @param key         The key of this service in the guard, has to be unique if the guard is shared
+         */
+        @Contract("_, _ -> this")
+        public Builder withReplayGuard(final ReplayGuard replayGuard, final long key) {
+            this.replayGuard = replayGuard;
+            this.replayGuardKey = key;
+            return this;
+        }
+
+        /**
+         * Use the specified attempt throttle
+         * <p>
+         * Failed validations are recorded in the throttle, and validations of locked out users are rejected before
+         * any HMAC is computed.
+         *
+         * @param attemptThrottle The attempt throttle
+         * @param key             The key of this service in the throttle, has to be unique if the throttle is shared
+         */
+        @Contract("_, _ -> this")
+        public Builder withAttemptThrottle(final AttemptThrottle attemptThrottle, final long key) {
+            this.attemptThrottle = attemptThrottle;
+            this.attemptThrottleKey = key;
+            return this;
+        }
+
+        /**
+         * Use the specified drift tracker
+         * <p>
+         * Accepted offsets are recorded in the tracker, and validations start searching the window at the offset the
+         * tracker expects instead of the current step.
+         *
+         * @param driftTracker The drift tracker
+         * @param key          The key of this service in the tracker, has to be unique if the tracker is shared
+         */
+        @Contract("_, _ -> this")
+        public Builder withDriftTracker(final DriftTracker driftTracker, final long key) {
+            this.driftTracker = driftTracker;
+            this.driftTrackerKey = key;
+            return this;
+        }
+
+        /**
+         * Use the specified clock
+         * <p>
+         * The system clock is used by default.
+         */
+        @Contract("_ -> this")
+        public Builder withClock(final TOTPClock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Use the specified metrics
+         * <p>
+         * Validations are reported with their outcome and matched offset. Generation latencies are reported by the
+         * generator, see {@link DefaultTOTPGenerator#DefaultTOTPGenerator(OTPMetrics)}.
+         */
+        @Contract("_ -> this")
+        public Builder withMetrics(final OTPMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Use the algorithm, digits, time step and backwards steps of a profile
+         * <p>
+         * Profiles have no forward steps, the forward steps of this builder are left as they are.
+         */
+        @Contract("_ -> this")
+        public Builder withProfile(final OTPProfile profile) {
+            return this.withAlgorithm(profile.algorithm())
+                    .withDigits(profile.digits())
+                    .withTimeStep(profile.timeStepMillis())
+                    .withBackwardsSteps(profile.backwardsSteps());
+        }
+
+        /**
+         * Build a new {@link OTPProfile} with the configured algorithm, digits, time step and backwards steps
+         * <p>
+         * Secret, generator and the other service parameters are not needed for a profile. The forward steps are
+         * not part of the profile either.
+         */
+        @Contract(value = "-> new", pure = true)
+        public OTPProfile buildProfile() {
+            this.verifyProfile();
+            return OTPProfile.of(this.algorithm, this.digits, this.timeStepMillis, this.backwardsSteps);
+        }
+
         /**
          * Build a new {@link DefaultTOTPService} with the configured parameters
          */
         @Contract(value = "-> new", pure = true)
         public TOTPService build() {
+            return this.buildDefault();
+        }
+
+        /**
+         * Build a new {@link DefaultTOTPService} with the configured parameters
+         * <p>
+         * Unlike {@link Builder#build()} this returns the implementation type, which offers
+         * {@link DefaultTOTPService#validate(int)}.
+         */
+        @Contract(value = "-> new", pure = true)
+        public DefaultTOTPService buildDefault() {
             this.verifyState();
             return new DefaultTOTPService(
                     this.generator,
@@ -193,7 +611,16 @@ public class DefaultTOTPService implements TOTPService {
                     this.algorithm,
                     this.timeStepMillis,
                     this.digits,
-                    this.backwardsSteps
+                    this.backwardsSteps,
+                    this.forwardSteps,
+                    this.replayGuard,
+                    this.replayGuardKey,
+                    this.attemptThrottle,
+                    this.attemptThrottleKey,
+                    this.driftTracker,
+                    this.driftTrackerKey,
+                    this.clock,
+                    this.metrics
             );
         }
 
@@ -207,6 +634,28 @@ public class DefaultTOTPService implements TOTPService {
             if (this.secret == null) {
                 this.panicFieldNotSet("secret", "withSecret(OTPSecret)");
             }
+            this.verifyProfile();
+            if (this.clock == null) {
+                this.panicFieldNotSet("clock", "withClock(TOTPClock)");
+            }
+            if (this.metrics == null) {
+                this.panicFieldNotSet("metrics", "withMetrics(OTPMetrics)");
+            }
+            if (this.forwardSteps < 0) {
+                this.panicFieldInvalid("forwardSteps", "Must be >= 0");
+            }
+            if (this.replayGuard != null && this.replayGuard.backwardsSteps() < this.backwardsSteps) {
+                this.panicFieldInvalid("replayGuard", "Must cover at least %d backwards steps".formatted(this.backwardsSteps));
+            }
+            if (this.replayGuard != null && this.replayGuard.forwardSteps() < this.forwardSteps) {
+                this.panicFieldInvalid("replayGuard", "Must cover at least %d forward steps".formatted(this.forwardSteps));
+            }
+        }
+
+        /**
+         * Performs sanity checks of the profile fields
+         */
+        private void verifyProfile() {
             if (this.algorithm == null) {
                 this.panicFieldNotSet("algorithm", "withAlgorithm(TOTPGenerator.HMACAlgorithm)");
             }
@@ -0,0 +1,87 @@
+package dev.cerus.faktor.service;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import org.jetbrains.annotations.Contract;
+
+/**
+ * Service for validating HOTPs of many users
+ * <p>
+ * Secrets are resolved through a {@link dev.cerus.faktor.service.store.SecretStore} and counters through a
+ * {@link dev.cerus.faktor.service.store.CounterStore}. Validation accepts codes within a look-ahead window and moves
+ * the counter past the accepted code, see <a href="https://www.rfc-editor.org/rfc/rfc4226#section-7.4">RFC 4226 §7.4</a>.
+ */
+public interface HOTPService {
+
+    @Contract(value = "-> new", pure = true)
+    static DefaultHOTPService.Builder defaultServiceBuilder() {
+        return DefaultHOTPService.builder();
+    }
+
+    /**
+     * Validates a HOTP of a user and wraps potential exceptions in a {@link RuntimeException}
+     *
+     * @param userId The id of the user
+     * @param hotp   The HOTP to validate
+     *
+     * @return whether the provided HOTP is valid, false if no secret is stored for the user
+     */
+    default boolean validateHOTPUnchecked(final long userId, final int hotp) {
+        try {
+            return this.validateHOTP(userId, hotp);
+        } catch (final NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new RuntimeException("Unable to validate HOTP", e);
+        }
+    }
+
+    /**
+     * Validates a HOTP of a user
+     * <p>
+     * On success the counter of the user is moved past the accepted code, so every code can only be used once. If
+     * several validations of the same user run concurrently, at most one of them succeeds for any counter value.
+     *
+     * @param userId The id of the user
+     * @param hotp   The HOTP to validate
+     *
+     * @return whether the provided HOTP is valid, false if no secret is stored for the user
+     *
+     * @throws NoSuchAlgorithmException if the HMAC SHA1 algorithm can not be initialized
+     * @throws InvalidKeyException      if the secret of the user is invalid
+     */
+    boolean validateHOTP(long userId, int hotp) throws NoSuchAlgorithmException, InvalidKeyException;
+
+    /**
+     * Resynchronizes the counter of a user and wraps potential exceptions in a {@link RuntimeException}
+     *
+     * @param userId   The id of the user
+     * @param hotp     The first HOTP
+     * @param nextHotp The HOTP that followed the first one
+     *
+     * @return whether the counter was resynchronized, false if no secret is stored for the user
+     */
+    default boolean resynchronizeUnchecked(final long userId, final int hotp, final int nextHotp) {
+        try {
+            return this.resynchronize(userId, hotp, nextHotp);
+        } catch (final NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new RuntimeException("Unable to resynchronize HOTP counter", e);
+        }
+    }
+
+    /**
+     * Resynchronizes the counter of a user whose token has moved beyond the look-ahead window
+     * <p>
+     * The user has to provide two consecutive codes, which are searched for in the larger resynchronization window.
+     * On success the counter is moved past the second code.
+     *
+     * @param userId   The id of the user
+     * @param hotp     The first HOTP
+     * @param nextHotp The HOTP that followed the first one
+     *
+     * @return whether the counter was resynchronized, false if no secret is stored for the user
+     *
+     * @throws NoSuchAlgorithmException if the HMAC SHA1 algorithm can not be initialized
+     * @throws InvalidKeyException      if the secret of the user is invalid
+     */
+    boolean resynchronize(long userId, int hotp, int nextHotp) throws NoSuchAlgorithmException, InvalidKeyException;
+
+}
@@ -0,0 +1,79 @@
+package dev.cerus.faktor.service;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import org.jetbrains.annotations.Contract;
+
+/**
+ * Service for generating and validating TOTPs of many users that share one configuration
+ * <p>
+ * Unlike {@link TOTPService} this service is not bound to a single secret. Secrets are resolved by user id
+ * through a {@link dev.cerus.faktor.service.store.SecretStore}.
+ */
+public interface MultiTenantTOTPService {
+
+    @Contract(value = "-> new", pure = true)
+    static DefaultMultiTenantTOTPService.Builder defaultServiceBuilder() {
+        return DefaultMultiTenantTOTPService.builder();
+    }
+
+    /**
+     * Validates a TOTP of a user and wraps potential exceptions in a {@link RuntimeException}
+     *
+     * @param userId The id of the user
+     * @param totp   The TOTP to validate
+     *
+     * @return whether the provided TOTP is valid, false if no secret is stored for the user
+     */
+    default boolean validateTOTPUnchecked(final long userId, final int totp) {
+        try {
+            return this.validateTOTP(userId, totp);
+        } catch (final NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new RuntimeException("Unable to validate TOTP", e);
+        }
+    }
+
+    /**
+     * Validates a TOTP of a user
+     *
+     * @param userId The id of the user
+     * @param totp   The TOTP to validate
+     *
+     * @return whether the provided TOTP is valid, false if no secret is stored for the user
+     *
+     * @throws NoSuchAlgorithmException if the set HMAC algorithm can not be initialized
+     * @throws InvalidKeyException      if the secret of the user is invalid
+     */
+    boolean validateTOTP(long userId, int totp) throws NoSuchAlgorithmException, InvalidKeyException;
+
+    /**
+     * Generates a TOTP for a user and wraps potential exceptions in a {@link RuntimeException}
+     *
+     * @param userId The id of the user
+     *
+     * @return the generated TOTP
+     *
+     * @throws IllegalArgumentException if no secret is stored for the user
+     */
+    default int generateTOTPUnchecked(final long userId) {
+        try {
+            return this.generateTOTP(userId);
+        } catch (final NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new RuntimeException("Unable to generate TOTP", e);
+        }
+    }
+
+    /**
+     * Generates a TOTP for a user
+     *
+     * @param userId The id of the user
+     *
+     * @return the generated TOTP
+     *
+     * @throws NoSuchAlgorithmException if the set HMAC algorithm can not be initialized
+     * @throws InvalidKeyException      if the secret of the user is invalid
+     * @throws IllegalArgumentException if no secret is stored for the user
+     */
+    int generateTOTP(long userId) throws NoSuchAlgorithmException, InvalidKeyException;
+
+}
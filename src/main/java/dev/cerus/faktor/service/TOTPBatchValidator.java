@@ -0,0 +1,474 @@
+package dev.cerus.faktor.service;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.generator.DefaultTOTPGenerator;
+import dev.cerus.faktor.generator.MultiBufferOTPEngine;
+import dev.cerus.faktor.generator.PreparedOTPKey;
+import dev.cerus.faktor.generator.TOTPGenerator;
+import java.io.Serial;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Validates TOTPs of many secrets at once
+ * <p>
+ * All entries of a batch are validated against the same time snapshot with the window semantics of
+ * {@link DefaultTOTPService}. Large batches are split into chunks and validated in parallel on a {@link ForkJoinPool}.
+ * The results are written into a caller provided array, so a batch does not allocate objects per entry.
+ * <p>
+ * Batches of prepared keys can optionally be validated with a {@link MultiBufferOTPEngine}, which hashes many keys at
+ * once instead of calling the generator for every entry. Every thread keeps its own engine and works through a range
+ * in chunks of fixed size, so these batches do not allocate either once the thread has validated its first batch.
+ */
+public class TOTPBatchValidator {
+
+    private static final int MULTI_BUFFER_CHUNK = MultiBufferOTPEngine.LANES * 64;
+    private static final ThreadLocal<MultiBufferScratch> MULTI_BUFFER_SCRATCH = ThreadLocal.withInitial(MultiBufferScratch::new);
+
+    private final TOTPGenerator generator;
+    private final HMACAlgorithm algorithm;
+    private final long timeStepMillis;
+    private final int digits;
+    private final int backwardsSteps;
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+    private final boolean multiBuffer;
+
+    private TOTPBatchValidator(final TOTPGenerator generator,
+                               final HMACAlgorithm algorithm,
+                               final long timeStepMillis,
+                               final int digits,
+                               final int backwardsSteps,
+                               final ForkJoinPool pool,
+                               final int parallelThreshold,
+                               final boolean multiBuffer) {
+        this.generator = generator;
+        this.algorithm = algorithm;
+        this.timeStepMillis = timeStepMillis;
+        this.digits = digits;
+        this.backwardsSteps = backwardsSteps;
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+        this.multiBuffer = multiBuffer;
+    }
+
+    /**
+     * Create a new builder for {@link TOTPBatchValidator}
+     *
+     * @return a new builder
+     */
+    @Contract(value = "-> new", pure = true)
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Validates a batch of TOTPs
+     * <p>
+     * <code>results[i]</code> is set to whether <code>codes[i]</code> is a valid TOTP for <code>secrets[i]</code>.
+     *
+     * @param secrets    The secrets (see {@link dev.cerus.faktor.service.secret.OTPSecret})
+     * @param codes      The submitted TOTPs
+     * @param timeMillis The time snapshot to validate against
+     * @param results    The array to write the results into, must be at least as long as the batch
+     *
+     * @throws NoSuchAlgorithmException if the set HMAC algorithm can not be initialized
+     * @throws InvalidKeyException      if one of the secrets is invalid
+     * @throws IllegalStateException    if no HMAC algorithm was configured
+     */
+    public void validate(final byte @NotNull [] @NotNull [] secrets,
+                         final int @NotNull [] codes,
+                         final long timeMillis,
+                         final boolean @NotNull [] results) throws NoSuchAlgorithmException, InvalidKeyException {
+        if (this.algorithm == null) {
+            throw new IllegalStateException("Raw secrets need an HMAC algorithm, call withAlgorithm(HMACAlgorithm) when building the validator");
+        }
+        this.checkBatch(secrets.length, codes, results);
+        this.run(new Batch(secrets, null, codes, timeMillis, results));
+    }
+
+    /**
+     * Validates a batch of TOTPs with prepared keys
+     * <p>
+     * <code>results[i]</code> is set to whether <code>codes[i]</code> is a valid TOTP for <code>keys[i]</code>.
+     * The HMAC algorithm of each prepared key is used.
+     *
+     * @param keys       The prepared secrets (see {@link PreparedOTPKey})
+     * @param codes      The submitted TOTPs
+     * @param timeMillis The time snapshot to validate against
+     * @param results    The array to write the results into, must be at least as long as the batch
+     */
+    public void validate(final @NotNull PreparedOTPKey @NotNull [] keys,
+                         final int @NotNull [] codes,
+                         final long timeMillis,
+                         final boolean @NotNull [] results) {
+        this.checkBatch(keys.length, codes, results);
+        try {
+            this.run(new Batch(null, keys, codes, timeMillis, results));
+        } catch (final NoSuchAlgorithmException | InvalidKeyException e) {
+            // Prepared keys do not go through the JCA
+            throw new IllegalStateException("Unable to validate TOTP", e);
+        }
+    }
+
+    private void checkBatch(final int length, final int[] codes, final boolean[] results) {
+        if (codes.length != length) {
+            throw new IllegalArgumentException("Amount of codes does not match amount of secrets");
+        }
+        if (results.length < length) {
+            throw new IllegalArgumentException("Result array is too small");
+        }
+    }
+
+    private void run(final Batch batch) throws NoSuchAlgorithmException, InvalidKeyException {
+        final int length = batch.codes.length;
+        if (length < this.parallelThreshold || this.pool.getParallelism() < 2) {
+            batch.validateRange(0, length);
+        } else {
+            this.pool.invoke(new BatchTask(batch, 0, length));
+        }
+
+        final GeneralSecurityException failure = batch.failure.get();
+        if (failure instanceof NoSuchAlgorithmException e) {
+            throw e;
+        } else if (failure instanceof InvalidKeyException e) {
+            throw e;
+        }
+    }
+
+    /**
+     * A batch that is currently being validated
+     */
+    private final class Batch {
+
+        private final byte[][] secrets;
+        private final PreparedOTPKey[] keys;
+        private final int[] codes;
+        private final long timeMillis;
+        private final boolean[] results;
+        private final AtomicReference<GeneralSecurityException> failure = new AtomicReference<>();
+
+        private Batch(final byte[][] secrets,
+                      final PreparedOTPKey[] keys,
+                      final int[] codes,
+                      final long timeMillis,
+                      final boolean[] results) {
+            this.secrets = secrets;
+            this.keys = keys;
+            this.codes = codes;
+            this.timeMillis = timeMillis;
+            this.results = results;
+        }
+
+        private void validateRange(final int from, final int to) throws NoSuchAlgorithmException, InvalidKeyException {
+            if (this.keys != null && TOTPBatchValidator.this.multiBuffer) {
+                this.validateRangeMultiBuffer(from, to);
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                this.results[i] = this.validateEntry(i);
+            }
+        }
+
+        /**
+         * Validates a range chunk by chunk and step by step, every step hashes all keys of a chunk at once
+         */
+        private void validateRangeMultiBuffer(final int from, final int to) {
+            final TOTPBatchValidator validator = TOTPBatchValidator.this;
+            final MultiBufferScratch scratch = MULTI_BUFFER_SCRATCH.get();
+            final long currentStep = this.timeMillis / validator.timeStepMillis;
+            Arrays.fill(this.results, from, to, false);
+            for (int chunkFrom = from; chunkFrom < to; chunkFrom += MULTI_BUFFER_CHUNK) {
+                final int chunkTo = Math.min(to, chunkFrom + MULTI_BUFFER_CHUNK);
+                for (int step = validator.backwardsSteps; step >= 0; step--) {
+                    scratch.engine.generateHOTP(this.keys, chunkFrom, chunkTo, currentStep - step, validator.digits, scratch.generated, 0);
+                    for (int i = chunkFrom; i < chunkTo; i++) {
+                        if (scratch.generated[i - chunkFrom] == this.codes[i]) {
+                            this.results[i] = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        private boolean validateEntry(final int index) throws NoSuchAlgorithmException, InvalidKeyException {
+            final TOTPBatchValidator validator = TOTPBatchValidator.this;
+            final int code = this.codes[index];
+            for (int step = validator.backwardsSteps; step >= 0; step--) {
+                final int generatedTOTP = this.keys != null
+                        ? validator.generator.generateTOTP(this.keys[index], this.timeMillis, validator.timeStepMillis, validator.digits, step)
+                        : validator.generator.generateTOTP(this.secrets[index], this.timeMillis, validator.timeStepMillis, validator.digits, step, validator.algorithm);
+                if (generatedTOTP == code) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+    /**
+     * Per-thread engine and code buffer for multi-buffer validation
+     */
+    private static final class MultiBufferScratch {
+
+        private final MultiBufferOTPEngine engine = new MultiBufferOTPEngine();
+        private final int[] generated = new int[MULTI_BUFFER_CHUNK];
+
+    }
+
+    /**
+     * Splits a batch range until it is small enough to be validated sequentially
+     */
+    private final class BatchTask extends RecursiveAction {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final Batch batch;
+        private final int from;
+        private final int to;
+
+        private BatchTask(final Batch batch, final int from, final int to) {
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.batch.failure.get() != null) {
+                return;
+            }
+            if (this.to - this.from <= TOTPBatchValidator.this.parallelThreshold) {
+                try {
+                    this.batch.validateRange(this.from, this.to);
+                } catch (final NoSuchAlgorithmException | InvalidKeyException e) {
+                    this.batch.failure.compareAndSet(null, e);
+                }
+                return;
+            }
+            final int mid = (this.from + this.to) >>> 1;
+            invokeAll(new BatchTask(this.batch, this.from, mid), new BatchTask(this.batch, mid, this.to));
+        }
+
+    }
+
+    /**
+     * Builder for {@link TOTPBatchValidator}
+     */
+    public static class Builder {
+
+        private TOTPGenerator generator;
+        private HMACAlgorithm algorithm;
+        private Long timeStepMillis;
+        private Integer digits;
+        private int backwardsSteps;
+        private ForkJoinPool pool = ForkJoinPool.commonPool();
+        private int parallelThreshold = 1024;
+        private boolean multiBuffer;
+
+        private Builder() {
+        }
+
+        /**
+         * Fill generator, digits and backwards steps with default values
+         */
+        @Contract("-> this")
+        public Builder withDefaults() {
+            return this.withDefaultBackwardsSteps()
+                    .withDefaultGenerator()
+                    .withDefaultDigits();
+        }
+
+        /**
+         * Use the default TOTP generator
+         * <p>
+         * See also {@link Builder#withGenerator(TOTPGenerator)}
+         */
+        @Contract("-> this")
+        public Builder withDefaultGenerator() {
+            return this.withGenerator(new DefaultTOTPGenerator());
+        }
+
+        /**
+         * Use the specified generator
+         */
+        @Contract("_ -> this")
+        public Builder withGenerator(final TOTPGenerator generator) {
+            this.generator = generator;
+            return this;
+        }
+
+        /**
+         * Use the specified HMAC algorithm
+         * <p>
+         * This is only used for raw secrets, prepared keys use their own algorithm. Validators that only validate
+         * prepared keys do not need an algorithm.
+         */
+        @Contract("_ -> this")
+        public Builder withAlgorithm(final HMACAlgorithm algorithm) {
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        /**
+         * Use the specified time step
+         */
+        @Contract("_, _ -> this")
+        public Builder withTimeStep(final long timeStepValue, final TimeUnit timeStepUnit) {
+            return this.withTimeStep(timeStepUnit.toMillis(timeStepValue));
+        }
+
+        /**
+         * Use the specified time step
+         */
+        @Contract("_ -> this")
+        public Builder withTimeStep(final long timeStepMillis) {
+            this.timeStepMillis = timeStepMillis;
+            return this;
+        }
+
+        /**
+         * Use the default digits
+         * <p>
+         * See also {@link Builder#withDigits(int)}
+         */
+        @Contract("-> this")
+        public Builder withDefaultDigits() {
+            return this.withDigits(6);
+        }
+
+        /**
+         * Use the specified digits
+         */
+        @Contract("_ -> this")
+        public Builder withDigits(final int digits) {
+            this.digits = digits;
+            return this;
+        }
+
+        /**
+         * Use the default backwards steps
+         * <p>
+         * See also {@link Builder#withBackwardsSteps(int)}
+         */
+        @Contract("-> this")
+        public Builder withDefaultBackwardsSteps() {
+            return this.withBackwardsSteps(0);
+        }
+
+        /**
+         * Use the specified backwards steps
+         * <p>
+         * This specifies how many time steps a secret can be old to still count as valid.
+         */
+        @Contract("_ -> this")
+        public Builder withBackwardsSteps(final int backwardsSteps) {
+            this.backwardsSteps = backwardsSteps;
+            return this;
+        }
+
+        /**
+         * Use the specified pool for parallel validation
+         * <p>
+         * The common pool is used by default.
+         */
+        @Contract("_ -> this")
+        public Builder withPool(final ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * Use the specified parallel threshold
+         * <p>
+         * Batches with fewer entries are validated on the calling thread. Larger batches are split into chunks
+         * of at most this size. Defaults to 1024.
+         */
+        @Contract("_ -> this")
+        public Builder withParallelThreshold(final int parallelThreshold) {
+            this.parallelThreshold = parallelThreshold;
+            return this;
+        }
+
+        /**
+         * Use a {@link MultiBufferOTPEngine} for batches of prepared keys
+         * <p>
+         * The engine replaces the generator for prepared keys, so generator metrics and JFR events are not reported
+         * for these batches. Raw secrets are always validated with the generator. Disabled by default.
+         */
+        @Contract("_ -> this")
+        public Builder withMultiBufferEngine(final boolean multiBuffer) {
+            this.multiBuffer = multiBuffer;
+            return this;
+        }
+
+        /**
+         * Build a new {@link TOTPBatchValidator} with the configured parameters
+         */
+        @Contract(value = "-> new", pure = true)
+        public TOTPBatchValidator build() {
+            this.verifyState();
+            return new TOTPBatchValidator(
+                    this.generator,
+                    this.algorithm,
+                    this.timeStepMillis,
+                    this.digits,
+                    this.backwardsSteps,
+                    this.pool,
+                    this.parallelThreshold,
+                    this.multiBuffer
+            );
+        }
+
+        /**
+         * Performs sanity checks
+         */
+        private void verifyState() {
+            if (this.generator == null) {
+                this.panicFieldNotSet("generator", "withDefaultGenerator()", "withGenerator(TOTPGenerator)");
+            }
+            if (this.timeStepMillis == null) {
+                this.panicFieldNotSet("timeStepMillis", "withTimeStep(long, TimeUnit)", "withTimeStep(long)");
+            }
+            if (this.digits == null) {
+                this.panicFieldNotSet("digits", "withDefaultDigits()", "withDigits(int)");
+            }
+            if (this.pool == null) {
+                this.panicFieldNotSet("pool", "withPool(ForkJoinPool)");
+            }
+            if (this.backwardsSteps < 0) {
+                this.panicFieldInvalid("backwardsSteps", "Must be >= 0");
+            }
+            if (this.digits < 6 || this.digits > 10) {
+                this.panicFieldInvalid("digits", "Must be in interval [6,10]");
+            }
+            if (this.timeStepMillis < 1) {
+                this.panicFieldInvalid("timeStepMillis", "Must be >= 1");
+            }
+            if (this.parallelThreshold < 1) {
+                this.panicFieldInvalid("parallelThreshold", "Must be >= 1");
+            }
+        }
+
+        private void panicFieldInvalid(final String field, final String problem) {
+            throw new IllegalStateException("Unable to build TOTP batch validator: Field %s is invalid: %s".formatted(field, problem));
+        }
+
+        private void panicFieldNotSet(final String field, final String... methods) {
+            throw new IllegalStateException("Unable to build TOTP batch validator: Field %s is not set. Call one of [%s] before calling build()."
+                    .formatted(field, String.join(", ", methods)));
+        }
+
+    }
+
+}
@@ -0,0 +1,360 @@
+package dev.cerus.faktor.service;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.generator.DefaultTOTPGenerator;
+import dev.cerus.faktor.generator.TOTPGenerator;
+import dev.cerus.faktor.service.clock.TOTPClock;
+import dev.cerus.faktor.service.store.SecretStore;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Publishes the codes of a service or of several accounts once per time step
+ * <p>
+ * At every step boundary the code of each source is computed once and offered to all subscribers, no matter how many
+ * there are. Nothing is computed while there are no subscribers. Delivery is done by a {@link SubmissionPublisher},
+ * so every subscriber gets a buffer and only receives as many events as it requested. Events for a subscriber whose
+ * buffer is full are dropped for that subscriber instead of stalling the others.
+ * <p>
+ * All publishers share one timer thread that only computes the codes and hands them to the executor of the publisher.
+ * Subscribers receive the first event at the next step boundary after subscribing.
+ */
+public class TOTPCodePublisher implements Flow.Publisher<CodeEvent>, AutoCloseable {
+
+    private static final ScheduledExecutorService TIMER = createTimer();
+
+    private final Source source;
+    private final long timeStepMillis;
+    private final TOTPClock clock;
+    private final SubmissionPublisher<CodeEvent> publisher;
+    private long lastStep = Long.MIN_VALUE;
+    private ScheduledFuture<?> nextTick;
+    private boolean closed;
+
+    private TOTPCodePublisher(final Source source,
+                              final long timeStepMillis,
+                              final TOTPClock clock,
+                              final Executor executor,
+                              final int bufferCapacity) {
+        this.source = source;
+        this.timeStepMillis = timeStepMillis;
+        this.clock = clock;
+        this.publisher = new SubmissionPublisher<>(executor, bufferCapacity);
+        synchronized (this) {
+            final long now = clock.currentTimeMillis();
+            this.lastStep = now / timeStepMillis;
+            this.schedule(now);
+        }
+    }
+
+    /**
+     * Create a new builder for {@link TOTPCodePublisher}
+     *
+     * @return a new builder
+     */
+    @Contract(value = "-> new", pure = true)
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private static ScheduledExecutorService createTimer() {
+        final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "faktor-code-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super CodeEvent> subscriber) {
+        this.publisher.subscribe(subscriber);
+    }
+
+    /**
+     * Get the amount of current subscribers
+     *
+     * @return the amount of subscribers
+     */
+    public int subscriberCount() {
+        return this.publisher.getNumberOfSubscribers();
+    }
+
+    /**
+     * Stop publishing and complete all subscribers
+     */
+    @Override
+    public synchronized void close() {
+        this.closed = true;
+        if (this.nextTick != null) {
+            this.nextTick.cancel(false);
+        }
+        this.publisher.close();
+    }
+
+    private synchronized void tick() {
+        if (this.closed) {
+            return;
+        }
+        // The step is derived from the same snapshot as the next tick, a clock that caches its step might lag behind
+        final long now = this.clock.currentTimeMillis();
+        final long step = now / this.timeStepMillis;
+        if (step != this.lastStep) {
+            this.lastStep = step;
+            if (this.publisher.hasSubscribers()) {
+                try {
+                    this.source.publish(step, this.timeStepMillis, this.publisher);
+                } catch (final Exception e) {
+                    this.closed = true;
+                    this.publisher.closeExceptionally(e);
+                    return;
+                }
+            }
+        }
+        this.schedule(now);
+    }
+
+    /**
+     * Schedule the next tick at the next step boundary
+     * <p>
+     * Ticks are scheduled one at a time so that the timer follows the clock instead of accumulating drift. A tick
+     * that fires early finds the old step and schedules itself again.
+     *
+     * @param now The current time in millis
+     */
+    private void schedule(final long now) {
+        final long delay = Math.max(1, (now / this.timeStepMillis + 1) * this.timeStepMillis - now);
+        this.nextTick = TIMER.schedule(this::tick, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Computes the codes of one step
+     */
+    private interface Source {
+
+        void publish(long step, long timeStepMillis, SubmissionPublisher<CodeEvent> publisher) throws Exception;
+
+    }
+
+    /**
+     * Builder for {@link TOTPCodePublisher}
+     * <p>
+     * Either a service or a secret store with accounts has to be set.
+     */
+    public static class Builder {
+
+        private TOTPService service;
+        private long serviceKey;
+        private TOTPGenerator generator;
+        private SecretStore store;
+        private long[] accounts;
+        private HMACAlgorithm algorithm;
+        private Long timeStepMillis;
+        private int digits = 6;
+        private TOTPClock clock = TOTPClock.system();
+        private Executor executor = ForkJoinPool.commonPool();
+        private int bufferCapacity = Flow.defaultBufferSize();
+
+        private Builder() {
+        }
+
+        /**
+         * Publish the codes of the specified service
+         * <p>
+         * The codes of a {@link DefaultTOTPService} are computed for the exact step of the event, no matter which
+         * clock the service uses. Other implementations only offer {@link TOTPService#generateTOTP()}, which reads the
+         * clock of the service, so this publisher has to be built with the same clock as such a service. Otherwise an
+         * event might pair a step with the code of the step before it.
+         *
+         * @param service The service, has to use the same time step as this publisher
+         * @param key     The id the events of the service are published with
+         */
+        @Contract("_, _ -> this")
+        public Builder withService(final TOTPService service, final long key) {
+            this.service = service;
+            this.serviceKey = key;
+            return this;
+        }
+
+        /**
+         * Publish the codes of the specified accounts of a secret store
+         * <p>
+         * The codes are computed with the default generator unless {@link Builder#withGenerator(TOTPGenerator)} is
+         * used.
+         */
+        @Contract("_, _, _ -> this")
+        public Builder withAccounts(final SecretStore store, final HMACAlgorithm algorithm, final long... userIds) {
+            this.store = store;
+            this.algorithm = algorithm;
+            this.accounts = userIds;
+            return this;
+        }
+
+        /**
+         * Use the specified generator for the accounts of a secret store
+         */
+        @Contract("_ -> this")
+        public Builder withGenerator(final TOTPGenerator generator) {
+            this.generator = generator;
+            return this;
+        }
+
+        /**
+         * Use the specified digits for the accounts of a secret store, 6 by default
+         */
+        @Contract("_ -> this")
+        public Builder withDigits(final int digits) {
+            this.digits = digits;
+            return this;
+        }
+
+        /**
+         * Use the specified time step
+         */
+        @Contract("_, _ -> this")
+        public Builder withTimeStep(final long timeStepValue, final TimeUnit timeStepUnit) {
+            return this.withTimeStep(timeStepUnit.toMillis(timeStepValue));
+        }
+
+        /**
+         * Use the specified time step
+         */
+        @Contract("_ -> this")
+        public Builder withTimeStep(final long timeStepMillis) {
+            this.timeStepMillis = timeStepMillis;
+            return this;
+        }
+
+        /**
+         * Use the specified clock
+         * <p>
+         * The system clock is used by default.
+         */
+        @Contract("_ -> this")
+        public Builder withClock(final TOTPClock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Use the specified executor to deliver events, the common pool by default
+         */
+        @Contract("_ -> this")
+        public Builder withExecutor(final Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Use the specified buffer capacity per subscriber, {@link Flow#defaultBufferSize()} by default
+         */
+        @Contract("_ -> this")
+        public Builder withBufferCapacity(final int bufferCapacity) {
+            this.bufferCapacity = bufferCapacity;
+            return this;
+        }
+
+        /**
+         * Build a new {@link TOTPCodePublisher} with the configured parameters and start publishing
+         */
+        @Contract(value = "-> new", pure = true)
+        public TOTPCodePublisher build() {
+            this.verifyState();
+            return new TOTPCodePublisher(
+                    this.service != null ? this.serviceSource() : this.accountSource(),
+                    this.timeStepMillis,
+                    this.clock,
+                    this.executor,
+                    this.bufferCapacity
+            );
+        }
+
+        private Source serviceSource() {
+            final long key = this.serviceKey;
+            if (this.service instanceof DefaultTOTPService defaultService) {
+                return (step, timeStepMillis, publisher) -> publisher.offer(new CodeEvent(key, step, defaultService.generateTOTPAtStep(step)), null);
+            }
+            final TOTPService service = this.service;
+            return (step, timeStepMillis, publisher) -> publisher.offer(new CodeEvent(key, step, service.generateTOTP()), null);
+        }
+
+        private Source accountSource() {
+            final TOTPGenerator generator = this.generator == null ? new DefaultTOTPGenerator() : this.generator;
+            final SecretStore store = this.store;
+            final HMACAlgorithm algorithm = this.algorithm;
+            final int digits = this.digits;
+            final long[] accounts = this.accounts.clone();
+            final byte[] secret = new byte[store.secretLength()];
+            // Only ever called by the timer thread, so the secret buffer can be shared between ticks
+            return (step, timeStepMillis, publisher) -> {
+                try {
+                    for (final long userId : accounts) {
+                        if (store.read(userId, secret, 0)) {
+                            final int code = generator.generateTOTP(secret, step * timeStepMillis, timeStepMillis, digits, algorithm);
+                            publisher.offer(new CodeEvent(userId, step, code), null);
+                        }
+                    }
+                } finally {
+                    Arrays.fill(secret, (byte) 0);
+                }
+            };
+        }
+
+        /**
+         * Performs sanity checks
+         */
+        private void verifyState() {
+            if (this.service == null && this.store == null) {
+                this.panicFieldNotSet("service", "withService(TOTPService, long)", "withAccounts(SecretStore, HMACAlgorithm, long...)");
+            }
+            if (this.service != null && this.store != null) {
+                this.panicFieldInvalid("service", "Must not be combined with a secret store");
+            }
+            if (this.timeStepMillis == null) {
+                this.panicFieldNotSet("timeStepMillis", "withTimeStep(long, TimeUnit)", "withTimeStep(long)");
+            }
+            if (this.service instanceof DefaultTOTPService defaultService && defaultService.profile().timeStepMillis() != this.timeStepMillis) {
+                this.panicFieldInvalid("timeStepMillis", "Must match the time step of the service");
+            }
+            if (this.clock == null) {
+                this.panicFieldNotSet("clock", "withClock(TOTPClock)");
+            }
+            if (this.executor == null) {
+                this.panicFieldNotSet("executor", "withExecutor(Executor)");
+            }
+            if (this.store != null && (this.algorithm == null || this.accounts == null)) {
+                this.panicFieldInvalid("accounts", "Algorithm and user ids must not be null");
+            }
+            if (this.timeStepMillis < 1) {
+                this.panicFieldInvalid("timeStepMillis", "Must be >= 1");
+            }
+            if (this.digits < 6 || this.digits > 10) {
+                this.panicFieldInvalid("digits", "Must be in interval [6,10]");
+            }
+            if (this.bufferCapacity < 1) {
+                this.panicFieldInvalid("bufferCapacity", "Must be >= 1");
+            }
+        }
+
+        private void panicFieldInvalid(final String field, final String problem) {
+            throw new IllegalStateException("Unable to build code publisher: Field %s is invalid: %s".formatted(field, problem));
+        }
+
+        private void panicFieldNotSet(final String field, final String... methods) {
+            throw new IllegalStateException("Unable to build code publisher: Field %s is not set. Call one of [%s] before calling build()."
+                    .formatted(field, String.join(", ", methods)));
+        }
+
+    }
+
+}
@@ -0,0 +1,428 @@
+package dev.cerus.faktor.service;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.generator.DefaultTOTPGenerator;
+import dev.cerus.faktor.generator.TOTPGenerator;
+import dev.cerus.faktor.service.clock.TOTPClock;
+import dev.cerus.faktor.service.store.SecretStore;
+import dev.cerus.faktor.util.LongLongHashMap;
+import java.io.Closeable;
+import java.lang.invoke.VarHandle;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.jetbrains.annotations.Contract;
+
+/**
+ * Precomputes the TOTPs of a fixed set of accounts before their time step begins
+ * <p>
+ * A background thread computes the codes of the next step while the current step is running. The work is spread
+ * evenly over the first three quarters of the step, so there is no load spike at the step boundary. Codes are kept in
+ * two primitive arrays, one for the current step and one that is being filled for the next step. Once a step has
+ * ended its array is reused for the step after the next one.
+ * <p>
+ * {@link TOTPPrecomputer#generateTOTP(long)} serves registered accounts from the arrays with a few volatile reads.
+ * Codes of unregistered accounts, codes that are not ready yet (e.g. right after startup) and codes of steps the
+ * precomputer has fallen behind on are computed on the calling thread.
+ * <p>
+ * Precomputed codes are not recomputed when the store changes. After a secret was replaced or removed, the codes of
+ * the old secret are served for the rest of the current step and for the next step if it has been precomputed
+ * already, so for up to two steps.
+ */
+public class TOTPPrecomputer implements Closeable {
+
+    private static final long NO_STEP = Long.MIN_VALUE;
+    private static final int NO_CODE = -1;
+    private static final int SLICE_SIZE = 256;
+    private static final long MAX_PARK_MILLIS = 1000;
+
+    private final TOTPGenerator generator;
+    private final SecretStore store;
+    private final HMACAlgorithm algorithm;
+    private final long timeStepMillis;
+    private final int digits;
+    private final TOTPClock clock;
+    private final long[] accounts;
+    private final LongLongHashMap indices;
+    private final CodeBuffer[] buffers = new CodeBuffer[2];
+    private final ThreadLocal<byte[]> secretBuffer;
+    private final Thread worker;
+    private volatile boolean closed;
+
+    private TOTPPrecomputer(final TOTPGenerator generator,
+                            final SecretStore store,
+                            final HMACAlgorithm algorithm,
+                            final long timeStepMillis,
+                            final int digits,
+                            final TOTPClock clock,
+                            final long[] accounts) {
+        this.generator = generator;
+        this.store = store;
+        this.algorithm = algorithm;
+        this.timeStepMillis = timeStepMillis;
+        this.digits = digits;
+        this.clock = clock;
+        this.accounts = accounts;
+        this.indices = new LongLongHashMap(accounts.length);
+        for (int i = 0; i < accounts.length; i++) {
+            this.indices.put(accounts[i], i, NO_CODE);
+        }
+        this.buffers[0] = new CodeBuffer(accounts.length);
+        this.buffers[1] = new CodeBuffer(accounts.length);
+        this.secretBuffer = ThreadLocal.withInitial(() -> new byte[store.secretLength()]);
+        this.worker = new Thread(this::run, "faktor-totp-precomputer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Create a new builder for {@link TOTPPrecomputer}
+     *
+     * @return a new builder
+     */
+    @Contract(value = "-> new", pure = true)
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Get the TOTP of the current time step for an account
+     *
+     * @param userId The id of the account
+     *
+     * @return the TOTP
+     *
+     * @throws NoSuchAlgorithmException if the HMAC algorithm can not be initialized
+     * @throws InvalidKeyException      if the secret is invalid
+     * @throws IllegalArgumentException if no secret is stored for the account
+     */
+    public int generateTOTP(final long userId) throws NoSuchAlgorithmException, InvalidKeyException {
+        final long step = this.clock.currentStep(this.timeStepMillis);
+        final long index = this.indices.get(userId, NO_CODE);
+        if (index != NO_CODE) {
+            for (final CodeBuffer buffer : this.buffers) {
+                final int code = buffer.read(step, (int) index);
+                if (code != NO_CODE) {
+                    return code;
+                }
+            }
+        }
+        final int code = this.compute(userId, step);
+        if (code == NO_CODE) {
+            throw new IllegalArgumentException("No secret stored for user " + userId);
+        }
+        return code;
+    }
+
+    /**
+     * Check if the codes of a step have been precomputed
+     *
+     * @param step The time step index
+     *
+     * @return whether the codes of the step are served from the buffers
+     */
+    boolean isPrecomputed(final long step) {
+        return this.buffers[(int) (step & 1)].step == step;
+    }
+
+    /**
+     * Stop the background thread
+     * <p>
+     * Precomputed codes are not updated after that, every call computes its code.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.worker.interrupt();
+    }
+
+    private void run() {
+        long lastFilled = NO_STEP;
+        while (!this.closed) {
+            final long step = this.clock.currentStep(this.timeStepMillis);
+            try {
+                if (lastFilled < step) {
+                    // Startup or the worker fell behind, the current step is needed right away
+                    this.fill(step, 0);
+                }
+                this.fill(step + 1, this.timeStepMillis * 3 / 4);
+                lastFilled = step + 1;
+            } catch (final NoSuchAlgorithmException | InvalidKeyException | RuntimeException e) {
+                // Callers compute their codes until the next step, where they will see the same problem
+                lastFilled = NO_STEP;
+            }
+            if (!this.sleepUntil((step + 1) * this.timeStepMillis)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Compute the codes of a step into the buffer that does not hold the current codes
+     *
+     * @param step         The step to compute the codes for
+     * @param spreadMillis The duration from the start of the current step the work should be spread over
+     */
+    private void fill(final long step, final long spreadMillis) throws NoSuchAlgorithmException, InvalidKeyException {
+        final CodeBuffer buffer = this.buffers[(int) (step & 1)];
+        if (buffer.step == step) {
+            return;
+        }
+        buffer.invalidate();
+        final long spreadStart = (step - 1) * this.timeStepMillis;
+        for (int from = 0; from < this.accounts.length && !this.closed; from += SLICE_SIZE) {
+            final int to = Math.min(this.accounts.length, from + SLICE_SIZE);
+            for (int i = from; i < to; i++) {
+                buffer.codes[i] = this.compute(this.accounts[i], step);
+            }
+            if (spreadMillis > 0 && !this.sleepUntil(spreadStart + spreadMillis * to / this.accounts.length)) {
+                return;
+            }
+        }
+        buffer.publish(step);
+    }
+
+    private int compute(final long userId, final long step) throws NoSuchAlgorithmException, InvalidKeyException {
+        final byte[] secret = this.secretBuffer.get();
+        if (!this.store.read(userId, secret, 0)) {
+            return NO_CODE;
+        }
+        try {
+            return this.generator.generateTOTP(secret, step * this.timeStepMillis, this.timeStepMillis, this.digits, this.algorithm);
+        } finally {
+            Arrays.fill(secret, (byte) 0);
+        }
+    }
+
+    /**
+     * Sleep until the clock has reached a point in time
+     * <p>
+     * The clock is checked at least once per second, it might jump or be controlled manually.
+     *
+     * @return false if the precomputer was closed
+     */
+    private boolean sleepUntil(final long millis) {
+        long remaining;
+        while (!this.closed && (remaining = millis - this.clock.currentTimeMillis()) > 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.min(remaining, MAX_PARK_MILLIS)));
+        }
+        return !this.closed;
+    }
+
+    /**
+     * The codes of all accounts for one step
+     * <p>
+     * The step works like a sequence lock: it is cleared before the codes are overwritten and set once they are
+     * complete. Readers check it before and after reading a code, so they never return a code of the wrong step.
+     */
+    private static final class CodeBuffer {
+
+        private final int[] codes;
+        private volatile long step = NO_STEP;
+
+        private CodeBuffer(final int size) {
+            this.codes = new int[size];
+        }
+
+        private int read(final long step, final int index) {
+            if (this.step != step) {
+                return NO_CODE;
+            }
+            final int code = this.codes[index];
+            VarHandle.loadLoadFence();
+            return this.step == step ? code : NO_CODE;
+        }
+
+        private void invalidate() {
+            this.step = NO_STEP;
+            VarHandle.storeStoreFence();
+        }
+
+        private void publish(final long step) {
+            this.step = step;
+        }
+
+    }
+
+    /**
+     * Builder for {@link TOTPPrecomputer}
+     */
+    public static class Builder {
+
+        private TOTPGenerator generator;
+        private SecretStore store;
+        private HMACAlgorithm algorithm;
+        private Long timeStepMillis;
+        private Integer digits;
+        private long[] accounts;
+        private TOTPClock clock = TOTPClock.system();
+
+        private Builder() {
+        }
+
+        /**
+         * Fill generator and digits with default values
+         */
+        @Contract("-> this")
+        public Builder withDefaults() {
+            return this.withDefaultGenerator()
+                    .withDefaultDigits();
+        }
+
+        /**
+         * Use the default TOTP generator
+         * <p>
+         * See also {@link Builder#withGenerator(TOTPGenerator)}
+         */
+        @Contract("-> this")
+        public Builder withDefaultGenerator() {
+            return this.withGenerator(new DefaultTOTPGenerator());
+        }
+
+        /**
+         * Use the specified generator
+         */
+        @Contract("_ -> this")
+        public Builder withGenerator(final TOTPGenerator generator) {
+            this.generator = generator;
+            return this;
+        }
+
+        /**
+         * Use the specified secret store
+         */
+        @Contract("_ -> this")
+        public Builder withSecretStore(final SecretStore store) {
+            this.store = store;
+            return this;
+        }
+
+        /**
+         * Use the specified HMAC algorithm
+         */
+        @Contract("_ -> this")
+        public Builder withAlgorithm(final HMACAlgorithm algorithm) {
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        /**
+         * Use the specified time step
+         */
+        @Contract("_, _ -> this")
+        public Builder withTimeStep(final long timeStepValue, final TimeUnit timeStepUnit) {
+            return this.withTimeStep(timeStepUnit.toMillis(timeStepValue));
+        }
+
+        /**
+         * Use the specified time step
+         */
+        @Contract("_ -> this")
+        public Builder withTimeStep(final long timeStepMillis) {
+            this.timeStepMillis = timeStepMillis;
+            return this;
+        }
+
+        /**
+         * Use the default digits
+         * <p>
+         * See also {@link Builder#withDigits(int)}
+         */
+        @Contract("-> this")
+        public Builder withDefaultDigits() {
+            return this.withDigits(6);
+        }
+
+        /**
+         * Use the specified digits
+         */
+        @Contract("_ -> this")
+        public Builder withDigits(final int digits) {
+            this.digits = digits;
+            return this;
+        }
+
+        /**
+         * Precompute the codes of the specified accounts
+         */
+        @Contract("_ -> this")
+        public Builder withAccounts(final long... userIds) {
+            this.accounts = userIds;
+            return this;
+        }
+
+        /**
+         * Use the specified clock
+         * <p>
+         * The system clock is used by default.
+         */
+        @Contract("_ -> this")
+        public Builder withClock(final TOTPClock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Build a new {@link TOTPPrecomputer} with the configured parameters and start its background thread
+         */
+        @Contract(value = "-> new", pure = true)
+        public TOTPPrecomputer build() {
+            this.verifyState();
+            return new TOTPPrecomputer(
+                    this.generator,
+                    this.store,
+                    this.algorithm,
+                    this.timeStepMillis,
+                    this.digits,
+                    this.clock,
+                    Arrays.stream(this.accounts).distinct().toArray()
+            );
+        }
+
+        /**
+         * Performs sanity checks
+         */
+        private void verifyState() {
+            if (this.generator == null) {
+                this.panicFieldNotSet("generator", "withDefaultGenerator()", "withGenerator(TOTPGenerator)");
+            }
+            if (this.store == null) {
+                this.panicFieldNotSet("store", "withSecretStore(SecretStore)");
+            }
+            if (this.algorithm == null) {
+                this.panicFieldNotSet("algorithm", "withAlgorithm(HMACAlgorithm)");
+            }
+            if (this.timeStepMillis == null) {
+                this.panicFieldNotSet("timeStepMillis", "withTimeStep(long, TimeUnit)", "withTimeStep(long)");
+            }
+            if (this.digits == null) {
+                this.panicFieldNotSet("digits", "withDefaultDigits()", "withDigits(int)");
+            }
+            if (this.accounts == null) {
+                this.panicFieldNotSet("accounts", "withAccounts(long...)");
+            }
+            if (this.clock == null) {
+                this.panicFieldNotSet("clock", "withClock(TOTPClock)");
+            }
+            if (this.digits < 6 || this.digits > 10) {
+                this.panicFieldInvalid("digits", "Must be in interval [6,10]");
+            }
+            if (this.timeStepMillis < 1) {
+                this.panicFieldInvalid("timeStepMillis", "Must be >= 1");
+            }
+        }
+
+        private void panicFieldInvalid(final String field, final String problem) {
+            throw new IllegalStateException("Unable to build TOTP-Precomputer: Field %s is invalid: %s".formatted(field, problem));
+        }
+
+        private void panicFieldNotSet(final String field, final String... methods) {
+            throw new IllegalStateException("Unable to build TOTP-Precomputer: Field %s is not set. Call one of [%s] before calling build()."
+                    .formatted(field, String.join(", ", methods)));
+        }
+
+    }
+
+}
@@ -0,0 +1,76 @@
+package dev.cerus.faktor.service;
+
+import dev.cerus.faktor.metrics.OTPMetrics;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The result of a TOTP validation, see {@link DefaultTOTPService#validate(int)}
+ * <p>
+ * Accepted results hold the offset of the matching step. Offsets are counted backwards from the current step, so
+ * codes of older steps have positive offsets and codes of forward steps have negative offsets.
+ */
+public final class ValidationResult {
+
+    static final ValidationResult REJECTED = new ValidationResult(OTPMetrics.ValidationOutcome.REJECTED, 0);
+    static final ValidationResult REPLAYED = new ValidationResult(OTPMetrics.ValidationOutcome.REPLAYED, 0);
+    static final ValidationResult THROTTLED = new ValidationResult(OTPMetrics.ValidationOutcome.THROTTLED, 0);
+
+    private final OTPMetrics.ValidationOutcome outcome;
+    private final int matchedOffset;
+
+    private ValidationResult(final OTPMetrics.ValidationOutcome outcome, final int matchedOffset) {
+        this.outcome = outcome;
+        this.matchedOffset = matchedOffset;
+    }
+
+    /**
+     * Create an accepted result
+     *
+     * @param matchedOffset The offset of the matching step
+     *
+     * @return the new result
+     */
+    static ValidationResult accepted(final int matchedOffset) {
+        return new ValidationResult(OTPMetrics.ValidationOutcome.ACCEPTED, matchedOffset);
+    }
+
+    /**
+     * Check if the code was accepted
+     *
+     * @return whether the code was accepted
+     */
+    public boolean isAccepted() {
+        return this.outcome == OTPMetrics.ValidationOutcome.ACCEPTED;
+    }
+
+    /**
+     * Get the outcome
+     *
+     * @return the outcome of the validation
+     */
+    public @NotNull OTPMetrics.ValidationOutcome outcome() {
+        return this.outcome;
+    }
+
+    /**
+     * Get the offset of the matching step
+     *
+     * @return the backwards offset of the step whose code was accepted, negative for forward steps
+     *
+     * @throws IllegalStateException if the code was not accepted
+     */
+    public int matchedOffset() {
+        if (!this.isAccepted()) {
+            throw new IllegalStateException("Code was not accepted: " + this.outcome);
+        }
+        return this.matchedOffset;
+    }
+
+    @Override
+    public String toString() {
+        return this.isAccepted()
+                ? "ValidationResult{outcome=" + this.outcome + ", matchedOffset=" + this.matchedOffset + "}"
+                : "ValidationResult{outcome=" + this.outcome + "}";
+    }
+
+}
@@ -0,0 +1,82 @@
+package dev.cerus.faktor.service.clock;
+
+import java.io.Closeable;
+
+/**
+ * Clock that caches the current time step index
+ * <p>
+ * A ticker thread updates the step when a step boundary is reached, so {@link CoarseTOTPClock#currentStep(long)} is a
+ * single volatile read for the time step of this clock. The ticker wakes up at least once per second to notice jumps of
+ * the system clock. The cached step may lag behind the system clock by the wake up latency of the ticker, which is
+ * indistinguishable from a few millis of clock skew between client and server.
+ * <p>
+ * {@link CoarseTOTPClock#currentTimeMillis()} and the steps of other time steps are read from the system clock.
+ * Closing the clock stops the ticker, the cached step is not updated after that.
+ */
+public class CoarseTOTPClock implements TOTPClock, Closeable {
+
+    private static final long MAX_SLEEP_MILLIS = 1000;
+
+    private final long timeStepMillis;
+    private final Thread ticker;
+    private volatile long step;
+    private volatile boolean closed;
+
+    /**
+     * Create a new clock and start its ticker
+     *
+     * @param timeStepMillis The time step of the services that use this clock
+     */
+    public CoarseTOTPClock(final long timeStepMillis) {
+        if (timeStepMillis < 1) {
+            throw new IllegalArgumentException("Time step must be >= 1");
+        }
+        this.timeStepMillis = timeStepMillis;
+        this.step = System.currentTimeMillis() / timeStepMillis;
+        this.ticker = new Thread(this::tick, "faktor-coarse-clock");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    private void tick() {
+        while (!this.closed) {
+            final long now = System.currentTimeMillis();
+            final long step = now / this.timeStepMillis;
+            this.step = step;
+            try {
+                Thread.sleep(Math.max(1, Math.min(MAX_SLEEP_MILLIS, (step + 1) * this.timeStepMillis - now)));
+            } catch (final InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public long currentStep(final long timeStepMillis) {
+        return timeStepMillis == this.timeStepMillis ? this.step : TOTPClock.super.currentStep(timeStepMillis);
+    }
+
+    /**
+     * Get the time step this clock caches the step index for
+     *
+     * @return the time step in millis
+     */
+    public long timeStepMillis() {
+        return this.timeStepMillis;
+    }
+
+    /**
+     * Stop the ticker
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.ticker.interrupt();
+    }
+
+}
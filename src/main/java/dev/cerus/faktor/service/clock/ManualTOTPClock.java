@@ -0,0 +1,48 @@
+package dev.cerus.faktor.service.clock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clock that only moves when told to, for deterministic tests
+ */
+public class ManualTOTPClock implements TOTPClock {
+
+    private final AtomicLong millis;
+
+    /**
+     * Create a new clock
+     *
+     * @param startMillis The initial time in millis since the epoch
+     */
+    public ManualTOTPClock(final long startMillis) {
+        this.millis = new AtomicLong(startMillis);
+    }
+
+    /**
+     * Set the time
+     *
+     * @param millis The new time in millis since the epoch
+     */
+    public void set(final long millis) {
+        this.millis.set(millis);
+    }
+
+    /**
+     * Move the time forward, or backward for negative values
+     *
+     * @param value The amount of time
+     * @param unit  The unit of the amount
+     *
+     * @return the new time in millis since the epoch
+     */
+    public long advance(final long value, final TimeUnit unit) {
+        return this.millis.addAndGet(unit.toMillis(value));
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return this.millis.get();
+    }
+
+}
@@ -0,0 +1,18 @@
+package dev.cerus.faktor.service.clock;
+
+/**
+ * Reads the system clock on every call
+ */
+final class SystemTOTPClock implements TOTPClock {
+
+    static final SystemTOTPClock INSTANCE = new SystemTOTPClock();
+
+    private SystemTOTPClock() {
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+}
@@ -0,0 +1,40 @@
+package dev.cerus.faktor.service.clock;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Time source of the TOTP services
+ * <p>
+ * Services take one snapshot per call and derive everything else from it, so a single validation never straddles a
+ * step boundary. Implementations have to be thread safe.
+ */
+public interface TOTPClock {
+
+    /**
+     * Get the clock that reads {@link System#currentTimeMillis()}
+     *
+     * @return the system clock
+     */
+    static @NotNull TOTPClock system() {
+        return SystemTOTPClock.INSTANCE;
+    }
+
+    /**
+     * Get the current time
+     *
+     * @return the current time in millis since the epoch
+     */
+    long currentTimeMillis();
+
+    /**
+     * Get the index of the current time step
+     *
+     * @param timeStepMillis The time step
+     *
+     * @return the current time step index
+     */
+    default long currentStep(final long timeStepMillis) {
+        return this.currentTimeMillis() / timeStepMillis;
+    }
+
+}
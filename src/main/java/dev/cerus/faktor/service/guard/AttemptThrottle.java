@@ -0,0 +1,392 @@
+package dev.cerus.faktor.service.guard;
+
+import dev.cerus.faktor.util.LongLongHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import org.jetbrains.annotations.Contract;
+
+/**
+ * Locks users out after repeated failed validation attempts
+ * <p>
+ * Every user gets a number of free attempts. After that each failure locks the user out for an exponentially growing
+ * duration, starting at the base lockout and capped at the max lockout. Services acquire an attempt with
+ * {@link AttemptThrottle#tryAcquireAttempt(long, long)} before computing any HMAC, so a rejected attempt of a locked
+ * out user only costs a map lookup. A successful validation resets the failures of a user, and failures are forgotten
+ * on their own once no failure happened for the reset duration.
+ * <p>
+ * The failure count and the time of the last failure are packed into one long per user, and users are spread over
+ * lock stripes that each hold a {@link LongLongHashMap}. The amount of tracked users is bounded. When a stripe is full,
+ * forgotten entries are purged, but entries are never dropped before they are forgotten, since that would hand out
+ * fresh free attempts. If a full stripe has nothing to purge, the throttle fails closed: every user of that stripe
+ * without an entry counts as locked out until the next purge, which is tried again after the base lockout.
+ * <p>
+ * This class is thread safe. One throttle can be shared by several services.
+ */
+public class AttemptThrottle {
+
+    private static final long NONE = -1;
+    private static final int TIME_BITS = 48;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+    private static final long MAX_FAILURES = (1L << (63 - TIME_BITS)) - 1;
+
+    private final int freeAttempts;
+    private final long baseLockoutMillis;
+    private final long maxLockoutMillis;
+    private final long resetAfterMillis;
+    private final int entriesPerStripe;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    private AttemptThrottle(final int freeAttempts,
+                            final long baseLockoutMillis,
+                            final long maxLockoutMillis,
+                            final long resetAfterMillis,
+                            final int maxEntries,
+                            final int stripes) {
+        this.freeAttempts = freeAttempts;
+        this.baseLockoutMillis = baseLockoutMillis;
+        this.maxLockoutMillis = maxLockoutMillis;
+        this.resetAfterMillis = resetAfterMillis;
+        this.stripes = new Stripe[stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1];
+        this.stripeMask = this.stripes.length - 1;
+        this.entriesPerStripe = Math.max(1, maxEntries / this.stripes.length);
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Create a new builder for {@link AttemptThrottle}
+     *
+     * @return a new builder
+     */
+    @Contract(value = "-> new", pure = true)
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private static int mix(final long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static long failures(final long entry) {
+        return entry >>> TIME_BITS;
+    }
+
+    private static long lastFailureMillis(final long entry) {
+        return entry & TIME_MASK;
+    }
+
+    /**
+     * Check if a user is locked out
+     *
+     * @param userId    The id of the user
+     * @param nowMillis The current time in millis
+     *
+     * @return whether the user is locked out
+     */
+    public boolean isLockedOut(final long userId, final long nowMillis) {
+        return this.remainingLockoutMillis(userId, nowMillis) > 0;
+    }
+
+    /**
+     * Get the remaining lockout duration of a user
+     *
+     * @param userId    The id of the user
+     * @param nowMillis The current time in millis
+     *
+     * @return the remaining lockout in millis, zero if the user is not locked out
+     */
+    public long remainingLockoutMillis(final long userId, final long nowMillis) {
+        final Stripe stripe = this.stripe(userId);
+        final long stamp = stripe.lock.readLock();
+        try {
+            final long entry = stripe.entries.get(userId, NONE);
+            if (entry == NONE) {
+                // Users of a full stripe can not be tracked, so they are locked out until the next purge
+                return stripe.entries.size() >= this.entriesPerStripe ? Math.max(0, stripe.nextPurgeMillis - nowMillis) : 0;
+            }
+            return Math.max(0, this.lockedUntil(entry) - nowMillis);
+        } finally {
+            stripe.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Acquire a validation attempt
+     * <p>
+     * The attempt is counted as a failure right away, so concurrent attempts can not all pass the lockout check before
+     * any of them is recorded. Call {@link AttemptThrottle#recordSuccess(long)} if the validation succeeds, a failed
+     * validation needs no further call.
+     *
+     * @param userId    The id of the user
+     * @param nowMillis The current time in millis
+     *
+     * @return whether the attempt was acquired, false if the user is locked out
+     */
+    public boolean tryAcquireAttempt(final long userId, final long nowMillis) {
+        final Stripe stripe = this.stripe(userId);
+        final long stamp = stripe.lock.writeLock();
+        try {
+            final long entry = stripe.entries.get(userId, NONE);
+            if (entry != NONE && this.lockedUntil(entry) > nowMillis) {
+                return false;
+            }
+            return this.countFailure(stripe, userId, nowMillis);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Record a failed validation attempt
+     * <p>
+     * If the stripe of the user is full and nothing can be purged, the failure is not recorded and the users of the
+     * stripe without an entry are locked out instead.
+     *
+     * @param userId    The id of the user
+     * @param nowMillis The current time in millis
+     */
+    public void recordFailure(final long userId, final long nowMillis) {
+        final Stripe stripe = this.stripe(userId);
+        final long stamp = stripe.lock.writeLock();
+        try {
+            this.countFailure(stripe, userId, nowMillis);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Record a successful validation attempt, this resets the failures of the user
+     *
+     * @param userId The id of the user
+     */
+    public void recordSuccess(final long userId) {
+        final Stripe stripe = this.stripe(userId);
+        long stamp = stripe.lock.readLock();
+        try {
+            // Most users have no failures, so the write lock is only taken if there is something to remove
+            if (!stripe.entries.containsKey(userId)) {
+                return;
+            }
+            stamp = stripe.lock.tryConvertToWriteLock(stamp);
+            if (stamp == 0L) {
+                stamp = stripe.lock.writeLock();
+            }
+            stripe.entries.remove(userId, NONE);
+        } finally {
+            stripe.lock.unlock(stamp);
+        }
+    }
+
+    /**
+     * Get the amount of users with recorded failures
+     * <p>
+     * This includes forgotten entries that have not been purged yet.
+     *
+     * @return the amount of entries
+     */
+    public long size() {
+        long size = 0;
+        for (final Stripe stripe : this.stripes) {
+            final long stamp = stripe.lock.readLock();
+            try {
+                size += stripe.entries.size();
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Count a failure of a user
+     * <p>
+     * Has to be called while holding the write lock.
+     *
+     * @return whether the failure was counted, false if the stripe is full
+     */
+    private boolean countFailure(final Stripe stripe, final long userId, final long nowMillis) {
+        final long entry = stripe.entries.get(userId, NONE);
+        long failures = 0;
+        if (entry != NONE) {
+            failures = this.isForgotten(entry, nowMillis) ? 0 : failures(entry);
+        } else if (stripe.entries.size() >= this.entriesPerStripe && !this.makeSpace(stripe, nowMillis)) {
+            return false;
+        }
+        failures = Math.min(MAX_FAILURES, failures + 1);
+        stripe.entries.put(userId, failures << TIME_BITS | nowMillis & TIME_MASK, NONE);
+        return true;
+    }
+
+    private long lockedUntil(final long entry) {
+        final long lockouts = failures(entry) - this.freeAttempts;
+        if (lockouts <= 0) {
+            return 0;
+        }
+        // Doubling beyond the free high bits would overflow, the max lockout is reached long before that
+        final long lockout = lockouts - 1 >= Long.numberOfLeadingZeros(this.baseLockoutMillis) - 1
+                ? this.maxLockoutMillis
+                : Math.min(this.maxLockoutMillis, this.baseLockoutMillis << (lockouts - 1));
+        return lastFailureMillis(entry) + lockout;
+    }
+
+    private boolean isForgotten(final long entry, final long nowMillis) {
+        return nowMillis - lastFailureMillis(entry) >= this.resetAfterMillis;
+    }
+
+    /**
+     * Purge forgotten entries
+     * <p>
+     * Has to be called while holding the write lock. If nothing can be purged, the next purge is delayed by the base
+     * lockout, and until then users of the stripe without an entry are locked out.
+     *
+     * @return whether the stripe has space for another entry
+     */
+    private boolean makeSpace(final Stripe stripe, final long nowMillis) {
+        if (nowMillis < stripe.nextPurgeMillis) {
+            return false;
+        }
+        stripe.entries.removeIf((user, entry) -> this.isForgotten(entry, nowMillis));
+        if (stripe.entries.size() >= this.entriesPerStripe) {
+            // Do not scan the full stripe on every failure
+            stripe.nextPurgeMillis = nowMillis + this.baseLockoutMillis;
+            return false;
+        }
+        return true;
+    }
+
+    private Stripe stripe(final long userId) {
+        return this.stripes[mix(userId) & this.stripeMask];
+    }
+
+    /**
+     * A lock stripe with its own map
+     */
+    private static final class Stripe {
+
+        private final StampedLock lock = new StampedLock();
+        private final LongLongHashMap entries = new LongLongHashMap(16);
+        private long nextPurgeMillis;
+
+    }
+
+    /**
+     * Builder for {@link AttemptThrottle}
+     * <p>
+     * All fields have defaults: 3 free attempts, 1 second base lockout, 15 minutes max lockout, failures are forgotten
+     * after 1 hour and at most 1,000,000 users are tracked.
+     */
+    public static class Builder {
+
+        private int freeAttempts = 3;
+        private long baseLockoutMillis = TimeUnit.SECONDS.toMillis(1);
+        private long maxLockoutMillis = TimeUnit.MINUTES.toMillis(15);
+        private long resetAfterMillis = TimeUnit.HOURS.toMillis(1);
+        private int maxEntries = 1_000_000;
+        private int stripes = 64;
+
+        private Builder() {
+        }
+
+        /**
+         * Use the specified amount of free attempts
+         * <p>
+         * This specifies how many failures are allowed before the first lockout.
+         */
+        @Contract("_ -> this")
+        public Builder withFreeAttempts(final int freeAttempts) {
+            this.freeAttempts = freeAttempts;
+            return this;
+        }
+
+        /**
+         * Use the specified lockout durations
+         * <p>
+         * The first lockout lasts <code>base</code>, every further failure doubles it up to <code>max</code>.
+         */
+        @Contract("_, _, _ -> this")
+        public Builder withLockout(final long base, final long max, final TimeUnit unit) {
+            this.baseLockoutMillis = unit.toMillis(base);
+            this.maxLockoutMillis = unit.toMillis(max);
+            return this;
+        }
+
+        /**
+         * Use the specified reset duration
+         * <p>
+         * Failures of a user are forgotten once no failure happened for this duration.
+         */
+        @Contract("_, _ -> this")
+        public Builder withResetAfter(final long value, final TimeUnit unit) {
+            this.resetAfterMillis = unit.toMillis(value);
+            return this;
+        }
+
+        /**
+         * Use the specified max amount of tracked users
+         */
+        @Contract("_ -> this")
+        public Builder withMaxEntries(final int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * Use the specified amount of lock stripes, rounded up to the next power of two
+         */
+        @Contract("_ -> this")
+        public Builder withStripes(final int stripes) {
+            this.stripes = stripes;
+            return this;
+        }
+
+        /**
+         * Build a new {@link AttemptThrottle} with the configured parameters
+         */
+        @Contract(value = "-> new", pure = true)
+        public AttemptThrottle build() {
+            this.verifyState();
+            return new AttemptThrottle(
+                    this.freeAttempts,
+                    this.baseLockoutMillis,
+                    this.maxLockoutMillis,
+                    this.resetAfterMillis,
+                    this.maxEntries,
+                    this.stripes
+            );
+        }
+
+        /**
+         * Performs sanity checks
+         */
+        private void verifyState() {
+            if (this.freeAttempts < 0) {
+                this.panicFieldInvalid("freeAttempts", "Must be >= 0");
+            }
+            if (this.baseLockoutMillis < 1) {
+                this.panicFieldInvalid("baseLockoutMillis", "Must be >= 1");
+            }
+            if (this.maxLockoutMillis < this.baseLockoutMillis) {
+                this.panicFieldInvalid("maxLockoutMillis", "Must be >= baseLockoutMillis");
+            }
+            if (this.resetAfterMillis <= this.maxLockoutMillis) {
+                this.panicFieldInvalid("resetAfterMillis", "Must be > maxLockoutMillis");
+            }
+            if (this.maxEntries < 1) {
+                this.panicFieldInvalid("maxEntries", "Must be >= 1");
+            }
+            if (this.stripes < 1 || this.stripes > 1 << 16) {
+                this.panicFieldInvalid("stripes", "Must be in interval [1,65536]");
+            }
+        }
+
+        private void panicFieldInvalid(final String field, final String problem) {
+            throw new IllegalStateException("Unable to build attempt throttle: Field %s is invalid: %s".formatted(field, problem));
+        }
+
+    }
+
+}
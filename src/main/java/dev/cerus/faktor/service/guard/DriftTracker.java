@@ -0,0 +1,142 @@
+package dev.cerus.faktor.service.guard;
+
+import dev.cerus.faktor.util.LongLongHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Learns the typical step offset of every user
+ * <p>
+ * The clock of an authenticator app usually drifts by a constant amount, so the codes of a user tend to match the same
+ * step offset over and over again. Services ask the tracker for the expected offset of a user and start searching the
+ * window there, which usually makes the first computed code the matching one. Offsets are counted backwards like the
+ * backwards steps of a service: positive offsets are older steps, negative offsets are forward steps.
+ * <p>
+ * The expected offset is a moving average of the matched offsets, so a single outlier does not move it. It is kept
+ * in fixed point with eight fractional bits, and users are spread over lock stripes that each hold a
+ * {@link LongLongHashMap}. Entries are never evicted on their own, since the drift of a user does not expire. Call
+ * {@link DriftTracker#forget(long)} when a user or their secret is removed.
+ * <p>
+ * This class is thread safe. One tracker can be shared by several services with the same time step.
+ */
+public class DriftTracker {
+
+    private static final long NONE = Long.MIN_VALUE;
+    private static final int DEFAULT_STRIPES = 64;
+    private static final int FRACTION_BITS = 8;
+    // Every new offset moves the average by a quarter of the difference
+    private static final int SMOOTHING_SHIFT = 2;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    /**
+     * Create a new tracker
+     */
+    public DriftTracker() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Create a new tracker
+     *
+     * @param stripes The amount of lock stripes, rounded up to the next power of two
+     */
+    public DriftTracker(final int stripes) {
+        if (stripes < 1 || stripes > 1 << 16) {
+            throw new IllegalArgumentException("Stripes must be in interval [1,65536]");
+        }
+        this.stripes = new Stripe[stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1];
+        this.stripeMask = this.stripes.length - 1;
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    private static int mix(final long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Get the offset at which the next code of a user is expected
+     *
+     * @param userId The id of the user
+     *
+     * @return the rounded average of the matched offsets, zero if nothing was recorded for the user
+     */
+    public int expectedOffset(final long userId) {
+        final Stripe stripe = this.stripe(userId);
+        final long average;
+        final long stamp = stripe.lock.readLock();
+        try {
+            average = stripe.averages.get(userId, NONE);
+        } finally {
+            stripe.lock.unlockRead(stamp);
+        }
+        return average == NONE ? 0 : (int) ((average + (1L << (FRACTION_BITS - 1))) >> FRACTION_BITS);
+    }
+
+    /**
+     * Record the offset of an accepted code
+     *
+     * @param userId        The id of the user
+     * @param matchedOffset The offset of the step that matched, negative for forward steps
+     */
+    public void record(final long userId, final int matchedOffset) {
+        final long offset = (long) matchedOffset << FRACTION_BITS;
+        final Stripe stripe = this.stripe(userId);
+        final long stamp = stripe.lock.writeLock();
+        try {
+            final long average = stripe.averages.get(userId, NONE);
+            // The first offset of a user is taken as it is
+            stripe.averages.put(userId, average == NONE ? offset : average + ((offset - average) >> SMOOTHING_SHIFT), NONE);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Forget the recorded offsets of a user
+     *
+     * @param userId The id of the user
+     */
+    public void forget(final long userId) {
+        final Stripe stripe = this.stripe(userId);
+        final long stamp = stripe.lock.writeLock();
+        try {
+            stripe.averages.remove(userId, NONE);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Get the amount of users with a recorded offset
+     *
+     * @return the amount of entries
+     */
+    public long size() {
+        long size = 0;
+        for (final Stripe stripe : this.stripes) {
+            final long stamp = stripe.lock.readLock();
+            try {
+                size += stripe.averages.size();
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    private Stripe stripe(final long userId) {
+        return this.stripes[mix(userId) & this.stripeMask];
+    }
+
+    private static final class Stripe {
+
+        private final StampedLock lock = new StampedLock();
+        private final LongLongHashMap averages = new LongLongHashMap(16);
+
+    }
+
+}
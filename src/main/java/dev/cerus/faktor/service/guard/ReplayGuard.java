@@ -0,0 +1,274 @@
+package dev.cerus.faktor.service.guard;
+
+import dev.cerus.faktor.util.LongLongHashMap;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Remembers the last accepted time step of every user to reject replayed TOTPs
+ * <p>
+ * A TOTP is valid for the current step and the steps of the backwards and forwards window. Once a code of a step
+ * has been accepted, that step and every older step are used up for the user. Services ask the guard for the first unused step
+ * before computing any HMAC, so a replayed code is rejected without hashing.
+ * <p>
+ * Users are spread over lock stripes, each holding a {@link LongLongHashMap} (user id to step) and a timing wheel
+ * with one bucket per step. Entries are evicted as soon as their step has left the backwards window, so the memory is
+ * bounded by the amount of users that logged in during the window. Stripes are swept lazily when they are accessed,
+ * {@link ReplayGuard#evict(long)} sweeps all of them.
+ * <p>
+ * This class is thread safe. One guard can be shared by several services with the same time step.
+ */
+public class ReplayGuard {
+
+    private static final long NONE = Long.MIN_VALUE;
+    private static final int DEFAULT_STRIPES = 64;
+
+    private final int backwardsSteps;
+    private final int forwardSteps;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    /**
+     * Create a new guard
+     *
+     * @param backwardsSteps The backwards steps of the services that use this guard
+     */
+    public ReplayGuard(final int backwardsSteps) {
+        this(backwardsSteps, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Create a new guard
+     *
+     * @param backwardsSteps The backwards steps of the services that use this guard
+     * @param stripes        The amount of lock stripes, rounded up to the next power of two
+     */
+    public ReplayGuard(final int backwardsSteps, final int stripes) {
+        this(backwardsSteps, 0, stripes);
+    }
+
+    /**
+     * Create a new guard
+     *
+     * @param backwardsSteps The backwards steps of the services that use this guard
+     * @param forwardSteps   The forward steps of the services that use this guard
+     * @param stripes        The amount of lock stripes, rounded up to the next power of two
+     */
+    public ReplayGuard(final int backwardsSteps, final int forwardSteps, final int stripes) {
+        if (backwardsSteps < 0) {
+            throw new IllegalArgumentException("Backwards steps must be >= 0");
+        }
+        if (forwardSteps < 0) {
+            throw new IllegalArgumentException("Forward steps must be >= 0");
+        }
+        if (stripes < 1 || stripes > 1 << 16) {
+            throw new IllegalArgumentException("Stripes must be in interval [1,65536]");
+        }
+        this.backwardsSteps = backwardsSteps;
+        this.forwardSteps = forwardSteps;
+        this.stripes = new Stripe[stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1];
+        this.stripeMask = this.stripes.length - 1;
+        // The wheel has to be larger than the window, otherwise a bucket would hold entries of two expiry steps.
+        // An accepted forward step expires up to forwardSteps steps later than the current one.
+        final int wheelSize = Integer.highestOneBit(backwardsSteps + forwardSteps + 1) << 1;
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe(wheelSize);
+        }
+    }
+
+    private static int mix(final long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Get the backwards steps this guard was created for
+     *
+     * @return the backwards steps
+     */
+    public int backwardsSteps() {
+        return this.backwardsSteps;
+    }
+
+    /**
+     * Get the forward steps this guard was created for
+     *
+     * @return the forward steps
+     */
+    public int forwardSteps() {
+        return this.forwardSteps;
+    }
+
+    /**
+     * Get the oldest step that a user can still use
+     * <p>
+     * This is the oldest step of the backwards window or the step after the last accepted one, whichever is newer.
+     * If the result is greater than <code>currentStep + forwardSteps</code> every code of the window has been used.
+     *
+     * @param userId      The id of the user
+     * @param currentStep The current time step index
+     *
+     * @return the first unused step
+     */
+    public long firstUnusedStep(final long userId, final long currentStep) {
+        final Stripe stripe = this.stripe(userId);
+        final long lastStep;
+        final long stamp = stripe.lock.readLock();
+        try {
+            lastStep = stripe.lastSteps.get(userId, NONE);
+        } finally {
+            stripe.lock.unlockRead(stamp);
+        }
+        final long oldest = currentStep - this.backwardsSteps;
+        return lastStep == NONE || lastStep < oldest ? oldest : lastStep + 1;
+    }
+
+    /**
+     * Record that a code of a step has been accepted
+     * <p>
+     * Fails if the step or a newer one has already been accepted, e.g. by a concurrent login with the same code.
+     * Callers must treat a failed acceptance as an invalid code.
+     *
+     * @param userId      The id of the user
+     * @param step        The step of the accepted code
+     * @param currentStep The current time step index
+     *
+     * @return whether the step was unused and is now recorded
+     */
+    public boolean tryAccept(final long userId, final long step, final long currentStep) {
+        if (step > currentStep + this.forwardSteps || step < currentStep - this.backwardsSteps) {
+            return false;
+        }
+        final Stripe stripe = this.stripe(userId);
+        final long stamp = stripe.lock.writeLock();
+        try {
+            stripe.advance(currentStep, this.backwardsSteps);
+            final long lastStep = stripe.lastSteps.get(userId, NONE);
+            if (lastStep != NONE && lastStep >= step) {
+                return false;
+            }
+            stripe.lastSteps.put(userId, step, NONE);
+            stripe.enqueue(step + this.backwardsSteps + 1, userId);
+            return true;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Evict the entries of all stripes whose step has left the backwards window
+     *
+     * @param currentStep The current time step index
+     */
+    public void evict(final long currentStep) {
+        for (final Stripe stripe : this.stripes) {
+            final long stamp = stripe.lock.writeLock();
+            try {
+                stripe.advance(currentStep, this.backwardsSteps);
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Get the amount of users with a recorded step
+     * <p>
+     * This includes expired entries that have not been evicted yet.
+     *
+     * @return the amount of entries
+     */
+    public long size() {
+        long size = 0;
+        for (final Stripe stripe : this.stripes) {
+            final long stamp = stripe.lock.readLock();
+            try {
+                size += stripe.lastSteps.size();
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    private Stripe stripe(final long userId) {
+        return this.stripes[mix(userId) & this.stripeMask];
+    }
+
+    /**
+     * A lock stripe with its own map and timing wheel
+     * <p>
+     * Bucket <code>step &amp; wheelMask</code> holds the ids of the users whose entry expires at that step. Entries
+     * always expire within the next <code>backwardsSteps + 1</code> steps, so a bucket never holds entries of two
+     * different expiry steps.
+     */
+    private static final class Stripe {
+
+        private static final int MIN_BUCKET_LENGTH = 16;
+
+        private final StampedLock lock = new StampedLock();
+        private final LongLongHashMap lastSteps = new LongLongHashMap(16);
+        private final long[][] buckets;
+        private final int[] bucketSizes;
+        private final int wheelMask;
+        private long wheelStep = NONE;
+
+        private Stripe(final int wheelSize) {
+            this.buckets = new long[wheelSize][MIN_BUCKET_LENGTH];
+            this.bucketSizes = new int[wheelSize];
+            this.wheelMask = wheelSize - 1;
+        }
+
+        /**
+         * Move the wheel to a step and evict everything that expired on the way
+         * <p>
+         * Has to be called while holding the write lock.
+         */
+        private void advance(final long currentStep, final int backwardsSteps) {
+            if (currentStep <= this.wheelStep) {
+                return;
+            }
+            if (this.wheelStep == NONE || currentStep - this.wheelStep >= this.buckets.length) {
+                // Every entry expired during the skipped steps
+                this.lastSteps.clear();
+                for (int i = 0; i < this.buckets.length; i++) {
+                    this.clearBucket(i);
+                }
+            } else {
+                final long expiredBefore = currentStep - backwardsSteps;
+                for (long step = this.wheelStep + 1; step <= currentStep; step++) {
+                    final int bucket = (int) step & this.wheelMask;
+                    final long[] users = this.buckets[bucket];
+                    for (int i = 0; i < this.bucketSizes[bucket]; i++) {
+                        // The user might have a newer step in another bucket
+                        if (this.lastSteps.get(users[i], NONE) < expiredBefore) {
+                            this.lastSteps.remove(users[i], NONE);
+                        }
+                    }
+                    this.clearBucket(bucket);
+                }
+            }
+            this.wheelStep = currentStep;
+        }
+
+        private void enqueue(final long expiryStep, final long userId) {
+            final int bucket = (int) expiryStep & this.wheelMask;
+            final int size = this.bucketSizes[bucket];
+            if (size == this.buckets[bucket].length) {
+                this.buckets[bucket] = Arrays.copyOf(this.buckets[bucket], size * 2);
+            }
+            this.buckets[bucket][size] = userId;
+            this.bucketSizes[bucket] = size + 1;
+        }
+
+        private void clearBucket(final int bucket) {
+            // Release buckets that grew during a burst, keep them if they are still mostly in use
+            if (this.buckets[bucket].length > MIN_BUCKET_LENGTH && this.bucketSizes[bucket] < this.buckets[bucket].length / 4) {
+                this.buckets[bucket] = new long[MIN_BUCKET_LENGTH];
+            }
+            this.bucketSizes[bucket] = 0;
+        }
+
+    }
+
+}
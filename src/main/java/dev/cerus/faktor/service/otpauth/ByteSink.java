@@ -0,0 +1,113 @@
+package dev.cerus.faktor.service.otpauth;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Growable byte array that encoded URIs are written into
+ * <p>
+ * The contents include encoded secrets, so the array is zeroed when it is cleared.
+ */
+final class ByteSink {
+
+    private byte[] array;
+    private int size;
+
+    ByteSink(final int capacity) {
+        this.array = new byte[capacity];
+    }
+
+    void put(final byte b) {
+        if (this.size == this.array.length) {
+            this.grow(1);
+        }
+        this.array[this.size++] = b;
+    }
+
+    void put(final byte[] src) {
+        this.put(src, 0, src.length);
+    }
+
+    void put(final byte[] src, final int offset, final int length) {
+        this.ensure(length);
+        System.arraycopy(src, offset, this.array, this.size, length);
+        this.size += length;
+    }
+
+    void putAscii(final String s) {
+        this.ensure(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            this.array[this.size++] = (byte) s.charAt(i);
+        }
+    }
+
+    void putDecimal(final long value) {
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        this.ensure(digits);
+        long rest = value;
+        for (int i = this.size + digits - 1; i >= this.size; i--) {
+            this.array[i] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        }
+        this.size += digits;
+    }
+
+    /**
+     * Make space for more bytes
+     *
+     * @param length The amount of bytes
+     *
+     * @return the position to write the bytes to, see {@link ByteSink#skip(int)}
+     */
+    int ensure(final int length) {
+        if (this.array.length - this.size < length) {
+            this.grow(length);
+        }
+        return this.size;
+    }
+
+    void skip(final int length) {
+        this.size += length;
+    }
+
+    void truncate(final int size) {
+        Arrays.fill(this.array, size, this.size, (byte) 0);
+        this.size = size;
+    }
+
+    byte[] array() {
+        return this.array;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    void writeTo(final WritableByteChannel channel) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(this.array, 0, this.size);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    void clear() {
+        Arrays.fill(this.array, 0, this.size, (byte) 0);
+        this.size = 0;
+    }
+
+    private void grow(final int length) {
+        final long required = (long) this.size + length;
+        if (required > Integer.MAX_VALUE - 8) {
+            throw new OutOfMemoryError("Required array length too large");
+        }
+        final byte[] grown = Arrays.copyOf(this.array, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(required, this.array.length * 2L)));
+        Arrays.fill(this.array, (byte) 0);
+        this.array = grown;
+    }
+
+}
@@ -0,0 +1,271 @@
+package dev.cerus.faktor.service.otpauth;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.service.secret.Base32;
+import dev.cerus.faktor.service.secret.OTPBase32Secret;
+import dev.cerus.faktor.service.secret.OTPSecret;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Byte-level parser and formatter for <code>otpauth://</code> URIs
+ * <p>
+ * URIs are processed as ASCII bytes in a single pass without regular expressions. Only the label and the issuer are
+ * turned into strings, the secret is decoded from the input bytes.
+ */
+final class OTPAuthCodec {
+
+    private static final byte[] SCHEME = "otpauth://".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final int DEFAULT_DIGITS = 6;
+    private static final long DEFAULT_PERIOD = 30;
+
+    private OTPAuthCodec() {
+    }
+
+    /**
+     * Parse a URI
+     *
+     * @param src  The buffer that holds the URI
+     * @param from The position of the URI
+     * @param to   The end of the URI, exclusive
+     *
+     * @return the parsed entry
+     *
+     * @throws IllegalArgumentException if the URI is malformed
+     */
+    static OTPAuthEntry parse(final byte[] src, final int from, final int to) {
+        if (to - from < SCHEME.length || !equalsIgnoreCase(src, from, from + SCHEME.length, SCHEME)) {
+            throw malformed("Not an otpauth URI");
+        }
+        final int typeFrom = from + SCHEME.length;
+        final int slash = indexOf(src, typeFrom, to, '/');
+        if (slash < 0) {
+            throw malformed("Missing label");
+        }
+        final OTPAuthEntry.Type type;
+        if (equalsIgnoreCase(src, typeFrom, slash, "totp")) {
+            type = OTPAuthEntry.Type.TOTP;
+        } else if (equalsIgnoreCase(src, typeFrom, slash, "hotp")) {
+            type = OTPAuthEntry.Type.HOTP;
+        } else {
+            throw malformed("Unknown type " + ascii(src, typeFrom, slash));
+        }
+        int query = indexOf(src, slash + 1, to, '?');
+        if (query < 0) {
+            query = to;
+        }
+        final String label = percentDecode(src, slash + 1, query);
+
+        int secretFrom = -1;
+        int secretTo = -1;
+        String issuer = null;
+        HMACAlgorithm algorithm = HMACAlgorithm.SHA1;
+        int digits = DEFAULT_DIGITS;
+        long period = DEFAULT_PERIOD;
+        long counter = -1;
+        for (int pos = query + 1; pos < to; ) {
+            int end = indexOf(src, pos, to, '&');
+            if (end < 0) {
+                end = to;
+            }
+            final int eq = indexOf(src, pos, end, '=');
+            if (eq >= 0) {
+                final int value = eq + 1;
+                if (equalsIgnoreCase(src, pos, eq, "secret")) {
+                    secretFrom = value;
+                    secretTo = end;
+                } else if (equalsIgnoreCase(src, pos, eq, "issuer")) {
+                    issuer = percentDecode(src, value, end);
+                } else if (equalsIgnoreCase(src, pos, eq, "algorithm")) {
+                    algorithm = parseAlgorithm(src, value, end);
+                } else if (equalsIgnoreCase(src, pos, eq, "digits")) {
+                    digits = (int) parseDecimal(src, value, end, 10);
+                } else if (equalsIgnoreCase(src, pos, eq, "period")) {
+                    period = parseDecimal(src, value, end, Long.MAX_VALUE);
+                } else if (equalsIgnoreCase(src, pos, eq, "counter")) {
+                    counter = parseDecimal(src, value, end, Long.MAX_VALUE);
+                }
+            }
+            pos = end + 1;
+        }
+        if (secretFrom < 0) {
+            throw malformed("Missing secret");
+        }
+        if (type == OTPAuthEntry.Type.HOTP && counter < 0) {
+            throw malformed("Missing counter");
+        }
+        return new OTPAuthEntry(type, label, issuer, parseSecret(src, secretFrom, secretTo), algorithm, digits, period, Math.max(0, counter));
+    }
+
+    /**
+     * Format an entry without a trailing line break
+     *
+     * @param entry The entry
+     * @param sink  The sink to write the URI to
+     */
+    static void write(final OTPAuthEntry entry, final ByteSink sink) {
+        sink.put(SCHEME);
+        sink.putAscii(entry.type() == OTPAuthEntry.Type.TOTP ? "totp/" : "hotp/");
+        percentEncode(entry.label(), true, sink);
+        sink.putAscii("?secret=");
+        final byte[] secret = entry.secret().asBytes();
+        try {
+            final int pos = sink.ensure(Base32.encodedLength(secret.length));
+            int length = Base32.encode(secret, 0, secret.length, sink.array(), pos);
+            // Authenticator apps expect unpadded secrets
+            while (length > 0 && sink.array()[pos + length - 1] == '=') {
+                sink.array()[pos + --length] = 0;
+            }
+            sink.skip(length);
+        } finally {
+            Arrays.fill(secret, (byte) 0);
+        }
+        if (entry.issuer() != null) {
+            sink.putAscii("&issuer=");
+            percentEncode(entry.issuer(), false, sink);
+        }
+        sink.putAscii("&algorithm=");
+        sink.putAscii(entry.algorithm().name());
+        sink.putAscii("&digits=");
+        sink.putDecimal(entry.digits());
+        if (entry.type() == OTPAuthEntry.Type.TOTP) {
+            sink.putAscii("&period=");
+            sink.putDecimal(entry.period());
+        } else {
+            sink.putAscii("&counter=");
+            sink.putDecimal(entry.counter());
+        }
+    }
+
+    private static OTPSecret parseSecret(final byte[] src, final int from, final int to) {
+        if (indexOf(src, from, to, '%') < 0) {
+            return OTPBase32Secret.fromAscii(src, from, to - from);
+        }
+        // Padding might be percent encoded
+        final byte[] decoded = new byte[to - from];
+        final int length = percentDecode(src, from, to, decoded);
+        try {
+            return OTPBase32Secret.fromAscii(decoded, 0, length);
+        } finally {
+            Arrays.fill(decoded, (byte) 0);
+        }
+    }
+
+    private static HMACAlgorithm parseAlgorithm(final byte[] src, final int from, final int to) {
+        for (final HMACAlgorithm algorithm : HMACAlgorithm.values()) {
+            if (equalsIgnoreCase(src, from, to, algorithm.name())) {
+                return algorithm;
+            }
+        }
+        throw malformed("Unknown algorithm " + ascii(src, from, to));
+    }
+
+    private static long parseDecimal(final byte[] src, final int from, final int to, final long max) {
+        if (from == to) {
+            throw malformed("Empty number");
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            final int digit = src[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw malformed("Not a number: " + ascii(src, from, to));
+            }
+            if (value > (max - digit) / 10) {
+                throw malformed("Number out of range: " + ascii(src, from, to));
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static String percentDecode(final byte[] src, final int from, final int to) {
+        if (indexOf(src, from, to, '%') < 0) {
+            return ascii(src, from, to);
+        }
+        final byte[] decoded = new byte[to - from];
+        final int length = percentDecode(src, from, to, decoded);
+        return new String(decoded, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static int percentDecode(final byte[] src, final int from, final int to, final byte[] dest) {
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            if (src[i] == '%') {
+                if (i + 2 >= to) {
+                    throw malformed("Truncated percent encoding");
+                }
+                final int hi = Character.digit(src[i + 1], 16);
+                final int lo = Character.digit(src[i + 2], 16);
+                if (hi < 0 || lo < 0) {
+                    throw malformed("Invalid percent encoding");
+                }
+                dest[length++] = (byte) (hi << 4 | lo);
+                i += 2;
+            } else {
+                dest[length++] = src[i];
+            }
+        }
+        return length;
+    }
+
+    private static void percentEncode(final String s, final boolean label, final ByteSink sink) {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        for (final byte b : bytes) {
+            if (isUnreserved(b) || (label && (b == ':' || b == '@'))) {
+                sink.put(b);
+            } else {
+                sink.put((byte) '%');
+                sink.put(HEX[(b >>> 4) & 0xF]);
+                sink.put(HEX[b & 0xF]);
+            }
+        }
+    }
+
+    private static boolean isUnreserved(final byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                || b == '-' || b == '.' || b == '_' || b == '~';
+    }
+
+    private static int indexOf(final byte[] src, final int from, final int to, final char c) {
+        for (int i = from; i < to; i++) {
+            if (src[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean equalsIgnoreCase(final byte[] src, final int from, final int to, final byte[] expected) {
+        if (to - from != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if ((src[from + i] | 0x20) != (expected[i] | 0x20)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equalsIgnoreCase(final byte[] src, final int from, final int to, final String expected) {
+        if (to - from != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if ((src[from + i] | 0x20) != (expected.charAt(i) | 0x20)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String ascii(final byte[] src, final int from, final int to) {
+        return new String(src, from, to - from, StandardCharsets.US_ASCII);
+    }
+
+    private static IllegalArgumentException malformed(final String problem) {
+        return new IllegalArgumentException("Malformed otpauth URI: " + problem);
+    }
+
+}
@@ -0,0 +1,217 @@
+package dev.cerus.faktor.service.otpauth;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.service.secret.OTPSecret;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A provisioning entry in the <code>otpauth://</code> URI format
+ * <p>
+ * See the <a href="https://github.com/google/google-authenticator/wiki/Key-Uri-Format">Key Uri Format</a>. Secrets
+ * are Base32 encoded without padding when written and may be padded or unpadded when read.
+ * Instances are immutable.
+ */
+public final class OTPAuthEntry {
+
+    private final Type type;
+    private final String label;
+    private final String issuer;
+    private final OTPSecret secret;
+    private final HMACAlgorithm algorithm;
+    private final int digits;
+    private final long period;
+    private final long counter;
+
+    OTPAuthEntry(final Type type,
+                 final String label,
+                 final String issuer,
+                 final OTPSecret secret,
+                 final HMACAlgorithm algorithm,
+                 final int digits,
+                 final long period,
+                 final long counter) {
+        if (digits < 6 || digits > 10) {
+            throw new IllegalArgumentException("Digits out of bounds, only 6 - 10 is supported");
+        }
+        if (period < 1) {
+            throw new IllegalArgumentException("Period must be >= 1");
+        }
+        if (counter < 0) {
+            throw new IllegalArgumentException("Counter must be >= 0");
+        }
+        this.type = Objects.requireNonNull(type);
+        this.label = Objects.requireNonNull(label);
+        this.issuer = issuer;
+        this.secret = Objects.requireNonNull(secret);
+        this.algorithm = Objects.requireNonNull(algorithm);
+        this.digits = digits;
+        this.period = period;
+        this.counter = counter;
+    }
+
+    /**
+     * Create a TOTP entry
+     *
+     * @param label         The label, usually <code>issuer:account</code>
+     * @param issuer        The issuer or null
+     * @param secret        The secret
+     * @param algo          The HMAC algorithm
+     * @param digits        The amount of digits
+     * @param periodSeconds The time step in seconds
+     *
+     * @return the new entry
+     */
+    @Contract(value = "_, _, _, _, _, _ -> new", pure = true)
+    public static @NotNull OTPAuthEntry totp(final @NotNull String label,
+                                             final @Nullable String issuer,
+                                             final @NotNull OTPSecret secret,
+                                             final @NotNull HMACAlgorithm algo,
+                                             final int digits,
+                                             final long periodSeconds) {
+        return new OTPAuthEntry(Type.TOTP, label, issuer, secret, algo, digits, periodSeconds, 0);
+    }
+
+    /**
+     * Create a HOTP entry
+     *
+     * @param label   The label, usually <code>issuer:account</code>
+     * @param issuer  The issuer or null
+     * @param secret  The secret
+     * @param algo    The HMAC algorithm
+     * @param digits  The amount of digits
+     * @param counter The initial counter
+     *
+     * @return the new entry
+     */
+    @Contract(value = "_, _, _, _, _, _ -> new", pure = true)
+    public static @NotNull OTPAuthEntry hotp(final @NotNull String label,
+                                             final @Nullable String issuer,
+                                             final @NotNull OTPSecret secret,
+                                             final @NotNull HMACAlgorithm algo,
+                                             final int digits,
+                                             final long counter) {
+        return new OTPAuthEntry(Type.HOTP, label, issuer, secret, algo, digits, 30, counter);
+    }
+
+    /**
+     * Parse an <code>otpauth://</code> URI
+     *
+     * @param uri The URI
+     *
+     * @return the parsed entry
+     *
+     * @throws IllegalArgumentException if the URI is malformed
+     */
+    @Contract(value = "_ -> new", pure = true)
+    public static @NotNull OTPAuthEntry fromURI(final @NotNull CharSequence uri) {
+        final byte[] bytes = new byte[uri.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            final char c = uri.charAt(i);
+            if (c > 0x7F) {
+                throw new IllegalArgumentException("Malformed otpauth URI: Non-ASCII character at index " + i);
+            }
+            bytes[i] = (byte) c;
+        }
+        return OTPAuthCodec.parse(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Format this entry as an <code>otpauth://</code> URI
+     *
+     * @return the URI
+     */
+    public @NotNull String toURI() {
+        final ByteSink sink = new ByteSink(128);
+        try {
+            OTPAuthCodec.write(this, sink);
+            return new String(sink.array(), 0, sink.size(), StandardCharsets.US_ASCII);
+        } finally {
+            sink.clear();
+        }
+    }
+
+    /**
+     * Get the OTP type
+     *
+     * @return the OTP type
+     */
+    public @NotNull Type type() {
+        return this.type;
+    }
+
+    /**
+     * Get the label
+     *
+     * @return the label, usually <code>issuer:account</code>
+     */
+    public @NotNull String label() {
+        return this.label;
+    }
+
+    /**
+     * Get the issuer
+     *
+     * @return the issuer or null if the entry has none
+     */
+    public @Nullable String issuer() {
+        return this.issuer;
+    }
+
+    /**
+     * Get the secret
+     *
+     * @return the secret
+     */
+    public @NotNull OTPSecret secret() {
+        return this.secret;
+    }
+
+    /**
+     * Get the HMAC algorithm
+     *
+     * @return the HMAC algorithm
+     */
+    public @NotNull HMACAlgorithm algorithm() {
+        return this.algorithm;
+    }
+
+    /**
+     * Get the amount of digits
+     *
+     * @return the amount of digits
+     */
+    public int digits() {
+        return this.digits;
+    }
+
+    /**
+     * Get the time step of a TOTP entry
+     *
+     * @return the time step in seconds, 30 for HOTP entries
+     */
+    public long period() {
+        return this.period;
+    }
+
+    /**
+     * Get the initial counter of a HOTP entry
+     *
+     * @return the counter, 0 for TOTP entries
+     */
+    public long counter() {
+        return this.counter;
+    }
+
+    /**
+     * The OTP type of an entry
+     */
+    public enum Type {
+        TOTP,
+        HOTP
+    }
+
+}
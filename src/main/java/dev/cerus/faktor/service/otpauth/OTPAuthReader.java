@@ -0,0 +1,209 @@
+package dev.cerus.faktor.service.otpauth;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reads newline delimited <code>otpauth://</code> URIs from a channel
+ * <p>
+ * The channel is read into a large byte buffer which is cut after its last complete line. The complete lines are split
+ * into parts at line boundaries and the parts are parsed in parallel on a fork join pool, the rest is carried over to
+ * the next read. URIs are parsed from the buffer without creating a string per line and entries are handed to the
+ * consumer in file order on the calling thread. Empty lines are skipped, Windows line endings are accepted.
+ * <p>
+ * The buffer is zeroed after use because it contains encoded secrets. This class is not thread safe and expects a
+ * blocking channel.
+ */
+public class OTPAuthReader implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    private static final int MIN_BUFFER_SIZE = 4096;
+    private static final int PART_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final ForkJoinPool pool;
+    private final byte[] buffer;
+    private long lines;
+    private boolean closed;
+
+    /**
+     * Create a new reader that uses the common pool
+     *
+     * @param channel The channel to read from
+     */
+    public OTPAuthReader(final @NotNull ReadableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a new reader
+     *
+     * @param channel    The channel to read from
+     * @param bufferSize The size of the read buffer, this is also the max line length
+     * @param pool       The pool to parse on
+     */
+    public OTPAuthReader(final @NotNull ReadableByteChannel channel, final int bufferSize, final @NotNull ForkJoinPool pool) {
+        if (bufferSize < MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("Buffer size must be >= " + MIN_BUFFER_SIZE);
+        }
+        this.channel = Objects.requireNonNull(channel);
+        this.pool = Objects.requireNonNull(pool);
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Read every entry until the end of the channel
+     *
+     * @param consumer The consumer to hand the entries to
+     *
+     * @return the amount of read entries
+     *
+     * @throws IOException if reading fails, a line is malformed or longer than the buffer
+     */
+    public long read(final @NotNull Consumer<OTPAuthEntry> consumer) throws IOException {
+        if (this.closed) {
+            throw new IOException("Reader is closed");
+        }
+        final ByteBuffer view = ByteBuffer.wrap(this.buffer);
+        long entries = 0;
+        boolean eof = false;
+        try {
+            while (!eof) {
+                while (view.hasRemaining()) {
+                    if (this.channel.read(view) < 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                final int limit = view.position();
+                final int cut = eof ? limit : lastLineEnd(this.buffer, limit);
+                if (cut == 0 && !eof) {
+                    throw new IOException("Line %d is longer than the buffer".formatted(this.lines + 1));
+                }
+                entries += this.process(cut, consumer);
+                // Carry the incomplete line over to the next read
+                System.arraycopy(this.buffer, cut, this.buffer, 0, limit - cut);
+                Arrays.fill(this.buffer, limit - cut, limit, (byte) 0);
+                view.position(limit - cut);
+            }
+        } finally {
+            Arrays.fill(this.buffer, (byte) 0);
+        }
+        return entries;
+    }
+
+    /**
+     * Close the channel
+     *
+     * @throws IOException if closing the channel fails
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        Arrays.fill(this.buffer, (byte) 0);
+        this.channel.close();
+    }
+
+    private long process(final int to, final Consumer<OTPAuthEntry> consumer) throws IOException {
+        final Part[] parts;
+        if (to <= PART_SIZE || this.pool.getParallelism() == 1) {
+            parts = new Part[] {parse(this.buffer, 0, to)};
+        } else {
+            final List<ForkJoinTask<Part>> tasks = new ArrayList<>(to / PART_SIZE + 1);
+            for (int from = 0; from < to; ) {
+                final int partFrom = from;
+                final int partTo = from + PART_SIZE >= to ? to : lineEnd(this.buffer, from + PART_SIZE, to);
+                tasks.add(this.pool.submit(() -> parse(this.buffer, partFrom, partTo)));
+                from = partTo;
+            }
+            // Join everything before delivering, the buffer must not change while a part is parsed
+            parts = new Part[tasks.size()];
+            for (int i = 0; i < parts.length; i++) {
+                parts[i] = tasks.get(i).join();
+            }
+        }
+
+        long entries = 0;
+        for (final Part part : parts) {
+            if (part.error != null) {
+                throw new IOException("Malformed otpauth URI in line " + (this.lines + part.errorLine), part.error);
+            }
+            for (final OTPAuthEntry entry : part.entries) {
+                consumer.accept(entry);
+            }
+            this.lines += part.lines;
+            entries += part.entries.size();
+        }
+        return entries;
+    }
+
+    private static Part parse(final byte[] buffer, final int from, final int to) {
+        final Part part = new Part();
+        for (int start = from; start < to; ) {
+            final int newline = lineEnd(buffer, start, to);
+            int end = buffer[newline - 1] == '\n' ? newline - 1 : newline;
+            part.lines++;
+            if (end > start && buffer[end - 1] == '\r') {
+                end--;
+            }
+            if (end > start) {
+                try {
+                    part.entries.add(OTPAuthCodec.parse(buffer, start, end));
+                } catch (final IllegalArgumentException e) {
+                    part.error = e;
+                    part.errorLine = part.lines;
+                    return part;
+                }
+            }
+            start = newline;
+        }
+        return part;
+    }
+
+    /**
+     * Get the position after the next line break or <code>to</code> if there is none
+     */
+    private static int lineEnd(final byte[] buffer, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Get the position after the last line break or 0 if there is none
+     */
+    private static int lastLineEnd(final byte[] buffer, final int to) {
+        for (int i = to - 1; i >= 0; i--) {
+            if (buffer[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The parsed lines of a part of the buffer
+     */
+    private static final class Part {
+
+        private final List<OTPAuthEntry> entries = new ArrayList<>();
+        private int lines;
+        private IllegalArgumentException error;
+        private int errorLine;
+
+    }
+
+}
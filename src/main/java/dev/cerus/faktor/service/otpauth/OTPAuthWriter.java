@@ -0,0 +1,174 @@
+package dev.cerus.faktor.service.otpauth;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Writes newline delimited <code>otpauth://</code> URIs to a channel
+ * <p>
+ * URIs are encoded straight into a large byte buffer that is written to the channel once it is full. Bulk exports
+ * through {@link OTPAuthWriter#writeAll(List)} are encoded in chunks on a fork join pool and written in the original
+ * order. Every buffer is zeroed after it has been written because it contains encoded secrets.
+ * <p>
+ * This class is not thread safe.
+ */
+public class OTPAuthWriter implements Closeable, Flushable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    private static final int CHUNK_ENTRIES = 4096;
+    private static final int ESTIMATED_URI_LENGTH = 160;
+
+    private final WritableByteChannel channel;
+    private final int bufferSize;
+    private final ForkJoinPool pool;
+    private final ByteSink sink;
+    private boolean closed;
+
+    /**
+     * Create a new writer that uses the common pool
+     *
+     * @param channel The channel to write to
+     */
+    public OTPAuthWriter(final @NotNull WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a new writer
+     *
+     * @param channel    The channel to write to
+     * @param bufferSize The amount of bytes to collect before writing to the channel
+     * @param pool       The pool to encode bulk exports on
+     */
+    public OTPAuthWriter(final @NotNull WritableByteChannel channel, final int bufferSize, final @NotNull ForkJoinPool pool) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be >= 1");
+        }
+        this.channel = Objects.requireNonNull(channel);
+        this.bufferSize = bufferSize;
+        this.pool = Objects.requireNonNull(pool);
+        this.sink = new ByteSink(Math.min(bufferSize, DEFAULT_BUFFER_SIZE) + ESTIMATED_URI_LENGTH);
+    }
+
+    /**
+     * Write an entry
+     *
+     * @param entry The entry
+     *
+     * @throws IOException if writing to the channel fails
+     */
+    public void write(final @NotNull OTPAuthEntry entry) throws IOException {
+        this.ensureOpen();
+        OTPAuthCodec.write(entry, this.sink);
+        this.sink.put((byte) '\n');
+        if (this.sink.size() >= this.bufferSize) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Write several entries
+     * <p>
+     * Large lists are encoded in parallel, the URIs are written in list order.
+     *
+     * @param entries The entries
+     *
+     * @throws IOException if writing to the channel fails
+     */
+    public void writeAll(final @NotNull List<OTPAuthEntry> entries) throws IOException {
+        this.ensureOpen();
+        if (entries.size() <= CHUNK_ENTRIES || this.pool.getParallelism() == 1) {
+            for (final OTPAuthEntry entry : entries) {
+                this.write(entry);
+            }
+            return;
+        }
+        // Everything that was written before has to go first
+        this.flush();
+        // Encoding in waves bounds the memory to a few chunks per worker
+        final int wave = this.pool.getParallelism() * 2;
+        final List<ForkJoinTask<ByteSink>> tasks = new ArrayList<>(wave);
+        for (int from = 0; from < entries.size(); ) {
+            for (int i = 0; i < wave && from < entries.size(); i++, from += CHUNK_ENTRIES) {
+                final List<OTPAuthEntry> chunk = entries.subList(from, Math.min(entries.size(), from + CHUNK_ENTRIES));
+                tasks.add(this.pool.submit(() -> encode(chunk)));
+            }
+            try {
+                for (final ForkJoinTask<ByteSink> task : tasks) {
+                    final ByteSink chunkSink = task.join();
+                    try {
+                        chunkSink.writeTo(this.channel);
+                    } finally {
+                        chunkSink.clear();
+                    }
+                }
+            } finally {
+                for (final ForkJoinTask<ByteSink> task : tasks) {
+                    // Wipe chunks that were not written because of a failure
+                    if (task.isDone() && !task.isCompletedAbnormally()) {
+                        task.join().clear();
+                    }
+                }
+                tasks.clear();
+            }
+        }
+    }
+
+    /**
+     * Write everything that is buffered to the channel
+     *
+     * @throws IOException if writing to the channel fails
+     */
+    @Override
+    public void flush() throws IOException {
+        this.ensureOpen();
+        try {
+            this.sink.writeTo(this.channel);
+        } finally {
+            this.sink.clear();
+        }
+    }
+
+    /**
+     * Flush and close the channel
+     *
+     * @throws IOException if writing to or closing the channel fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        try {
+            this.flush();
+        } finally {
+            this.closed = true;
+            this.sink.clear();
+            this.channel.close();
+        }
+    }
+
+    private static ByteSink encode(final List<OTPAuthEntry> chunk) {
+        final ByteSink sink = new ByteSink(chunk.size() * ESTIMATED_URI_LENGTH);
+        for (final OTPAuthEntry entry : chunk) {
+            OTPAuthCodec.write(entry, sink);
+            sink.put((byte) '\n');
+        }
+        return sink;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (this.closed) {
+            throw new IOException("Writer is closed");
+        }
+    }
+
+}
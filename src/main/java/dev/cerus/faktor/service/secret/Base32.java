@@ -0,0 +1,305 @@
+package dev.cerus.faktor.service.secret;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Table-driven Base32 codec (see <a href="https://www.rfc-editor.org/rfc/rfc4648#section-6">RFC 4648</a>)
+ * <p>
+ * Whole groups of 5 bytes / 8 characters are converted at once through a 40 bit value in a long. The encoder
+ * always pads. The decoder accepts padded and unpadded input in upper and lower case and reads from char sequences and
+ * ASCII byte arrays without creating intermediate strings.
+ */
+public final class Base32 {
+
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567".toCharArray();
+    private static final byte[] DECODE = new byte[256];
+    private static final char PADDING = '=';
+
+    static {
+        Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE[ALPHABET[i]] = (byte) i;
+            DECODE[Character.toLowerCase(ALPHABET[i])] = (byte) i;
+        }
+    }
+
+    private Base32() {
+    }
+
+    /**
+     * Get the length of the padded encoding of some data
+     *
+     * @param length The length of the data in bytes
+     *
+     * @return the length of the encoded data in characters
+     */
+    public static int encodedLength(final int length) {
+        return (length + 4) / 5 * 8;
+    }
+
+    /**
+     * Encode data
+     *
+     * @param data The data to encode
+     *
+     * @return the padded encoding
+     */
+    public static @NotNull String encode(final byte @NotNull [] data) {
+        final char[] chars = new char[encodedLength(data.length)];
+        encode(data, 0, data.length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Encode data into a char array
+     *
+     * @param src     The data to encode
+     * @param offset  The position of the data
+     * @param length  The length of the data
+     * @param dest    The array to write the padded encoding into
+     * @param destPos The position to write the encoding to
+     *
+     * @return the amount of written characters
+     */
+    public static int encode(final byte @NotNull [] src, final int offset, final int length, final char @NotNull [] dest, final int destPos) {
+        final int encodedLength = encodedLength(length);
+        checkRange(src.length, offset, length);
+        checkRange(dest.length, destPos, encodedLength);
+        int s = offset;
+        int d = destPos;
+        final int end = offset + length;
+        for (; end - s >= 5; s += 5, d += 8) {
+            final long bits = group(src, s);
+            for (int i = 0; i < 8; i++) {
+                dest[d + i] = ALPHABET[(int) (bits >>> (35 - 5 * i)) & 31];
+            }
+        }
+        if (s < end) {
+            final int rest = end - s;
+            final long bits = tail(src, s, rest);
+            final int chars = (rest * 8 + 4) / 5;
+            for (int i = 0; i < 8; i++) {
+                dest[d + i] = i < chars ? ALPHABET[(int) (bits >>> (35 - 5 * i)) & 31] : PADDING;
+            }
+        }
+        return encodedLength;
+    }
+
+    /**
+     * Encode data into an ASCII byte array
+     *
+     * @param src     The data to encode
+     * @param offset  The position of the data
+     * @param length  The length of the data
+     * @param dest    The array to write the padded encoding into
+     * @param destPos The position to write the encoding to
+     *
+     * @return the amount of written bytes
+     */
+    public static int encode(final byte @NotNull [] src, final int offset, final int length, final byte @NotNull [] dest, final int destPos) {
+        final int encodedLength = encodedLength(length);
+        checkRange(src.length, offset, length);
+        checkRange(dest.length, destPos, encodedLength);
+        int s = offset;
+        int d = destPos;
+        final int end = offset + length;
+        for (; end - s >= 5; s += 5, d += 8) {
+            final long bits = group(src, s);
+            for (int i = 0; i < 8; i++) {
+                dest[d + i] = (byte) ALPHABET[(int) (bits >>> (35 - 5 * i)) & 31];
+            }
+        }
+        if (s < end) {
+            final int rest = end - s;
+            final long bits = tail(src, s, rest);
+            final int chars = (rest * 8 + 4) / 5;
+            for (int i = 0; i < 8; i++) {
+                dest[d + i] = (byte) (i < chars ? ALPHABET[(int) (bits >>> (35 - 5 * i)) & 31] : PADDING);
+            }
+        }
+        return encodedLength;
+    }
+
+    /**
+     * Get the length of the data that some encoded data decodes to
+     * <p>
+     * Only the length and the padding are checked, not the characters.
+     *
+     * @param src The encoded data
+     *
+     * @return the length of the decoded data in bytes or -1 if the length or padding are invalid
+     */
+    public static int decodedLength(final @NotNull CharSequence src) {
+        int padding = 0;
+        while (padding < src.length() && src.charAt(src.length() - 1 - padding) == PADDING) {
+            padding++;
+        }
+        return decodedLength(src.length(), padding);
+    }
+
+    /**
+     * Get the length of the data that some encoded ASCII data decodes to
+     * <p>
+     * Only the length and the padding are checked, not the characters.
+     *
+     * @param src    The encoded data
+     * @param offset The position of the encoded data
+     * @param length The length of the encoded data
+     *
+     * @return the length of the decoded data in bytes or -1 if the length or padding are invalid
+     */
+    public static int decodedLength(final byte @NotNull [] src, final int offset, final int length) {
+        checkRange(src.length, offset, length);
+        int padding = 0;
+        while (padding < length && src[offset + length - 1 - padding] == PADDING) {
+            padding++;
+        }
+        return decodedLength(length, padding);
+    }
+
+    /**
+     * Decode data
+     *
+     * @param src The encoded data
+     *
+     * @return the decoded data
+     *
+     * @throws IllegalArgumentException if the data is not valid Base32
+     */
+    public static byte @NotNull [] decode(final @NotNull CharSequence src) {
+        final int length = decodedLength(src);
+        if (length < 0) {
+            throw new IllegalArgumentException("Invalid Base32 length");
+        }
+        final byte[] data = new byte[length];
+        decode(src, data, 0);
+        return data;
+    }
+
+    /**
+     * Decode data into a byte array
+     *
+     * @param src     The encoded data
+     * @param dest    The array to write the decoded data into
+     * @param destPos The position to write the data to
+     *
+     * @return the amount of written bytes
+     *
+     * @throws IllegalArgumentException if the data is not valid Base32
+     */
+    public static int decode(final @NotNull CharSequence src, final byte @NotNull [] dest, final int destPos) {
+        final int decodedLength = decodedLength(src);
+        if (decodedLength < 0) {
+            throw new IllegalArgumentException("Invalid Base32 length");
+        }
+        checkRange(dest.length, destPos, decodedLength);
+        final int chars = decodedLength * 8 / 5 + (decodedLength % 5 == 0 ? 0 : 1);
+        int s = 0;
+        int d = destPos;
+        for (; chars - s >= 8; s += 8, d += 5) {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = bits << 5 | value(src.charAt(s + i));
+            }
+            writeGroup(bits, dest, d, 5);
+        }
+        if (s < chars) {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = bits << 5 | (s + i < chars ? value(src.charAt(s + i)) : 0);
+            }
+            writeGroup(bits, dest, d, decodedLength % 5);
+        }
+        return decodedLength;
+    }
+
+    /**
+     * Decode ASCII data into a byte array
+     *
+     * @param src     The encoded data
+     * @param offset  The position of the encoded data
+     * @param length  The length of the encoded data
+     * @param dest    The array to write the decoded data into
+     * @param destPos The position to write the data to
+     *
+     * @return the amount of written bytes
+     *
+     * @throws IllegalArgumentException if the data is not valid Base32
+     */
+    public static int decode(final byte @NotNull [] src, final int offset, final int length, final byte @NotNull [] dest, final int destPos) {
+        final int decodedLength = decodedLength(src, offset, length);
+        if (decodedLength < 0) {
+            throw new IllegalArgumentException("Invalid Base32 length");
+        }
+        checkRange(dest.length, destPos, decodedLength);
+        final int end = offset + decodedLength * 8 / 5 + (decodedLength % 5 == 0 ? 0 : 1);
+        int s = offset;
+        int d = destPos;
+        for (; end - s >= 8; s += 8, d += 5) {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = bits << 5 | value((char) (src[s + i] & 0xFF));
+            }
+            writeGroup(bits, dest, d, 5);
+        }
+        if (s < end) {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = bits << 5 | (s + i < end ? value((char) (src[s + i] & 0xFF)) : 0);
+            }
+            writeGroup(bits, dest, d, decodedLength % 5);
+        }
+        return decodedLength;
+    }
+
+    private static int decodedLength(final int length, final int padding) {
+        final int chars = length - padding;
+        final int rest = chars % 8;
+        if (rest == 1 || rest == 3 || rest == 6) {
+            return -1;
+        }
+        // Padding is optional, but if present it has to fill up the last group exactly
+        if (padding > 0 && (length % 8 != 0 || padding != (8 - rest) % 8)) {
+            return -1;
+        }
+        return chars * 5 / 8;
+    }
+
+    private static long group(final byte[] src, final int pos) {
+        return (long) (src[pos] & 0xFF) << 32
+                | (long) (src[pos + 1] & 0xFF) << 24
+                | (src[pos + 2] & 0xFF) << 16
+                | (src[pos + 3] & 0xFF) << 8
+                | (src[pos + 4] & 0xFF);
+    }
+
+    private static long tail(final byte[] src, final int pos, final int length) {
+        long bits = 0;
+        for (int i = 0; i < length; i++) {
+            bits |= (long) (src[pos + i] & 0xFF) << (32 - 8 * i);
+        }
+        return bits;
+    }
+
+    private static void writeGroup(final long bits, final byte[] dest, final int pos, final int length) {
+        for (int i = 0; i < length; i++) {
+            dest[pos + i] = (byte) (bits >>> (32 - 8 * i));
+        }
+    }
+
+    private static int value(final char c) {
+        final int value = c < DECODE.length ? DECODE[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("Unrecognized Base32 character: " + c);
+        }
+        return value;
+    }
+
+    private static void checkRange(final int arrayLength, final int offset, final int length) {
+        if (offset < 0 || length < 0 || offset > arrayLength - length) {
+            throw new IndexOutOfBoundsException("Range [%d, %d) out of bounds for length %d".formatted(offset, offset + length, arrayLength));
+        }
+    }
+
+}
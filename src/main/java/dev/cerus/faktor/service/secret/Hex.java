@@ -0,0 +1,250 @@
+package dev.cerus.faktor.service.secret;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Table-driven hex codec
+ * <p>
+ * Every byte is encoded with a single lookup into a table of character pairs, and decoding validates and converts
+ * each character in the same pass. The encoder writes upper case characters, the decoder accepts both cases. The bulk
+ * encoders write many secrets into one buffer, separated by a delimiter, which avoids creating a string per secret
+ * during exports.
+ */
+public final class Hex {
+
+    private static final char[] ENCODE = new char[512];
+    private static final byte[] DECODE = new byte[256];
+
+    static {
+        final char[] digits = "0123456789ABCDEF".toCharArray();
+        for (int i = 0; i < 256; i++) {
+            ENCODE[i * 2] = digits[i >>> 4];
+            ENCODE[i * 2 + 1] = digits[i & 0xF];
+        }
+        Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < digits.length; i++) {
+            DECODE[digits[i]] = (byte) i;
+            DECODE[Character.toLowerCase(digits[i])] = (byte) i;
+        }
+    }
+
+    private Hex() {
+    }
+
+    /**
+     * Encode data
+     *
+     * @param data The data to encode
+     *
+     * @return the upper case encoding
+     */
+    public static @NotNull String encode(final byte @NotNull [] data) {
+        final char[] chars = new char[data.length * 2];
+        encode(data, 0, data.length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Encode data into a char array
+     *
+     * @param src     The data to encode
+     * @param offset  The position of the data
+     * @param length  The length of the data
+     * @param dest    The array to write the encoding into
+     * @param destPos The position to write the encoding to
+     *
+     * @return the amount of written characters
+     */
+    public static int encode(final byte @NotNull [] src, final int offset, final int length, final char @NotNull [] dest, final int destPos) {
+        checkRange(src.length, offset, length);
+        checkRange(dest.length, destPos, length * 2);
+        for (int i = 0; i < length; i++) {
+            final int pair = (src[offset + i] & 0xFF) << 1;
+            dest[destPos + i * 2] = ENCODE[pair];
+            dest[destPos + i * 2 + 1] = ENCODE[pair + 1];
+        }
+        return length * 2;
+    }
+
+    /**
+     * Encode data into an ASCII byte array
+     *
+     * @param src     The data to encode
+     * @param offset  The position of the data
+     * @param length  The length of the data
+     * @param dest    The array to write the encoding into
+     * @param destPos The position to write the encoding to
+     *
+     * @return the amount of written bytes
+     */
+    public static int encode(final byte @NotNull [] src, final int offset, final int length, final byte @NotNull [] dest, final int destPos) {
+        checkRange(src.length, offset, length);
+        checkRange(dest.length, destPos, length * 2);
+        for (int i = 0; i < length; i++) {
+            final int pair = (src[offset + i] & 0xFF) << 1;
+            dest[destPos + i * 2] = (byte) ENCODE[pair];
+            dest[destPos + i * 2 + 1] = (byte) ENCODE[pair + 1];
+        }
+        return length * 2;
+    }
+
+    /**
+     * Get the length of the bulk encoding of several secrets
+     *
+     * @param secrets The secrets
+     *
+     * @return the length of the encoding in characters, including one delimiter per secret
+     */
+    public static long encodedLength(final byte @NotNull [] @NotNull [] secrets) {
+        long length = 0;
+        for (final byte[] secret : secrets) {
+            length += secret.length * 2L + 1;
+        }
+        return length;
+    }
+
+    /**
+     * Encode several secrets into one ASCII byte array
+     * <p>
+     * Each encoded secret is followed by the delimiter, e.g. a line break.
+     *
+     * @param secrets   The secrets to encode
+     * @param dest      The array to write the encodings into, see {@link Hex#encodedLength(byte[][])}
+     * @param destPos   The position to write the first encoding to
+     * @param delimiter The delimiter to write after each encoding
+     *
+     * @return the amount of written bytes
+     */
+    public static int encodeAll(final byte @NotNull [] @NotNull [] secrets, final byte @NotNull [] dest, final int destPos, final byte delimiter) {
+        final long length = encodedLength(secrets);
+        if (length > Integer.MAX_VALUE) {
+            throw new IndexOutOfBoundsException("Encoding of %d bytes does not fit into an array".formatted(length));
+        }
+        checkRange(dest.length, destPos, (int) length);
+        int d = destPos;
+        for (final byte[] secret : secrets) {
+            d += encode(secret, 0, secret.length, dest, d);
+            dest[d++] = delimiter;
+        }
+        return d - destPos;
+    }
+
+    /**
+     * Encode several secrets that are packed back to back into one ASCII byte array
+     * <p>
+     * This is the layout of bulk generated or exported secrets. Each encoded secret is followed by the delimiter,
+     * e.g. a line break.
+     *
+     * @param src          The packed secrets
+     * @param offset       The position of the first secret
+     * @param count        The amount of secrets
+     * @param secretLength The length of each secret
+     * @param dest         The array to write the encodings into, needs <code>count * (secretLength * 2 + 1)</code> bytes
+     * @param destPos      The position to write the first encoding to
+     * @param delimiter    The delimiter to write after each encoding
+     *
+     * @return the amount of written bytes
+     */
+    public static int encodeAll(final byte @NotNull [] src,
+                                final int offset,
+                                final int count,
+                                final int secretLength,
+                                final byte @NotNull [] dest,
+                                final int destPos,
+                                final byte delimiter) {
+        final long length = (long) count * (secretLength * 2L + 1);
+        if (count < 0 || secretLength < 0 || length > Integer.MAX_VALUE) {
+            throw new IndexOutOfBoundsException("Invalid count or secret length: %d, %d".formatted(count, secretLength));
+        }
+        checkRange(src.length, offset, count * secretLength);
+        checkRange(dest.length, destPos, (int) length);
+        int d = destPos;
+        for (int i = 0; i < count; i++) {
+            d += encode(src, offset + i * secretLength, secretLength, dest, d);
+            dest[d++] = delimiter;
+        }
+        return d - destPos;
+    }
+
+    /**
+     * Decode data
+     *
+     * @param src The encoded data
+     *
+     * @return the decoded data
+     *
+     * @throws IllegalArgumentException if the data is not valid hex
+     */
+    public static byte @NotNull [] decode(final @NotNull CharSequence src) {
+        if (src.length() % 2 != 0) {
+            throw new IllegalArgumentException("Invalid hex length");
+        }
+        final byte[] data = new byte[src.length() / 2];
+        decode(src, data, 0);
+        return data;
+    }
+
+    /**
+     * Decode data into a byte array
+     *
+     * @param src     The encoded data
+     * @param dest    The array to write the decoded data into
+     * @param destPos The position to write the data to
+     *
+     * @return the amount of written bytes
+     *
+     * @throws IllegalArgumentException if the data is not valid hex
+     */
+    public static int decode(final @NotNull CharSequence src, final byte @NotNull [] dest, final int destPos) {
+        if (src.length() % 2 != 0) {
+            throw new IllegalArgumentException("Invalid hex length");
+        }
+        final int length = src.length() / 2;
+        checkRange(dest.length, destPos, length);
+        for (int i = 0; i < length; i++) {
+            dest[destPos + i] = (byte) (value(src.charAt(i * 2)) << 4 | value(src.charAt(i * 2 + 1)));
+        }
+        return length;
+    }
+
+    /**
+     * Decode ASCII data into a byte array
+     *
+     * @param src     The encoded data
+     * @param offset  The position of the encoded data
+     * @param length  The length of the encoded data
+     * @param dest    The array to write the decoded data into
+     * @param destPos The position to write the data to
+     *
+     * @return the amount of written bytes
+     *
+     * @throws IllegalArgumentException if the data is not valid hex
+     */
+    public static int decode(final byte @NotNull [] src, final int offset, final int length, final byte @NotNull [] dest, final int destPos) {
+        if (length % 2 != 0) {
+            throw new IllegalArgumentException("Invalid hex length");
+        }
+        checkRange(src.length, offset, length);
+        checkRange(dest.length, destPos, length / 2);
+        for (int i = 0; i < length / 2; i++) {
+            dest[destPos + i] = (byte) (value((char) (src[offset + i * 2] & 0xFF)) << 4 | value((char) (src[offset + i * 2 + 1] & 0xFF)));
+        }
+        return length / 2;
+    }
+
+    private static int value(final char c) {
+        final int value = c < DECODE.length ? DECODE[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("Unrecognized hex character: " + c);
+        }
+        return value;
+    }
+
+    private static void checkRange(final int arrayLength, final int offset, final int length) {
+        if (offset < 0 || length < 0 || offset > arrayLength - length) {
+            throw new IndexOutOfBoundsException("Range [%d, %d) out of bounds for length %d".formatted(offset, offset + length, arrayLength));
+        }
+    }
+
+}
@@ -1,20 +1,25 @@
 package dev.cerus.faktor.service.secret;
 
 import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.jfr.SecretDecodeEvent;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Random;
-import java.util.regex.Pattern;
 import org.jetbrains.annotations.NotNull;
 
 /**
  * Hex OTPSecret implementation
+ * <p>
+ * The encoded form is computed once and cached. See {@link Hex} for the codec. Decoding is recorded as a
+ * {@link SecretDecodeEvent}.
  */
 public class OTPHexSecret implements OTPSecret {
 
     private static final String KEY_PATTERN_STRING = "([0-9a-fA-F]{40})|([0-9a-fA-F]{64})|([0-9a-fA-F]{128})";
-    private static final Pattern KEY_PATTERN = Pattern.compile(KEY_PATTERN_STRING);
 
     private final byte[] bytes;
+    private volatile String encoded;
+    private volatile boolean destroyed;
 
     private OTPHexSecret(final byte[] bytes) {
         this.bytes = bytes;
@@ -42,15 +47,71 @@ public class OTPHexSecret implements OTPSecret {
      * @return the new OTPSecret instance
      */
     public static OTPSecret fromString(final @org.intellij.lang.annotations.Pattern(value = KEY_PATTERN_STRING) String secret) {
-        if (!KEY_PATTERN.matcher(secret).matches()) {
-            throw new IllegalArgumentException("Not an encoded Hex OTPSecret");
+        return fromChars(secret);
+    }
+
+    /**
+     * Create a new Hex otp secret from encoded characters
+     *
+     * @param secret The encoded secret
+     *
+     * @return the new OTPSecret instance
+     */
+    public static OTPSecret fromChars(final CharSequence secret) {
+        final SecretDecodeEvent event = SecretDecodeEvent.start();
+        boolean success = false;
+        try {
+            final OTPSecret decoded = decode(secret);
+            success = true;
+            return decoded;
+        } finally {
+            SecretDecodeEvent.complete(event, "Hex", secret.length(), success);
         }
+    }
 
+    private static OTPSecret decode(final CharSequence secret) {
+        if (!isValidLength(secret.length())) {
+            throw new IllegalArgumentException("Not an encoded Hex OTPSecret");
+        }
         final byte[] bytes = new byte[secret.length() / 2];
-        final char[] chars = secret.toCharArray();
-        for (int i = 0; i < chars.length; i++) {
-            final int num = charToHex(chars[i++]) * 16 + charToHex(chars[i]);
-            bytes[i / 2] = (byte) num;
+        try {
+            Hex.decode(secret, bytes, 0);
+        } catch (final IllegalArgumentException e) {
+            throw new IllegalArgumentException("Not an encoded Hex OTPSecret", e);
+        }
+        return fromBytes(bytes);
+    }
+
+    /**
+     * Create a new Hex otp secret from encoded ASCII bytes
+     *
+     * @param secret The buffer that holds the encoded secret
+     * @param offset The position of the encoded secret in the buffer
+     * @param length The length of the encoded secret
+     *
+     * @return the new OTPSecret instance
+     */
+    public static OTPSecret fromAscii(final byte[] secret, final int offset, final int length) {
+        final SecretDecodeEvent event = SecretDecodeEvent.start();
+        boolean success = false;
+        try {
+            final OTPSecret decoded = decode(secret, offset, length);
+            success = true;
+            return decoded;
+        } finally {
+            SecretDecodeEvent.complete(event, "Hex", length, success);
+        }
+    }
+
+    private static OTPSecret decode(final byte[] secret, final int offset, final int length) {
+        if (!isValidLength(length)) {
+            throw new IllegalArgumentException("Not an encoded Hex OTPSecret");
+        }
+        final byte[] bytes = new byte[length / 2];
+        try {
+            Hex.decode(secret, offset, length, bytes, 0);
+        } catch (final IllegalArgumentException e) {
+            throw new IllegalArgumentException("Not an encoded Hex OTPSecret", e);
         }
         return fromBytes(bytes);
     }
@@ -69,29 +130,59 @@ public class OTPHexSecret implements OTPSecret {
         return fromBytes(key);
     }
 
-    private static int charToHex(final char c) {
-        if (c <= '9') {
-            return c - '0';
-        } else if (c <= 'F') {
-            return 10 + (c - 'A');
-        } else if (c <= 'f') {
-            return 10 + (c - 'a');
-        }
-        throw new IllegalArgumentException("Not a hex char: " + c);
+    private static boolean isValidLength(final int length) {
+        return length == 40 || length == 64 || length == 128;
     }
 
     @Override
     public @NotNull String asString() {
-        final StringBuilder builder = new StringBuilder();
-        for (final byte b : this.bytes) {
-            builder.append(String.format("%2X", b).replace(' ', '0'));
+        this.checkDestroyed();
+        String encoded = this.encoded;
+        if (encoded == null) {
+            encoded = Hex.encode(this.bytes);
+            this.encoded = encoded;
         }
-        return builder.toString();
+        return encoded;
     }
 
     @Override
     public byte @NotNull [] asBytes() {
+        this.checkDestroyed();
         return Arrays.copyOf(this.bytes, this.bytes.length);
     }
 
+    @Override
+    public final @NotNull ByteBuffer asByteBuffer() {
+        this.checkDestroyed();
+        return ByteBuffer.wrap(this.bytes).asReadOnlyBuffer();
+    }
+
+    @Override
+    public final boolean hasByteBufferView() {
+        return true;
+    }
+
+    /**
+     * Zero the raw bytes and drop the cached encoded form
+     * <p>
+     * Views returned by {@link OTPHexSecret#asByteBuffer()} only see zeroes afterwards.
+     */
+    @Override
+    public void destroy() {
+        this.destroyed = true;
+        this.encoded = null;
+        Arrays.fill(this.bytes, (byte) 0);
+    }
+
+    @Override
+    public boolean isDestroyed() {
+        return this.destroyed;
+    }
+
+    private void checkDestroyed() {
+        if (this.destroyed) {
+            throw new IllegalStateException("Secret has been destroyed");
+        }
+    }
+
 }
@@ -1,14 +1,19 @@
 package dev.cerus.faktor.service.secret;
 
 import dev.cerus.faktor.HMACAlgorithm;
+import java.nio.ByteBuffer;
 import java.util.Random;
+import javax.security.auth.Destroyable;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
 /**
  * Represents a master secret for one-time-password generation and validation
+ * <p>
+ * Secrets can be destroyed with {@link OTPSecret#destroy()}, which zeroes the raw bytes of the built-in
+ * implementations. Encoded strings returned by {@link OTPSecret#asString()} can not be zeroed.
  */
-public interface OTPSecret {
+public interface OTPSecret extends Destroyable {
 
     /**
      * Generate a new secret in Hex format
@@ -92,4 +97,29 @@ public interface OTPSecret {
      */
     byte @NotNull [] asBytes();
 
+    /**
+     * Get a read-only view of the raw bytes of the secret
+     * <p>
+     * The view spans from position 0 to its limit. Unlike {@link OTPSecret#asBytes()} the built-in implementations
+     * do not copy the secret, so the view sees the zeroes after the secret was destroyed. The default implementation
+     * wraps a copy that nobody zeroes, see {@link OTPSecret#hasByteBufferView()}.
+     *
+     * @return a read-only view of the secret
+     */
+    default @NotNull ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(this.asBytes()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Check if {@link OTPSecret#asByteBuffer()} returns a view of the secret instead of a copy
+     * <p>
+     * Callers that need to clear the secret from the heap only read through the buffer if this returns true.
+     * Otherwise they use {@link OTPSecret#asBytes()} and zero the array themselves.
+     *
+     * @return whether the buffer is a view of the secret, false by default
+     */
+    default boolean hasByteBufferView() {
+        return false;
+    }
+
 }
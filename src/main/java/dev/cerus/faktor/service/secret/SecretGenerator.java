@@ -0,0 +1,195 @@
+package dev.cerus.faktor.service.secret;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.service.store.SecretStore;
+import java.io.Serial;
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Generates the raw secrets of many users at once
+ * <p>
+ * Every thread uses its own DRBG {@link SecureRandom} that is seeded from the system entropy source, so generating
+ * threads never contend on a shared random instance. Large batches are split into chunks and generated in parallel on a
+ * {@link ForkJoinPool}. Secrets are written back to back into an arena or straight into a {@link SecretStore}.
+ * <p>
+ * This class is thread safe.
+ */
+public class SecretGenerator {
+
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+    // Bytes per nextBytes call, DRBG mechanisms cap the size of a single request
+    private static final int REQUEST_BYTES = 16 * 1024;
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecretGenerator::newRandom);
+
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+
+    /**
+     * Create a new generator that uses the common pool
+     */
+    public SecretGenerator() {
+        this(ForkJoinPool.commonPool(), DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Create a new generator
+     *
+     * @param pool              The pool to generate large batches on
+     * @param parallelThreshold The amount of secrets that is generated by one task
+     */
+    public SecretGenerator(final @NotNull ForkJoinPool pool, final int parallelThreshold) {
+        if (parallelThreshold < 1) {
+            throw new IllegalArgumentException("Parallel threshold must be >= 1");
+        }
+        this.pool = Objects.requireNonNull(pool);
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    private static SecureRandom newRandom() {
+        try {
+            // Reseeds from the system source on its own, no prediction resistance needed for key generation
+            return SecureRandom.getInstance("DRBG", DrbgParameters.instantiation(256, DrbgParameters.Capability.RESEED_ONLY, null));
+        } catch (final NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+    /**
+     * Generate secrets into a new arena
+     *
+     * @param algo  The HMAC algorithm, determines the secret length
+     * @param count The amount of secrets
+     *
+     * @return the arena with <code>count</code> secrets of <code>algo.byteAmount()</code> bytes each
+     */
+    public byte @NotNull [] generate(final @NotNull HMACAlgorithm algo, final int count) {
+        if (count < 0 || (long) count * algo.byteAmount() > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Invalid count: " + count);
+        }
+        final byte[] arena = new byte[count * algo.byteAmount()];
+        this.generate(algo, arena, 0, count);
+        return arena;
+    }
+
+    /**
+     * Generate secrets into an arena
+     * <p>
+     * Secret <code>i</code> is written to <code>offset + i * algo.byteAmount()</code>.
+     *
+     * @param algo   The HMAC algorithm, determines the secret length
+     * @param dest   The arena to write the secrets into
+     * @param offset The position of the first secret
+     * @param count  The amount of secrets
+     */
+    public void generate(final @NotNull HMACAlgorithm algo, final byte @NotNull [] dest, final int offset, final int count) {
+        final int secretLength = algo.byteAmount();
+        if (count < 0 || offset < 0 || (long) count * secretLength > dest.length - offset) {
+            throw new IndexOutOfBoundsException("Range of %d secrets at %d out of bounds for length %d".formatted(count, offset, dest.length));
+        }
+        this.run(new Batch(secretLength, dest, offset, null, null), count);
+    }
+
+    /**
+     * Generate a secret for every user and put it into a store
+     * <p>
+     * Existing secrets of the users are replaced.
+     *
+     * @param store   The store, determines the secret length
+     * @param userIds The ids of the users
+     */
+    public void generate(final @NotNull SecretStore store, final long @NotNull [] userIds) {
+        this.run(new Batch(store.secretLength(), null, 0, store, userIds), userIds.length);
+    }
+
+    private void run(final Batch batch, final int count) {
+        if (count <= this.parallelThreshold || this.pool.getParallelism() < 2) {
+            batch.generateRange(0, count);
+        } else {
+            this.pool.invoke(new BatchTask(batch, 0, count));
+        }
+    }
+
+    /**
+     * The target of a generation call, either an arena or a store
+     */
+    private static final class Batch {
+
+        private final int secretLength;
+        private final byte[] dest;
+        private final int offset;
+        private final SecretStore store;
+        private final long[] userIds;
+
+        private Batch(final int secretLength, final byte[] dest, final int offset, final SecretStore store, final long[] userIds) {
+            this.secretLength = secretLength;
+            this.dest = dest;
+            this.offset = offset;
+            this.store = store;
+            this.userIds = userIds;
+        }
+
+        private void generateRange(final int from, final int to) {
+            final SecureRandom random = RANDOM.get();
+            final int perRequest = Math.max(1, REQUEST_BYTES / this.secretLength);
+            final byte[] scratch = new byte[Math.min(to - from, perRequest) * this.secretLength];
+            try {
+                for (int i = from; i < to; i += perRequest) {
+                    // The last request might produce more bytes than needed, the rest is discarded
+                    random.nextBytes(scratch);
+                    this.emit(scratch, i, Math.min(to - i, perRequest));
+                }
+            } finally {
+                Arrays.fill(scratch, (byte) 0);
+            }
+        }
+
+        private void emit(final byte[] secrets, final int index, final int amount) {
+            if (this.store == null) {
+                System.arraycopy(secrets, 0, this.dest, this.offset + index * this.secretLength, amount * this.secretLength);
+                return;
+            }
+            for (int i = 0; i < amount; i++) {
+                this.store.put(this.userIds[index + i], secrets, i * this.secretLength);
+            }
+        }
+
+    }
+
+    /**
+     * Splits a batch until the chunks are small enough
+     */
+    private final class BatchTask extends RecursiveAction {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final Batch batch;
+        private final int from;
+        private final int to;
+
+        private BatchTask(final Batch batch, final int from, final int to) {
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= SecretGenerator.this.parallelThreshold) {
+                this.batch.generateRange(this.from, this.to);
+                return;
+            }
+            final int mid = (this.from + this.to) >>> 1;
+            invokeAll(new BatchTask(this.batch, this.from, mid), new BatchTask(this.batch, mid, this.to));
+        }
+
+    }
+
+}
@@ -0,0 +1,164 @@
+package dev.cerus.faktor.service.store;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.jfr.SecretStoreLookupEvent;
+import dev.cerus.faktor.util.LongLongHashMap;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * In-heap SecretStore that packs all secrets into one contiguous byte array
+ * <p>
+ * Every secret occupies a fixed-size slot in the arena and users are mapped to their slot with a
+ * {@link LongLongHashMap}. There are no objects per user, so the memory per user is the secret length plus
+ * 32 to 64 bytes of index. Slots of removed users are zeroed and reused.
+ * <p>
+ * Reads share a lock and only exclude writes. The arena is limited to 2 GiB, which is enough for about
+ * 100 million SHA-1 secrets.
+ */
+public class ArenaSecretStore implements SecretStore {
+
+    private static final long NO_SLOT = -1;
+
+    private final int secretLength;
+    private final StampedLock lock = new StampedLock();
+    private final LongLongHashMap index;
+    private byte[] arena;
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount;
+    private int nextSlot;
+
+    /**
+     * Create a new store for secrets of the specified algorithm
+     *
+     * @param algo The HMAC algorithm, determines the secret length
+     */
+    public ArenaSecretStore(final @NotNull HMACAlgorithm algo) {
+        this(algo.byteAmount(), 16);
+    }
+
+    /**
+     * Create a new store
+     *
+     * @param secretLength    The length of each secret in bytes
+     * @param initialCapacity The amount of secrets that can be stored without growing the arena
+     */
+    public ArenaSecretStore(final int secretLength, final int initialCapacity) {
+        if (secretLength < 1) {
+            throw new IllegalArgumentException("Secret length must be >= 1");
+        }
+        if (initialCapacity < 1 || (long) initialCapacity * secretLength > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid initial capacity: " + initialCapacity);
+        }
+        this.secretLength = secretLength;
+        this.index = new LongLongHashMap(initialCapacity);
+        this.arena = new byte[initialCapacity * secretLength];
+    }
+
+    @Override
+    public int secretLength() {
+        return this.secretLength;
+    }
+
+    @Override
+    public boolean read(final long userId, final byte @NotNull [] dest, final int offset) {
+        final SecretStoreLookupEvent event = SecretStoreLookupEvent.start();
+        final long stamp = this.lock.readLock();
+        try {
+            final long slot = this.index.get(userId, NO_SLOT);
+            SecretStoreLookupEvent.complete(event, this.getClass(), userId, slot != NO_SLOT);
+            if (slot == NO_SLOT) {
+                return false;
+            }
+            System.arraycopy(this.arena, (int) slot * this.secretLength, dest, offset, this.secretLength);
+            return true;
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void put(final long userId, final byte @NotNull [] src, final int offset) {
+        if (offset < 0 || offset > src.length - this.secretLength) {
+            throw new IndexOutOfBoundsException("Source buffer does not hold a full secret at offset " + offset);
+        }
+        final long stamp = this.lock.writeLock();
+        try {
+            long slot = this.index.get(userId, NO_SLOT);
+            if (slot == NO_SLOT) {
+                slot = this.allocateSlot();
+                this.index.put(userId, slot, NO_SLOT);
+            }
+            System.arraycopy(src, offset, this.arena, (int) slot * this.secretLength, this.secretLength);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(final long userId) {
+        final long stamp = this.lock.writeLock();
+        try {
+            final long slot = this.index.remove(userId, NO_SLOT);
+            if (slot == NO_SLOT) {
+                return false;
+            }
+            final int pos = (int) slot * this.secretLength;
+            Arrays.fill(this.arena, pos, pos + this.secretLength, (byte) 0);
+            if (this.freeSlotCount == this.freeSlots.length) {
+                this.freeSlots = Arrays.copyOf(this.freeSlots, this.freeSlots.length * 2);
+            }
+            this.freeSlots[this.freeSlotCount++] = (int) slot;
+            return true;
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean contains(final long userId) {
+        final long stamp = this.lock.readLock();
+        try {
+            return this.index.containsKey(userId);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public long size() {
+        final long stamp = this.lock.readLock();
+        try {
+            return this.index.size();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Takes a free slot or appends a new one, growing the arena if required
+     * <p>
+     * Has to be called while holding the write lock.
+     */
+    private int allocateSlot() {
+        if (this.freeSlotCount > 0) {
+            return this.freeSlots[--this.freeSlotCount];
+        }
+        final int slot = this.nextSlot;
+        final long required = (long) (slot + 1) * this.secretLength;
+        if (required > this.arena.length) {
+            final long grown = Math.min(Math.max(required, (long) this.arena.length * 2), Integer.MAX_VALUE - 8);
+            if (required > grown) {
+                throw new IllegalStateException("Arena is full");
+            }
+            final byte[] old = this.arena;
+            this.arena = Arrays.copyOf(old, (int) (grown - grown % this.secretLength));
+            // Readers hold the read lock, so nobody sees the old arena anymore
+            Arrays.fill(old, (byte) 0);
+        }
+        this.nextSlot++;
+        return slot;
+    }
+
+}
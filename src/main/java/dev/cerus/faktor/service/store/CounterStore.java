@@ -0,0 +1,39 @@
+package dev.cerus.faktor.service.store;
+
+/**
+ * Storage for the HOTP counters of many users
+ * <p>
+ * Every user implicitly starts at counter 0, so a user without a stored counter behaves like a user whose counter is 0.
+ * Counters only move forward through {@link CounterStore#compareAndSet(long, long, long)}, which is what prevents two
+ * concurrent validations of the same code from both succeeding. Implementations have to be thread safe.
+ */
+public interface CounterStore {
+
+    /**
+     * Get the counter of a user
+     *
+     * @param userId The id of the user
+     *
+     * @return the counter of the next expected HOTP, 0 if no counter is stored for the user
+     */
+    long get(long userId);
+
+    /**
+     * Atomically set the counter of a user if it has the expected value
+     *
+     * @param userId   The id of the user
+     * @param expected The expected current counter
+     * @param update   The new counter, must be >= 0
+     *
+     * @return whether the counter had the expected value and was updated
+     */
+    boolean compareAndSet(long userId, long expected, long update);
+
+    /**
+     * Reset the counter of a user to 0
+     *
+     * @param userId The id of the user
+     */
+    void reset(long userId);
+
+}
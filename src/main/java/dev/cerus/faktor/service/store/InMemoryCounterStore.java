@@ -0,0 +1,144 @@
+package dev.cerus.faktor.service.store;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free CounterStore backed by an open-addressing table of atomic longs
+ * <p>
+ * User ids and counters are stored next to each other in one {@link AtomicLongArray}. A user claims a slot by
+ * swapping the empty key for its id, and the counter next to it is only ever changed with compare-and-set, so
+ * concurrent callers never block each other. Users are never removed from the table, resetting a counter sets it
+ * back to 0.
+ * <p>
+ * The capacity is fixed and at most 75% of it can be used, claiming a slot in a full table throws an
+ * {@link IllegalStateException}.
+ */
+public class InMemoryCounterStore implements CounterStore {
+
+    private static final long EMPTY = 0;
+
+    private final AtomicLongArray table;
+    private final AtomicLong emptyKeyCounter = new AtomicLong();
+    private final AtomicLong size = new AtomicLong();
+    private final int mask;
+    private final int maxSize;
+
+    /**
+     * Create a new store
+     *
+     * @param expectedUsers The amount of users the store should be able to hold
+     */
+    public InMemoryCounterStore(final int expectedUsers) {
+        if (expectedUsers < 0 || expectedUsers > 1 << 28) {
+            throw new IllegalArgumentException("Invalid expected users: " + expectedUsers);
+        }
+        final int capacity = Math.max(16, Integer.highestOneBit(expectedUsers + expectedUsers / 3) << 1);
+        this.table = new AtomicLongArray(capacity * 2);
+        this.mask = capacity - 1;
+        this.maxSize = capacity - (capacity >>> 2);
+    }
+
+    private static int mix(final long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public long get(final long userId) {
+        if (userId == EMPTY) {
+            return this.emptyKeyCounter.get();
+        }
+        final int slot = this.find(userId);
+        return slot < 0 ? 0 : this.table.get(slot + 1);
+    }
+
+    @Override
+    public boolean compareAndSet(final long userId, final long expected, final long update) {
+        if (update < 0) {
+            throw new IllegalArgumentException("Counter must be >= 0");
+        }
+        if (userId == EMPTY) {
+            return this.emptyKeyCounter.compareAndSet(expected, update);
+        }
+        int slot = this.find(userId);
+        if (slot < 0) {
+            if (expected != 0) {
+                return false;
+            }
+            slot = this.claim(userId);
+        }
+        return this.table.compareAndSet(slot + 1, expected, update);
+    }
+
+    @Override
+    public void reset(final long userId) {
+        if (userId == EMPTY) {
+            this.emptyKeyCounter.set(0);
+            return;
+        }
+        final int slot = this.find(userId);
+        if (slot >= 0) {
+            this.table.set(slot + 1, 0);
+        }
+    }
+
+    /**
+     * Get the amount of users that have claimed a slot
+     *
+     * @return the amount of users in the table
+     */
+    public long size() {
+        return this.size.get();
+    }
+
+    /**
+     * Find the slot of a user
+     *
+     * @return the index of the key in the table or -1 if the user has no slot
+     */
+    private int find(final long userId) {
+        int idx = mix(userId) & this.mask;
+        while (true) {
+            final long key = this.table.get(idx * 2);
+            if (key == userId) {
+                return idx * 2;
+            }
+            if (key == EMPTY) {
+                return -1;
+            }
+            idx = (idx + 1) & this.mask;
+        }
+    }
+
+    /**
+     * Find or claim the slot of a user
+     *
+     * @return the index of the key in the table
+     */
+    private int claim(final long userId) {
+        int idx = mix(userId) & this.mask;
+        while (true) {
+            final long key = this.table.get(idx * 2);
+            if (key == userId) {
+                return idx * 2;
+            }
+            if (key == EMPTY) {
+                if (this.size.incrementAndGet() > this.maxSize) {
+                    this.size.decrementAndGet();
+                    throw new IllegalStateException("Counter store is full");
+                }
+                if (this.table.compareAndSet(idx * 2, EMPTY, userId)) {
+                    return idx * 2;
+                }
+                // Another user took the slot in the meantime, it might have been the same user
+                this.size.decrementAndGet();
+                if (this.table.get(idx * 2) == userId) {
+                    return idx * 2;
+                }
+            }
+            idx = (idx + 1) & this.mask;
+        }
+    }
+
+}
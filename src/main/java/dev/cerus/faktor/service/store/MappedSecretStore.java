@@ -0,0 +1,541 @@
+package dev.cerus.faktor.service.store;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.generator.HOTPGenerator;
+import dev.cerus.faktor.generator.PreparedOTPKey;
+import dev.cerus.faktor.generator.TOTPGenerator;
+import dev.cerus.faktor.jfr.SecretStoreLookupEvent;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.StampedLock;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Persistent SecretStore backed by a memory-mapped file
+ * <p>
+ * The file is a fixed-capacity open-addressing hash table of fixed-size records, so opening a store does not read
+ * or index its contents and lookups touch a single record in the common case. Each record holds an algorithm tag,
+ * the user id and the raw secret. Records are spread over several mappings, which allows files larger than 2 GiB.
+ * <p>
+ * The generator methods of this store pass the mapped record straight to the generator, the secret is never copied
+ * to the heap.
+ * <p>
+ * File layout (big endian):
+ * <pre>
+ * header (64 bytes): magic "FKSS", version, default algorithm tag, secret length, capacity, size
+ * record:            algorithm tag (1 byte, 0 = empty), user id (8 bytes), secret (secret length bytes)
+ * </pre>
+ * <p>
+ * The capacity is fixed when the store is created and at most 75% of the records can be used. Reads share a lock
+ * and only exclude writes. Changes are written to the page cache immediately, {@link MappedSecretStore#flush()}
+ * forces them to the disk.
+ */
+public class MappedSecretStore implements SecretStore, Closeable {
+
+    private static final int MAGIC = 0x464B5353;
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 64;
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_ALGORITHM = 8;
+    private static final int HEADER_SECRET_LENGTH = 12;
+    private static final int HEADER_CAPACITY = 16;
+    private static final int HEADER_SIZE = 24;
+    private static final int RECORD_TAG = 0;
+    private static final int RECORD_USER = 1;
+    private static final int RECORD_SECRET = 9;
+    private static final byte TAG_EMPTY = 0;
+    private static final long MIN_CAPACITY = 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] segments;
+    private final HMACAlgorithm algorithm;
+    private final int secretLength;
+    private final int recordLength;
+    private final long capacity;
+    private final long mask;
+    private final long maxSize;
+    private final int segmentShift;
+    private final int segmentMask;
+    private final StampedLock lock = new StampedLock();
+    private long size;
+    private boolean closed;
+
+    private MappedSecretStore(final FileChannel channel,
+                              final MappedByteBuffer header,
+                              final HMACAlgorithm algorithm,
+                              final int secretLength,
+                              final long capacity) throws IOException {
+        this.channel = channel;
+        this.header = header;
+        this.algorithm = algorithm;
+        this.secretLength = secretLength;
+        this.recordLength = RECORD_SECRET + secretLength;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.maxSize = capacity - (capacity >>> 2);
+        this.size = header.getLong(HEADER_SIZE);
+
+        final long recordsPerSegment = Math.min(capacity, Integer.highestOneBit(Integer.MAX_VALUE / this.recordLength));
+        this.segmentShift = Long.numberOfTrailingZeros(recordsPerSegment);
+        this.segmentMask = (int) recordsPerSegment - 1;
+        this.segments = new MappedByteBuffer[(int) (capacity / recordsPerSegment)];
+        final long segmentLength = recordsPerSegment * this.recordLength;
+        for (int i = 0; i < this.segments.length; i++) {
+            this.segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_LENGTH + i * segmentLength, segmentLength);
+        }
+    }
+
+    /**
+     * Create a new store file
+     *
+     * @param path            The path of the file, must not exist
+     * @param algo            The HMAC algorithm, determines the secret length and is the default algorithm tag
+     * @param expectedEntries The amount of secrets the store should be able to hold
+     *
+     * @return the new store
+     *
+     * @throws IOException if the file can not be created
+     */
+    public static @NotNull MappedSecretStore create(final @NotNull Path path,
+                                                    final @NotNull HMACAlgorithm algo,
+                                                    final long expectedEntries) throws IOException {
+        return create(path, algo, algo.byteAmount(), expectedEntries);
+    }
+
+    /**
+     * Create a new store file
+     *
+     * @param path            The path of the file, must not exist
+     * @param algo            The default algorithm tag of new records
+     * @param secretLength    The length of each secret in bytes
+     * @param expectedEntries The amount of secrets the store should be able to hold
+     *
+     * @return the new store
+     *
+     * @throws IOException if the file can not be created
+     */
+    public static @NotNull MappedSecretStore create(final @NotNull Path path,
+                                                    final @NotNull HMACAlgorithm algo,
+                                                    final int secretLength,
+                                                    final long expectedEntries) throws IOException {
+        if (secretLength < 1) {
+            throw new IllegalArgumentException("Secret length must be >= 1");
+        }
+        if (expectedEntries < 0 || expectedEntries > (1L << 60)) {
+            throw new IllegalArgumentException("Invalid expected entries: " + expectedEntries);
+        }
+        final long capacity = Math.max(MIN_CAPACITY, Long.highestOneBit(expectedEntries + expectedEntries / 3) << 1);
+        final long fileLength = HEADER_LENGTH + capacity * (RECORD_SECRET + secretLength);
+
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // Writing the last byte extends the file, the records in between read as zero (empty)
+            channel.write(ByteBuffer.allocate(1), fileLength - 1);
+            final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LENGTH);
+            header.putInt(HEADER_MAGIC, MAGIC);
+            header.putInt(HEADER_VERSION, VERSION);
+            header.put(HEADER_ALGORITHM, tag(algo));
+            header.putInt(HEADER_SECRET_LENGTH, secretLength);
+            header.putLong(HEADER_CAPACITY, capacity);
+            header.putLong(HEADER_SIZE, 0);
+            return new MappedSecretStore(channel, header, algo, secretLength, capacity);
+        } catch (final IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open an existing store file
+     * <p>
+     * Only the header is read, the records are paged in on demand.
+     *
+     * @param path The path of the file
+     *
+     * @return the store
+     *
+     * @throws IOException if the file can not be opened or is not a valid store file
+     */
+    public static @NotNull MappedSecretStore open(final @NotNull Path path) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < HEADER_LENGTH) {
+                throw new IOException("Not a secret store file: " + path);
+            }
+            final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LENGTH);
+            if (header.getInt(HEADER_MAGIC) != MAGIC) {
+                throw new IOException("Not a secret store file: " + path);
+            }
+            if (header.getInt(HEADER_VERSION) != VERSION) {
+                throw new IOException("Unsupported secret store version: " + header.getInt(HEADER_VERSION));
+            }
+            final HMACAlgorithm algo = algorithm(header.get(HEADER_ALGORITHM));
+            final int secretLength = header.getInt(HEADER_SECRET_LENGTH);
+            final long capacity = header.getLong(HEADER_CAPACITY);
+            if (algo == null || secretLength < 1 || capacity < MIN_CAPACITY || Long.bitCount(capacity) != 1
+                    || channel.size() != HEADER_LENGTH + capacity * (RECORD_SECRET + secretLength)) {
+                throw new IOException("Corrupted secret store file: " + path);
+            }
+            return new MappedSecretStore(channel, header, algo, secretLength, capacity);
+        } catch (final IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static byte tag(final HMACAlgorithm algo) {
+        return (byte) (algo.ordinal() + 1);
+    }
+
+    private static HMACAlgorithm algorithm(final byte tag) {
+        final HMACAlgorithm[] values = HMACAlgorithm.values();
+        return tag < 1 || tag > values.length ? null : values[tag - 1];
+    }
+
+    private static long mix(final long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    /**
+     * Get the default algorithm of this store
+     *
+     * @return the algorithm that new records are tagged with unless specified otherwise
+     */
+    public @NotNull HMACAlgorithm algorithm() {
+        return this.algorithm;
+    }
+
+    /**
+     * Get the amount of records in the store file
+     *
+     * @return the amount of records, 75% of them can be used
+     */
+    public long capacity() {
+        return this.capacity;
+    }
+
+    @Override
+    public int secretLength() {
+        return this.secretLength;
+    }
+
+    @Override
+    public boolean read(final long userId, final byte @NotNull [] dest, final int offset) {
+        final SecretStoreLookupEvent event = SecretStoreLookupEvent.start();
+        final long stamp = this.lock.readLock();
+        try {
+            this.ensureOpen();
+            final long record = this.find(userId);
+            SecretStoreLookupEvent.complete(event, this.getClass(), userId, record >= 0);
+            if (record < 0) {
+                return false;
+            }
+            this.segment(record).get(this.position(record) + RECORD_SECRET, dest, offset, this.secretLength);
+            return true;
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Get the algorithm tag of a user's record
+     *
+     * @param userId The id of the user
+     *
+     * @return the algorithm or null if no secret is stored for the user
+     */
+    public HMACAlgorithm algorithm(final long userId) {
+        final long stamp = this.lock.readLock();
+        try {
+            this.ensureOpen();
+            final long record = this.find(userId);
+            return record < 0 ? null : algorithm(this.segment(record).get(this.position(record) + RECORD_TAG));
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Prepare the key of a user straight from the mapped record
+     *
+     * @param userId The id of the user
+     *
+     * @return the prepared key or null if no secret is stored for the user
+     */
+    public PreparedOTPKey prepareKey(final long userId) {
+        final SecretStoreLookupEvent event = SecretStoreLookupEvent.start();
+        final long stamp = this.lock.readLock();
+        try {
+            this.ensureOpen();
+            final long record = this.find(userId);
+            SecretStoreLookupEvent.complete(event, this.getClass(), userId, record >= 0);
+            if (record < 0) {
+                return null;
+            }
+            final ByteBuffer segment = this.segment(record);
+            final int pos = this.position(record);
+            return PreparedOTPKey.of(segment, pos + RECORD_SECRET, this.secretLength, algorithm(segment.get(pos + RECORD_TAG)));
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Generate a HOTP for a user straight from the mapped record
+     *
+     * @param userId    The id of the user
+     * @param generator The generator to use
+     * @param counter   The counter value
+     * @param digits    The amount of digits the password should have
+     *
+     * @return the generated HOTP
+     *
+     * @throws IllegalArgumentException if no secret is stored for the user
+     */
+    public int generateHOTP(final long userId, final @NotNull HOTPGenerator generator, final long counter, final int digits) {
+        final SecretStoreLookupEvent event = SecretStoreLookupEvent.start();
+        final long stamp = this.lock.readLock();
+        try {
+            this.ensureOpen();
+            final long record = this.find(userId);
+            SecretStoreLookupEvent.complete(event, this.getClass(), userId, record >= 0);
+            if (record < 0) {
+                throw new IllegalArgumentException("No secret stored for user " + userId);
+            }
+            final ByteBuffer segment = this.segment(record);
+            final int pos = this.position(record);
+            return generator.generateHOTP(segment, pos + RECORD_SECRET, this.secretLength, counter, digits,
+                    algorithm(segment.get(pos + RECORD_TAG)));
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Generate a TOTP for a user straight from the mapped record
+     *
+     * @param userId              The id of the user
+     * @param generator           The generator to use
+     * @param timeReferenceMillis The timestamp to generate the password for in millis
+     * @param timeStepMillis      The lifetime of the password in millis
+     * @param digits              The amount of digits the password should have
+     *
+     * @return the generated TOTP
+     *
+     * @throws IllegalArgumentException if no secret is stored for the user
+     */
+    public int generateTOTP(final long userId,
+                            final @NotNull TOTPGenerator generator,
+                            final long timeReferenceMillis,
+                            final long timeStepMillis,
+                            final int digits) {
+        return this.generateHOTP(userId, generator, timeReferenceMillis / timeStepMillis, digits);
+    }
+
+    @Override
+    public void put(final long userId, final byte @NotNull [] src, final int offset) {
+        this.put(userId, src, offset, this.algorithm);
+    }
+
+    /**
+     * Store the secret of a user with a specific algorithm tag, replacing an existing secret
+     * <p>
+     * {@link SecretStore#secretLength()} bytes are copied from the source buffer.
+     *
+     * @param userId The id of the user
+     * @param src    The buffer that holds the raw secret
+     * @param offset The position of the secret in the buffer
+     * @param algo   The HMAC algorithm of the secret
+     *
+     * @throws IllegalStateException if the store is full
+     */
+    public void put(final long userId, final byte @NotNull [] src, final int offset, final @NotNull HMACAlgorithm algo) {
+        if (offset < 0 || offset > src.length - this.secretLength) {
+            throw new IndexOutOfBoundsException("Source buffer does not hold a full secret at offset " + offset);
+        }
+        final long stamp = this.lock.writeLock();
+        try {
+            this.ensureOpen();
+            long record = mix(userId) & this.mask;
+            while (true) {
+                final ByteBuffer segment = this.segment(record);
+                final int pos = this.position(record);
+                if (segment.get(pos + RECORD_TAG) == TAG_EMPTY) {
+                    if (this.size == this.maxSize) {
+                        throw new IllegalStateException("Store is full");
+                    }
+                    segment.putLong(pos + RECORD_USER, userId);
+                    this.setSize(this.size + 1);
+                    break;
+                }
+                if (segment.getLong(pos + RECORD_USER) == userId) {
+                    break;
+                }
+                record = (record + 1) & this.mask;
+            }
+            final ByteBuffer segment = this.segment(record);
+            final int pos = this.position(record);
+            segment.put(pos + RECORD_SECRET, src, offset, this.secretLength);
+            // The tag is written last, it marks the record as used
+            segment.put(pos + RECORD_TAG, tag(algo));
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(final long userId) {
+        final long stamp = this.lock.writeLock();
+        try {
+            this.ensureOpen();
+            final long record = this.find(userId);
+            if (record < 0) {
+                return false;
+            }
+            this.shiftBack(record);
+            this.setSize(this.size - 1);
+            return true;
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean contains(final long userId) {
+        final long stamp = this.lock.readLock();
+        try {
+            this.ensureOpen();
+            return this.find(userId) >= 0;
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public long size() {
+        final long stamp = this.lock.readLock();
+        try {
+            return this.size;
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Force all changes to the disk
+     */
+    public void flush() {
+        final long stamp = this.lock.readLock();
+        try {
+            this.ensureOpen();
+            this.header.force();
+            for (final MappedByteBuffer segment : this.segments) {
+                segment.force();
+            }
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Flush and close this store
+     * <p>
+     * The mappings stay valid until they are garbage collected, but this store can not be used anymore.
+     *
+     * @throws IOException if the file can not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        final long stamp = this.lock.writeLock();
+        try {
+            if (this.closed) {
+                return;
+            }
+            this.header.force();
+            for (final MappedByteBuffer segment : this.segments) {
+                segment.force();
+            }
+            this.closed = true;
+            this.channel.close();
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    private void ensureOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("Store is closed");
+        }
+    }
+
+    private void setSize(final long size) {
+        this.size = size;
+        this.header.putLong(HEADER_SIZE, size);
+    }
+
+    /**
+     * Find the record of a user
+     *
+     * @return the record index or -1 if no secret is stored for the user
+     */
+    private long find(final long userId) {
+        long record = mix(userId) & this.mask;
+        while (true) {
+            final ByteBuffer segment = this.segment(record);
+            final int pos = this.position(record);
+            if (segment.get(pos + RECORD_TAG) == TAG_EMPTY) {
+                return -1;
+            }
+            if (segment.getLong(pos + RECORD_USER) == userId) {
+                return record;
+            }
+            record = (record + 1) & this.mask;
+        }
+    }
+
+    /**
+     * Removes a record by moving following records of the same probe sequence into the gap
+     * <p>
+     * See {@link dev.cerus.faktor.util.LongLongHashMap}. Has to be called while holding the write lock.
+     */
+    private void shiftBack(long gap) {
+        long record = gap;
+        while (true) {
+            record = (record + 1) & this.mask;
+            final ByteBuffer segment = this.segment(record);
+            final int pos = this.position(record);
+            if (segment.get(pos + RECORD_TAG) == TAG_EMPTY) {
+                break;
+            }
+            final long home = mix(segment.getLong(pos + RECORD_USER)) & this.mask;
+            // Move the record if its home is not between the gap and its current position (cyclically)
+            if (((record - home) & this.mask) >= ((record - gap) & this.mask)) {
+                this.segment(gap).put(this.position(gap), segment, pos, this.recordLength);
+                gap = record;
+            }
+        }
+        final ByteBuffer segment = this.segment(gap);
+        final int pos = this.position(gap);
+        for (int i = 0; i < this.recordLength; i++) {
+            segment.put(pos + i, (byte) 0);
+        }
+    }
+
+    private ByteBuffer segment(final long record) {
+        return this.segments[(int) (record >>> this.segmentShift)];
+    }
+
+    private int position(final long record) {
+        return ((int) record & this.segmentMask) * this.recordLength;
+    }
+
+}
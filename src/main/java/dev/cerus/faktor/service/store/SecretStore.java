@@ -0,0 +1,81 @@
+package dev.cerus.faktor.service.store;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Storage for the raw OTP secrets of many users
+ * <p>
+ * All secrets of a store have the same length. Implementations have to be thread safe.
+ */
+public interface SecretStore {
+
+    /**
+     * Get the length of the secrets in this store
+     *
+     * @return the length of each secret in bytes
+     */
+    int secretLength();
+
+    /**
+     * Copy the secret of a user into a buffer
+     *
+     * @param userId The id of the user
+     * @param dest   The buffer to copy the secret into
+     * @param offset The position in the buffer to copy the secret to
+     *
+     * @return whether a secret is stored for the user
+     */
+    boolean read(long userId, byte @NotNull [] dest, int offset);
+
+    /**
+     * Store the secret of a user, replacing an existing secret
+     *
+     * @param userId The id of the user
+     * @param secret The raw secret (see {@link dev.cerus.faktor.service.secret.OTPSecret#asBytes()})
+     *
+     * @throws IllegalArgumentException if the length of the secret does not match {@link SecretStore#secretLength()}
+     */
+    default void put(final long userId, final byte @NotNull [] secret) {
+        if (secret.length != this.secretLength()) {
+            throw new IllegalArgumentException("Secret must be %d bytes long".formatted(this.secretLength()));
+        }
+        this.put(userId, secret, 0);
+    }
+
+    /**
+     * Store the secret of a user, replacing an existing secret
+     * <p>
+     * {@link SecretStore#secretLength()} bytes are copied from the source buffer.
+     *
+     * @param userId The id of the user
+     * @param src    The buffer that holds the raw secret
+     * @param offset The position of the secret in the buffer
+     */
+    void put(long userId, byte @NotNull [] src, int offset);
+
+    /**
+     * Remove the secret of a user
+     *
+     * @param userId The id of the user
+     *
+     * @return whether a secret was stored for the user
+     */
+    boolean remove(long userId);
+
+    /**
+     * Check if a secret is stored for a user
+     *
+     * @param userId The id of the user
+     *
+     * @return whether a secret is stored for the user
+     */
+    boolean contains(long userId);
+
+    /**
+     * Get the amount of stored secrets
+     *
+     * @return the amount of stored secrets
+     */
+    long size();
+
+}
@@ -0,0 +1,296 @@
+package dev.cerus.faktor.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map with primitive <code>long</code> keys and values
+ * <p>
+ * Entries are stored in two flat arrays with linear probing, so there is no per-entry object and no boxing.
+ * Removal uses backward shifting instead of tombstones, which keeps lookups short after many removals.
+ * <p>
+ * This class is not thread safe, callers have to synchronize access themselves.
+ */
+public final class LongLongHashMap {
+
+    private static final long EMPTY = 0;
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+    // The empty marker is a valid key as well, so its entry is stored separately
+    private boolean hasEmptyKey;
+    private long emptyKeyValue;
+
+    public LongLongHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Create a new map that can hold the expected amount of entries without resizing
+     *
+     * @param expectedSize The expected amount of entries
+     */
+    public LongLongHashMap(final int expectedSize) {
+        this.allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(final int expectedSize) {
+        // Keep the load factor at or below 0.5
+        final long capacity = Math.max(MIN_CAPACITY, Long.highestOneBit(Math.max(1, (long) expectedSize) * 2 - 1) << 1);
+        if (capacity > 1 << 30) {
+            throw new IllegalArgumentException("Expected size is too large: " + expectedSize);
+        }
+        return (int) capacity;
+    }
+
+    private static int mix(final long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void allocate(final int capacity) {
+        this.keys = new long[capacity];
+        this.values = new long[capacity];
+        this.mask = capacity - 1;
+        this.resizeAt = capacity / 2;
+    }
+
+    /**
+     * Get the value of a key
+     *
+     * @param key          The key
+     * @param defaultValue The value to return if the key is not present
+     *
+     * @return the value of the key or the default value
+     */
+    public long get(final long key, final long defaultValue) {
+        if (key == EMPTY) {
+            return this.hasEmptyKey ? this.emptyKeyValue : defaultValue;
+        }
+        final long[] keys = this.keys;
+        int idx = mix(key) & this.mask;
+        long existing;
+        while ((existing = keys[idx]) != EMPTY) {
+            if (existing == key) {
+                return this.values[idx];
+            }
+            idx = (idx + 1) & this.mask;
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Check if a key is present
+     *
+     * @param key The key
+     *
+     * @return whether the key is present
+     */
+    public boolean containsKey(final long key) {
+        if (key == EMPTY) {
+            return this.hasEmptyKey;
+        }
+        final long[] keys = this.keys;
+        int idx = mix(key) & this.mask;
+        long existing;
+        while ((existing = keys[idx]) != EMPTY) {
+            if (existing == key) {
+                return true;
+            }
+            idx = (idx + 1) & this.mask;
+        }
+        return false;
+    }
+
+    /**
+     * Associate a value with a key
+     *
+     * @param key          The key
+     * @param value        The value
+     * @param defaultValue The value to return if the key was not present
+     *
+     * @return the previous value of the key or the default value
+     */
+    public long put(final long key, final long value, final long defaultValue) {
+        if (key == EMPTY) {
+            final long previous = this.hasEmptyKey ? this.emptyKeyValue : defaultValue;
+            if (!this.hasEmptyKey) {
+                this.hasEmptyKey = true;
+                this.size++;
+            }
+            this.emptyKeyValue = value;
+            return previous;
+        }
+
+        int idx = mix(key) & this.mask;
+        long existing;
+        while ((existing = this.keys[idx]) != EMPTY) {
+            if (existing == key) {
+                final long previous = this.values[idx];
+                this.values[idx] = value;
+                return previous;
+            }
+            idx = (idx + 1) & this.mask;
+        }
+        this.keys[idx] = key;
+        this.values[idx] = value;
+        if (++this.size > this.resizeAt) {
+            this.resize(this.keys.length << 1);
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Remove a key
+     *
+     * @param key          The key
+     * @param defaultValue The value to return if the key was not present
+     *
+     * @return the removed value or the default value
+     */
+    public long remove(final long key, final long defaultValue) {
+        if (key == EMPTY) {
+            if (!this.hasEmptyKey) {
+                return defaultValue;
+            }
+            this.hasEmptyKey = false;
+            this.size--;
+            return this.emptyKeyValue;
+        }
+
+        int idx = mix(key) & this.mask;
+        long existing;
+        while ((existing = this.keys[idx]) != EMPTY) {
+            if (existing == key) {
+                final long previous = this.values[idx];
+                this.shiftBack(idx);
+                this.size--;
+                return previous;
+            }
+            idx = (idx + 1) & this.mask;
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Remove all entries that match a predicate
+     *
+     * @param predicate The predicate
+     *
+     * @return the amount of removed entries
+     */
+    public int removeIf(final EntryPredicate predicate) {
+        int removed = 0;
+        if (this.hasEmptyKey && predicate.test(EMPTY, this.emptyKeyValue)) {
+            this.hasEmptyKey = false;
+            this.size--;
+            removed++;
+        }
+        // Backward shifting moves entries to lower indices, so an index is visited again after a removal.
+        // Entries that wrap around from the end to the start of the table might be visited twice, which
+        // does not matter since they did not match the first time.
+        int idx = 0;
+        while (idx < this.keys.length) {
+            final long key = this.keys[idx];
+            if (key != EMPTY && predicate.test(key, this.values[idx])) {
+                this.shiftBack(idx);
+                this.size--;
+                removed++;
+            } else {
+                idx++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Remove all entries
+     */
+    public void clear() {
+        Arrays.fill(this.keys, EMPTY);
+        this.hasEmptyKey = false;
+        this.size = 0;
+    }
+
+    /**
+     * Get the amount of entries
+     *
+     * @return the amount of entries
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Check if this map is empty
+     *
+     * @return whether this map is empty
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Closes the gap at the specified index by moving following entries of the same probe sequence back
+     */
+    private void shiftBack(int gap) {
+        final long[] keys = this.keys;
+        final long[] values = this.values;
+        int idx = gap;
+        while (true) {
+            idx = (idx + 1) & this.mask;
+            final long key = keys[idx];
+            if (key == EMPTY) {
+                break;
+            }
+            final int home = mix(key) & this.mask;
+            // Move the entry if its home slot is not between the gap and its current slot (cyclically)
+            if (((idx - home) & this.mask) >= ((idx - gap) & this.mask)) {
+                keys[gap] = key;
+                values[gap] = values[idx];
+                gap = idx;
+            }
+        }
+        keys[gap] = EMPTY;
+        values[gap] = 0;
+    }
+
+    private void resize(final int capacity) {
+        final long[] oldKeys = this.keys;
+        final long[] oldValues = this.values;
+        this.allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            final long key = oldKeys[i];
+            if (key != EMPTY) {
+                int idx = mix(key) & this.mask;
+                while (this.keys[idx] != EMPTY) {
+                    idx = (idx + 1) & this.mask;
+                }
+                this.keys[idx] = key;
+                this.values[idx] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Predicate for map entries
+     */
+    @FunctionalInterface
+    public interface EntryPredicate {
+
+        /**
+         * Test an entry
+         *
+         * @param key   The key of the entry
+         * @param value The value of the entry
+         *
+         * @return whether the entry matches
+         */
+        boolean test(long key, long value);
+
+    }
+
+}
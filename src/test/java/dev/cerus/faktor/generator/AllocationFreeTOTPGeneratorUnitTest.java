@@ -0,0 +1,86 @@
+package dev.cerus.faktor.generator;
+
+import com.sun.management.ThreadMXBean;
+import dev.cerus.faktor.HMACAlgorithm;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class AllocationFreeTOTPGeneratorUnitTest {
+
+    private final TOTPGenerator generator = new AllocationFreeTOTPGenerator();
+    private final TOTPGenerator referenceGenerator = new DefaultTOTPGenerator();
+    private final byte[] secret = new byte[20];
+
+    public AllocationFreeTOTPGeneratorUnitTest() {
+        this.setup();
+    }
+
+    public void setup() {
+        final Random random = new Random(1703 * 0xAFFE);
+        random.nextBytes(this.secret);
+    }
+
+    @Test
+    public void testGenerateHOTP() {
+        assertDoesNotThrow(() -> {
+            assertEquals(199682, this.generator.generateHOTP(this.secret, 1703, 6));
+            assertEquals(620199682, this.generator.generateHOTP(this.secret, 1703, 10));
+        });
+    }
+
+    @Test
+    public void testGenerateTOTP() {
+        final long timeStep = TimeUnit.SECONDS.toMillis(30);
+        assertDoesNotThrow(() -> {
+            assertEquals(87492, this.generator.generateTOTP(this.secret, 1703 * 100_000_000L, timeStep, 6, HMACAlgorithm.SHA1));
+            assertEquals(372589, this.generator.generateTOTP(this.secret, 1703 * 100_000_000L, timeStep, 6, 1, HMACAlgorithm.SHA1));
+            assertEquals(1142962634, this.generator.generateTOTP(this.secret, 1703 * 100_000_000L, timeStep, 10, HMACAlgorithm.SHA256));
+            assertEquals(1623165612, this.generator.generateTOTP(this.secret, 1703 * 100_000_000L, timeStep, 10, HMACAlgorithm.SHA512));
+        });
+    }
+
+    @Test
+    public void testMatchesDefaultGenerator() {
+        final Random random = new Random(0xC0FFEE);
+        assertDoesNotThrow(() -> {
+            for (final HMACAlgorithm algo : HMACAlgorithm.values()) {
+                final byte[] key = new byte[algo.byteAmount()];
+                random.nextBytes(key);
+                for (int i = 0; i < 32; i++) {
+                    final long time = random.nextLong() >>> 1;
+                    assertEquals(this.referenceGenerator.generateTOTP(key, time, 30_000, 8, algo),
+                            this.generator.generateTOTP(key, time, 30_000, 8, algo));
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testNoAllocationsAfterWarmup() {
+        final ThreadMXBean bean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final PreparedOTPKey key = PreparedOTPKey.of(this.secret, HMACAlgorithm.SHA256);
+        assertDoesNotThrow(() -> {
+            int sink = 0;
+            for (int i = 0; i < 20_000; i++) {
+                sink += this.generator.generateTOTP(this.secret, i * 30_000L, 30_000, 6, HMACAlgorithm.SHA1);
+                sink += this.generator.generateTOTP(key, i * 30_000L, 30_000, 6);
+            }
+
+            final long before = bean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 20_000; i++) {
+                sink += this.generator.generateTOTP(this.secret, i * 30_000L, 30_000, 6, HMACAlgorithm.SHA1);
+                sink += this.generator.generateTOTP(key, i * 30_000L, 30_000, 6);
+            }
+            final long allocated = bean.getThreadAllocatedBytes(threadId) - before;
+            // Allow some slack for the measurement itself
+            assertTrue(allocated < 4096, "Expected no allocations, got " + allocated + " bytes (" + sink + ")");
+        });
+    }
+
+}
@@ -1,6 +1,11 @@
 package dev.cerus.faktor.generator;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import org.junit.jupiter.api.Test;
@@ -31,4 +36,22 @@ public class DefaultHOTPGeneratorUnitTest {
         });
     }
 
+    @Test
+    public void testGenerateHOTPConcurrent() {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            assertDoesNotThrow(() -> {
+                final List<Future<Integer>> futures = new ArrayList<>();
+                for (int i = 0; i < 256; i++) {
+                    futures.add(executor.submit(() -> this.generator.generateHOTP(this.secret, 1703, 6)));
+                }
+                for (final Future<Integer> future : futures) {
+                    assertEquals(199682, future.get());
+                }
+            });
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
 }
@@ -0,0 +1,55 @@
+package dev.cerus.faktor.generator;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import java.util.ArrayList;
+import java.util.List;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+
+public class MacPoolUnitTest {
+
+    @Test
+    public void testPoolIsBounded() {
+        assertDoesNotThrow(() -> {
+            final List<Mac> macs = new ArrayList<>();
+            for (int i = 0; i < MacPool.CAPACITY * 2; i++) {
+                macs.add(MacPool.acquire(HMACAlgorithm.SHA256));
+            }
+            for (final Mac mac : macs) {
+                MacPool.release(HMACAlgorithm.SHA256, mac);
+            }
+        });
+        assertEquals(MacPool.CAPACITY, MacPool.size(HMACAlgorithm.SHA256));
+    }
+
+    @Test
+    public void testReleaseClearsKey() {
+        final byte[] data = {1, 2, 3};
+        assertDoesNotThrow(() -> {
+            final Mac mac = MacPool.acquire(HMACAlgorithm.SHA1);
+            mac.init(new SecretKeySpec(new byte[] {42, 42, 42}, HMACAlgorithm.SHA1.macName()));
+            mac.doFinal(data);
+            MacPool.release(HMACAlgorithm.SHA1, mac);
+
+            // The released instance now holds the blank key instead of the secret
+            final Mac blank = Mac.getInstance(HMACAlgorithm.SHA1.macName());
+            blank.init(new SecretKeySpec(new byte[1], HMACAlgorithm.SHA1.macName()));
+            assertArrayEquals(blank.doFinal(data), mac.doFinal(data));
+        });
+    }
+
+    @Test
+    public void testAlgorithmOf() {
+        for (final HMACAlgorithm algo : HMACAlgorithm.values()) {
+            assertSame(algo, MacPool.algorithmOf(algo.macName()));
+        }
+        assertNull(MacPool.algorithmOf("HmacMD5"));
+    }
+
+}
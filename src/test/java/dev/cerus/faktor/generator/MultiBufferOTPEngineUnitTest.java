@@ -0,0 +1,60 @@
+package dev.cerus.faktor.generator;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+public class MultiBufferOTPEngineUnitTest {
+
+    private final TOTPGenerator generator = new DefaultTOTPGenerator();
+    private final MultiBufferOTPEngine engine = new MultiBufferOTPEngine();
+
+    @Test
+    public void testMatchesScalarGenerator() {
+        final Random random = new Random(1703 * 0xAFFE);
+        // Mixed algorithms and a length that leaves partially filled lane groups
+        final PreparedOTPKey[] keys = new PreparedOTPKey[MultiBufferOTPEngine.LANES * 3 + 5];
+        for (int i = 0; i < keys.length; i++) {
+            final HMACAlgorithm algo = HMACAlgorithm.values()[random.nextInt(HMACAlgorithm.values().length)];
+            final byte[] secret = new byte[algo.byteAmount()];
+            random.nextBytes(secret);
+            keys[i] = PreparedOTPKey.of(secret, algo);
+        }
+
+        final int[] codes = new int[keys.length + 2];
+        for (int digits = 6; digits <= 10; digits++) {
+            for (int n = 0; n < 20; n++) {
+                final long counter = random.nextLong() >>> 1;
+                this.engine.generateHOTP(keys, 0, keys.length, counter, digits, codes, 2);
+                for (int i = 0; i < keys.length; i++) {
+                    assertEquals(this.generator.generateHOTP(keys[i], counter, digits), codes[i + 2]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGenerateTOTP() {
+        final byte[] secret = new byte[20];
+        new Random(1703 * 0xAFFE).nextBytes(secret);
+        final PreparedOTPKey key = PreparedOTPKey.of(secret, HMACAlgorithm.SHA1);
+        final PreparedOTPKey[] keys = {key, key, key};
+        final int[] codes = new int[1];
+
+        // Same known value as in PreparedOTPKeyUnitTest
+        this.engine.generateTOTP(keys, 1, 2, 1703 * 100_000_000L, TimeUnit.SECONDS.toMillis(30), 6, codes, 0);
+        assertEquals(87492, codes[0]);
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        final PreparedOTPKey[] keys = {PreparedOTPKey.of(new byte[20], HMACAlgorithm.SHA1)};
+        assertThrows(IllegalArgumentException.class, () -> this.engine.generateHOTP(keys, 0, 1, 0, 5, new int[1], 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> this.engine.generateHOTP(keys, 0, 2, 0, 6, new int[2], 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> this.engine.generateHOTP(keys, 0, 1, 0, 6, new int[1], 1));
+    }
+
+}
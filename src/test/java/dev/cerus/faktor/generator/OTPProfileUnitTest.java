@@ -0,0 +1,91 @@
+package dev.cerus.faktor.generator;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.service.DefaultTOTPService;
+import dev.cerus.faktor.service.TOTPService;
+import dev.cerus.faktor.service.clock.ManualTOTPClock;
+import dev.cerus.faktor.service.secret.OTPBase32Secret;
+import dev.cerus.faktor.service.secret.OTPSecret;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class OTPProfileUnitTest {
+
+    private static final long TIME_STEP = TimeUnit.SECONDS.toMillis(30);
+    private static final long TIME = 1703 * 100_000_000L;
+
+    private final TOTPGenerator generator = new DefaultTOTPGenerator();
+
+    @Test
+    public void testMatchesGenerator() {
+        final Random random = new Random(1703 * 0xAFFE);
+        assertDoesNotThrow(() -> {
+            for (final HMACAlgorithm algo : HMACAlgorithm.values()) {
+                final OTPSecret secret = OTPBase32Secret.generate(algo, random);
+                for (int digits = 6; digits <= 10; digits++) {
+                    final OTPProfile profile = OTPProfile.of(algo, digits, TIME_STEP, 0);
+                    final PreparedOTPKey key = profile.prepare(secret);
+                    for (int i = 0; i < 50; i++) {
+                        final long time = random.nextLong() >>> 1;
+                        assertEquals(this.generator.generateTOTP(secret.asBytes(), time, TIME_STEP, digits, algo), profile.generate(key, time));
+                    }
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testValidate() {
+        final OTPProfile profile = OTPProfile.of(HMACAlgorithm.SHA256, 8, 30, TimeUnit.SECONDS, 2);
+        final PreparedOTPKey key = profile.prepare(OTPBase32Secret.generate(HMACAlgorithm.SHA256, new Random(1703)));
+        final long step = profile.step(TIME);
+        assertEquals(0, profile.validate(key, profile.generate(key, TIME), TIME));
+        assertEquals(1, profile.validate(key, profile.generateAtStep(key, step - 1), TIME));
+        assertEquals(2, profile.validate(key, profile.generateAtStep(key, step - 2), TIME));
+        assertEquals(-1, profile.validate(key, profile.generateAtStep(key, step - 3), TIME));
+        assertFalse(profile.isValid(key, profile.generateAtStep(key, step + 1), TIME));
+        assertTrue(profile.isValid(key, profile.generateAtStep(key, step - 1), TIME));
+    }
+
+    @Test
+    public void testInvalidParameters() {
+        assertThrows(IllegalArgumentException.class, () -> OTPProfile.of(HMACAlgorithm.SHA1, 5, TIME_STEP, 0));
+        assertThrows(IllegalArgumentException.class, () -> OTPProfile.of(HMACAlgorithm.SHA1, 6, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> OTPProfile.of(HMACAlgorithm.SHA1, 6, TIME_STEP, -1));
+
+        final OTPProfile profile = OTPProfile.of(HMACAlgorithm.SHA1, 6, TIME_STEP, 0);
+        final PreparedOTPKey key = PreparedOTPKey.of(new byte[32], HMACAlgorithm.SHA256);
+        assertThrows(IllegalArgumentException.class, () -> profile.generate(key, TIME));
+    }
+
+    @Test
+    public void testServiceBuilder() {
+        final DefaultTOTPService.Builder builder = TOTPService.defaultServiceBuilder()
+                .withDefaults()
+                .withAlgorithm(HMACAlgorithm.SHA512)
+                .withDigits(8)
+                .withTimeStep(60, TimeUnit.SECONDS)
+                .withBackwardsSteps(1);
+        final OTPProfile profile = builder.buildProfile();
+        assertEquals(OTPProfile.of(HMACAlgorithm.SHA512, 8, TimeUnit.SECONDS.toMillis(60), 1), profile);
+
+        final OTPSecret secret = OTPBase32Secret.generate(HMACAlgorithm.SHA512, new Random(1703));
+        final DefaultTOTPService service = (DefaultTOTPService) TOTPService.defaultServiceBuilder()
+                .withDefaultGenerator()
+                .withSecret(secret)
+                .withProfile(profile)
+                .withClock(new ManualTOTPClock(TIME))
+                .build();
+        assertEquals(profile, service.profile());
+        assertEquals(profile.generate(profile.prepare(secret), TIME), service.generateTOTPUnchecked());
+
+        assertThrows(IllegalStateException.class, () -> TOTPService.defaultServiceBuilder().withDefaults().buildProfile());
+    }
+
+}
@@ -0,0 +1,101 @@
+package dev.cerus.faktor.generator;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.service.secret.OTPSecret;
+import dev.cerus.faktor.service.secret.mock.MockOTPSecret;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.jetbrains.annotations.NotNull;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class PreparedOTPKeyUnitTest {
+
+    private final TOTPGenerator generator = new DefaultTOTPGenerator();
+    private final byte[] secret = new byte[20];
+
+    public PreparedOTPKeyUnitTest() {
+        this.setup();
+    }
+
+    public void setup() {
+        final Random random = new Random(1703 * 0xAFFE);
+        random.nextBytes(this.secret);
+    }
+
+    @Test
+    public void testGenerateHOTP() {
+        final PreparedOTPKey key = PreparedOTPKey.of(this.secret, HMACAlgorithm.SHA1);
+        assertEquals(199682, this.generator.generateHOTP(key, 1703, 6));
+        assertEquals(20199682, this.generator.generateHOTP(key, 1703, 8));
+        assertEquals(620199682, this.generator.generateHOTP(key, 1703, 10));
+    }
+
+    @Test
+    public void testCustomSecretCopyIsZeroed() {
+        final byte[] copy = this.secret.clone();
+        final OTPSecret custom = new MockOTPSecret() {
+            @Override
+            public byte @NotNull [] asBytes() {
+                return copy;
+            }
+        };
+        final PreparedOTPKey key = PreparedOTPKey.of(custom, HMACAlgorithm.SHA1);
+        assertEquals(199682, this.generator.generateHOTP(key, 1703, 6));
+        assertArrayEquals(new byte[copy.length], copy);
+    }
+
+    @Test
+    public void testDestroy() {
+        final PreparedOTPKey key = PreparedOTPKey.of(this.secret, HMACAlgorithm.SHA1);
+        final PreparedOTPKey key512 = PreparedOTPKey.of(this.secret, HMACAlgorithm.SHA512);
+        final int[] inner = key.innerState();
+        key.destroy();
+        key512.destroy();
+        assertTrue(key.isDestroyed());
+        assertArrayEquals(new int[inner.length], inner);
+        assertThrows(IllegalStateException.class, () -> this.generator.generateHOTP(key, 1703, 6));
+        assertThrows(IllegalStateException.class, () -> this.generator.generateHOTP(key512, 1703, 6));
+    }
+
+    @Test
+    public void testGenerateTOTP() {
+        final long timeStep = TimeUnit.SECONDS.toMillis(30);
+        final long time = 1703 * 100_000_000L;
+        assertEquals(87492, this.generator.generateTOTP(PreparedOTPKey.of(this.secret, HMACAlgorithm.SHA1), time, timeStep, 6));
+        assertEquals(372589, this.generator.generateTOTP(PreparedOTPKey.of(this.secret, HMACAlgorithm.SHA1), time, timeStep, 6, 1));
+        assertEquals(1142962634, this.generator.generateTOTP(PreparedOTPKey.of(this.secret, HMACAlgorithm.SHA256), time, timeStep, 10));
+        assertEquals(1623165612, this.generator.generateTOTP(PreparedOTPKey.of(this.secret, HMACAlgorithm.SHA512), time, timeStep, 10));
+    }
+
+    @Test
+    public void testHmacMatchesMac() {
+        final Random random = new Random(0xC0FFEE);
+        assertDoesNotThrow(() -> {
+            for (final HMACAlgorithm algo : HMACAlgorithm.values()) {
+                final HMACScratch scratch = new HMACScratch(algo);
+                // Include keys longer than the block size of every algorithm
+                for (final int keyLength : new int[] {1, 20, 32, 64, 65, 128, 200}) {
+                    final byte[] key = new byte[keyLength];
+                    random.nextBytes(key);
+                    final PreparedOTPKey preparedKey = PreparedOTPKey.of(key, algo);
+                    final Mac mac = Mac.getInstance(algo.macName());
+                    mac.init(new SecretKeySpec(key, algo.macName()));
+                    for (int i = 0; i < 16; i++) {
+                        final long counter = random.nextLong();
+                        final byte[] expected = mac.doFinal(ByteBuffer.allocate(8).putLong(counter).array());
+                        assertArrayEquals(expected, preparedKey.hmac(counter, scratch), algo + " with key length " + keyLength);
+                    }
+                }
+            }
+        });
+    }
+
+}
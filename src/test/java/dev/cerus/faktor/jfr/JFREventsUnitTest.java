@@ -0,0 +1,163 @@
+package dev.cerus.faktor.jfr;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.generator.DefaultHOTPGenerator;
+import dev.cerus.faktor.metrics.OTPMetrics;
+import dev.cerus.faktor.service.HOTPService;
+import dev.cerus.faktor.service.MultiTenantTOTPService;
+import dev.cerus.faktor.service.TOTPService;
+import dev.cerus.faktor.service.guard.ReplayGuard;
+import dev.cerus.faktor.service.secret.OTPBase32Secret;
+import dev.cerus.faktor.service.secret.OTPHexSecret;
+import dev.cerus.faktor.service.secret.OTPSecret;
+import dev.cerus.faktor.service.store.ArenaSecretStore;
+import dev.cerus.faktor.service.store.InMemoryCounterStore;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class JFREventsUnitTest {
+
+    @Test
+    public void testEvents() throws Exception {
+        final OTPSecret secret = OTPBase32Secret.generate(HMACAlgorithm.SHA256, new Random(1703 * 0xAFFE));
+        final TOTPService service = TOTPService.defaultServiceBuilder()
+                .withDefaults()
+                .withSecret(secret)
+                .withAlgorithm(HMACAlgorithm.SHA256)
+                .withTimeStep(1, TimeUnit.DAYS)
+                .withBackwardsSteps(2)
+                .build();
+        final ArenaSecretStore store = new ArenaSecretStore(HMACAlgorithm.SHA256);
+        store.put(1, secret.asBytes());
+
+        final List<RecordedEvent> events;
+        try (final Recording recording = new Recording()) {
+            recording.enable(GenerationEvent.class);
+            recording.enable(ValidationEvent.class);
+            recording.enable(SecretDecodeEvent.class);
+            recording.enable(SecretStoreLookupEvent.class);
+            recording.start();
+
+            assertTrue(service.validateTOTP(service.generateTOTP()));
+            assertFalse(service.validateTOTP(service.generateTOTP() ^ 1));
+            OTPBase32Secret.fromString(secret.asString());
+            assertThrows(IllegalArgumentException.class, () -> OTPHexSecret.fromString("00"));
+            assertTrue(store.read(1, new byte[32], 0));
+            assertFalse(store.read(2, new byte[32], 0));
+
+            recording.stop();
+            events = read(recording);
+        }
+
+        final List<RecordedEvent> generations = ofType(events, "dev.cerus.faktor.Generation");
+        // The window of the current step and the two steps before it
+        assertEquals(3, generations.size());
+        assertEquals("SHA256", generations.get(0).getString("algorithm"));
+        assertEquals(6, generations.get(0).getInt("digits"));
+
+        final List<RecordedEvent> validations = ofType(events, "dev.cerus.faktor.Validation");
+        assertEquals(2, validations.size());
+        assertEquals("ACCEPTED", validations.get(0).getString("outcome"));
+        assertEquals(0, validations.get(0).getInt("matchedOffset"));
+        assertEquals(3, validations.get(0).getInt("windowSize"));
+        assertEquals("REJECTED", validations.get(1).getString("outcome"));
+        assertEquals(OTPMetrics.NO_MATCH, validations.get(1).getInt("matchedOffset"));
+
+        final List<RecordedEvent> decodes = ofType(events, "dev.cerus.faktor.SecretDecode");
+        assertEquals(2, decodes.size());
+        assertEquals("Base32", decodes.get(0).getString("encoding"));
+        assertTrue(decodes.get(0).getBoolean("success"));
+        assertEquals("Hex", decodes.get(1).getString("encoding"));
+        assertFalse(decodes.get(1).getBoolean("success"));
+
+        final List<RecordedEvent> lookups = ofType(events, "dev.cerus.faktor.SecretStoreLookup");
+        assertEquals(2, lookups.size());
+        assertTrue(lookups.get(0).getBoolean("found"));
+        assertFalse(lookups.get(1).getBoolean("found"));
+        assertEquals(2, lookups.get(1).getLong("userId"));
+    }
+
+    @Test
+    public void testServiceValidationEvents() throws Exception {
+        final byte[] secret = new byte[20];
+        new Random(1703 * 0xAFFE).nextBytes(secret);
+        final ArenaSecretStore store = new ArenaSecretStore(HMACAlgorithm.SHA1);
+        store.put(1, secret);
+        final MultiTenantTOTPService totpService = MultiTenantTOTPService.defaultServiceBuilder()
+                .withDefaults()
+                .withSecretStore(store)
+                .withAlgorithm(HMACAlgorithm.SHA1)
+                .withTimeStep(1, TimeUnit.DAYS)
+                .withBackwardsSteps(1)
+                .withReplayGuard(new ReplayGuard(1))
+                .build();
+        final HOTPService hotpService = HOTPService.defaultServiceBuilder()
+                .withDefaults()
+                .withSecretStore(store)
+                .withCounterStore(new InMemoryCounterStore(16))
+                .withLookAheadWindow(2)
+                .build();
+        final int hotp = new DefaultHOTPGenerator().generateHOTP(secret, 2, 6);
+
+        final List<RecordedEvent> events;
+        try (final Recording recording = new Recording()) {
+            recording.enable(ValidationEvent.class);
+            recording.start();
+
+            final int totp = totpService.generateTOTP(1);
+            assertTrue(totpService.validateTOTP(1, totp));
+            assertFalse(totpService.validateTOTP(1, totp));
+            assertFalse(totpService.validateTOTP(2, totp));
+            assertTrue(hotpService.validateHOTP(1, hotp));
+            assertFalse(hotpService.validateHOTP(1, hotp));
+
+            recording.stop();
+            events = read(recording);
+        }
+
+        final List<RecordedEvent> validations = ofType(events, "dev.cerus.faktor.Validation");
+        assertEquals(5, validations.size());
+        assertEquals("ACCEPTED", validations.get(0).getString("outcome"));
+        assertEquals(0, validations.get(0).getInt("matchedOffset"));
+        assertEquals(2, validations.get(0).getInt("windowSize"));
+        assertEquals("REPLAYED", validations.get(1).getString("outcome"));
+        assertEquals(OTPMetrics.NO_MATCH, validations.get(1).getInt("matchedOffset"));
+        assertEquals("REJECTED", validations.get(2).getString("outcome"));
+        // Look-ahead codes are forward steps
+        assertEquals("ACCEPTED", validations.get(3).getString("outcome"));
+        assertEquals(-2, validations.get(3).getInt("matchedOffset"));
+        assertEquals(3, validations.get(3).getInt("windowSize"));
+        assertEquals("REJECTED", validations.get(4).getString("outcome"));
+    }
+
+    private static List<RecordedEvent> read(final Recording recording) throws IOException {
+        final Path file = Files.createTempFile("faktor", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static List<RecordedEvent> ofType(final List<RecordedEvent> events, final String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .sorted((a, b) -> a.getStartTime().compareTo(b.getStartTime()))
+                .collect(Collectors.toList());
+    }
+
+}
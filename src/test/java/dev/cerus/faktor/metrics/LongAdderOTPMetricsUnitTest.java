@@ -0,0 +1,70 @@
+package dev.cerus.faktor.metrics;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.generator.AllocationFreeTOTPGenerator;
+import dev.cerus.faktor.generator.DefaultTOTPGenerator;
+import dev.cerus.faktor.generator.TOTPGenerator;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import org.junit.jupiter.api.Test;
+
+public class LongAdderOTPMetricsUnitTest {
+
+    @Test
+    public void testLatencyBuckets() {
+        assertEquals(0, LongAdderOTPMetrics.latencyBucket(0));
+        assertEquals(1, LongAdderOTPMetrics.latencyBucket(1));
+        assertEquals(2, LongAdderOTPMetrics.latencyBucket(2));
+        assertEquals(2, LongAdderOTPMetrics.latencyBucket(3));
+        assertEquals(11, LongAdderOTPMetrics.latencyBucket(1024));
+        assertEquals(63, LongAdderOTPMetrics.latencyBucket(Long.MAX_VALUE));
+
+        final LongAdderOTPMetrics metrics = new LongAdderOTPMetrics();
+        metrics.recordGeneration(HMACAlgorithm.SHA256, 1500);
+        metrics.recordGeneration(HMACAlgorithm.SHA256, 1600);
+        assertEquals(2, metrics.generations(HMACAlgorithm.SHA256));
+        assertEquals(3100, metrics.generationNanos(HMACAlgorithm.SHA256));
+        assertEquals(2, metrics.latencyHistogram(HMACAlgorithm.SHA256)[11]);
+        assertEquals(0, metrics.generations(HMACAlgorithm.SHA1));
+    }
+
+    @Test
+    public void testValidations() {
+        final LongAdderOTPMetrics metrics = new LongAdderOTPMetrics(2);
+        metrics.recordValidation(OTPMetrics.ValidationOutcome.ACCEPTED, 0);
+        metrics.recordValidation(OTPMetrics.ValidationOutcome.ACCEPTED, 1);
+        metrics.recordValidation(OTPMetrics.ValidationOutcome.ACCEPTED, 7);
+        metrics.recordValidation(OTPMetrics.ValidationOutcome.ACCEPTED, -1);
+        metrics.recordValidation(OTPMetrics.ValidationOutcome.ACCEPTED, -5);
+        metrics.recordValidation(OTPMetrics.ValidationOutcome.REJECTED, OTPMetrics.NO_MATCH);
+        assertEquals(5, metrics.validations(OTPMetrics.ValidationOutcome.ACCEPTED));
+        assertEquals(1, metrics.validations(OTPMetrics.ValidationOutcome.REJECTED));
+        assertEquals(0, metrics.validations(OTPMetrics.ValidationOutcome.THROTTLED));
+        assertArrayEquals(new long[] {1, 1, 1}, metrics.matchedOffsets());
+        assertArrayEquals(new long[] {1, 1}, metrics.matchedForwardOffsets());
+
+        metrics.reset();
+        assertArrayEquals(new long[3], metrics.matchedOffsets());
+        assertArrayEquals(new long[2], metrics.matchedForwardOffsets());
+        assertEquals(0, metrics.validations(OTPMetrics.ValidationOutcome.ACCEPTED));
+    }
+
+    @Test
+    public void testGenerators() {
+        final LongAdderOTPMetrics metrics = new LongAdderOTPMetrics();
+        final TOTPGenerator[] generators = {new DefaultTOTPGenerator(metrics), new AllocationFreeTOTPGenerator(metrics)};
+        assertDoesNotThrow(() -> {
+            for (final TOTPGenerator generator : generators) {
+                generator.generateTOTP(new byte[20], 0, 30_000, 6, HMACAlgorithm.SHA1);
+                generator.generateTOTP(new byte[64], 0, 30_000, 6, HMACAlgorithm.SHA512);
+                generator.generateHOTP(new byte[20], 0, 6);
+            }
+        });
+        assertEquals(4, metrics.generations(HMACAlgorithm.SHA1));
+        assertEquals(2, metrics.generations(HMACAlgorithm.SHA512));
+        assertFalse(OTPMetrics.noop().isEnabled());
+    }
+
+}
@@ -0,0 +1,92 @@
+package dev.cerus.faktor.service;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.service.secret.OTPBase32Secret;
+import java.security.InvalidKeyException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class AsyncTOTPServiceUnitTest {
+
+    private final TOTPService service = TOTPService.defaultServiceBuilder()
+            .withDefaults()
+            .withSecret(OTPBase32Secret.generate(HMACAlgorithm.SHA1, new Random(1703 * 0xAFFE)))
+            .withAlgorithm(HMACAlgorithm.SHA1)
+            .withTimeStep(1, TimeUnit.DAYS)
+            .build();
+
+    @Test
+    public void testValidate() throws Exception {
+        final AsyncTOTPService async = AsyncTOTPService.builder()
+                .withService(this.service)
+                .withDefaultExecutor()
+                .build();
+        final int code = async.generateTOTP().get();
+        assertEquals(this.service.generateTOTP(), code);
+        assertTrue(async.validateTOTP(code).get());
+        assertFalse(async.validateTOTP((code + 1) % 1_000_000).get());
+        assertEquals(0, async.inFlight());
+    }
+
+    @Test
+    public void testRejectsWhenSaturated() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final TOTPService blocking = new TOTPService() {
+            @Override
+            public boolean validateTOTP(final int totp) throws InvalidKeyException {
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new InvalidKeyException("Test");
+            }
+
+            @Override
+            public int generateTOTP() {
+                return 0;
+            }
+        };
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final AsyncTOTPService async = AsyncTOTPService.builder()
+                    .withService(blocking)
+                    .withExecutor(executor)
+                    .withMaxInFlight(2)
+                    .build();
+            final CompletableFuture<Boolean> first = async.validateTOTP(1);
+            final CompletableFuture<Boolean> second = async.validateTOTP(2);
+            assertEquals(2, async.inFlight());
+            final ExecutionException rejected = assertThrows(ExecutionException.class, () -> async.validateTOTP(3).get());
+            assertInstanceOf(RejectedExecutionException.class, rejected.getCause());
+
+            release.countDown();
+            assertInstanceOf(InvalidKeyException.class, assertThrows(ExecutionException.class, first::get).getCause());
+            assertInstanceOf(InvalidKeyException.class, assertThrows(ExecutionException.class, second::get).getCause());
+            // Slots are free again
+            assertEquals(0, async.generateTOTP().get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testBuildInvalid() {
+        assertThrows(IllegalStateException.class, () -> AsyncTOTPService.builder().withDefaultExecutor().build());
+        assertThrows(IllegalStateException.class, () -> AsyncTOTPService.builder().withService(this.service).build());
+        assertThrows(IllegalStateException.class, () -> AsyncTOTPService.builder().withService(this.service).withDefaultExecutor().withMaxInFlight(0).build());
+    }
+
+}
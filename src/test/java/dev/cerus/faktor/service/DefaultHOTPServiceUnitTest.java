@@ -0,0 +1,115 @@
+package dev.cerus.faktor.service;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.generator.DefaultHOTPGenerator;
+import dev.cerus.faktor.generator.HOTPGenerator;
+import dev.cerus.faktor.service.store.ArenaSecretStore;
+import dev.cerus.faktor.service.store.CounterStore;
+import dev.cerus.faktor.service.store.InMemoryCounterStore;
+import dev.cerus.faktor.service.store.SecretStore;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class DefaultHOTPServiceUnitTest {
+
+    private final HOTPGenerator generator = new DefaultHOTPGenerator();
+    private final SecretStore secretStore = new ArenaSecretStore(HMACAlgorithm.SHA1);
+    private final CounterStore counterStore = new InMemoryCounterStore(16);
+    private final byte[] secret = new byte[20];
+
+    public DefaultHOTPServiceUnitTest() {
+        this.setup();
+    }
+
+    public void setup() {
+        new Random(1703 * 0xAFFE).nextBytes(this.secret);
+        this.secretStore.put(1, this.secret);
+    }
+
+    private DefaultHOTPService.Builder builder() {
+        return HOTPService.defaultServiceBuilder()
+                .withDefaults()
+                .withSecretStore(this.secretStore)
+                .withCounterStore(this.counterStore)
+                .withLookAheadWindow(2)
+                .withResyncWindow(50);
+    }
+
+    @Test
+    public void testLookAheadWindow() {
+        final HOTPService service = this.builder().build();
+        assertDoesNotThrow(() -> {
+            assertTrue(service.validateHOTP(1, this.generator.generateHOTP(this.secret, 0, 6)));
+            assertEquals(1, this.counterStore.get(1));
+            // Codes can only be used once
+            assertFalse(service.validateHOTP(1, this.generator.generateHOTP(this.secret, 0, 6)));
+            // Skipping two codes is within the window
+            assertTrue(service.validateHOTP(1, this.generator.generateHOTP(this.secret, 3, 6)));
+            assertEquals(4, this.counterStore.get(1));
+            // Skipping three codes is not
+            assertFalse(service.validateHOTP(1, this.generator.generateHOTP(this.secret, 7, 6)));
+            assertEquals(4, this.counterStore.get(1));
+            assertFalse(service.validateHOTP(2, 123456));
+        });
+    }
+
+    @Test
+    public void testResynchronize() {
+        final HOTPService service = this.builder().build();
+        assertDoesNotThrow(() -> {
+            final int first = this.generator.generateHOTP(this.secret, 40, 6);
+            final int second = this.generator.generateHOTP(this.secret, 41, 6);
+            assertFalse(service.validateHOTP(1, first));
+            assertFalse(service.resynchronize(1, second, first));
+            assertTrue(service.resynchronize(1, first, second));
+            assertEquals(42, this.counterStore.get(1));
+            assertTrue(service.validateHOTP(1, this.generator.generateHOTP(this.secret, 42, 6)));
+            // Out of the resync window
+            assertFalse(service.resynchronize(1, this.generator.generateHOTP(this.secret, 100, 6),
+                    this.generator.generateHOTP(this.secret, 101, 6)));
+        });
+    }
+
+    @Test
+    public void testConcurrentValidation() throws InterruptedException {
+        final HOTPService service = this.builder().build();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final AtomicInteger successes = new AtomicInteger();
+        final int[] codes = new int[100];
+        for (int i = 0; i < codes.length; i++) {
+            final int counter = i;
+            codes[i] = assertDoesNotThrow(() -> this.generator.generateHOTP(this.secret, counter, 6));
+        }
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                for (final int code : codes) {
+                    if (service.validateHOTPUnchecked(1, code)) {
+                        successes.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        // Every success moves the counter, so no counter value was accepted twice
+        assertTrue(successes.get() > 0);
+        assertTrue(successes.get() <= this.counterStore.get(1));
+    }
+
+    @Test
+    public void testBuildInvalid() {
+        assertThrows(IllegalStateException.class, () -> HOTPService.defaultServiceBuilder().withDefaults().withSecretStore(this.secretStore).build());
+        assertThrows(IllegalStateException.class, () -> this.builder().withLookAheadWindow(-1).build());
+        assertThrows(IllegalStateException.class, () -> this.builder().withResyncWindow(0).build());
+    }
+
+}
@@ -0,0 +1,137 @@
+package dev.cerus.faktor.service;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.generator.AllocationFreeTOTPGenerator;
+import dev.cerus.faktor.generator.DefaultTOTPGenerator;
+import dev.cerus.faktor.generator.TOTPGenerator;
+import dev.cerus.faktor.service.guard.AttemptThrottle;
+import dev.cerus.faktor.service.guard.ReplayGuard;
+import dev.cerus.faktor.service.store.ArenaSecretStore;
+import dev.cerus.faktor.service.store.SecretStore;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class DefaultMultiTenantTOTPServiceUnitTest {
+
+    // Large time step to make crossing a step boundary during a test unlikely
+    private static final long TIME_STEP = TimeUnit.DAYS.toMillis(1);
+    private static final int USERS = 100;
+
+    private final TOTPGenerator generator = new DefaultTOTPGenerator();
+    private final SecretStore store = new ArenaSecretStore(HMACAlgorithm.SHA1);
+    private final byte[][] secrets = new byte[USERS][20];
+
+    public DefaultMultiTenantTOTPServiceUnitTest() {
+        this.setup();
+    }
+
+    public void setup() {
+        final Random random = new Random(1703 * 0xAFFE);
+        for (int i = 0; i < USERS; i++) {
+            random.nextBytes(this.secrets[i]);
+            this.store.put(i, this.secrets[i]);
+        }
+    }
+
+    private MultiTenantTOTPService build() {
+        return MultiTenantTOTPService.defaultServiceBuilder()
+                .withDefaults()
+                .withGenerator(new AllocationFreeTOTPGenerator())
+                .withSecretStore(this.store)
+                .withAlgorithm(HMACAlgorithm.SHA1)
+                .withTimeStep(TIME_STEP)
+                .withBackwardsSteps(1)
+                .build();
+    }
+
+    @Test
+    public void testGenerateAndValidate() {
+        final MultiTenantTOTPService service = this.build();
+        assertDoesNotThrow(() -> {
+            final long now = System.currentTimeMillis();
+            for (int i = 0; i < USERS; i++) {
+                final int expected = this.generator.generateTOTP(this.secrets[i], now, TIME_STEP, 6, HMACAlgorithm.SHA1);
+                assertEquals(expected, service.generateTOTP(i));
+                assertTrue(service.validateTOTP(i, expected));
+                final int previous = this.generator.generateTOTP(this.secrets[i], now, TIME_STEP, 6, 1, HMACAlgorithm.SHA1);
+                assertTrue(service.validateTOTP(i, previous));
+                final int expired = this.generator.generateTOTP(this.secrets[i], now, TIME_STEP, 6, 2, HMACAlgorithm.SHA1);
+                assertEquals(expired == expected || expired == previous, service.validateTOTP(i, expired));
+            }
+        });
+    }
+
+    @Test
+    public void testReplayGuard() {
+        final MultiTenantTOTPService service = MultiTenantTOTPService.defaultServiceBuilder()
+                .withDefaults()
+                .withSecretStore(this.store)
+                .withAlgorithm(HMACAlgorithm.SHA1)
+                .withTimeStep(TIME_STEP)
+                .withBackwardsSteps(1)
+                .withReplayGuard(new ReplayGuard(1))
+                .build();
+        assertDoesNotThrow(() -> {
+            final long now = System.currentTimeMillis();
+            final int current = this.generator.generateTOTP(this.secrets[0], now, TIME_STEP, 6, HMACAlgorithm.SHA1);
+            final int previous = this.generator.generateTOTP(this.secrets[0], now, TIME_STEP, 6, 1, HMACAlgorithm.SHA1);
+            assertTrue(service.validateTOTP(0, previous));
+            assertFalse(service.validateTOTP(0, previous));
+            assertTrue(service.validateTOTP(0, current));
+            assertFalse(service.validateTOTP(0, current));
+            // Other users are not affected
+            assertTrue(service.validateTOTP(1, service.generateTOTP(1)));
+        });
+        assertThrows(IllegalStateException.class, () -> MultiTenantTOTPService.defaultServiceBuilder()
+                .withDefaults()
+                .withSecretStore(this.store)
+                .withAlgorithm(HMACAlgorithm.SHA1)
+                .withTimeStep(TIME_STEP)
+                .withBackwardsSteps(2)
+                .withReplayGuard(new ReplayGuard(1))
+                .build());
+    }
+
+    @Test
+    public void testAttemptThrottle() {
+        final AttemptThrottle throttle = AttemptThrottle.builder()
+                .withFreeAttempts(2)
+                .withLockout(1, 1, TimeUnit.HOURS)
+                .withResetAfter(2, TimeUnit.HOURS)
+                .build();
+        final MultiTenantTOTPService service = MultiTenantTOTPService.defaultServiceBuilder()
+                .withDefaults()
+                .withSecretStore(this.store)
+                .withAlgorithm(HMACAlgorithm.SHA1)
+                .withTimeStep(TIME_STEP)
+                .withAttemptThrottle(throttle)
+                .build();
+        assertDoesNotThrow(() -> {
+            final int code = service.generateTOTP(0);
+            final int wrong = (code + 1) % 1_000_000;
+            assertFalse(service.validateTOTP(0, wrong));
+            // A success resets the failures
+            assertTrue(service.validateTOTP(0, code));
+            for (int i = 0; i < 3; i++) {
+                assertFalse(service.validateTOTP(0, wrong));
+            }
+            // Locked out, even the right code is rejected
+            assertFalse(service.validateTOTP(0, code));
+            assertTrue(service.validateTOTP(1, service.generateTOTP(1)));
+        });
+    }
+
+    @Test
+    public void testUnknownUser() {
+        final MultiTenantTOTPService service = this.build();
+        assertDoesNotThrow(() -> assertFalse(service.validateTOTP(USERS, 123456)));
+        assertThrows(IllegalArgumentException.class, () -> service.generateTOTP(USERS));
+    }
+
+}
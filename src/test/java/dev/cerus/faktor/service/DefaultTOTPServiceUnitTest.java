@@ -0,0 +1,339 @@
+package dev.cerus.faktor.service;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.generator.DefaultTOTPGenerator;
+import dev.cerus.faktor.generator.PreparedOTPKey;
+import dev.cerus.faktor.generator.TOTPGenerator;
+import dev.cerus.faktor.metrics.LongAdderOTPMetrics;
+import dev.cerus.faktor.metrics.OTPMetrics;
+import dev.cerus.faktor.service.clock.ManualTOTPClock;
+import dev.cerus.faktor.service.guard.AttemptThrottle;
+import dev.cerus.faktor.service.guard.DriftTracker;
+import dev.cerus.faktor.service.guard.ReplayGuard;
+import dev.cerus.faktor.service.secret.OTPBase32Secret;
+import dev.cerus.faktor.service.secret.OTPSecret;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class DefaultTOTPServiceUnitTest {
+
+    // Large time step to make crossing a step boundary during a test unlikely
+    private static final long TIME_STEP = TimeUnit.DAYS.toMillis(1);
+
+    private final TOTPGenerator generator = new DefaultTOTPGenerator();
+    private final OTPSecret secret = OTPBase32Secret.generate(HMACAlgorithm.SHA256, new Random(1703 * 0xAFFE));
+
+    private DefaultTOTPService.Builder builder() {
+        return TOTPService.defaultServiceBuilder()
+                .withDefaults()
+                .withSecret(this.secret)
+                .withAlgorithm(HMACAlgorithm.SHA256)
+                .withTimeStep(TIME_STEP);
+    }
+
+    @Test
+    public void testGenerateTOTP() {
+        final TOTPService service = this.builder().build();
+        assertDoesNotThrow(() -> {
+            final long now = System.currentTimeMillis();
+            final int expected = this.generator.generateTOTP(this.secret.asBytes(), now, TIME_STEP, 6, HMACAlgorithm.SHA256);
+            assertEquals(expected, service.generateTOTP());
+            // Served from the cache the second time
+            assertEquals(expected, service.generateTOTP());
+        });
+    }
+
+    @Test
+    public void testValidateTOTPBackwardsSteps() {
+        final TOTPService service = this.builder().withBackwardsSteps(2).build();
+        assertDoesNotThrow(() -> {
+            final long now = System.currentTimeMillis();
+            for (int step = 0; step <= 2; step++) {
+                final int code = this.generator.generateTOTP(this.secret.asBytes(), now, TIME_STEP, 6, step, HMACAlgorithm.SHA256);
+                assertTrue(service.validateTOTP(code), "Code of step -" + step + " should be valid");
+            }
+            final int expired = this.generator.generateTOTP(this.secret.asBytes(), now, TIME_STEP, 6, 3, HMACAlgorithm.SHA256);
+            assertFalse(service.validateTOTP(expired), "Code of step -3 should be invalid");
+        });
+    }
+
+    @Test
+    public void testReplayGuard() {
+        final ReplayGuard guard = new ReplayGuard(1);
+        final TOTPService first = this.builder().withBackwardsSteps(1).withReplayGuard(guard, 1).build();
+        final TOTPService second = this.builder().withBackwardsSteps(1).withReplayGuard(guard, 2).build();
+        assertDoesNotThrow(() -> {
+            final int code = first.generateTOTP();
+            assertTrue(first.validateTOTP(code));
+            assertFalse(first.validateTOTP(code));
+            // The previous step is older than the accepted one
+            final long now = System.currentTimeMillis();
+            assertFalse(first.validateTOTP(this.generator.generateTOTP(this.secret.asBytes(), now, TIME_STEP, 6, 1, HMACAlgorithm.SHA256)));
+            // Services with different keys do not share their state
+            assertTrue(second.validateTOTP(code));
+        });
+    }
+
+    @Test
+    public void testValidateResult() {
+        final long time = 1703 * TIME_STEP;
+        final LongAdderOTPMetrics metrics = new LongAdderOTPMetrics();
+        final DefaultTOTPService service = this.builder()
+                .withBackwardsSteps(2)
+                .withForwardSteps(1)
+                .withClock(new ManualTOTPClock(time))
+                .withMetrics(metrics)
+                .buildDefault();
+        assertDoesNotThrow(() -> {
+            for (int offset = -1; offset <= 2; offset++) {
+                final ValidationResult result = service.validate(this.codeAt(time, offset));
+                assertTrue(result.isAccepted(), "Code of offset " + offset + " should be valid");
+                assertEquals(offset, result.matchedOffset());
+            }
+            final ValidationResult expired = service.validate(this.codeAt(time, 3));
+            assertEquals(OTPMetrics.ValidationOutcome.REJECTED, expired.outcome());
+            assertThrows(IllegalStateException.class, expired::matchedOffset);
+            assertFalse(service.validateTOTP(this.codeAt(time, -2)), "Code of step +2 should be invalid");
+        });
+        // The match one step ahead is not mistaken for a rejection
+        assertEquals(1, metrics.matchedForwardOffsets()[0]);
+        assertEquals(2, metrics.validations(OTPMetrics.ValidationOutcome.REJECTED));
+    }
+
+    @Test
+    public void testForwardStepsReplayGuard() {
+        final long time = 1703 * TIME_STEP;
+        final ManualTOTPClock clock = new ManualTOTPClock(time);
+        final ReplayGuard guard = new ReplayGuard(1, 1, 1);
+        final DefaultTOTPService service = this.builder()
+                .withBackwardsSteps(1)
+                .withForwardSteps(1)
+                .withReplayGuard(guard, 1)
+                .withClock(clock)
+                .buildDefault();
+        assertDoesNotThrow(() -> {
+            final int next = this.codeAt(time, -1);
+            assertTrue(service.validateTOTP(next));
+            // Every step up to the forward step is used now
+            assertEquals(OTPMetrics.ValidationOutcome.REPLAYED, service.validate(service.generateTOTP()).outcome());
+            clock.advance(TIME_STEP, TimeUnit.MILLISECONDS);
+            assertFalse(service.validateTOTP(next));
+            assertTrue(service.validateTOTP(this.codeAt(time + TIME_STEP, -1)));
+        });
+        assertThrows(IllegalStateException.class, () -> this.builder().withForwardSteps(1).withReplayGuard(new ReplayGuard(0), 1).build());
+    }
+
+    @Test
+    public void testConcurrentAttemptThrottle() throws InterruptedException {
+        final AttemptThrottle throttle = AttemptThrottle.builder()
+                .withFreeAttempts(2)
+                .withLockout(1, 1, TimeUnit.HOURS)
+                .withResetAfter(2, TimeUnit.HOURS)
+                .build();
+        final DefaultTOTPService service = this.builder()
+                .withAttemptThrottle(throttle, 1)
+                .withClock(new ManualTOTPClock(1703 * TIME_STEP))
+                .buildDefault();
+        final int wrong = (assertDoesNotThrow(() -> service.generateTOTP()) + 1) % 1_000_000;
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final AtomicInteger rejected = new AtomicInteger();
+        for (int i = 0; i < 64; i++) {
+            executor.execute(() -> {
+                final ValidationResult result = assertDoesNotThrow(() -> service.validate(wrong));
+                if (result.outcome() == OTPMetrics.ValidationOutcome.REJECTED) {
+                    rejected.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        // Only the free attempts and the attempt that triggers the lockout reach the HMAC, no matter the interleaving
+        assertEquals(3, rejected.get());
+    }
+
+    @Test
+    public void testDriftTracker() {
+        final AtomicInteger hmacs = new AtomicInteger();
+        final TOTPGenerator countingGenerator = new DefaultTOTPGenerator() {
+            @Override
+            public boolean supportsPreparedKeys() {
+                return true;
+            }
+
+            @Override
+            public int generateTOTP(final PreparedOTPKey key, final long timeReferenceMillis, final long timeStepMillis, final int digits) {
+                hmacs.incrementAndGet();
+                return super.generateTOTP(key, timeReferenceMillis, timeStepMillis, digits);
+            }
+        };
+        final long start = 1703 * TIME_STEP;
+        final ManualTOTPClock clock = new ManualTOTPClock(start);
+        final DriftTracker tracker = new DriftTracker();
+        final DefaultTOTPService service = this.builder()
+                .withGenerator(countingGenerator)
+                .withBackwardsSteps(5)
+                .withForwardSteps(5)
+                .withDriftTracker(tracker, 1)
+                .withClock(clock)
+                .buildDefault();
+        assertDoesNotThrow(() -> {
+            // The authenticator of the user lags three steps behind
+            assertEquals(3, service.validate(this.codeAt(clock.currentTimeMillis(), 3)).matchedOffset());
+            assertEquals(3, tracker.expectedOffset(1));
+            for (int i = 0; i < 10; i++) {
+                // Jump past the window, so no code is carried over from the cached window
+                clock.advance(TIME_STEP * 20, TimeUnit.MILLISECONDS);
+                hmacs.set(0);
+                assertEquals(3, service.validate(this.codeAt(clock.currentTimeMillis(), 3)).matchedOffset());
+                assertEquals(1, hmacs.get(), "Only the code of the expected offset should be computed");
+            }
+            // Codes of other offsets are still found
+            assertEquals(-5, service.validate(this.codeAt(clock.currentTimeMillis(), -5)).matchedOffset());
+        });
+    }
+
+    @Test
+    public void testCustomGeneratorRawSecret() {
+        final AtomicInteger rawCalls = new AtomicInteger();
+        final TOTPGenerator delegate = this.generator;
+        // Implements only the abstract methods, the prepared key methods are the defaults of the interface
+        final TOTPGenerator custom = new TOTPGenerator() {
+            @Override
+            public int generateHOTP(final byte[] secret, final long counter, final int digits) throws NoSuchAlgorithmException, InvalidKeyException {
+                return delegate.generateHOTP(secret, counter, digits);
+            }
+
+            @Override
+            public int generateTOTP(final byte[] secret, final long timeReferenceMillis, final long timeStepMillis, final int digits, final HMACAlgorithm algo)
+                    throws NoSuchAlgorithmException, InvalidKeyException {
+                rawCalls.incrementAndGet();
+                return delegate.generateTOTP(secret, timeReferenceMillis, timeStepMillis, digits, algo);
+            }
+        };
+        final long time = 1703 * TIME_STEP;
+        final TOTPService service = this.builder().withGenerator(custom).withClock(new ManualTOTPClock(time)).build();
+        assertDoesNotThrow(() -> {
+            assertEquals(this.codeAt(time, 0), service.generateTOTP());
+            assertEquals(1, rawCalls.get());
+            // The default prepared key method computes the same code
+            final PreparedOTPKey key = PreparedOTPKey.of(this.secret, HMACAlgorithm.SHA256);
+            for (int digits = 6; digits <= 10; digits++) {
+                assertEquals(this.generator.generateTOTP(key, time, TIME_STEP, digits), custom.generateTOTP(key, time, TIME_STEP, digits));
+            }
+            // So does the default buffer method, with the secret in the middle of the buffer
+            final byte[] bytes = this.secret.asBytes();
+            final ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 8).put(4, bytes);
+            assertEquals(this.codeAt(time, 0), custom.generateTOTP(buffer, 4, bytes.length, time, TIME_STEP, 6, HMACAlgorithm.SHA256));
+            assertEquals(0, buffer.position());
+        });
+    }
+
+    @Test
+    public void testGeneratorSubclassRawSecret() {
+        final AtomicInteger rawCalls = new AtomicInteger();
+        // Overrides only the raw secret method and inherits the prepared key methods
+        final TOTPGenerator subclass = new DefaultTOTPGenerator() {
+            @Override
+            public int generateTOTP(final byte[] secret, final long timeReferenceMillis, final long timeStepMillis, final int digits, final HMACAlgorithm algo)
+                    throws NoSuchAlgorithmException, InvalidKeyException {
+                rawCalls.incrementAndGet();
+                return super.generateTOTP(secret, timeReferenceMillis, timeStepMillis, digits, algo);
+            }
+        };
+        assertFalse(subclass.supportsPreparedKeys());
+        assertTrue(this.generator.supportsPreparedKeys());
+
+        final long time = 1703 * TIME_STEP;
+        final OTPSecret copy = OTPBase32Secret.fromBytes(this.secret.asBytes());
+        final TOTPService service = this.builder().withSecret(copy).withGenerator(subclass).withClock(new ManualTOTPClock(time)).build();
+        // The service copied the secret when it was built
+        assertDoesNotThrow(copy::destroy);
+        assertDoesNotThrow(() -> {
+            assertTrue(service.validateTOTP(this.codeAt(time, 0)));
+            assertEquals(1, rawCalls.get());
+        });
+    }
+
+    @Test
+    public void testDestroy() {
+        final long time = 1703 * TIME_STEP;
+        final OTPSecret copy = OTPBase32Secret.fromBytes(this.secret.asBytes());
+        final DefaultTOTPService service = this.builder().withSecret(copy).withClock(new ManualTOTPClock(time)).buildDefault();
+        // Destroying the secret does not affect the prepared key of the service
+        assertDoesNotThrow(copy::destroy);
+        assertDoesNotThrow(() -> assertTrue(service.validateTOTP(this.codeAt(time, 0))));
+
+        service.destroy();
+        assertTrue(service.isDestroyed());
+        assertThrows(IllegalStateException.class, service::generateTOTP);
+    }
+
+    private int codeAt(final long time, final int offset) throws Exception {
+        return this.generator.generateTOTP(this.secret.asBytes(), time - offset * TIME_STEP, TIME_STEP, 6, HMACAlgorithm.SHA256);
+    }
+
+    @Test
+    public void testMetrics() {
+        final LongAdderOTPMetrics metrics = new LongAdderOTPMetrics();
+        final TOTPService service = this.builder()
+                .withBackwardsSteps(1)
+                .withReplayGuard(new ReplayGuard(1), 1)
+                .withMetrics(metrics)
+                .build();
+        assertDoesNotThrow(() -> {
+            final long now = System.currentTimeMillis();
+            final int previous = this.generator.generateTOTP(this.secret.asBytes(), now, TIME_STEP, 6, 1, HMACAlgorithm.SHA256);
+            assertTrue(service.validateTOTP(previous));
+            assertFalse(service.validateTOTP(previous));
+            assertTrue(service.validateTOTP(service.generateTOTP()));
+            assertFalse(service.validateTOTP(service.generateTOTP()));
+        });
+        assertEquals(2, metrics.validations(OTPMetrics.ValidationOutcome.ACCEPTED));
+        // The old code is outside of the unused steps and counts as rejected, the current one is a detected replay
+        assertEquals(1, metrics.validations(OTPMetrics.ValidationOutcome.REJECTED));
+        assertEquals(1, metrics.validations(OTPMetrics.ValidationOutcome.REPLAYED));
+        assertEquals(1, metrics.matchedOffsets()[0]);
+        assertEquals(1, metrics.matchedOffsets()[1]);
+    }
+
+    @Test
+    public void testClockRollover() {
+        final long start = 1_700_000_000_000L / 30_000 * 30_000;
+        final ManualTOTPClock clock = new ManualTOTPClock(start);
+        final TOTPService service = this.builder().withTimeStep(30, TimeUnit.SECONDS).withClock(clock).build();
+        assertDoesNotThrow(() -> {
+            final int first = this.generator.generateTOTP(this.secret.asBytes(), start, 30_000, 6, HMACAlgorithm.SHA256);
+            final int second = this.generator.generateTOTP(this.secret.asBytes(), start + 30_000, 30_000, 6, HMACAlgorithm.SHA256);
+            assertEquals(first, service.generateTOTP());
+            clock.advance(29_999, TimeUnit.MILLISECONDS);
+            assertTrue(service.validateTOTP(first));
+            assertFalse(service.validateTOTP(second));
+            clock.advance(1, TimeUnit.MILLISECONDS);
+            assertEquals(second, service.generateTOTP());
+            assertTrue(service.validateTOTP(second));
+            assertFalse(service.validateTOTP(first));
+        });
+    }
+
+    @Test
+    public void testBuildInvalid() {
+        assertThrows(IllegalStateException.class, () -> this.builder().withDigits(11).build());
+        assertThrows(IllegalStateException.class, () -> this.builder().withBackwardsSteps(-1).build());
+        assertThrows(IllegalStateException.class, () -> this.builder().withTimeStep(0).build());
+        assertThrows(IllegalStateException.class, () -> this.builder().withClock(null).build());
+        assertThrows(IllegalStateException.class, () -> this.builder().withForwardSteps(-1).build());
+    }
+
+}
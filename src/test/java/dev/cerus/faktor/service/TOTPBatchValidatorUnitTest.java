@@ -0,0 +1,124 @@
+package dev.cerus.faktor.service;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.generator.DefaultTOTPGenerator;
+import dev.cerus.faktor.generator.PreparedOTPKey;
+import dev.cerus.faktor.generator.TOTPGenerator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+public class TOTPBatchValidatorUnitTest {
+
+    private static final long TIME = 1703 * 100_000_000L;
+    private static final long TIME_STEP = TimeUnit.SECONDS.toMillis(30);
+    private static final int BATCH_SIZE = 5000;
+
+    private final TOTPGenerator generator = new DefaultTOTPGenerator();
+    private final byte[][] secrets = new byte[BATCH_SIZE][20];
+    private final int[] codes = new int[BATCH_SIZE];
+    private final boolean[] expected = new boolean[BATCH_SIZE];
+
+    public TOTPBatchValidatorUnitTest() {
+        this.setup();
+    }
+
+    public void setup() {
+        final Random random = new Random(1703 * 0xAFFE);
+        assertDoesNotThrow(() -> {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                random.nextBytes(this.secrets[i]);
+                // Valid codes for the current and the previous step, invalid codes for the step before that
+                final int backwardsSteps = i % 3;
+                this.codes[i] = this.generator.generateTOTP(this.secrets[i], TIME, TIME_STEP, 6, backwardsSteps, HMACAlgorithm.SHA1);
+                this.expected[i] = backwardsSteps < 2;
+            }
+        });
+    }
+
+    private TOTPBatchValidator.Builder builder() {
+        return TOTPBatchValidator.builder()
+                .withDefaults()
+                .withAlgorithm(HMACAlgorithm.SHA1)
+                .withTimeStep(TIME_STEP)
+                .withBackwardsSteps(1);
+    }
+
+    @Test
+    public void testValidateSequential() {
+        final TOTPBatchValidator validator = this.builder().withParallelThreshold(Integer.MAX_VALUE).build();
+        final boolean[] results = new boolean[BATCH_SIZE];
+        assertDoesNotThrow(() -> validator.validate(this.secrets, this.codes, TIME, results));
+        this.assertResults(results);
+    }
+
+    @Test
+    public void testValidateParallel() {
+        final TOTPBatchValidator validator = this.builder().withParallelThreshold(64).build();
+        final boolean[] results = new boolean[BATCH_SIZE];
+        assertDoesNotThrow(() -> validator.validate(this.secrets, this.codes, TIME, results));
+        this.assertResults(results);
+    }
+
+    @Test
+    public void testValidatePrepared() {
+        final TOTPBatchValidator validator = this.builder().withParallelThreshold(64).build();
+        final PreparedOTPKey[] keys = new PreparedOTPKey[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            keys[i] = PreparedOTPKey.of(this.secrets[i], HMACAlgorithm.SHA1);
+        }
+        final boolean[] results = new boolean[BATCH_SIZE];
+        validator.validate(keys, this.codes, TIME, results);
+        this.assertResults(results);
+    }
+
+    @Test
+    public void testValidateMultiBuffer() {
+        final TOTPBatchValidator validator = this.builder().withParallelThreshold(1000).withMultiBufferEngine(true).build();
+        final PreparedOTPKey[] keys = new PreparedOTPKey[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            keys[i] = PreparedOTPKey.of(this.secrets[i], HMACAlgorithm.SHA1);
+        }
+        final boolean[] results = new boolean[BATCH_SIZE];
+        validator.validate(keys, this.codes, TIME, results);
+        this.assertResults(results);
+    }
+
+    @Test
+    public void testValidatePreparedWithoutAlgorithm() {
+        final TOTPBatchValidator validator = TOTPBatchValidator.builder()
+                .withDefaults()
+                .withTimeStep(TIME_STEP)
+                .withBackwardsSteps(1)
+                .withMultiBufferEngine(true)
+                // Sequential, so the range spans more than one chunk
+                .withParallelThreshold(Integer.MAX_VALUE)
+                .build();
+        final PreparedOTPKey[] keys = new PreparedOTPKey[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            keys[i] = PreparedOTPKey.of(this.secrets[i], HMACAlgorithm.SHA1);
+        }
+        final boolean[] results = new boolean[BATCH_SIZE];
+        validator.validate(keys, this.codes, TIME, results);
+        this.assertResults(results);
+        // Raw secrets can not be validated without an algorithm
+        assertThrows(IllegalStateException.class, () -> validator.validate(this.secrets, this.codes, TIME, results));
+    }
+
+    @Test
+    public void testValidateInvalidBatch() {
+        final TOTPBatchValidator validator = this.builder().build();
+        assertThrows(IllegalArgumentException.class, () -> validator.validate(this.secrets, new int[1], TIME, new boolean[BATCH_SIZE]));
+        assertThrows(IllegalArgumentException.class, () -> validator.validate(this.secrets, this.codes, TIME, new boolean[1]));
+    }
+
+    private void assertResults(final boolean[] results) {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            assertEquals(this.expected[i], results[i], "Unexpected result at index " + i);
+        }
+    }
+
+}
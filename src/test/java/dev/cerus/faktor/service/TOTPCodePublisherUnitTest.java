@@ -0,0 +1,193 @@
+package dev.cerus.faktor.service;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.generator.DefaultTOTPGenerator;
+import dev.cerus.faktor.generator.TOTPGenerator;
+import dev.cerus.faktor.service.clock.ManualTOTPClock;
+import dev.cerus.faktor.service.clock.TOTPClock;
+import dev.cerus.faktor.service.secret.OTPBase32Secret;
+import dev.cerus.faktor.service.store.ArenaSecretStore;
+import dev.cerus.faktor.service.store.SecretStore;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class TOTPCodePublisherUnitTest {
+
+    private static final long TIME_STEP = 100;
+
+    private final TOTPGenerator generator = new DefaultTOTPGenerator();
+    private final SecretStore store = new ArenaSecretStore(HMACAlgorithm.SHA1);
+    private final byte[][] secrets = new byte[3][20];
+
+    public TOTPCodePublisherUnitTest() {
+        final Random random = new Random(1703 * 0xAFFE);
+        for (int i = 0; i < this.secrets.length; i++) {
+            random.nextBytes(this.secrets[i]);
+            this.store.put(i, this.secrets[i]);
+        }
+    }
+
+    @Test
+    public void testPublishesOncePerStep() throws Exception {
+        try (final TOTPCodePublisher publisher = TOTPCodePublisher.builder()
+                .withAccounts(this.store, HMACAlgorithm.SHA1, 0, 1, 2)
+                .withTimeStep(TIME_STEP)
+                .build()) {
+            final Collector first = new Collector(Long.MAX_VALUE, 9);
+            final Collector second = new Collector(Long.MAX_VALUE, 9);
+            publisher.subscribe(first);
+            publisher.subscribe(second);
+            assertTrue(first.done.await(5, TimeUnit.SECONDS));
+            assertTrue(second.done.await(5, TimeUnit.SECONDS));
+
+            final long firstStep = first.events.get(0).step();
+            for (int i = 0; i < 9; i++) {
+                final CodeEvent event = first.events.get(i);
+                assertEquals(firstStep + i / 3, event.step());
+                assertEquals(i % 3, event.userId());
+                final int expected = this.generator.generateTOTP(this.secrets[i % 3], event.step() * TIME_STEP, TIME_STEP, 6, HMACAlgorithm.SHA1);
+                assertEquals(expected, event.code());
+            }
+            // Both subscribers saw the same steps
+            assertEquals(firstStep, second.events.get(0).step());
+        }
+    }
+
+    @Test
+    public void testRespectsDemand() throws Exception {
+        try (final TOTPCodePublisher publisher = TOTPCodePublisher.builder()
+                .withService(TOTPService.defaultServiceBuilder()
+                        .withDefaults()
+                        .withSecret(OTPBase32Secret.fromBytes(this.secrets[0]))
+                        .withAlgorithm(HMACAlgorithm.SHA1)
+                        .withTimeStep(TIME_STEP)
+                        .build(), 42)
+                .withTimeStep(TIME_STEP)
+                .withBufferCapacity(1)
+                .build()) {
+            final Collector collector = new Collector(1, 1);
+            publisher.subscribe(collector);
+            assertTrue(collector.done.await(5, TimeUnit.SECONDS));
+            Thread.sleep(TIME_STEP * 4);
+            assertEquals(1, collector.events.size());
+            assertEquals(42, collector.events.get(0).userId());
+
+            // Dropped events are not delivered later, the next request gets at most the buffered one
+            collector.subscription.request(1);
+            Thread.sleep(TIME_STEP * 3);
+            assertEquals(2, collector.events.size());
+            assertTrue(collector.events.get(1).step() > collector.events.get(0).step());
+        }
+    }
+
+    @Test
+    public void testServiceOnOtherClock() throws Exception {
+        // The clock of the service never moves, the events still carry the codes of their own steps
+        final TOTPService service = TOTPService.defaultServiceBuilder()
+                .withDefaults()
+                .withSecret(OTPBase32Secret.fromBytes(this.secrets[0]))
+                .withAlgorithm(HMACAlgorithm.SHA1)
+                .withTimeStep(TIME_STEP)
+                .withClock(new ManualTOTPClock(0))
+                .build();
+        try (final TOTPCodePublisher publisher = TOTPCodePublisher.builder()
+                .withService(service, 1)
+                .withTimeStep(TIME_STEP)
+                .build()) {
+            final Collector collector = new Collector(Long.MAX_VALUE, 2);
+            publisher.subscribe(collector);
+            assertTrue(collector.done.await(5, TimeUnit.SECONDS));
+            for (final CodeEvent event : collector.events) {
+                final int expected = this.generator.generateTOTP(this.secrets[0], event.step() * TIME_STEP, TIME_STEP, 6, HMACAlgorithm.SHA1);
+                assertEquals(expected, event.code());
+            }
+        }
+    }
+
+    @Test
+    public void testLaggingClock() throws Exception {
+        // The cached step of this clock lags half a step behind its time, like a coarse clock whose ticker is late
+        final TOTPClock lagging = new TOTPClock() {
+            @Override
+            public long currentTimeMillis() {
+                return System.currentTimeMillis();
+            }
+
+            @Override
+            public long currentStep(final long timeStepMillis) {
+                return (System.currentTimeMillis() - timeStepMillis / 2) / timeStepMillis;
+            }
+        };
+        try (final TOTPCodePublisher publisher = TOTPCodePublisher.builder()
+                .withAccounts(this.store, HMACAlgorithm.SHA1, 0)
+                .withTimeStep(TIME_STEP)
+                .withClock(lagging)
+                .build()) {
+            final Collector collector = new Collector(Long.MAX_VALUE, 3);
+            publisher.subscribe(collector);
+            assertTrue(collector.done.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                // Every event arrives during its own step, not one step late
+                assertEquals(collector.events.get(i).step(), collector.receivedMillis.get(i) / TIME_STEP);
+            }
+        }
+    }
+
+    @Test
+    public void testBuildInvalid() {
+        assertThrows(IllegalStateException.class, () -> TOTPCodePublisher.builder().withTimeStep(TIME_STEP).build());
+        assertThrows(IllegalStateException.class, () -> TOTPCodePublisher.builder().withAccounts(this.store, HMACAlgorithm.SHA1, 1).build());
+        final TOTPService service = TOTPService.defaultServiceBuilder()
+                .withDefaults()
+                .withSecret(OTPBase32Secret.fromBytes(this.secrets[0]))
+                .withAlgorithm(HMACAlgorithm.SHA1)
+                .withTimeStep(TIME_STEP)
+                .build();
+        assertThrows(IllegalStateException.class, () -> TOTPCodePublisher.builder().withService(service, 1).withTimeStep(TIME_STEP * 2).build());
+    }
+
+    private static final class Collector implements Flow.Subscriber<CodeEvent> {
+
+        private final List<CodeEvent> events = new CopyOnWriteArrayList<>();
+        private final List<Long> receivedMillis = new CopyOnWriteArrayList<>();
+        private final long initialDemand;
+        private final CountDownLatch done;
+        private volatile Flow.Subscription subscription;
+
+        private Collector(final long initialDemand, final int expected) {
+            this.initialDemand = initialDemand;
+            this.done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(this.initialDemand);
+        }
+
+        @Override
+        public void onNext(final CodeEvent item) {
+            this.receivedMillis.add(System.currentTimeMillis());
+            this.events.add(item);
+            this.done.countDown();
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+    }
+
+}
@@ -0,0 +1,90 @@
+package dev.cerus.faktor.service;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.generator.DefaultTOTPGenerator;
+import dev.cerus.faktor.generator.TOTPGenerator;
+import dev.cerus.faktor.service.clock.ManualTOTPClock;
+import dev.cerus.faktor.service.store.ArenaSecretStore;
+import dev.cerus.faktor.service.store.SecretStore;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class TOTPPrecomputerUnitTest {
+
+    private static final long TIME_STEP = TimeUnit.SECONDS.toMillis(30);
+    private static final int USERS = 2000;
+
+    private final TOTPGenerator generator = new DefaultTOTPGenerator();
+    private final SecretStore store = new ArenaSecretStore(HMACAlgorithm.SHA1);
+    private final byte[][] secrets = new byte[USERS + 1][20];
+
+    public TOTPPrecomputerUnitTest() {
+        final Random random = new Random(1703 * 0xAFFE);
+        for (int i = 0; i <= USERS; i++) {
+            random.nextBytes(this.secrets[i]);
+            this.store.put(i, this.secrets[i]);
+        }
+    }
+
+    @Test
+    public void testServesCurrentCodes() throws Exception {
+        final long[] accounts = new long[USERS];
+        for (int i = 0; i < USERS; i++) {
+            accounts[i] = i;
+        }
+        final long step = 1703;
+        // Three quarters into the step, so the worker does not wait before computing the next step
+        final ManualTOTPClock clock = new ManualTOTPClock(step * TIME_STEP + TIME_STEP * 3 / 4);
+        try (final TOTPPrecomputer precomputer = TOTPPrecomputer.builder()
+                .withDefaults()
+                .withSecretStore(this.store)
+                .withAlgorithm(HMACAlgorithm.SHA1)
+                .withTimeStep(TIME_STEP)
+                .withAccounts(accounts)
+                .withClock(clock)
+                .build()) {
+            // Codes are correct whether they have been precomputed yet or not
+            for (int i = 0; i <= USERS; i += 7) {
+                assertEquals(this.codeAt(i, step), precomputer.generateTOTP(i));
+            }
+
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!precomputer.isPrecomputed(step + 1)) {
+                assertTrue(System.nanoTime() < deadline, "Next step was not precomputed");
+                Thread.sleep(1);
+            }
+            clock.advance(TIME_STEP / 4, TimeUnit.MILLISECONDS);
+            for (int i = 0; i <= USERS; i += 7) {
+                assertEquals(this.codeAt(i, step + 1), precomputer.generateTOTP(i));
+            }
+            // Precomputed codes are stale, they are served after the secret was removed
+            this.store.remove(1);
+            assertEquals(this.codeAt(1, step + 1), precomputer.generateTOTP(1));
+            assertThrows(IllegalArgumentException.class, () -> precomputer.generateTOTP(USERS + 1));
+
+            // Steps the worker has fallen behind on are computed by the caller
+            clock.advance(TIME_STEP * 10, TimeUnit.MILLISECONDS);
+            assertEquals(this.codeAt(2, step + 11), precomputer.generateTOTP(2));
+            assertThrows(IllegalArgumentException.class, () -> precomputer.generateTOTP(1));
+        }
+    }
+
+    private int codeAt(final int user, final long step) throws Exception {
+        return this.generator.generateTOTP(this.secrets[user], step * TIME_STEP, TIME_STEP, 6, HMACAlgorithm.SHA1);
+    }
+
+    @Test
+    public void testBuildInvalid() {
+        assertThrows(IllegalStateException.class, () -> TOTPPrecomputer.builder()
+                .withDefaults()
+                .withSecretStore(this.store)
+                .withAlgorithm(HMACAlgorithm.SHA1)
+                .withTimeStep(TIME_STEP)
+                .build());
+    }
+
+}
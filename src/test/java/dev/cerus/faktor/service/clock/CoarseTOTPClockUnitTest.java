@@ -0,0 +1,28 @@
+package dev.cerus.faktor.service.clock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class CoarseTOTPClockUnitTest {
+
+    @Test
+    public void testFollowsStepBoundaries() throws InterruptedException {
+        try (final CoarseTOTPClock clock = new CoarseTOTPClock(50)) {
+            for (int i = 0; i < 5; i++) {
+                final long before = System.currentTimeMillis() / 50;
+                final long step = clock.currentStep(50);
+                // The ticker may lag behind by its wake up latency, but never by more than one step
+                assertTrue(step >= before - 1 && step <= System.currentTimeMillis() / 50, "Unexpected step " + step);
+                Thread.sleep(60);
+            }
+            final long before = System.currentTimeMillis() / 1000;
+            final long other = clock.currentStep(1000);
+            assertTrue(other >= before && other <= System.currentTimeMillis() / 1000);
+            assertEquals(50, clock.timeStepMillis());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new CoarseTOTPClock(0));
+    }
+
+}
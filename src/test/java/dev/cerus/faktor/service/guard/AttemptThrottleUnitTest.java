@@ -0,0 +1,128 @@
+package dev.cerus.faktor.service.guard;
+
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class AttemptThrottleUnitTest {
+
+    private static final long NOW = 1703 * 100_000_000L;
+
+    private AttemptThrottle.Builder builder() {
+        return AttemptThrottle.builder()
+                .withFreeAttempts(2)
+                .withLockout(1, 8, TimeUnit.SECONDS)
+                .withResetAfter(1, TimeUnit.MINUTES);
+    }
+
+    @Test
+    public void testExponentialLockout() {
+        final AttemptThrottle throttle = this.builder().build();
+        throttle.recordFailure(1, NOW);
+        throttle.recordFailure(1, NOW);
+        assertFalse(throttle.isLockedOut(1, NOW));
+
+        final long[] expected = {1000, 2000, 4000, 8000, 8000};
+        for (final long lockout : expected) {
+            throttle.recordFailure(1, NOW);
+            assertEquals(lockout, throttle.remainingLockoutMillis(1, NOW));
+        }
+        assertTrue(throttle.isLockedOut(1, NOW + 7999));
+        assertFalse(throttle.isLockedOut(1, NOW + 8000));
+        assertFalse(throttle.isLockedOut(2, NOW));
+
+        throttle.recordSuccess(1);
+        assertFalse(throttle.isLockedOut(1, NOW));
+        assertEquals(0, throttle.size());
+    }
+
+    @Test
+    public void testAcquireAttempt() {
+        final AttemptThrottle throttle = this.builder().build();
+        // Acquired attempts count as failures until a success is recorded
+        for (int i = 0; i < 3; i++) {
+            assertTrue(throttle.tryAcquireAttempt(1, NOW));
+        }
+        assertEquals(1000, throttle.remainingLockoutMillis(1, NOW));
+        assertFalse(throttle.tryAcquireAttempt(1, NOW + 999));
+        // A rejected attempt does not extend the lockout
+        assertEquals(1, throttle.remainingLockoutMillis(1, NOW + 999));
+
+        assertTrue(throttle.tryAcquireAttempt(1, NOW + 1000));
+        throttle.recordSuccess(1);
+        assertEquals(0, throttle.size());
+    }
+
+    @Test
+    public void testDecay() {
+        final AttemptThrottle throttle = this.builder().build();
+        for (int i = 0; i < 10; i++) {
+            throttle.recordFailure(1, NOW);
+        }
+        // The failure after the reset duration is counted as the first one
+        throttle.recordFailure(1, NOW + TimeUnit.MINUTES.toMillis(1));
+        throttle.recordFailure(1, NOW + TimeUnit.MINUTES.toMillis(1));
+        assertFalse(throttle.isLockedOut(1, NOW + TimeUnit.MINUTES.toMillis(1)));
+    }
+
+    @Test
+    public void testBounded() {
+        final AttemptThrottle throttle = this.builder().withMaxEntries(64).withStripes(1).build();
+        for (int i = 0; i < 1000; i++) {
+            throttle.recordFailure(i, NOW);
+        }
+        assertEquals(64, throttle.size());
+        assertFalse(throttle.isLockedOut(0, NOW));
+        // Users of the full stripe that are not tracked are locked out until the next purge
+        assertTrue(throttle.isLockedOut(20_000, NOW));
+        assertEquals(1000, throttle.remainingLockoutMillis(20_000, NOW));
+        throttle.recordFailure(20_000, NOW + 1000);
+        assertEquals(64, throttle.size());
+        assertTrue(throttle.isLockedOut(20_000, NOW + 1000));
+
+        // Forgotten entries are purged to make space
+        final long later = NOW + TimeUnit.MINUTES.toMillis(1);
+        throttle.recordFailure(20_000, later);
+        assertEquals(1, throttle.size());
+        assertFalse(throttle.isLockedOut(20_001, later));
+    }
+
+    @Test
+    public void testBackoffSurvivesFullStripe() {
+        final AttemptThrottle throttle = this.builder().withMaxEntries(64).withStripes(1).build();
+        for (int i = 0; i < 5; i++) {
+            throttle.recordFailure(1, NOW);
+        }
+        assertEquals(4000, throttle.remainingLockoutMillis(1, NOW));
+        // This user has used up the free attempts without being locked out yet
+        throttle.recordFailure(2, NOW);
+        throttle.recordFailure(2, NOW);
+        assertFalse(throttle.isLockedOut(2, NOW));
+
+        // The lockout has ended, then the stripe is flooded with failures of other users
+        final long later = NOW + 5000;
+        assertFalse(throttle.isLockedOut(1, later));
+        for (int i = 0; i < 1000; i++) {
+            throttle.recordFailure(100 + i, later);
+        }
+        assertEquals(64, throttle.size());
+
+        // The next failures continue the backoff instead of starting with free attempts
+        throttle.recordFailure(1, later);
+        assertEquals(8000, throttle.remainingLockoutMillis(1, later));
+        throttle.recordFailure(2, later);
+        assertEquals(1000, throttle.remainingLockoutMillis(2, later));
+    }
+
+    @Test
+    public void testBuildInvalid() {
+        assertThrows(IllegalStateException.class, () -> this.builder().withFreeAttempts(-1).build());
+        assertThrows(IllegalStateException.class, () -> this.builder().withLockout(2, 1, TimeUnit.SECONDS).build());
+        assertThrows(IllegalStateException.class, () -> this.builder().withResetAfter(8, TimeUnit.SECONDS).build());
+        assertThrows(IllegalStateException.class, () -> this.builder().withMaxEntries(0).build());
+    }
+
+}
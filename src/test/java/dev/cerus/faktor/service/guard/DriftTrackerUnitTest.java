@@ -0,0 +1,58 @@
+package dev.cerus.faktor.service.guard;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+public class DriftTrackerUnitTest {
+
+    @Test
+    public void testLearnsOffset() {
+        final DriftTracker tracker = new DriftTracker();
+        assertEquals(0, tracker.expectedOffset(1));
+        tracker.record(1, 3);
+        assertEquals(3, tracker.expectedOffset(1));
+        // An outlier only moves the expected offset part of the way
+        tracker.record(1, 0);
+        assertEquals(2, tracker.expectedOffset(1));
+        tracker.record(1, 3);
+        tracker.record(1, 3);
+        assertEquals(3, tracker.expectedOffset(1));
+        // Other users are not affected
+        assertEquals(0, tracker.expectedOffset(2));
+    }
+
+    @Test
+    public void testForwardOffsets() {
+        final DriftTracker tracker = new DriftTracker(1);
+        for (int i = 0; i < 10; i++) {
+            tracker.record(1, -2);
+        }
+        assertEquals(-2, tracker.expectedOffset(1));
+        // The average converges towards the new drift
+        for (int i = 0; i < 20; i++) {
+            tracker.record(1, 1);
+        }
+        assertEquals(1, tracker.expectedOffset(1));
+    }
+
+    @Test
+    public void testForget() {
+        final DriftTracker tracker = new DriftTracker(4);
+        for (int i = 0; i < 1000; i++) {
+            tracker.record(i, 1);
+        }
+        assertEquals(1000, tracker.size());
+        tracker.forget(5);
+        assertEquals(999, tracker.size());
+        assertEquals(0, tracker.expectedOffset(5));
+        assertEquals(1, tracker.expectedOffset(6));
+    }
+
+    @Test
+    public void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> new DriftTracker(0));
+        assertThrows(IllegalArgumentException.class, () -> new DriftTracker(1 << 17));
+    }
+
+}
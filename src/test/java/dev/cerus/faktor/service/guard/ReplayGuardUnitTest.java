@@ -0,0 +1,107 @@
+package dev.cerus.faktor.service.guard;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class ReplayGuardUnitTest {
+
+    @Test
+    public void testRejectsUsedSteps() {
+        final ReplayGuard guard = new ReplayGuard(2);
+        assertEquals(98, guard.firstUnusedStep(1, 100));
+        assertTrue(guard.tryAccept(1, 99, 100));
+        assertEquals(100, guard.firstUnusedStep(1, 100));
+        assertFalse(guard.tryAccept(1, 99, 100));
+        assertFalse(guard.tryAccept(1, 98, 100));
+        assertTrue(guard.tryAccept(1, 100, 100));
+        assertEquals(101, guard.firstUnusedStep(1, 100));
+        // Other users are not affected
+        assertEquals(98, guard.firstUnusedStep(2, 100));
+        // Steps outside the window are never accepted
+        assertFalse(guard.tryAccept(2, 97, 100));
+        assertFalse(guard.tryAccept(2, 101, 100));
+    }
+
+    @Test
+    public void testForwardSteps() {
+        final ReplayGuard guard = new ReplayGuard(1, 2, 4);
+        assertEquals(99, guard.firstUnusedStep(1, 100));
+        assertFalse(guard.tryAccept(1, 103, 100));
+        assertTrue(guard.tryAccept(1, 102, 100));
+        assertEquals(103, guard.firstUnusedStep(1, 100));
+        assertFalse(guard.tryAccept(1, 101, 101));
+        // The forward step stays used until it left the backwards window
+        guard.evict(103);
+        assertEquals(1, guard.size());
+        guard.evict(104);
+        assertEquals(0, guard.size());
+    }
+
+    @Test
+    public void testEviction() {
+        final ReplayGuard guard = new ReplayGuard(1, 4);
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(guard.tryAccept(i, 100, 100));
+        }
+        assertEquals(10_000, guard.size());
+        guard.evict(101);
+        assertEquals(10_000, guard.size());
+        assertEquals(101, guard.firstUnusedStep(5, 101));
+
+        guard.evict(102);
+        assertEquals(0, guard.size());
+        assertEquals(101, guard.firstUnusedStep(5, 102));
+
+        // Entries move to newer buckets when a newer step is accepted
+        assertTrue(guard.tryAccept(1, 102, 102));
+        assertTrue(guard.tryAccept(1, 103, 103));
+        guard.evict(104);
+        assertEquals(1, guard.size());
+        guard.evict(1_000);
+        assertEquals(0, guard.size());
+    }
+
+    @Test
+    public void testConcurrentAccept() throws InterruptedException {
+        final ReplayGuard guard = new ReplayGuard(0);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final AtomicInteger accepted = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < 8; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (long step = 0; step < 1000; step++) {
+                    if (guard.tryAccept(1703, step, step)) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        // Every step is accepted at most once
+        assertTrue(accepted.get() <= 1000);
+        assertEquals(1, guard.size());
+    }
+
+    @Test
+    public void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> new ReplayGuard(-1));
+        assertThrows(IllegalArgumentException.class, () -> new ReplayGuard(1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new ReplayGuard(1, -1, 1));
+    }
+
+}
@@ -0,0 +1,154 @@
+package dev.cerus.faktor.service.otpauth;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.service.secret.OTPBase32Secret;
+import dev.cerus.faktor.service.secret.OTPSecret;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class OTPAuthUnitTest {
+
+    private static final String SECRET = "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ";
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    public void testParse() {
+        final OTPAuthEntry entry = OTPAuthEntry.fromURI("otpauth://totp/ACME%20Co:john.doe@email.com?secret=" + SECRET.toLowerCase()
+                + "&issuer=ACME%20Co&algorithm=SHA256&digits=8&period=60");
+        assertEquals(OTPAuthEntry.Type.TOTP, entry.type());
+        assertEquals("ACME Co:john.doe@email.com", entry.label());
+        assertEquals("ACME Co", entry.issuer());
+        assertEquals(SECRET, entry.secret().asString().replace("=", ""));
+        assertEquals(HMACAlgorithm.SHA256, entry.algorithm());
+        assertEquals(8, entry.digits());
+        assertEquals(60, entry.period());
+
+        final String padded = OTPBase32Secret.generate(HMACAlgorithm.SHA256, new Random(1)).asString();
+        assertTrue(padded.endsWith("===="));
+        final OTPAuthEntry defaults = OTPAuthEntry.fromURI("OTPAUTH://TOTP/alice?secret=" + padded.replace("=", "%3D"));
+        assertEquals(padded, defaults.secret().asString());
+        assertNull(defaults.issuer());
+        assertEquals(HMACAlgorithm.SHA1, defaults.algorithm());
+        assertEquals(6, defaults.digits());
+        assertEquals(30, defaults.period());
+
+        final OTPAuthEntry hotp = OTPAuthEntry.fromURI("otpauth://hotp/bob?counter=42&secret=" + SECRET);
+        assertEquals(OTPAuthEntry.Type.HOTP, hotp.type());
+        assertEquals(42, hotp.counter());
+    }
+
+    @Test
+    public void testMalformed() {
+        assertThrows(IllegalArgumentException.class, () -> OTPAuthEntry.fromURI("https://totp/a?secret=" + SECRET));
+        assertThrows(IllegalArgumentException.class, () -> OTPAuthEntry.fromURI("otpauth://totp/a"));
+        assertThrows(IllegalArgumentException.class, () -> OTPAuthEntry.fromURI("otpauth://motp/a?secret=" + SECRET));
+        assertThrows(IllegalArgumentException.class, () -> OTPAuthEntry.fromURI("otpauth://hotp/a?secret=" + SECRET));
+        assertThrows(IllegalArgumentException.class, () -> OTPAuthEntry.fromURI("otpauth://totp/a?secret=" + SECRET + "&digits=x"));
+        assertThrows(IllegalArgumentException.class, () -> OTPAuthEntry.fromURI("otpauth://totp/a?secret=" + SECRET + "&algorithm=MD5"));
+        assertThrows(IllegalArgumentException.class, () -> OTPAuthEntry.fromURI("otpauth://totp/a%2?secret=" + SECRET));
+        assertThrows(IllegalArgumentException.class, () -> OTPAuthEntry.fromURI("otpauth://totp/a?secret=GEZDGNBV"));
+    }
+
+    @Test
+    public void testURIRoundTrip() {
+        final OTPSecret secret = OTPBase32Secret.generate(HMACAlgorithm.SHA512, new Random(1));
+        final OTPAuthEntry entry = OTPAuthEntry.totp("Ex&mple:ünï cödé", "Ex&mple", secret, HMACAlgorithm.SHA512, 10, 45);
+        final String uri = entry.toURI();
+        assertTrue(uri.startsWith("otpauth://totp/Ex%26mple:"), uri);
+        assertTrue(!uri.contains("=&") && !uri.contains("%3D"), uri);
+        assertEquals(uri, OTPAuthEntry.fromURI(uri).toURI());
+        assertArrayEquals(secret.asBytes(), OTPAuthEntry.fromURI(uri).secret().asBytes());
+    }
+
+    @Test
+    public void testCounterDigits() {
+        for (final long counter : new long[] {0, 9, 10, 999999999999999999L, 1000000000000000000L, Long.MAX_VALUE}) {
+            final String uri = OTPAuthEntry.fromURI("otpauth://hotp/bob?counter=" + counter + "&secret=" + SECRET).toURI();
+            assertTrue(uri.endsWith("&counter=" + counter), uri);
+        }
+    }
+
+    @Test
+    public void testStreamRoundTrip() throws IOException {
+        final List<OTPAuthEntry> entries = entries(50_000);
+        final Path file = this.dir.resolve("export.txt");
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            try (final OTPAuthWriter writer = new OTPAuthWriter(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE), 1 << 16, pool)) {
+                writer.write(entries.get(0));
+                writer.writeAll(entries.subList(1, entries.size()));
+            }
+            assertRead(file, entries, new OTPAuthReader(FileChannel.open(file), 1 << 20, pool));
+            // A small buffer carries incomplete lines over between reads
+            assertRead(file, entries, new OTPAuthReader(FileChannel.open(file), 4096, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testReaderLines() throws IOException {
+        final String uri = "otpauth://totp/a?secret=" + SECRET;
+        final Path file = this.dir.resolve("lines.txt");
+        Files.writeString(file, "\r\n" + uri + "\r\n\n" + uri);
+        final List<OTPAuthEntry> read = new ArrayList<>();
+        try (final OTPAuthReader reader = new OTPAuthReader(Channels.newChannel(Files.newInputStream(file)))) {
+            assertEquals(2, reader.read(read::add));
+        }
+        assertEquals("a", read.get(1).label());
+
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            content.append(i == 12_345 ? "otpauth://totp/a?secret=" : uri).append('\n');
+        }
+        Files.writeString(file, content, StandardCharsets.US_ASCII);
+        try (final OTPAuthReader reader = new OTPAuthReader(FileChannel.open(file))) {
+            final IOException e = assertThrows(IOException.class, () -> reader.read(entry -> {
+            }));
+            assertEquals("Malformed otpauth URI in line 12346", e.getMessage());
+        }
+    }
+
+    private static void assertRead(final Path file, final List<OTPAuthEntry> expected, final OTPAuthReader reader) throws IOException {
+        final List<OTPAuthEntry> read = new ArrayList<>(expected.size());
+        try (reader) {
+            assertEquals(expected.size(), reader.read(read::add));
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toURI(), read.get(i).toURI());
+        }
+    }
+
+    private static List<OTPAuthEntry> entries(final int amount) {
+        final Random random = new Random(42);
+        final HMACAlgorithm[] algorithms = HMACAlgorithm.values();
+        final List<OTPAuthEntry> entries = new ArrayList<>(amount);
+        for (int i = 0; i < amount; i++) {
+            final HMACAlgorithm algo = algorithms[i % algorithms.length];
+            final OTPSecret secret = OTPBase32Secret.generate(algo, random);
+            entries.add(i % 7 == 0
+                    ? OTPAuthEntry.hotp("user" + i, null, secret, algo, 6, i)
+                    : OTPAuthEntry.totp("Faktor:user " + i, "Faktor", secret, algo, 6 + i % 5, 30));
+        }
+        return entries;
+    }
+
+}
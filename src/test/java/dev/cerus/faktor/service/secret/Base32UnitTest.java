@@ -0,0 +1,66 @@
+package dev.cerus.faktor.service.secret;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+public class Base32UnitTest {
+
+    // Test vectors of RFC 4648 section 10
+    private static final String[][] VECTORS = {
+            {"", ""},
+            {"f", "MY======"},
+            {"fo", "MZXQ===="},
+            {"foo", "MZXW6==="},
+            {"foob", "MZXW6YQ="},
+            {"fooba", "MZXW6YTB"},
+            {"foobar", "MZXW6YTBOI======"}
+    };
+
+    @Test
+    public void testVectors() {
+        for (final String[] vector : VECTORS) {
+            final byte[] data = vector[0].getBytes(StandardCharsets.US_ASCII);
+            assertEquals(vector[1], Base32.encode(data));
+            assertArrayEquals(data, Base32.decode(vector[1]));
+            // Unpadded and lower case
+            assertArrayEquals(data, Base32.decode(vector[1].replace("=", "").toLowerCase()));
+
+            final byte[] ascii = ("__" + vector[1]).getBytes(StandardCharsets.US_ASCII);
+            final byte[] decoded = new byte[data.length + 1];
+            assertEquals(data.length, Base32.decode(ascii, 2, ascii.length - 2, decoded, 1));
+            assertArrayEquals(data, Arrays.copyOfRange(decoded, 1, decoded.length));
+
+            final byte[] encoded = new byte[vector[1].length()];
+            assertEquals(encoded.length, Base32.encode(data, 0, data.length, encoded, 0));
+            assertEquals(vector[1], new String(encoded, StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final Random random = new Random(1703);
+        for (int length = 0; length < 100; length++) {
+            final byte[] data = new byte[length];
+            random.nextBytes(data);
+            assertArrayEquals(data, Base32.decode(Base32.encode(data)));
+        }
+    }
+
+    @Test
+    public void testInvalid() {
+        assertEquals(4, Base32.decodedLength("MZXW6YQ"));
+        assertEquals(-1, Base32.decodedLength("MZXW6Y=="));
+        assertEquals(-1, Base32.decodedLength("MZXW6YTB========"));
+        assertEquals(-1, Base32.decodedLength("A"));
+        assertThrows(IllegalArgumentException.class, () -> Base32.decode("MZXW6Y==="));
+        assertThrows(IllegalArgumentException.class, () -> Base32.decode("MZ=W6YTB"));
+        assertThrows(IllegalArgumentException.class, () -> Base32.decode("MZXW6YTĀ"));
+        assertThrows(IndexOutOfBoundsException.class, () -> Base32.encode(new byte[5], 0, 5, new char[7], 0));
+    }
+
+}
@@ -0,0 +1,60 @@
+package dev.cerus.faktor.service.secret;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+public class HexUnitTest {
+
+    @Test
+    public void testRoundTrip() {
+        final Random random = new Random(1703);
+        for (int length = 0; length < 100; length++) {
+            final byte[] data = new byte[length];
+            random.nextBytes(data);
+            final String encoded = Hex.encode(data);
+            final StringBuilder expected = new StringBuilder();
+            for (final byte b : data) {
+                expected.append(String.format("%02X", b));
+            }
+            assertEquals(expected.toString(), encoded);
+            assertArrayEquals(data, Hex.decode(encoded));
+            assertArrayEquals(data, Hex.decode(encoded.toLowerCase()));
+
+            final byte[] ascii = encoded.getBytes(StandardCharsets.US_ASCII);
+            final byte[] decoded = new byte[length];
+            assertEquals(length, Hex.decode(ascii, 0, ascii.length, decoded, 0));
+            assertArrayEquals(data, decoded);
+        }
+    }
+
+    @Test
+    public void testEncodeAll() {
+        final byte[][] secrets = {{0x01, (byte) 0xAB}, {}, {(byte) 0xFF}};
+        final byte[] dest = new byte[(int) Hex.encodedLength(secrets) + 2];
+        assertEquals(dest.length - 2, Hex.encodeAll(secrets, dest, 1, (byte) '\n'));
+        assertEquals("01AB\n\nFF\n", new String(dest, 1, dest.length - 2, StandardCharsets.US_ASCII));
+
+        final byte[] packed = {0x01, (byte) 0xAB, 0x12, 0x34, 0x56, 0x78};
+        final byte[] lines = new byte[15];
+        assertEquals(15, Hex.encodeAll(packed, 0, 3, 2, lines, 0, (byte) ','));
+        assertEquals("01AB,1234,5678,", new String(lines, StandardCharsets.US_ASCII));
+        assertThrows(IndexOutOfBoundsException.class, () -> Hex.encodeAll(packed, 0, 3, 2, new byte[14], 0, (byte) ','));
+    }
+
+    @Test
+    public void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> Hex.decode("ABC"));
+        assertThrows(IllegalArgumentException.class, () -> Hex.decode("AG"));
+        assertThrows(IllegalArgumentException.class, () -> Hex.decode("A "));
+        final Throwable ex = assertThrows(IllegalArgumentException.class, () -> OTPHexSecret.fromString("X".repeat(40)));
+        assertEquals("Not an encoded Hex OTPSecret", ex.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> OTPHexSecret.fromString("AB".repeat(19)));
+        assertEquals(Arrays.toString(new byte[20]), Arrays.toString(OTPHexSecret.fromString("00".repeat(20)).asBytes()));
+    }
+
+}
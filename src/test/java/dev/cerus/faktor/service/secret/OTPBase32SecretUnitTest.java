@@ -1,5 +1,6 @@
 package dev.cerus.faktor.service.secret;
 
+import java.nio.charset.StandardCharsets;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
 
@@ -99,4 +100,17 @@ public class OTPBase32SecretUnitTest {
         assertEquals(secretAsString, secret.asString(), "OTPHexSecret#asString() should be equal to the encoded secret");
     }
 
+    @Test
+    public void testFromStringUnpaddedLowerCase() {
+        final String secretAsString = "I7LLJXCMU6C6OS3CNBWGXJU4VUOWUHBIXLJOHIVYIQSJ33ZMUCOQ====";
+        final OTPSecret expected = OTPBase32Secret.fromString(secretAsString);
+
+        final OTPSecret secret = OTPBase32Secret.fromChars(new StringBuilder(secretAsString.replace("=", "").toLowerCase()));
+        assertArrayEquals(expected.asBytes(), secret.asBytes(), "Unpadded lower case secrets should be decoded");
+        assertEquals(secretAsString, secret.asString(), "OTPBase32Secret#asString() should be padded upper case");
+
+        final byte[] ascii = secretAsString.getBytes(StandardCharsets.US_ASCII);
+        assertArrayEquals(expected.asBytes(), OTPBase32Secret.fromAscii(ascii, 0, ascii.length).asBytes());
+    }
+
 }
@@ -2,7 +2,9 @@ package dev.cerus.faktor.service.secret;
 
 import dev.cerus.faktor.HMACAlgorithm;
 import dev.cerus.faktor.service.secret.mock.MockOTPSecret;
+import java.nio.ByteBuffer;
 import java.util.Random;
+import org.jetbrains.annotations.NotNull;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -105,4 +107,46 @@ public class OTPSecretUnitTest {
         assertThrows(UnsupportedOperationException.class, () -> OTPSecret.fromString(MockOTPSecret.class, encoded));
     }
 
+    @Test
+    public void testByteBufferView() {
+        final byte[] secretData = new byte[32];
+        this.random.nextBytes(secretData);
+        final OTPSecret secret = OTPBase32Secret.fromBytes(secretData.clone());
+        final ByteBuffer view = secret.asByteBuffer();
+        assertTrue(view.isReadOnly());
+        assertEquals(32, view.limit());
+        final byte[] viewed = new byte[32];
+        view.duplicate().get(viewed);
+        assertArrayEquals(secretData, viewed);
+
+        // The default implementation wraps a copy
+        final ByteBuffer mockView = new MockOTPSecret() {
+            @Override
+            public byte @NotNull [] asBytes() {
+                return secretData.clone();
+            }
+        }.asByteBuffer();
+        assertTrue(mockView.isReadOnly());
+        assertEquals(ByteBuffer.wrap(secretData), mockView);
+    }
+
+    @Test
+    public void testDestroy() {
+        final byte[] secretData = new byte[20];
+        this.random.nextBytes(secretData);
+        final OTPSecret secret = OTPHexSecret.fromBytes(secretData);
+        final ByteBuffer view = secret.asByteBuffer();
+        secret.asString();
+
+        assertDoesNotThrow(secret::destroy);
+        assertTrue(secret.isDestroyed());
+        assertArrayEquals(new byte[20], secretData);
+        for (int i = 0; i < view.limit(); i++) {
+            assertEquals(0, view.get(i));
+        }
+        assertThrows(IllegalStateException.class, secret::asBytes);
+        assertThrows(IllegalStateException.class, secret::asString);
+        assertThrows(IllegalStateException.class, secret::asByteBuffer);
+    }
+
 }
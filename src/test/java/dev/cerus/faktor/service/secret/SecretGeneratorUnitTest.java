@@ -0,0 +1,77 @@
+package dev.cerus.faktor.service.secret;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.service.store.ArenaSecretStore;
+import dev.cerus.faktor.service.store.SecretStore;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class SecretGeneratorUnitTest {
+
+    @Test
+    public void testGenerateArena() {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final SecretGenerator generator = new SecretGenerator(pool, 100);
+            for (final HMACAlgorithm algo : HMACAlgorithm.values()) {
+                final byte[] arena = generator.generate(algo, 10_001);
+                assertEquals(10_001 * algo.byteAmount(), arena.length);
+                assertDistinct(arena, algo.byteAmount());
+            }
+
+            // Bytes outside the range stay untouched
+            final byte[] arena = new byte[20 * 12];
+            generator.generate(HMACAlgorithm.SHA1, arena, 20, 10);
+            assertTrue(isZero(arena, 0, 20));
+            assertTrue(isZero(arena, 220, 20));
+            for (int i = 1; i <= 10; i++) {
+                assertFalse(isZero(arena, i * 20, 20));
+            }
+            assertThrows(IndexOutOfBoundsException.class, () -> generator.generate(HMACAlgorithm.SHA1, arena, 40, 11));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testGenerateIntoStore() {
+        final SecretStore store = new ArenaSecretStore(HMACAlgorithm.SHA256);
+        final long[] userIds = new long[20_000];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = i * 31L;
+        }
+        new SecretGenerator().generate(store, userIds);
+        assertEquals(userIds.length, store.size());
+
+        final byte[] secrets = new byte[userIds.length * 32];
+        for (int i = 0; i < userIds.length; i++) {
+            assertTrue(store.read(userIds[i], secrets, i * 32));
+        }
+        assertDistinct(secrets, 32);
+    }
+
+    private static void assertDistinct(final byte[] arena, final int secretLength) {
+        final Set<ByteBuffer> seen = new HashSet<>();
+        for (int i = 0; i < arena.length; i += secretLength) {
+            assertFalse(isZero(arena, i, secretLength));
+            assertTrue(seen.add(ByteBuffer.wrap(arena, i, secretLength).slice()));
+        }
+    }
+
+    private static boolean isZero(final byte[] arena, final int offset, final int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (arena[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,60 @@
+package dev.cerus.faktor.service.store;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class ArenaSecretStoreUnitTest {
+
+    @Test
+    public void testPutAndRead() {
+        final SecretStore store = new ArenaSecretStore(HMACAlgorithm.SHA1);
+        final Random random = new Random(1703 * 0xAFFE);
+        final byte[][] secrets = new byte[1000][20];
+        for (int i = 0; i < secrets.length; i++) {
+            random.nextBytes(secrets[i]);
+            store.put(i * 7L, secrets[i]);
+        }
+        assertEquals(secrets.length, store.size());
+
+        final byte[] buffer = new byte[24];
+        for (int i = 0; i < secrets.length; i++) {
+            assertTrue(store.read(i * 7L, buffer, 4));
+            assertArrayEquals(secrets[i], Arrays.copyOfRange(buffer, 4, 24));
+        }
+        assertFalse(store.read(1, buffer, 0));
+    }
+
+    @Test
+    public void testRemoveReusesSlots() {
+        final SecretStore store = new ArenaSecretStore(20, 2);
+        final byte[] first = new byte[20];
+        final byte[] second = new byte[20];
+        first[0] = 1;
+        second[0] = 2;
+        store.put(1, first);
+        assertTrue(store.remove(1));
+        assertFalse(store.remove(1));
+        assertFalse(store.contains(1));
+        store.put(2, second);
+        assertEquals(1, store.size());
+
+        final byte[] buffer = new byte[20];
+        assertTrue(store.read(2, buffer, 0));
+        assertArrayEquals(second, buffer);
+    }
+
+    @Test
+    public void testPutInvalid() {
+        final SecretStore store = new ArenaSecretStore(HMACAlgorithm.SHA256);
+        assertThrows(IllegalArgumentException.class, () -> store.put(1, new byte[20]));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.put(1, new byte[40], 10));
+    }
+
+}
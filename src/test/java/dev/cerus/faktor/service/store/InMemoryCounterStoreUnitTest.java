@@ -0,0 +1,67 @@
+package dev.cerus.faktor.service.store;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class InMemoryCounterStoreUnitTest {
+
+    @Test
+    public void testCompareAndSet() {
+        final CounterStore store = new InMemoryCounterStore(16);
+        for (final long userId : new long[] {0, 1, -1703}) {
+            assertEquals(0, store.get(userId));
+            assertFalse(store.compareAndSet(userId, 1, 2));
+            assertTrue(store.compareAndSet(userId, 0, 5));
+            assertFalse(store.compareAndSet(userId, 0, 6));
+            assertEquals(5, store.get(userId));
+            store.reset(userId);
+            assertEquals(0, store.get(userId));
+        }
+        assertThrows(IllegalArgumentException.class, () -> store.compareAndSet(1, 0, -1));
+    }
+
+    @Test
+    public void testFull() {
+        final InMemoryCounterStore store = new InMemoryCounterStore(0);
+        for (int i = 1; i <= 12; i++) {
+            assertTrue(store.compareAndSet(i, 0, 1));
+        }
+        assertEquals(12, store.size());
+        assertThrows(IllegalStateException.class, () -> store.compareAndSet(13, 0, 1));
+        // Known users can still be updated
+        assertTrue(store.compareAndSet(12, 1, 2));
+    }
+
+    @Test
+    public void testConcurrentIncrements() throws InterruptedException {
+        final CounterStore store = new InMemoryCounterStore(1024);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final AtomicInteger successes = new AtomicInteger();
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    final long userId = i % 512;
+                    final long counter = store.get(userId);
+                    if (store.compareAndSet(userId, counter, counter + 1)) {
+                        successes.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        long total = 0;
+        for (int i = 0; i < 512; i++) {
+            total += store.get(i);
+        }
+        assertEquals(successes.get(), total);
+    }
+
+}
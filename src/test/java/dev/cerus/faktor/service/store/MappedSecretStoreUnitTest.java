@@ -0,0 +1,124 @@
+package dev.cerus.faktor.service.store;
+
+import dev.cerus.faktor.HMACAlgorithm;
+import dev.cerus.faktor.generator.AllocationFreeTOTPGenerator;
+import dev.cerus.faktor.generator.DefaultTOTPGenerator;
+import dev.cerus.faktor.generator.TOTPGenerator;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedSecretStoreUnitTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testPersistence() throws IOException {
+        final Path path = this.directory.resolve("secrets.fks");
+        final Random random = new Random(1703 * 0xAFFE);
+        final byte[][] secrets = new byte[1000][20];
+        try (final MappedSecretStore store = MappedSecretStore.create(path, HMACAlgorithm.SHA1, secrets.length)) {
+            for (int i = 0; i < secrets.length; i++) {
+                random.nextBytes(secrets[i]);
+                store.put(i * 7L, secrets[i]);
+            }
+            assertThrows(IOException.class, () -> MappedSecretStore.create(path, HMACAlgorithm.SHA1, 1));
+        }
+
+        try (final MappedSecretStore store = MappedSecretStore.open(path)) {
+            assertEquals(secrets.length, store.size());
+            assertEquals(HMACAlgorithm.SHA1, store.algorithm());
+            final byte[] buffer = new byte[24];
+            for (int i = 0; i < secrets.length; i++) {
+                assertTrue(store.read(i * 7L, buffer, 4));
+                assertArrayEquals(secrets[i], Arrays.copyOfRange(buffer, 4, 24));
+            }
+            assertFalse(store.read(1, buffer, 0));
+        }
+    }
+
+    @Test
+    public void testRemoveMatchesHashMap() throws IOException {
+        final Random random = new Random(1703);
+        final Map<Long, Byte> reference = new HashMap<>();
+        try (final MappedSecretStore store = MappedSecretStore.create(this.directory.resolve("secrets.fks"), HMACAlgorithm.SHA1, 64)) {
+            final byte[] secret = new byte[20];
+            for (int i = 0; i < 10_000; i++) {
+                // Few distinct keys to force long probe sequences and many shifts
+                final long userId = random.nextInt(48) * 31L;
+                if (random.nextBoolean()) {
+                    secret[0] = (byte) i;
+                    store.put(userId, secret);
+                    reference.put(userId, (byte) i);
+                } else {
+                    assertEquals(reference.remove(userId) != null, store.remove(userId));
+                }
+            }
+            assertEquals(reference.size(), store.size());
+            final byte[] buffer = new byte[20];
+            for (int i = 0; i < 48; i++) {
+                final Byte expected = reference.get(i * 31L);
+                assertEquals(expected != null, store.read(i * 31L, buffer, 0));
+                if (expected != null) {
+                    assertEquals(expected, buffer[0]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGenerateFromMapping() throws Exception {
+        final byte[] secret = new byte[20];
+        new Random(1703 * 0xAFFE).nextBytes(secret);
+        final long timeStep = TimeUnit.SECONDS.toMillis(30);
+        final long time = 1703 * 100_000_000L;
+        try (final MappedSecretStore store = MappedSecretStore.create(this.directory.resolve("secrets.fks"), HMACAlgorithm.SHA1, 16)) {
+            store.put(1, secret);
+            store.put(2, secret, 0, HMACAlgorithm.SHA256);
+
+            final TOTPGenerator generator = new AllocationFreeTOTPGenerator();
+            assertEquals(199682, store.generateHOTP(1, generator, 1703, 6));
+            assertEquals(87492, store.generateTOTP(1, generator, time, timeStep, 6));
+            assertEquals(new DefaultTOTPGenerator().generateTOTP(secret, time, timeStep, 8, HMACAlgorithm.SHA256),
+                    store.generateTOTP(2, new DefaultTOTPGenerator(), time, timeStep, 8));
+            assertEquals(HMACAlgorithm.SHA256, store.algorithm(2));
+            assertEquals(87492, generator.generateTOTP(store.prepareKey(1), time, timeStep, 6));
+            assertNull(store.prepareKey(3));
+            assertThrows(IllegalArgumentException.class, () -> store.generateTOTP(3, generator, time, timeStep, 6));
+        }
+    }
+
+    @Test
+    public void testInvalid() throws IOException {
+        final Path path = this.directory.resolve("secrets.fks");
+        try (final MappedSecretStore store = MappedSecretStore.create(path, HMACAlgorithm.SHA256, 1)) {
+            assertThrows(IllegalArgumentException.class, () -> store.put(1, new byte[20]));
+            assertThrows(IndexOutOfBoundsException.class, () -> store.put(1, new byte[40], 10));
+            for (int i = 0; i < store.capacity() * 3 / 4; i++) {
+                store.put(i, new byte[32]);
+            }
+            assertThrows(IllegalStateException.class, () -> store.put(-1, new byte[32]));
+            store.close();
+            assertThrows(IllegalStateException.class, () -> store.contains(1));
+        }
+
+        final Path garbage = this.directory.resolve("garbage.fks");
+        Files.write(garbage, new byte[128]);
+        assertThrows(IOException.class, () -> MappedSecretStore.open(garbage));
+    }
+
+}
@@ -0,0 +1,71 @@
+package dev.cerus.faktor.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class LongLongHashMapUnitTest {
+
+    @Test
+    public void testBasicOperations() {
+        final LongLongHashMap map = new LongLongHashMap();
+        assertTrue(map.isEmpty());
+        assertEquals(-1, map.put(0, 10, -1));
+        assertEquals(-1, map.put(1703, 20, -1));
+        assertEquals(20, map.put(1703, 30, -1));
+        assertEquals(10, map.get(0, -1));
+        assertEquals(30, map.get(1703, -1));
+        assertEquals(-1, map.get(42, -1));
+        assertEquals(2, map.size());
+        assertEquals(10, map.remove(0, -1));
+        assertFalse(map.containsKey(0));
+        assertEquals(-1, map.remove(0, -1));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        final Random random = new Random(1703 * 0xAFFE);
+        final LongLongHashMap map = new LongLongHashMap();
+        final Map<Long, Long> reference = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            // Small key range to provoke collisions and removals of present keys
+            final long key = random.nextInt(5000) - 10;
+            final long value = random.nextLong();
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    final Long previous = reference.put(key, value);
+                    assertEquals(previous == null ? -1 : previous, map.put(key, value, -1));
+                }
+                case 1 -> {
+                    final Long previous = reference.remove(key);
+                    assertEquals(previous == null ? -1 : previous, map.remove(key, -1));
+                }
+                default -> assertEquals(reference.getOrDefault(key, -1L), map.get(key, -1));
+            }
+        }
+        assertEquals(reference.size(), map.size());
+        for (final Map.Entry<Long, Long> entry : reference.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey(), -1));
+        }
+    }
+
+    @Test
+    public void testRemoveIf() {
+        final LongLongHashMap map = new LongLongHashMap();
+        for (long key = 0; key < 10_000; key++) {
+            map.put(key, key % 3, -1);
+        }
+        final int removed = map.removeIf((key, value) -> value == 0);
+        assertEquals(3334, removed);
+        assertEquals(10_000 - 3334, map.size());
+        for (long key = 0; key < 10_000; key++) {
+            assertEquals(key % 3 != 0, map.containsKey(key), "Unexpected state for key " + key);
+        }
+    }
+
+}